@@ -173,9 +173,9 @@ CREATE TABLE `customer_notification`  (
   `created_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `read_flag` tinyint(1) NOT NULL DEFAULT 0,
   PRIMARY KEY (`notification_id`) USING BTREE,
-  INDEX `idx_cn_customer`(`customer_id` ASC) USING BTREE,
+  INDEX `idx_cn_customer`(`customer_id` ASC) USING BTREE COMMENT '二级索引隐含主键，按 notification_id 倒序的游标分页与补发、MAX(notification_id) 直接走索引；idx_cn_customer_read 的第二列起是 read_flag，无法提供该顺序',
+  INDEX `idx_cn_customer_read`(`customer_id` ASC, `read_flag` ASC, `created_time` ASC) USING BTREE,
   INDEX `fk_cn_order`(`order_id` ASC) USING BTREE,
-  INDEX `idx_notif_customer`(`customer_id` ASC) USING BTREE,
   CONSTRAINT `fk_cn_customer` FOREIGN KEY (`customer_id`) REFERENCES `customer` (`customer_id`) ON DELETE RESTRICT ON UPDATE RESTRICT,
   CONSTRAINT `fk_cn_order` FOREIGN KEY (`order_id`) REFERENCES `sales_order` (`order_id`) ON DELETE RESTRICT ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 31 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = DYNAMIC;
@@ -215,6 +215,7 @@ CREATE TABLE `inventory`  (
   `book_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,
   `quantity` int NOT NULL DEFAULT 0,
   `safety_stock` int NOT NULL DEFAULT 0,
+  `reserved` int NOT NULL DEFAULT 0,
   `location_code` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL,
   PRIMARY KEY (`book_id`) USING BTREE,
   CONSTRAINT `fk_inventory_book` FOREIGN KEY (`book_id`) REFERENCES `book` (`book_id`) ON DELETE RESTRICT ON UPDATE RESTRICT
@@ -319,6 +320,7 @@ CREATE TABLE `sales_order`  (
   `customer_note` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL,
   PRIMARY KEY (`order_id`) USING BTREE,
   INDEX `idx_sales_order_customer`(`customer_id` ASC) USING BTREE,
+  INDEX `idx_sales_order_status_id`(`order_status` ASC, `order_id` ASC) USING BTREE,
   CONSTRAINT `fk_order_customer` FOREIGN KEY (`customer_id`) REFERENCES `customer` (`customer_id`) ON DELETE RESTRICT ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 111 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = DYNAMIC;
 
@@ -397,6 +399,41 @@ CREATE TABLE `shopping_cart`  (
   CONSTRAINT `shopping_cart_ibfk_2` FOREIGN KEY (`book_id`) REFERENCES `book` (`book_id`) ON DELETE RESTRICT ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 51 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = DYNAMIC;
 
+-- ----------------------------
+-- Table structure for stock_reservation
+-- ----------------------------
+DROP TABLE IF EXISTS `stock_reservation`;
+CREATE TABLE `stock_reservation`  (
+  `reservation_id` bigint NOT NULL AUTO_INCREMENT,
+  `order_id` bigint NOT NULL,
+  `book_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,
+  `quantity` int NOT NULL,
+  `committed_quantity` int NOT NULL DEFAULT 0,
+  `status` enum('RESERVED','COMMITTED','RELEASED') CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL DEFAULT 'RESERVED',
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `updated_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  PRIMARY KEY (`reservation_id`) USING BTREE,
+  UNIQUE INDEX `uk_reservation_order_book`(`order_id` ASC, `book_id` ASC) USING BTREE,
+  INDEX `idx_reservation_book_status`(`book_id` ASC, `status` ASC) USING BTREE,
+  CONSTRAINT `fk_reservation_book` FOREIGN KEY (`book_id`) REFERENCES `book` (`book_id`) ON DELETE RESTRICT ON UPDATE RESTRICT,
+  CONSTRAINT `fk_reservation_order` FOREIGN KEY (`order_id`) REFERENCES `sales_order` (`order_id`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = DYNAMIC;
+
+-- ----------------------------
+-- Table structure for idempotency_record
+-- ----------------------------
+DROP TABLE IF EXISTS `idempotency_record`;
+CREATE TABLE `idempotency_record`  (
+  `scope` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,
+  `idempotency_key` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NOT NULL,
+  `request_hash` char(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL,
+  `response_status` int NULL DEFAULT NULL,
+  `response_body` mediumtext CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL,
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`scope`, `idempotency_key`) USING BTREE,
+  INDEX `idx_idempotency_created`(`created_at` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci ROW_FORMAT = DYNAMIC;
+
 -- ----------------------------
 -- Table structure for supplier
 -- ----------------------------
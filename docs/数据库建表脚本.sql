@@ -73,6 +73,7 @@ CREATE TABLE IF NOT EXISTS inventory (
     book_id       VARCHAR(32) PRIMARY KEY,
     quantity      INT NOT NULL DEFAULT 0,
     safety_stock  INT NOT NULL DEFAULT 0,
+    reserved      INT NOT NULL DEFAULT 0,      -- 已被订单预留、尚未发货的数量，可承诺量 = quantity - reserved
     location_code VARCHAR(50),
     CONSTRAINT fk_inventory_book
         FOREIGN KEY (book_id) REFERENCES book(book_id)
@@ -112,8 +113,68 @@ CREATE TABLE IF NOT EXISTS sales_order_item (
 );
 
 CREATE INDEX IF NOT EXISTS idx_sales_order_customer ON sales_order(customer_id);
+-- 管理端按状态游标分页：WHERE order_status = ? AND order_id < ? ORDER BY order_id DESC
+CREATE INDEX IF NOT EXISTS idx_sales_order_status_id ON sales_order(order_status, order_id);
 CREATE INDEX IF NOT EXISTS idx_sales_order_item_order ON sales_order_item(order_id);
 
+-- 7.1 库存预留表 stock_reservation（下单预留、取消释放、发货消耗）
+CREATE TABLE IF NOT EXISTS stock_reservation (
+    reservation_id     BIGINT PRIMARY KEY AUTO_INCREMENT,
+    order_id           BIGINT NOT NULL,
+    book_id            VARCHAR(32) NOT NULL,
+    quantity           INT NOT NULL,               -- 下单时预留数量
+    committed_quantity INT NOT NULL DEFAULT 0,     -- 已随发货扣减的数量
+    status             ENUM('RESERVED','COMMITTED','RELEASED') NOT NULL DEFAULT 'RESERVED',
+    created_at         DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at         DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_reservation_order_book (order_id, book_id),
+    CONSTRAINT fk_reservation_order
+        FOREIGN KEY (order_id) REFERENCES sales_order(order_id),
+    CONSTRAINT fk_reservation_book
+        FOREIGN KEY (book_id) REFERENCES book(book_id)
+);
+
+-- 加载某书已预留总量：WHERE book_id = ? AND status = 'RESERVED'
+CREATE INDEX IF NOT EXISTS idx_reservation_book_status ON stock_reservation(book_id, status);
+
+-- 已有数据库升级：inventory 增加 reserved 列（列已存在时跳过，MySQL 8 不支持 ADD COLUMN IF NOT EXISTS），并按未发货的预留回填
+SET @add_reserved = (SELECT IF(COUNT(*) = 0,
+        'ALTER TABLE inventory ADD COLUMN reserved INT NOT NULL DEFAULT 0 AFTER safety_stock',
+        'DO 0')
+    FROM information_schema.COLUMNS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'inventory' AND COLUMN_NAME = 'reserved');
+PREPARE add_reserved_stmt FROM @add_reserved;
+EXECUTE add_reserved_stmt;
+DEALLOCATE PREPARE add_reserved_stmt;
+UPDATE inventory i
+SET reserved = (SELECT COALESCE(SUM(r.quantity - r.committed_quantity), 0)
+                FROM stock_reservation r
+                WHERE r.book_id = i.book_id AND r.status = 'RESERVED');
+
+-- 7.2 幂等请求记录表 idempotency_record（下单、付款接口的 Idempotency-Key）
+CREATE TABLE IF NOT EXISTS idempotency_record (
+    scope           VARCHAR(64) NOT NULL,          -- 接口与资源，如 create-order:2、pay-order:15
+    idempotency_key VARCHAR(64) NOT NULL,          -- 客户端生成的 Idempotency-Key
+    request_hash    CHAR(64),                      -- 请求体 SHA-256，同一 key 换了请求体时返回 422
+    response_status INT,                           -- 首次执行的 HTTP 状态码
+    response_body   MEDIUMTEXT,                    -- 首次执行的响应 JSON
+    created_at      DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (scope, idempotency_key)
+);
+
+-- 按时间清理过期记录
+CREATE INDEX IF NOT EXISTS idx_idempotency_created ON idempotency_record(created_at);
+
+-- 已有数据库升级：idempotency_record 增加 request_hash 列（列已存在时跳过）；旧记录为 NULL，不做请求体校验
+SET @add_request_hash = (SELECT IF(COUNT(*) = 0,
+        'ALTER TABLE idempotency_record ADD COLUMN request_hash CHAR(64) NULL AFTER idempotency_key',
+        'DO 0')
+    FROM information_schema.COLUMNS
+    WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'idempotency_record' AND COLUMN_NAME = 'request_hash');
+PREPARE add_request_hash_stmt FROM @add_request_hash;
+EXECUTE add_request_hash_stmt;
+DEALLOCATE PREPARE add_request_hash_stmt;
+
 -- 8. 供应商与供货关系表
 
 -- 8.1 供应商信息表 supplier
@@ -0,0 +1,61 @@
+package com.bookstore;
+
+import com.bookstore.dao.BookDao;
+import com.bookstore.model.Book;
+import com.bookstore.util.DBUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对比逐个 findById 与批量 findByIds 的查询次数与耗时。
+ *
+ * 默认构造 10000 个书号：先取库中已有书号，不足部分用不存在的 BENCH 书号补齐
+ * （未命中同样要走一次数据库往返，因此不影响 N+1 的开销对比）。
+ * 可通过第一个命令行参数修改书号数量。
+ */
+public class TestBookBatchLookup {
+
+    public static void main(String[] args) throws SQLException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        BookDao bookDao = new BookDao();
+
+        List<String> ids = new ArrayList<>();
+        for (Book b : bookDao.findAll()) {
+            if (ids.size() >= n) {
+                break;
+            }
+            ids.add(b.getBookId());
+        }
+        int existing = ids.size();
+        for (int i = 0; ids.size() < n; i++) {
+            ids.add(String.format("BENCH%05d", i));
+        }
+        System.out.println("书号总数：" + ids.size() + "（库中已有 " + existing + "）");
+
+        // 预热连接池
+        bookDao.findByIds(ids.subList(0, Math.min(10, ids.size())));
+
+        long checkout0 = DBUtil.getCheckoutCount();
+        long t0 = System.nanoTime();
+        int hitOneByOne = 0;
+        for (String id : ids) {
+            if (bookDao.findById(id) != null) {
+                hitOneByOne++;
+            }
+        }
+        long t1 = System.nanoTime();
+        long checkout1 = DBUtil.getCheckoutCount();
+
+        List<Book> batch = bookDao.findByIds(ids);
+        long t2 = System.nanoTime();
+        long checkout2 = DBUtil.getCheckoutCount();
+
+        int chunks = (ids.size() + 499) / 500;
+        System.out.printf("逐个 findById：命中 %d，SQL %d 条，连接 %d 次，耗时 %.1f ms%n",
+                hitOneByOne, ids.size(), checkout1 - checkout0, (t1 - t0) / 1e6);
+        System.out.printf("批量 findByIds：命中 %d，SQL %d 条，连接 %d 次，耗时 %.1f ms%n",
+                batch.size(), chunks, checkout2 - checkout1, (t2 - t1) / 1e6);
+    }
+}
@@ -0,0 +1,81 @@
+package com.bookstore;
+
+import com.bookstore.model.Book;
+import com.bookstore.model.BookSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对比完整 Book 列表与 BookSummary 列表投影的 JSON 体积与堆分配量。
+ *
+ * 不访问数据库：直接构造 50000 本书（目录全文约 1500 字、几十章的规模，封面为本地图片 URL），
+ * 可通过第一个命令行参数修改书目数量。
+ * 堆分配量取自当前线程的 getThreadAllocatedBytes，包含行对象与序列化缓冲区。
+ */
+public class TestBookSummaryPayload {
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        ObjectMapper mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        StringBuilder toc = new StringBuilder();
+        for (int ch = 1; toc.length() < 1500; ch++) {
+            toc.append("第").append(ch).append("章 数据库系统概论与关系模型设计实践\n");
+        }
+        String catalog = toc.toString();
+
+        long a0 = mx.getThreadAllocatedBytes(tid);
+        List<Book> books = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Book b = new Book();
+            b.setBookId(String.format("B%06d", i));
+            b.setIsbn(String.format("978-7-111-%05d-%d", i % 100000, i % 10));
+            b.setTitle("数据库系统概论（第" + (i % 7 + 1) + "版）");
+            b.setPublisher("高等教育出版社");
+            b.setPublishDate(LocalDate.of(2020, 1, 1).plusDays(i % 1500));
+            b.setEdition("第" + (i % 7 + 1) + "版");
+            b.setPrice(new BigDecimal("59.80"));
+            b.setStatus("AVAILABLE");
+            b.setCoverImageUrl("/images/covers/B" + i + ".jpg");
+            // 每本书的目录是独立的字符串，与 JDBC 逐行读取时一致
+            b.setCatalog(new String(catalog.toCharArray()));
+            books.add(b);
+        }
+        long a1 = mx.getThreadAllocatedBytes(tid);
+        List<BookSummary> summaries = new ArrayList<>(n);
+        for (Book b : books) {
+            summaries.add(BookSummary.of(b));
+        }
+        long a2 = mx.getThreadAllocatedBytes(tid);
+
+        // 预热序列化路径
+        mapper.writeValueAsBytes(books.subList(0, Math.min(100, n)));
+        mapper.writeValueAsBytes(summaries.subList(0, Math.min(100, n)));
+
+        long s0 = mx.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        byte[] fullJson = mapper.writeValueAsBytes(books);
+        long t1 = System.nanoTime();
+        long s1 = mx.getThreadAllocatedBytes(tid);
+        byte[] summaryJson = mapper.writeValueAsBytes(summaries);
+        long t2 = System.nanoTime();
+        long s2 = mx.getThreadAllocatedBytes(tid);
+
+        System.out.println("书目数量：" + n);
+        System.out.printf("完整 Book：    JSON %.2f MB，序列化分配 %.2f MB，耗时 %.1f ms（行对象构造分配 %.2f MB）%n",
+                fullJson.length / 1048576.0, (s1 - s0) / 1048576.0, (t1 - t0) / 1e6, (a1 - a0) / 1048576.0);
+        System.out.printf("BookSummary：  JSON %.2f MB，序列化分配 %.2f MB，耗时 %.1f ms（投影构造分配 %.2f MB）%n",
+                summaryJson.length / 1048576.0, (s2 - s1) / 1048576.0, (t2 - t1) / 1e6, (a2 - a1) / 1048576.0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.bookstore;
+
+import com.bookstore.dao.ShoppingCartDao;
+import com.bookstore.service.CartStore;
+import com.bookstore.util.DBUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 购物车 write-behind 测试：多个线程并发向同一购物车加入同一本书，
+ * 统计加入期间从连接池取连接的次数（应只有首次加载一次，写回由后台线程完成），
+ * 写回后校验 shopping_cart 中的数量等于加入总数（并发累加无丢失）。
+ *
+ * 使用客户 lisi（customer_id=2）与书 B001，参数：[线程数] [每线程加入次数]，默认 16 500。
+ */
+public class TestCartWriteBehind {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int addsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long customerId = 2L;
+        String bookId = "B001";
+        ShoppingCartDao cartDao = new ShoppingCartDao();
+
+        CartStore.clear(customerId);
+        CartStore.flushAll();
+        Map<String, Long> before = CartStore.stats();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long c0 = DBUtil.getCheckoutCount();
+        long t0 = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                for (int j = 0; j < addsPerThread; j++) {
+                    CartStore.add(customerId, bookId, 1);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - t0;
+        long c1 = DBUtil.getCheckoutCount();
+        pool.shutdown();
+
+        CartStore.flushAll();
+        int expected = threads * addsPerThread;
+        Integer stored = cartDao.findQuantities(customerId).get(bookId);
+        Map<String, Long> after = CartStore.stats();
+        System.out.printf("%d 线程共加入 %d 次，耗时 %.1f ms，期间取连接 %d 次（写回线程另计 %d 批）%n",
+                threads, expected, elapsed / 1e6, c1 - c0, after.get("flushes") - before.get("flushes"));
+        System.out.println("内存数量 " + CartStore.lines(customerId).get(bookId) + "，数据库数量 " + stored
+                + (stored != null && stored == expected ? "  [无丢失]" : "  [数量不一致！]"));
+
+        CartStore.clear(customerId);
+        CartStore.flushAll();
+        System.out.println("清空后数据库行数 " + cartDao.findQuantities(customerId).size());
+    }
+}
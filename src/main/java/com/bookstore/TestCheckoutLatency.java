@@ -0,0 +1,118 @@
+package com.bookstore;
+
+import com.bookstore.dao.BookDao;
+import com.bookstore.dao.InventoryDao;
+import com.bookstore.dao.ShoppingCartDao;
+import com.bookstore.model.Book;
+import com.bookstore.model.Inventory;
+import com.bookstore.service.CheckoutService;
+import com.bookstore.util.DBUtil;
+import com.bookstore.web.controller.CustomerOrderController;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 结算延迟对比：同一个购物车（若干种书）分别走两种流程，统计 p50 / p99 延迟与每次取连接次数。
+ *
+ * 旧流程：check-stock + createOrder（客户端单价）+ 清空购物车，对应前端原先的三次请求；
+ * 新流程：CheckoutService.checkout，一个事务、一个连接完成。
+ * 每轮开始前重新放入购物车，这部分不计时。
+ *
+ * 会新建若干本大库存的测试书，使用客户 lisi（customer_id=2），参数：[轮数] [书种数]，默认 200 5。
+ */
+public class TestCheckoutLatency {
+
+    private static final BigDecimal PRICE = new BigDecimal("10.00");
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int kinds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long customerId = 2L;
+
+        List<String> books = new ArrayList<>();
+        for (int i = 0; i < kinds; i++) {
+            books.add(newBook("CK" + i, rounds * 4));
+        }
+        ShoppingCartDao cartDao = new ShoppingCartDao();
+        CustomerOrderController controller = new CustomerOrderController();
+        CheckoutService checkoutService = new CheckoutService();
+
+        CustomerOrderController.CreateOrderRequest req = new CustomerOrderController.CreateOrderRequest();
+        List<CustomerOrderController.CreateOrderItem> items = new ArrayList<>();
+        for (String bookId : books) {
+            CustomerOrderController.CreateOrderItem item = new CustomerOrderController.CreateOrderItem();
+            item.setBookId(bookId);
+            item.setQuantity(1);
+            item.setUnitPrice(PRICE);
+            items.add(item);
+        }
+        req.setItems(items);
+        req.setShippingAddressSnapshot("结算延迟测试地址");
+
+        long[] oldNanos = new long[rounds];
+        long oldCheckouts = 0;
+        for (int r = 0; r < rounds; r++) {
+            fillCart(cartDao, customerId, books);
+            long c0 = DBUtil.getCheckoutCount();
+            long t0 = System.nanoTime();
+            controller.checkStockBeforeOrder(customerId, req);
+            controller.createOrder(customerId, null, req);
+            cartDao.clearCart(customerId);
+            oldNanos[r] = System.nanoTime() - t0;
+            oldCheckouts += DBUtil.getCheckoutCount() - c0;
+        }
+        report("旧流程（三次调用）", oldNanos, oldCheckouts);
+
+        long[] newNanos = new long[rounds];
+        long newCheckouts = 0;
+        for (int r = 0; r < rounds; r++) {
+            fillCart(cartDao, customerId, books);
+            long c0 = DBUtil.getCheckoutCount();
+            long t0 = System.nanoTime();
+            checkoutService.checkout(customerId, "结算延迟测试地址", null, true);
+            newNanos[r] = System.nanoTime() - t0;
+            newCheckouts += DBUtil.getCheckoutCount() - c0;
+        }
+        report("CheckoutService", newNanos, newCheckouts);
+    }
+
+    private static void report(String name, long[] nanos, long checkouts) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-20s %d 轮，p50 %.2f ms，p99 %.2f ms，每轮取连接 %.1f 次%n", name, sorted.length,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, (double) checkouts / sorted.length);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    private static void fillCart(ShoppingCartDao cartDao, long customerId, List<String> books) throws SQLException {
+        cartDao.clearCart(customerId);
+        for (String bookId : books) {
+            cartDao.upsert(customerId, bookId, 1);
+        }
+    }
+
+    private static String newBook(String prefix, int stock) throws SQLException {
+        Book b = new Book();
+        b.setBookId(prefix + (System.currentTimeMillis() % 100000000L));
+        b.setTitle("结算延迟测试");
+        b.setPrice(PRICE);
+        b.setStatus("AVAILABLE");
+        b.setSeriesFlag(false);
+        new BookDao().insert(b);
+
+        Inventory inv = new Inventory();
+        inv.setBookId(b.getBookId());
+        inv.setQuantity(stock);
+        inv.setSafetyStock(0);
+        new InventoryDao().insert(inv);
+        return b.getBookId();
+    }
+}
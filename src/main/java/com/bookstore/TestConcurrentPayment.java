@@ -0,0 +1,178 @@
+package com.bookstore;
+
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.dao.SalesOrderDao;
+import com.bookstore.model.Customer;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.service.OrderService;
+import com.bookstore.util.TransactionContext;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发付款压力测试：同一客户的大量订单被多个线程同时付款。
+ *
+ * 第一部分：并发调用 OrderService.payOrder，校验 最终余额 = 初始余额 - 成功付款金额之和，
+ *          且“余额不足”的失败恰好发生在余额耗尽之后（不会多扣、不会丢失扣款）。
+ * 第二部分：只比较扣款本身，同样的线程数与扣款次数下，
+ *          条件 UPDATE（CustomerDao.debitBalance）与 SELECT ... FOR UPDATE 再写回两种写法的吞吐量。
+ *
+ * 会新建一个一级（不允许透支）的测试客户及若干 0 商品订单，参数：[线程数] [订单数]，默认 16 200。
+ * 订单数不宜超过 399：成功付款累计满 2000 元会自动升到三级并允许透支，余额校验的预期随之改变。
+ */
+public class TestConcurrentPayment {
+
+    private static final BigDecimal ORDER_AMOUNT = new BigDecimal("10.00");
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        CustomerDao customerDao = new CustomerDao();
+        SalesOrderDao salesOrderDao = new SalesOrderDao();
+        OrderService orderService = new OrderService();
+
+        // 余额只够支付一半订单，另一半应因余额不足失败
+        BigDecimal initial = ORDER_AMOUNT.multiply(BigDecimal.valueOf(orders / 2));
+        Customer customer = newCustomer(customerDao, "paystress", initial);
+
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            SalesOrder order = new SalesOrder();
+            order.setCustomerId(customer.getCustomerId());
+            order.setOrderTime(LocalDateTime.now());
+            order.setOrderStatus("PENDING_PAYMENT");
+            order.setGoodsAmount(ORDER_AMOUNT);
+            order.setDiscountRateSnapshot(BigDecimal.ONE);
+            order.setPayableAmount(ORDER_AMOUNT);
+            order.setShippingAddressSnapshot("并发付款测试地址");
+            salesOrderDao.createOrder(order, Collections.emptyList());
+            orderIds.add(order.getOrderId());
+        }
+
+        AtomicInteger paid = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (long orderId : orderIds) {
+            futures.add(pool.submit(() -> {
+                try {
+                    orderService.payOrder(orderId);
+                    paid.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long t1 = System.nanoTime();
+
+        BigDecimal finalBalance = customerDao.findById(customer.getCustomerId()).getAccountBalance();
+        BigDecimal expected = initial.subtract(ORDER_AMOUNT.multiply(BigDecimal.valueOf(paid.get())));
+        System.out.printf("payOrder：%d 线程，%d 单，成功 %d，余额不足 %d，耗时 %.1f ms%n",
+                threads, orders, paid.get(), rejected.get(), (t1 - t0) / 1e6);
+        System.out.println("  初始余额 " + initial + "，最终余额 " + finalBalance + "，期望 " + expected
+                + (finalBalance.compareTo(expected) == 0 && finalBalance.signum() >= 0 ? "  [无丢失更新]" : "  [不一致！]"));
+
+        // 第二部分：扣款吞吐量对比，余额足够，所有扣款都应成功
+        int debits = orders * 5;
+        BigDecimal amount = new BigDecimal("0.01");
+        BigDecimal plenty = amount.multiply(BigDecimal.valueOf(debits * 2L));
+
+        Customer a = newCustomer(customerDao, "debitcas", plenty);
+        long conditional = runDebits(pool, debits, () -> {
+            if (customerDao.debitBalance(a.getCustomerId(), a.getCreditLevelId(), amount, BigDecimal.ZERO) == 0) {
+                throw new IllegalStateException("条件扣款失败");
+            }
+        });
+        Customer b = newCustomer(customerDao, "debitlock", plenty);
+        long locking = runDebits(pool, debits, () -> debitWithSelectForUpdate(b.getCustomerId(), amount));
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+
+        BigDecimal expectedAfter = plenty.subtract(amount.multiply(BigDecimal.valueOf(debits)));
+        System.out.printf("条件 UPDATE：        %d 次扣款，%.1f ms，%.0f 次/秒，最终余额 %s（期望 %s）%n",
+                debits, conditional / 1e6, debits / (conditional / 1e9),
+                customerDao.findById(a.getCustomerId()).getAccountBalance(), expectedAfter);
+        System.out.printf("SELECT FOR UPDATE： %d 次扣款，%.1f ms，%.0f 次/秒，最终余额 %s（期望 %s）%n",
+                debits, locking / 1e6, debits / (locking / 1e9),
+                customerDao.findById(b.getCustomerId()).getAccountBalance(), expectedAfter);
+    }
+
+    @FunctionalInterface
+    private interface Debit {
+        void run() throws SQLException;
+    }
+
+    private static long runDebits(ExecutorService pool, int count, Debit debit) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(count);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            futures.add(pool.submit(() -> {
+                debit.run();
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * 对照组：在事务中先加锁读出余额，Java 中校验并计算新余额，再写回。
+     */
+    private static void debitWithSelectForUpdate(long customerId, BigDecimal amount) throws SQLException {
+        TransactionContext.run(conn -> {
+            BigDecimal balance;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT account_balance FROM customer WHERE customer_id = ? FOR UPDATE")) {
+                ps.setLong(1, customerId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    balance = rs.getBigDecimal(1);
+                }
+            }
+            if (balance.compareTo(amount) < 0) {
+                throw new IllegalStateException("余额不足");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE customer SET account_balance = ? WHERE customer_id = ?")) {
+                ps.setBigDecimal(1, balance.subtract(amount));
+                ps.setLong(2, customerId);
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    private static Customer newCustomer(CustomerDao customerDao, String prefix, BigDecimal balance)
+            throws SQLException {
+        Customer c = new Customer();
+        c.setUsername(prefix + System.currentTimeMillis());
+        c.setPasswordHash("123456");
+        c.setRealName("并发测试");
+        c.setMobilePhone("13800000000");
+        c.setEmail(c.getUsername() + "@test.com");
+        c.setAccountBalance(balance);
+        c.setTotalConsumption(BigDecimal.ZERO);
+        c.setCreditLevelId(1);
+        customerDao.insert(c);
+        return c;
+    }
+}
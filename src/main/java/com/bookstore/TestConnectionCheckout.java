@@ -0,0 +1,87 @@
+package com.bookstore;
+
+import com.bookstore.dao.BookDao;
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.dao.SalesOrderDao;
+import com.bookstore.model.Book;
+import com.bookstore.model.Customer;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.model.SalesOrderItem;
+import com.bookstore.service.OrderService;
+import com.bookstore.service.ShipmentService;
+import com.bookstore.util.DBUtil;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 统计下单 → 付款 → 发货各步骤从连接池取出连接的次数。
+ *
+ * 引入 TransactionContext 之前（B001 x2 + B002 x1，无缺书记录、无信用升级）：
+ *  - SalesOrderDao.createOrder：1 次；
+ *  - OrderService.payOrder：9 次（外层 1 + 订单/客户/等级/余额/累计消费/明细/状态/升级检查各 1）；
+ *  - createShipmentWithInventoryUpdate：12 次（外层 1 + 发货单 1 + 每本书 3 + 每条明细 1 + 订单状态 1）。
+ * 引入之后，三者在事务内均只占用 1 个连接。
+ * shipOrder 的事务前校验（订单/客户/等级/已有发货单/明细/逐本库存）不在事务内，另计 5 + 书目数 次。
+ */
+public class TestConnectionCheckout {
+
+    public static void main(String[] args) throws SQLException {
+        CustomerDao customerDao = new CustomerDao();
+        BookDao bookDao = new BookDao();
+        SalesOrderDao salesOrderDao = new SalesOrderDao();
+        OrderService orderService = new OrderService();
+        ShipmentService shipmentService = new ShipmentService();
+
+        // 使用客户 lisi（customer_id=2，信用等级4）
+        Customer customer = customerDao.findById(2L);
+        if (customer == null) {
+            System.out.println("客户 lisi 不存在，请先执行 TestCustomer 或检查测试数据");
+            return;
+        }
+
+        SalesOrder order = new SalesOrder();
+        order.setCustomerId(customer.getCustomerId());
+        order.setOrderTime(LocalDateTime.now());
+        order.setOrderStatus("PENDING_PAYMENT");
+        order.setDiscountRateSnapshot(BigDecimal.ONE);
+        order.setShippingAddressSnapshot(customer.getRealName() + ", 测试地址, " + customer.getMobilePhone());
+
+        List<SalesOrderItem> items = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        String[][] lines = {{"B001", "2"}, {"B002", "1"}};
+        for (String[] line : lines) {
+            Book book = bookDao.findById(line[0]);
+            int qty = Integer.parseInt(line[1]);
+            SalesOrderItem item = new SalesOrderItem();
+            item.setBookId(book.getBookId());
+            item.setQuantity(qty);
+            item.setUnitPrice(book.getPrice());
+            item.setSubAmount(book.getPrice().multiply(BigDecimal.valueOf(qty)));
+            item.setItemStatus("ORDERED");
+            items.add(item);
+            total = total.add(item.getSubAmount());
+        }
+        order.setGoodsAmount(total);
+        order.setPayableAmount(total);
+
+        long before = DBUtil.getCheckoutCount();
+        salesOrderDao.createOrder(order, items);
+        long afterCreate = DBUtil.getCheckoutCount();
+        System.out.println("createOrder 连接取出次数：" + (afterCreate - before) + "，order_id = " + order.getOrderId());
+
+        orderService.payOrder(order.getOrderId());
+        long afterPay = DBUtil.getCheckoutCount();
+        System.out.println("payOrder 连接取出次数：" + (afterPay - afterCreate));
+
+        shipmentService.shipOrder(order.getOrderId(), "中通快递", "ZTO" + System.currentTimeMillis(), "发货员小李");
+        long afterShip = DBUtil.getCheckoutCount();
+        long preChecks = 5 + items.size();
+        System.out.println("shipOrder 连接取出次数：" + (afterShip - afterPay)
+                + "（其中事务前校验 " + preChecks + " 次，createShipmentWithInventoryUpdate "
+                + (afterShip - afterPay - preChecks) + " 次）");
+    }
+}
@@ -0,0 +1,99 @@
+package com.bookstore;
+
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.model.Customer;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.util.DBUtil;
+import com.bookstore.web.controller.CustomerOrderController;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Idempotency-Key 重复提交测试：多个线程同时用同一个 key 下单、再用同一个 key 付款。
+ *
+ * 校验只创建了一个订单、只扣款一次（余额只减少一个订单金额），
+ * 并统计重复请求（并发等待 + 进程内缓存回放）从连接池取连接的次数，应远少于首次执行。
+ *
+ * 使用客户 lisi（customer_id=2）与书 B001，参数：[并发重复数]，默认 16。
+ */
+public class TestIdempotentOrder {
+
+    public static void main(String[] args) throws Exception {
+        int duplicates = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        long customerId = 2L;
+        CustomerOrderController controller = new CustomerOrderController();
+        CustomerDao customerDao = new CustomerDao();
+
+        CustomerOrderController.CreateOrderItem item = new CustomerOrderController.CreateOrderItem();
+        item.setBookId("B001");
+        item.setQuantity(1);
+        item.setUnitPrice(new BigDecimal("10.00"));
+        CustomerOrderController.CreateOrderRequest req = new CustomerOrderController.CreateOrderRequest();
+        req.setItems(Collections.singletonList(item));
+        req.setShippingAddressSnapshot("幂等测试地址");
+
+        ExecutorService pool = Executors.newFixedThreadPool(duplicates);
+        String orderKey = UUID.randomUUID().toString();
+        Set<Long> orderIds = ConcurrentHashMap.newKeySet();
+        List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+        long c0 = DBUtil.getCheckoutCount();
+        run(pool, duplicates, () -> {
+            ResponseEntity<?> resp = controller.createOrder(customerId, orderKey, req);
+            statuses.add(resp.getStatusCode().value());
+            Object body = resp.getBody();
+            if (body instanceof SalesOrder) {
+                orderIds.add(((SalesOrder) body).getOrderId());
+            } else if (body instanceof String) {
+                // 回放的 JSON 响应
+                String json = (String) body;
+                int i = json.indexOf("\"orderId\":") + 10;
+                orderIds.add(Long.parseLong(json.substring(i, json.indexOf(',', i)).trim()));
+            }
+        });
+        long c1 = DBUtil.getCheckoutCount();
+        System.out.println("并发 " + duplicates + " 次下单：状态码 " + statuses + "，订单号 " + orderIds
+                + (orderIds.size() == 1 ? "  [只创建一单]" : "  [重复下单！]"));
+
+        // 缓存命中：再提交一次，不应取任何连接
+        controller.createOrder(customerId, orderKey, req);
+        long c2 = DBUtil.getCheckoutCount();
+        System.out.println("  并发阶段取连接 " + (c1 - c0) + " 次，缓存回放取连接 " + (c2 - c1) + " 次");
+
+        long orderId = orderIds.iterator().next();
+        BigDecimal before = customerDao.findById(customerId).getAccountBalance();
+        String payKey = "pay-" + orderId;
+        statuses.clear();
+        run(pool, duplicates, () -> statuses.add(controller.pay(orderId, payKey).getStatusCode().value()));
+        BigDecimal after = customerDao.findById(customerId).getAccountBalance();
+        System.out.println("并发 " + duplicates + " 次付款：状态码 " + statuses + "，余额 " + before + " -> " + after);
+        pool.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void call() throws Exception;
+    }
+
+    private static void run(ExecutorService pool, int count, Call call) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(pool.submit(() -> {
+                call.call();
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.bookstore;
+
+import com.bookstore.util.DbCallMetrics;
+import com.bookstore.util.LatencyHistogram;
+import com.bookstore.web.EndpointMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 接口指标记录开销与直方图精度测试（不需要数据库）。
+ *
+ * 1. 多线程反复执行一次请求的完整记录路径（开启范围、计 5 条语句、记录耗时、结束范围），
+ *    输出每次请求的平均开销，应远小于 1 ms 请求的 1%（10 µs）；
+ * 2. 用已知分布（1 ~ 100000 的均匀随机数）校验直方图分位数的相对误差不超过约 3%。
+ *
+ * 参数：[线程数] [每线程请求数]，默认 8 1000000。
+ */
+public class TestMetricsOverhead {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        String[] endpoints = {"GET /api/customer/{customerId}/cart", "POST /api/customer/{customerId}/checkout",
+                "GET /api/customer/books", "GET /api/admin/orders"};
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int round = 0; round < 2; round++) {
+            long t0 = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                int seed = i;
+                futures.add(pool.submit(() -> {
+                    for (int j = 0; j < perThread; j++) {
+                        long start = System.nanoTime();
+                        DbCallMetrics.Scope scope = DbCallMetrics.begin();
+                        DbCallMetrics.end();
+                        EndpointMetrics.record(endpoints[(seed + j) & 3], System.nanoTime() - start + 1_000_000,
+                                false, scope);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            double perRequestNanos = (double) (System.nanoTime() - t0) * threads / ((long) threads * perThread);
+            System.out.printf("第 %d 轮：%d 线程 × %d 次，每次请求记录开销约 %.0f ns（占 1 ms 请求的 %.3f%%）%n",
+                    round + 1, threads, perThread, perRequestNanos, perRequestNanos / 1e6 * 100);
+        }
+        pool.shutdown();
+
+        LatencyHistogram h = new LatencyHistogram();
+        Random random = new Random(42);
+        int n = 1_000_000;
+        for (int i = 0; i < n; i++) {
+            h.record(1 + random.nextInt(100_000));
+        }
+        LatencyHistogram.Snapshot s = h.snapshot();
+        check("p50", s.getP50(), 50_000);
+        check("p90", s.getP90(), 90_000);
+        check("p99", s.getP99(), 99_000);
+        check("p999", s.getP999(), 99_900);
+        System.out.printf("count %d，mean %.1f，max %d%n", s.getCount(), s.getMean(), s.getMax());
+    }
+
+    private static void check(String name, long actual, long expected) {
+        double err = Math.abs(actual - expected) / (double) expected;
+        System.out.printf("%-5s 期望约 %d，实际 %d，误差 %.2f%%%s%n", name, expected, actual, err * 100,
+                err <= 0.035 ? "" : "  [误差过大！]");
+    }
+}
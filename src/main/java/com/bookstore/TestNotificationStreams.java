@@ -0,0 +1,140 @@
+package com.bookstore;
+
+import com.bookstore.model.CustomerNotification;
+import com.bookstore.service.NotificationOutbox;
+import com.bookstore.util.DBUtil;
+import com.bookstore.web.NotificationPushHub;
+import com.bookstore.web.WebApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大量空闲 SSE 连接压力测试。
+ *
+ * 在本进程内启动 Web 服务，打开若干条通知推送流（每条对应一个不同的顾客），
+ * 统计连接前后的线程数与堆内存，以及空闲期间（至少经过一次心跳）从连接池取出连接的次数，应为 0；
+ * 最后为第一个顾客发布一条通知，校验其推送流收到 notification 事件。
+ *
+ * 参数：[连接数] [空闲秒数] [端口] [接收通知的顾客 ID]，默认 2000 30 18080 2。
+ */
+public class TestNotificationStreams {
+
+    public static void main(String[] args) throws Exception {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int idleSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 18080;
+        long notifiedCustomer = args.length > 3 ? Long.parseLong(args[3]) : 2L;
+
+        ConfigurableApplicationContext ctx = SpringApplication.run(WebApplication.class, "--server.port=" + port);
+        HttpClient client = HttpClient.newHttpClient();
+        long threadsBefore = threadCount();
+        long heapBefore = usedHeap();
+
+        CountDownLatch opened = new CountDownLatch(streams);
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<CompletableFuture<?>> responses = new ArrayList<>(streams);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < streams; i++) {
+            long customerId = i == 0 ? notifiedCustomer : 1_000_000L + i;
+            HttpRequest req = HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + port + "/api/customer/" + customerId + "/notifications/stream"))
+                    .header("Accept", "text/event-stream")
+                    .build();
+            responses.add(client.sendAsync(req, HttpResponse.BodyHandlers.fromLineSubscriber(
+                    new EventLines(opened, i == 0 ? delivered : null))));
+        }
+        if (!opened.await(60, TimeUnit.SECONDS)) {
+            System.out.println("仅建立 " + (streams - opened.getCount()) + " / " + streams + " 条连接");
+        }
+        System.out.printf("建立 %d 条推送流，耗时 %.1f ms，服务端在线连接 %d%n",
+                streams, (System.nanoTime() - t0) / 1e6, NotificationPushHub.connectionCount());
+
+        long checkoutsBefore = DBUtil.getCheckoutCount();
+        TimeUnit.SECONDS.sleep(idleSeconds);
+        long idleCheckouts = DBUtil.getCheckoutCount() - checkoutsBefore;
+        long threadsAfter = threadCount();
+        long heapAfter = usedHeap();
+        System.out.printf("空闲 %d 秒：取连接 %d 次%s%n", idleSeconds, idleCheckouts,
+                idleCheckouts == 0 ? "  [空闲无查询]" : "  [有查询！]");
+        System.out.printf("线程数 %d -> %d（+%d），堆内存 %.1f MB -> %.1f MB（每连接约 %.1f KB，含客户端）%n",
+                threadsBefore, threadsAfter, threadsAfter - threadsBefore,
+                heapBefore / 1048576.0, heapAfter / 1048576.0, (heapAfter - heapBefore) / 1024.0 / streams);
+
+        CustomerNotification n = new CustomerNotification();
+        n.setCustomerId(notifiedCustomer);
+        n.setType("TEST");
+        n.setTitle("推送测试");
+        n.setContent("SSE 推送压力测试通知");
+        long t1 = System.nanoTime();
+        NotificationOutbox.publish(n);
+        boolean ok = delivered.await(10, TimeUnit.SECONDS);
+        System.out.printf("发布通知 -> 推送到达：%s%n",
+                ok ? String.format("%.1f ms", (System.nanoTime() - t1) / 1e6) : "超时！");
+
+        for (CompletableFuture<?> f : responses) {
+            f.cancel(true);
+        }
+        SpringApplication.exit(ctx);
+        System.exit(0);
+    }
+
+    /**
+     * 按行读取事件流：收到首个事件（连接建立时的 unread-count）计为已连接，收到 notification 事件时触发 delivered。
+     */
+    private static final class EventLines implements Flow.Subscriber<String> {
+        private final CountDownLatch opened;
+        private final CountDownLatch delivered;
+        private boolean counted;
+
+        EventLines(CountDownLatch opened, CountDownLatch delivered) {
+            this.opened = opened;
+            this.delivered = delivered;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!counted && line.startsWith("event:")) {
+                counted = true;
+                opened.countDown();
+            }
+            if (delivered != null && line.equals("event:notification")) {
+                delivered.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private static long threadCount() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,140 @@
+package com.bookstore;
+
+import com.bookstore.dao.BookDao;
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.dao.SalesOrderDao;
+import com.bookstore.util.DBUtil;
+import com.bookstore.util.LatencyHistogram;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.util.Workload;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接池隔舱压测：管理端大查询占满连接时，下单类请求的 p99 是否受影响。
+ *
+ * 每个阶段 [秒数] 秒，下单线程（CHECKOUT 标签）循环执行一个只读小事务（读客户 2、书 B001 / B002），记录耗时分布：
+ *  1. 基线：只有下单线程；
+ *  2. 干扰：另有 [管理端线程数] 个 ADMIN 标签线程循环执行 SalesOrderDao.findAll，
+ *     并在连接上 SELECT SLEEP(0.2) 模拟全表报表长时间占用连接。
+ * 干扰阶段 p99 超过 max(基线 p99 × 2, 基线 p99 + 20ms) 或出现取连接超时时以退出码 1 结束。
+ *
+ * 参数：[秒数=5] [下单线程数=4] [管理端线程数=8]。
+ * 未指定 db.bulkheads 时本测试按启用隔舱运行；加 -Ddb.bulkheads=false 运行可对比所有请求共用默认连接池时的结果
+ * （干扰阶段下单请求会排队甚至超时）。
+ */
+public class TestPoolBulkheads {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int checkoutThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int adminThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        System.setProperty("db.bulkheads", System.getProperty("db.bulkheads", "true"));
+
+        // 预热连接池与 JIT
+        runPhase(1, checkoutThreads, 0);
+
+        Result baseline = runPhase(seconds, checkoutThreads, 0);
+        print("基线", baseline);
+        Result loaded = runPhase(seconds, checkoutThreads, adminThreads);
+        print("管理端干扰", loaded);
+
+        for (Map.Entry<String, Map<String, Object>> e : DBUtil.getBulkheadStats().entrySet()) {
+            Map<String, Object> s = e.getValue();
+            LatencyHistogram.Snapshot wait = (LatencyHistogram.Snapshot) s.get("waitMicros");
+            System.out.printf("连接池 %-10s max=%-3s 取连接 %-7s 超时 %-4s 等待 p99=%.1fms max=%.1fms%n", e.getKey(),
+                    s.get("max"), s.get("checkouts"), s.get("timeouts"), wait.getP99() / 1000.0, wait.getMax() / 1000.0);
+        }
+
+        long limit = Math.max(baseline.latency.getP99() * 2, baseline.latency.getP99() + 20_000);
+        boolean ok = loaded.failures == 0 && loaded.latency.getP99() <= limit;
+        System.out.println(ok ? "通过：管理端查询未影响下单 p99"
+                : "未通过：干扰阶段 p99=" + loaded.latency.getP99() / 1000.0 + "ms，上限 " + limit / 1000.0
+                + "ms，失败 " + loaded.failures + " 次");
+        DBUtil.closeDataSource();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static final class Result {
+        final LatencyHistogram.Snapshot latency;
+        final long failures;
+        final long adminQueries;
+
+        Result(LatencyHistogram.Snapshot latency, long failures, long adminQueries) {
+            this.latency = latency;
+            this.failures = failures;
+            this.adminQueries = adminQueries;
+        }
+    }
+
+    private static Result runPhase(int seconds, int checkoutThreads, int adminThreads) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong failures = new AtomicLong();
+        AtomicLong adminQueries = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < adminThreads; i++) {
+            threads.add(new Thread(Workload.ADMIN.wrap(() -> {
+                SalesOrderDao salesOrderDao = new SalesOrderDao();
+                while (running.get()) {
+                    try {
+                        salesOrderDao.findAll();
+                        try (Connection conn = DBUtil.getConnection();
+                             PreparedStatement ps = conn.prepareStatement("SELECT SLEEP(0.2)")) {
+                            ps.executeQuery().close();
+                        }
+                        adminQueries.incrementAndGet();
+                    } catch (SQLException e) {
+                        // 管理端隔舱超时只影响管理端
+                    }
+                }
+            }), "admin-load-" + i));
+        }
+        for (int i = 0; i < checkoutThreads; i++) {
+            threads.add(new Thread(Workload.CHECKOUT.wrap(() -> {
+                CustomerDao customerDao = new CustomerDao();
+                BookDao bookDao = new BookDao();
+                List<String> bookIds = Arrays.asList("B001", "B002");
+                while (running.get()) {
+                    long t0 = System.nanoTime();
+                    try {
+                        TransactionContext.run(conn -> {
+                            customerDao.findById(2L);
+                            bookDao.findByIds(bookIds);
+                        });
+                        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t0));
+                    } catch (SQLException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }), "checkout-load-" + i));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+        for (Thread t : threads) {
+            t.join();
+        }
+        return new Result(latency.snapshot(), failures.get(), adminQueries.get());
+    }
+
+    private static void print(String phase, Result r) {
+        LatencyHistogram.Snapshot s = r.latency;
+        System.out.printf("%-8s 下单 %d 次 p50=%.2fms p99=%.2fms max=%.2fms 失败 %d 次，管理端查询 %d 次%n", phase,
+                s.getCount(), s.getP50() / 1000.0, s.getP99() / 1000.0, s.getMax() / 1000.0, r.failures,
+                r.adminQueries);
+    }
+}
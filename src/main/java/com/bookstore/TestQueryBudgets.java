@@ -0,0 +1,119 @@
+package com.bookstore;
+
+import com.bookstore.util.DbCallMetrics;
+import com.bookstore.util.LatencyHistogram;
+import com.bookstore.web.EndpointMetrics;
+import com.bookstore.web.WebApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 接口语句预算（N+1）检查。
+ *
+ * 以严格模式（超出 {@link com.bookstore.web.MaxQueries} 预算的语句直接抛异常）在本进程内启动 Web 服务，然后：
+ * 1. 检查 com.bookstore.web.controller 下每个接口都有语句预算；
+ * 2. 用样例数据（客户 2、书 B001、订单 / 供应商 / 采购单 1）依次调用所有 GET 接口（推送流除外），
+ *    每个接口调用两次（第二次缓存已热），输出每个接口的语句数与预算；
+ * 3. 有接口缺少预算或超出预算时以退出码 1 结束。
+ *
+ * 参数：[端口]，默认 18081。
+ */
+public class TestQueryBudgets {
+
+    private static final Pattern PATH_VAR = Pattern.compile("\\{([^}]+)}");
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18081;
+        Map<String, String> samples = new HashMap<>();
+        samples.put("customerId", "2");
+        samples.put("bookId", "B001");
+        samples.put("orderId", "1");
+        samples.put("supplierId", "1");
+        samples.put("purchaseOrderId", "1");
+
+        DbCallMetrics.setStrictBudgets(true);
+        ConfigurableApplicationContext ctx = SpringApplication.run(WebApplication.class, "--server.port=" + port);
+        RequestMappingHandlerMapping mapping = ctx.getBean("requestMappingHandlerMapping",
+                RequestMappingHandlerMapping.class);
+
+        List<String> missing = new ArrayList<>();
+        List<String> getPaths = new ArrayList<>();
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> e : mapping.getHandlerMethods().entrySet()) {
+            HandlerMethod hm = e.getValue();
+            if (!hm.getBeanType().getPackageName().equals("com.bookstore.web.controller")) {
+                continue;
+            }
+            RequestMappingInfo info = e.getKey();
+            if (EndpointMetrics.budgetOf(hm) == DbCallMetrics.NO_BUDGET) {
+                missing.add(info.toString());
+            }
+            boolean streaming = info.getProducesCondition().getProducibleMediaTypes()
+                    .contains(MediaType.TEXT_EVENT_STREAM);
+            if (info.getMethodsCondition().getMethods().contains(RequestMethod.GET) && !streaming) {
+                getPaths.addAll(info.getPatternValues());
+            }
+        }
+
+        HttpClient client = HttpClient.newHttpClient();
+        List<String> failed = new ArrayList<>();
+        for (String pattern : new TreeSet<>(getPaths)) {
+            String path = fill(pattern, samples);
+            for (int round = 0; round < 2; round++) {
+                HttpResponse<String> resp = client.send(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + path)).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (resp.statusCode() >= 500 && resp.body().contains("超出预算")) {
+                    failed.add("GET " + pattern);
+                    break;
+                }
+            }
+        }
+
+        System.out.printf("%-60s %8s %8s %6s%n", "接口", "最多语句", "预算", "超出");
+        for (EndpointMetrics.Stats s : EndpointMetrics.snapshot()) {
+            LatencyHistogram.Snapshot st = s.getStatementsPerRequest();
+            System.out.printf("%-60s %8d %8s %6d%s%n", s.getEndpoint(), st.getMax(),
+                    s.getBudget() != null ? s.getBudget() : "-", s.getOverBudget(),
+                    s.getOverBudget() > 0 ? "  [超出预算！]" : "");
+            if (s.getOverBudget() > 0 && !failed.contains(s.getEndpoint())) {
+                failed.add(s.getEndpoint());
+            }
+        }
+        for (String m : missing) {
+            System.out.println("缺少 @MaxQueries：" + m);
+        }
+        System.out.println(failed.isEmpty() && missing.isEmpty()
+                ? "全部接口均在语句预算内"
+                : "超出预算 " + failed.size() + " 个，缺少预算 " + missing.size() + " 个");
+        int code = failed.isEmpty() && missing.isEmpty() ? 0 : 1;
+        SpringApplication.exit(ctx);
+        System.exit(code);
+    }
+
+    private static String fill(String pattern, Map<String, String> samples) {
+        Matcher m = PATH_VAR.matcher(pattern);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            m.appendReplacement(sb, Matcher.quoteReplacement(samples.getOrDefault(m.group(1), "1")));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.bookstore;
+
+import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 读写分离路由检查，需要本机两个独立的 MySQL 实例分别充当主库与副本（无需配置复制），例如：
+ *
+ *   java -Ddb.replica.urls=jdbc:mysql://localhost:3307/bookstore1?useSSL=false&allowPublicKeyRetrieval=true \
+ *        -Ddb.replica.stickyMillis=500 com.bookstore.TestReadReplica
+ *
+ * 通过 SELECT @@server_uuid 判断连接落在哪个实例，依次检查：
+ *  1. 普通只读连接走副本，顾客未写入时其只读连接也走副本；
+ *  2. markCustomerWrite 之后该顾客读主库，其他顾客不受影响；
+ *  3. 事务中的只读连接就是事务连接；事务提交后才开始粘滞，回滚不粘滞；
+ *  4. 粘滞时间过后恢复读副本。
+ * 任一检查失败时以退出码 1 结束。
+ */
+public class TestReadReplica {
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        String primary;
+        try (Connection conn = DBUtil.getConnection()) {
+            primary = serverUuid(conn);
+        }
+        String replica;
+        try (Connection conn = DBUtil.getReadConnection()) {
+            replica = serverUuid(conn);
+        }
+        System.out.println("主库 " + primary + "，只读连接 " + replica);
+        if (primary.equals(replica)) {
+            System.out.println("只读连接落在主库：请用 -Ddb.replica.urls 指向另一个数据库实例后再运行。");
+            System.exit(1);
+        }
+
+        check("顾客 2 未写入，读副本", readTarget(2L), replica);
+        DBUtil.markCustomerWrite(2L);
+        check("顾客 2 写入后，读主库", readTarget(2L), primary);
+        check("顾客 3 不受顾客 2 影响，读副本", readTarget(3L), replica);
+
+        TransactionContext.run(conn -> {
+            DBUtil.markCustomerWrite(4L);
+            check("事务中的只读连接即事务连接", readTarget(null), primary);
+            check("事务中：顾客 4 的只读连接即事务连接", readTarget(4L), primary);
+        });
+        check("事务提交后，顾客 4 读主库", readTarget(4L), primary);
+
+        try {
+            TransactionContext.run(conn -> {
+                DBUtil.markCustomerWrite(5L);
+                throw new SQLException("模拟失败");
+            });
+        } catch (SQLException expected) {
+            // 事务回滚
+        }
+        check("事务回滚后，顾客 5 仍读副本", readTarget(5L), replica);
+
+        long stickyMillis = Long.parseLong(System.getProperty("db.replica.stickyMillis", "5000"));
+        Thread.sleep(stickyMillis + 100);
+        check("粘滞时间过后，顾客 2 恢复读副本", readTarget(2L), replica);
+
+        System.out.println("路由统计：" + DBUtil.getReplicaStats());
+        System.out.println(failures == 0 ? "全部检查通过" : failures + " 项检查失败");
+        DBUtil.closeDataSource();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static String readTarget(Long customerId) throws SQLException {
+        try (Connection conn = customerId != null ? DBUtil.getReadConnection(customerId) : DBUtil.getReadConnection()) {
+            return serverUuid(conn);
+        }
+    }
+
+    private static String serverUuid(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT @@server_uuid")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static void check(String name, String actual, String expected) {
+        boolean ok = expected.equals(actual);
+        if (!ok) {
+            failures++;
+        }
+        System.out.println((ok ? "[通过] " : "[失败] ") + name);
+    }
+}
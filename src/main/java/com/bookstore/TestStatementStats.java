@@ -0,0 +1,81 @@
+package com.bookstore;
+
+import com.bookstore.util.SlowQueryLog;
+import com.bookstore.util.StatementStats;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * SQL 指纹、按指纹计数与慢查询日志测试（不需要数据库）。
+ *
+ * 1. 输出几条典型 SQL 的指纹，参数个数不同的 IN / 多行 VALUES 应归为同一指纹；
+ * 2. 多线程并发记录，校验计数无丢失，并输出每次记录的开销；
+ * 3. 把慢查询日志写到临时目录（单文件 4 KB），写入足够多的慢语句后校验发生了滚动。
+ *
+ * 参数：[线程数] [每线程记录数]，默认 8 500000。
+ */
+public class TestStatementStats {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+
+        String[] samples = {
+                "SELECT * FROM book WHERE book_id IN (?, ?, ?)",
+                "SELECT * FROM book WHERE book_id IN (?,?,?,?,?,?)",
+                "SELECT * FROM book WHERE title LIKE '%Java%' AND price > 12.5 LIMIT 20",
+                "INSERT INTO shopping_cart (customer_id, book_id, quantity) VALUES (?, ?, ?), (?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)",
+                "DELETE FROM shopping_cart WHERE (customer_id, book_id) IN ((?, ?), (?, ?), (?, ?))",
+                "SELECT  b1.book_id\n  FROM book b1   WHERE b1.status = 'AVAILABLE'",
+        };
+        for (String sql : samples) {
+            System.out.println(StatementStats.fingerprint(sql));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        String sql = "SELECT quantity FROM inventory WHERE book_id = ?";
+        long t0 = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                for (int j = 0; j < perThread; j++) {
+                    StatementStats.record(sql, 1000 + (j & 1023), false);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        double perRecord = (double) (System.nanoTime() - t0) * threads / ((long) threads * perThread);
+        pool.shutdown();
+        StatementStats.Stats stats = StatementStats.snapshot(1000).stream()
+                .filter(s -> s.getFingerprint().equals(StatementStats.fingerprint(sql)))
+                .findFirst().orElseThrow();
+        long expected = (long) threads * perThread;
+        System.out.printf("并发记录 %d 次，计数 %d%s，每次记录约 %.0f ns%n", expected, stats.getCount(),
+                stats.getCount() == expected ? "  [无丢失]" : "  [计数不一致！]", perRecord);
+
+        Path dir = Files.createTempDirectory("slow-query");
+        Path log = dir.resolve("slow-query.log");
+        SlowQueryLog.configure(log, 4096, 3);
+        StatementStats.setSlowThresholdMillis(1);
+        for (int i = 0; i < 200; i++) {
+            StatementStats.record("SELECT * FROM sales_order WHERE order_id = " + i, TimeUnit.MILLISECONDS.toNanos(5), false);
+        }
+        TimeUnit.SECONDS.sleep(2);
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(p -> p.getFileName() + "(" + p.toFile().length() + "B)").sorted().toList();
+            System.out.println("慢查询日志文件：" + names + (names.size() > 1 ? "  [已滚动]" : "  [未滚动！]"));
+        }
+        System.out.println("慢查询 " + SlowQueryLog.getLogged() + " 条，丢弃 " + SlowQueryLog.getDropped() + " 条");
+    }
+}
@@ -0,0 +1,178 @@
+package com.bookstore;
+
+import com.bookstore.dao.BookDao;
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.dao.InventoryDao;
+import com.bookstore.dao.SalesOrderDao;
+import com.bookstore.dao.StockReservationDao;
+import com.bookstore.model.Book;
+import com.bookstore.model.Customer;
+import com.bookstore.model.Inventory;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.model.SalesOrderItem;
+import com.bookstore.service.OrderService;
+import com.bookstore.service.StockReservationEngine;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 热门书并发下单压力测试：大量线程同时为同一本书下单，每单 1 本。
+ *
+ * 第一部分：旧写法，先 InventoryDao.getQuantity 判断库存再创建订单，统计“判断有货”的订单数，会超过库存（超卖）。
+ * 第二部分：OrderService.placeOrder（下单 + 库存预留），校验成功预留的订单数恰好等于库存，
+ *          stock_reservation 中的预留总量与 inventory.reserved 一致；随后取消一半订单，校验预留被释放。
+ *
+ * 会新建一本测试书（库存见参数）与一个测试客户，参数：[线程数] [订单数] [库存]，默认 32 1000 100。
+ */
+public class TestStockReservation {
+
+    private static final BigDecimal PRICE = new BigDecimal("10.00");
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int orders = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int stock = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        SalesOrderDao salesOrderDao = new SalesOrderDao();
+        InventoryDao inventoryDao = new InventoryDao();
+        OrderService orderService = new OrderService();
+        Customer customer = newCustomer();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        // 第一部分：先查库存再下单
+        String naiveBook = newHotBook("HOTN", stock);
+        AtomicInteger naiveAccepted = new AtomicInteger();
+        long naive = runOrders(pool, orders, () -> {
+            if (inventoryDao.getQuantity(naiveBook) >= 1) {
+                SalesOrder order = newOrder(customer.getCustomerId());
+                salesOrderDao.createOrder(order, Collections.singletonList(newItem(naiveBook)));
+                naiveAccepted.incrementAndGet();
+            }
+        });
+        System.out.printf("先查后写：    %d 线程，%d 单，库存 %d，判断有货 %d 单（超卖 %d），耗时 %.1f ms%n",
+                threads, orders, stock, naiveAccepted.get(), Math.max(naiveAccepted.get() - stock, 0), naive / 1e6);
+
+        // 第二部分：下单即预留
+        String hotBook = newHotBook("HOTR", stock);
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger shortage = new AtomicInteger();
+        List<Long> reservedOrderIds = Collections.synchronizedList(new ArrayList<>());
+        long reserving = runOrders(pool, orders, () -> {
+            SalesOrder order = newOrder(customer.getCustomerId());
+            Map<String, Integer> unreserved = orderService.placeOrder(order,
+                    Collections.singletonList(newItem(hotBook)));
+            if (unreserved.isEmpty()) {
+                reserved.incrementAndGet();
+                reservedOrderIds.add(order.getOrderId());
+            } else {
+                shortage.incrementAndGet();
+            }
+        });
+        int dbReserved = new StockReservationDao().sumOutstandingByBook(hotBook);
+        System.out.printf("下单预留：    %d 线程，%d 单，库存 %d，预留成功 %d，缺货 %d，耗时 %.1f ms，%.0f 单/秒%n",
+                threads, orders, stock, reserved.get(), shortage.get(), reserving / 1e6, orders / (reserving / 1e9));
+        System.out.println("  预留表合计 " + dbReserved + "，可承诺量 " + StockReservationEngine.available(hotBook)
+                + (reserved.get() == stock && dbReserved == stock ? "  [无超卖]" : "  [不一致！]"));
+
+        // 取消一半已预留的订单，可承诺量应相应恢复
+        int toCancel = reservedOrderIds.size() / 2;
+        runOrders(pool, toCancel, new Order() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            @Override
+            public void place() throws SQLException {
+                orderService.cancelOrder(reservedOrderIds.get(next.getAndIncrement()));
+            }
+        });
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        int afterCancel = StockReservationEngine.available(hotBook);
+        System.out.println("取消 " + toCancel + " 单后：可承诺量 " + afterCancel + "，预留表合计 "
+                + new StockReservationDao().sumOutstandingByBook(hotBook)
+                + (afterCancel == toCancel ? "  [已释放]" : "  [不一致！]"));
+    }
+
+    @FunctionalInterface
+    private interface Order {
+        void place() throws SQLException;
+    }
+
+    private static long runOrders(ExecutorService pool, int count, Order order) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(count);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            futures.add(pool.submit(() -> {
+                order.place();
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        return System.nanoTime() - t0;
+    }
+
+    private static SalesOrder newOrder(long customerId) {
+        SalesOrder order = new SalesOrder();
+        order.setCustomerId(customerId);
+        order.setOrderTime(LocalDateTime.now());
+        order.setOrderStatus("PENDING_PAYMENT");
+        order.setGoodsAmount(PRICE);
+        order.setDiscountRateSnapshot(BigDecimal.ONE);
+        order.setPayableAmount(PRICE);
+        order.setShippingAddressSnapshot("预留压力测试地址");
+        return order;
+    }
+
+    private static SalesOrderItem newItem(String bookId) {
+        SalesOrderItem item = new SalesOrderItem();
+        item.setBookId(bookId);
+        item.setQuantity(1);
+        item.setUnitPrice(PRICE);
+        item.setSubAmount(PRICE);
+        item.setItemStatus("ORDERED");
+        return item;
+    }
+
+    private static String newHotBook(String prefix, int stock) throws SQLException {
+        Book b = new Book();
+        b.setBookId(prefix + (System.currentTimeMillis() % 100000000L));
+        b.setTitle("热门书压力测试");
+        b.setPrice(PRICE);
+        b.setStatus("AVAILABLE");
+        b.setSeriesFlag(false);
+        new BookDao().insert(b);
+
+        Inventory inv = new Inventory();
+        inv.setBookId(b.getBookId());
+        inv.setQuantity(stock);
+        inv.setSafetyStock(0);
+        new InventoryDao().insert(inv);
+        return b.getBookId();
+    }
+
+    private static Customer newCustomer() throws SQLException {
+        Customer c = new Customer();
+        c.setUsername("reserve" + System.currentTimeMillis());
+        c.setPasswordHash("123456");
+        c.setRealName("预留测试");
+        c.setMobilePhone("13800000000");
+        c.setEmail(c.getUsername() + "@test.com");
+        c.setAccountBalance(BigDecimal.ZERO);
+        c.setTotalConsumption(BigDecimal.ZERO);
+        c.setCreditLevelId(1);
+        new CustomerDao().insert(c);
+        return c;
+    }
+}
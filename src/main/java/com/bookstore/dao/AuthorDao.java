@@ -5,8 +5,10 @@ import com.bookstore.util.DBUtil;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -121,4 +123,40 @@ public class AuthorDao {
         }
         return result;
     }
+
+    /**
+     * 查询某位作者参与的全部书目编号（作者信息变更后用于刷新搜索索引）。
+     */
+    public Set<String> findBookIdsByAuthorId(long authorId) throws SQLException {
+        String sql = "SELECT book_id FROM book_author WHERE author_id = ?";
+        Set<String> result = new HashSet<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, authorId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString("book_id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一次查询出所有书目的作者姓名，按书号分组（用于构建搜索索引）。
+     */
+    public Map<String, List<String>> findAuthorNamesGroupedByBook() throws SQLException {
+        String sql = "SELECT ba.book_id, a.author_name " +
+                "FROM book_author ba JOIN author a ON a.author_id = ba.author_id";
+        Map<String, List<String>> result = new HashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                result.computeIfAbsent(rs.getString("book_id"), k -> new ArrayList<>())
+                        .add(rs.getString("author_name"));
+            }
+        }
+        return result;
+    }
 }
@@ -1,19 +1,34 @@
 package com.bookstore.dao;
 
 import com.bookstore.model.Book;
+import com.bookstore.model.BookSummary;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Book 数据访问类（DAO），负责对 book 表进行增删改查操作。
  * 本阶段作为代码骨架，采用最基础的 JDBC 写法，后续可以根据需要再重构。
+ * 新增 / 修改 / 删除成功后修补 {@link CatalogCache} 中的目录快照；在事务中调用时等事务提交后再修补，回滚则不修补。
+ * 条件检索、计数与列表投影查询可走只读副本（DBUtil.getReadConnection）；findAll 供 CatalogCache 加载，始终读主库。
  */
 public class BookDao {
 
+    /** findByIds 每条 IN 语句最多携带的书号数，避免 SQL 过长。 */
+    private static final int IN_CHUNK_SIZE = 500;
+
+    /** 列表投影查询的列：不含 catalog（目录全文）。 */
+    private static final String SUMMARY_COLUMNS = "book_id, isbn, title, publisher, publish_date, edition, price, status, cover_image_url, series_flag, parent_book_id";
+
     /**
      * 查询所有图书（按 book_id 排序）。
      */
@@ -32,12 +47,21 @@ public class BookDao {
         return list;
     }
 
+    /**
+     * findAll 的列表投影版本，不读取 catalog 列。
+     */
+    public List<BookSummary> findAllSummaries() throws SQLException {
+        return querySummaries("SELECT " + SUMMARY_COLUMNS
+                + " FROM book ORDER BY COALESCE(parent_book_id, book_id), series_flag DESC, book_id",
+                Collections.emptyList());
+    }
+
     /**
      * 获取图书总数。
      */
     public int countAll() throws SQLException {
         String sql = "SELECT COUNT(*) FROM book";
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
                 PreparedStatement ps = conn.prepareStatement(sql);
                 ResultSet rs = ps.executeQuery()) {
             if (rs.next()) {
@@ -57,8 +81,38 @@ public class BookDao {
     public List<Book> findByConditions(String bookId, String title, String publisher) throws SQLException {
         StringBuilder sql = new StringBuilder(
                 "SELECT book_id, isbn, title, publisher, publish_date, edition, price, status, cover_image_url, catalog, series_flag, parent_book_id FROM book WHERE 1=1");
-        List<Object> params = new ArrayList<>();
+        List<Object> params = appendConditions(sql, bookId, title, publisher);
+
+        List<Book> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getReadConnection();
+                PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+            return list;
+        }
+    }
+
+    /**
+     * findByConditions 的列表投影版本，不读取 catalog 列。
+     */
+    public List<BookSummary> findSummariesByConditions(String bookId, String title, String publisher)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT " + SUMMARY_COLUMNS + " FROM book WHERE 1=1");
+        List<Object> params = appendConditions(sql, bookId, title, publisher);
+        return querySummaries(sql.toString(), params);
+    }
 
+    /**
+     * 拼接 findByConditions / findSummariesByConditions 共用的过滤条件与排序，返回对应的参数列表。
+     */
+    private List<Object> appendConditions(StringBuilder sql, String bookId, String title, String publisher) {
+        List<Object> params = new ArrayList<>();
         if (bookId != null && !bookId.trim().isEmpty()) {
             sql.append(" AND book_id LIKE ?");
             params.add("%" + bookId.trim() + "%");
@@ -71,22 +125,8 @@ public class BookDao {
             sql.append(" AND publisher LIKE ?");
             params.add("%" + publisher.trim() + "%");
         }
-
         sql.append(" ORDER BY COALESCE(parent_book_id, book_id), series_flag DESC, book_id");
-
-        List<Book> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
-            }
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    list.add(mapRow(rs));
-                }
-            }
-            return list;
-        }
+        return params;
     }
 
     /**
@@ -106,6 +146,46 @@ public class BookDao {
         }
     }
 
+    /**
+     * 按主键批量查询图书，用于替代逐个调用 findById 的 N+1 查询。
+     * 书号按 IN_CHUNK_SIZE 分批放入 IN 列表，所有批次共用一个连接；
+     * 返回结果按调用方传入的顺序排列，重复书号只保留一次，不存在的书号直接跳过。
+     */
+    public List<Book> findByIds(Collection<String> bookIds) throws SQLException {
+        List<Book> result = new ArrayList<>();
+        if (bookIds == null || bookIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        ids.remove(null);
+        Map<String, Book> found = new HashMap<>();
+        try (Connection conn = DBUtil.getConnection()) {
+            for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+                String sql = "SELECT book_id, isbn, title, publisher, publish_date, edition, price, status, cover_image_url, catalog, series_flag, parent_book_id FROM book WHERE book_id IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            Book b = mapRow(rs);
+                            found.put(b.getBookId(), b);
+                        }
+                    }
+                }
+            }
+        }
+        for (String id : ids) {
+            Book b = found.get(id);
+            if (b != null) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
     /**
      * 新增一本图书。
      */
@@ -132,7 +212,11 @@ public class BookDao {
             ps.setBoolean(11, book.isSeriesFlag());
             ps.setString(12, book.getParentBookId());
 
-            return ps.executeUpdate();
+            int rows = ps.executeUpdate();
+            if (rows > 0) {
+                TransactionContext.afterCommit(() -> CatalogCache.bookSaved(book));
+            }
+            return rows;
         }
     }
 
@@ -162,7 +246,11 @@ public class BookDao {
             ps.setString(11, book.getParentBookId());
             ps.setString(12, book.getBookId());
 
-            return ps.executeUpdate();
+            int rows = ps.executeUpdate();
+            if (rows > 0) {
+                TransactionContext.afterCommit(() -> CatalogCache.bookSaved(book));
+            }
+            return rows;
         }
     }
 
@@ -174,7 +262,11 @@ public class BookDao {
         try (Connection conn = DBUtil.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, bookId);
-            return ps.executeUpdate();
+            int rows = ps.executeUpdate();
+            if (rows > 0) {
+                TransactionContext.afterCommit(() -> CatalogCache.booksDeleted(Collections.singletonList(bookId)));
+            }
+            return rows;
         }
     }
 
@@ -239,4 +331,58 @@ public class BookDao {
         }
         return list;
     }
+
+    /**
+     * findChildBooks 的列表投影版本，不读取 catalog 列。
+     */
+    public List<BookSummary> findChildSummaries(String parentBookId) throws SQLException {
+        return querySummaries("SELECT " + SUMMARY_COLUMNS + " FROM book WHERE parent_book_id = ? ORDER BY book_id",
+                Collections.singletonList(parentBookId));
+    }
+
+    /**
+     * findSeriesBooks 的列表投影版本，不读取 catalog 列。
+     */
+    public List<BookSummary> findSeriesSummaries() throws SQLException {
+        return querySummaries("SELECT " + SUMMARY_COLUMNS + " FROM book WHERE series_flag = 1 ORDER BY book_id",
+                Collections.emptyList());
+    }
+
+    private List<BookSummary> querySummaries(String sql, List<Object> params) throws SQLException {
+        List<BookSummary> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getReadConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapSummaryRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 将 ResultSet 当前行映射为 BookSummary 对象。
+     */
+    private BookSummary mapSummaryRow(ResultSet rs) throws SQLException {
+        BookSummary s = new BookSummary();
+        s.setBookId(rs.getString("book_id"));
+        s.setIsbn(rs.getString("isbn"));
+        s.setTitle(rs.getString("title"));
+        s.setPublisher(rs.getString("publisher"));
+        Date publishDate = rs.getDate("publish_date");
+        if (publishDate != null) {
+            s.setPublishDate(publishDate.toLocalDate());
+        }
+        s.setEdition(rs.getString("edition"));
+        s.setPrice(rs.getBigDecimal("price"));
+        s.setStatus(rs.getString("status"));
+        s.setCoverImageUrl(rs.getString("cover_image_url"));
+        s.setSeriesFlag(rs.getBoolean("series_flag"));
+        s.setParentBookId(rs.getString("parent_book_id"));
+        return s;
+    }
 }
@@ -0,0 +1,498 @@
+package com.bookstore.dao;
+
+import com.bookstore.model.Book;
+import com.bookstore.model.BookSummary;
+import com.bookstore.util.Workload;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 书目目录的进程内快照缓存，供顾客端浏览 / 搜索等只读接口使用。
+ *
+ * - 快照不可变，整体替换（copy-on-write），读取方只读一个 volatile 引用，从不加锁；
+ *   快照中的 Book / BookSummary 为只读视图，调用 setter 抛出 UnsupportedOperationException，
+ *   需要修改时请先复制（或从 BookDao 重新查询）；
+ * - BookDao 的新增 / 修改 / 删除成功后直接修补当前快照（write-through），无需整表重载；
+ * - invalidate() 或快照超过 MAX_AGE_MILLIS（覆盖 JavaFX 管理端等其他进程的写入）时，
+ *   在后台线程重建快照，重建期间读取方继续使用旧快照；重建期间有写入时重新查询，
+ *   最多 MAX_REBUILD_ATTEMPTS 次，仍有写入则把期间的修补补到最后一次查询结果上再发布；
+ * - 仅首次访问（尚无快照）时同步加载一次。
+ */
+public final class CatalogCache {
+
+    /** 快照最长存活时间，超时后在后台重建。 */
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
+    /** 重建时因并发写入重新查询的次数上限，避免写入频繁时重建一直无法完成。 */
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    /** 与 BookDao.findAll 的 ORDER BY COALESCE(parent_book_id, book_id), series_flag DESC, book_id 一致。 */
+    private static final Comparator<Book> CATALOG_ORDER = Comparator
+            .comparing((Book b) -> b.getParentBookId() != null ? b.getParentBookId() : b.getBookId())
+            .thenComparing(Book::isSeriesFlag, Comparator.reverseOrder())
+            .thenComparing(Book::getBookId);
+
+    private static final Object WRITE_LOCK = new Object();
+    private static final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(Workload.BACKGROUND.wrap(r), "catalog-cache-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile Snapshot current;
+    /** 每次修补快照时递增，用于识别“重建过程中发生过写入”的情况。 */
+    private static long modCount;
+    /** 重建查询期间的修补：书号 -> 保存后的书目，删除为 null；不在重建时为 null。由 WRITE_LOCK 保护。 */
+    private static Map<String, Book> rebuildPatches;
+
+    private CatalogCache() {
+    }
+
+    /**
+     * 目录快照：书目列表（顺序与 BookDao.findAll 相同）及按书号索引，列表与其中的书目均不可修改。
+     * 不含 catalog 的列表投影在首次请求时按同一顺序生成一次，此后所有列表请求共用。
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final long loadedAt;
+        private final List<Book> books;
+        private final Map<String, Integer> positionById;
+        /** 与 books 一一对应的列表投影，延迟生成；并发时可能重复生成，结果相同。 */
+        private volatile List<BookSummary> summaries;
+
+        private Snapshot(long version, long loadedAt, List<Book> books) {
+            this.version = version;
+            this.loadedAt = loadedAt;
+            List<Book> frozen = new ArrayList<>(books.size());
+            Map<String, Integer> map = new HashMap<>(books.size() * 2);
+            for (Book b : books) {
+                map.put(b.getBookId(), frozen.size());
+                frozen.add(b instanceof ReadOnlyBook ? b : new ReadOnlyBook(b));
+            }
+            this.books = Collections.unmodifiableList(frozen);
+            this.positionById = Collections.unmodifiableMap(map);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Book> getBooks() {
+            return books;
+        }
+
+        public int size() {
+            return books.size();
+        }
+
+        /**
+         * 全部书目的列表投影，顺序与 getBooks 相同。
+         */
+        public List<BookSummary> getSummaries() {
+            List<BookSummary> list = summaries;
+            if (list == null) {
+                List<BookSummary> built = new ArrayList<>(books.size());
+                for (Book b : books) {
+                    built.add(new ReadOnlySummary(b));
+                }
+                list = Collections.unmodifiableList(built);
+                summaries = list;
+            }
+            return list;
+        }
+
+        /**
+         * 将本快照中的一组书目转换为列表投影（保持原顺序），复用已生成的投影对象。
+         */
+        public List<BookSummary> summariesOf(List<Book> list) {
+            List<BookSummary> all = getSummaries();
+            List<BookSummary> result = new ArrayList<>(list.size());
+            for (Book b : list) {
+                Integer pos = positionById.get(b.getBookId());
+                result.add(pos != null ? all.get(pos) : BookSummary.of(b));
+            }
+            return result;
+        }
+
+        public Book get(String bookId) {
+            Integer pos = positionById.get(bookId);
+            return pos != null ? books.get(pos) : null;
+        }
+
+        /**
+         * 将一组书号按目录顺序取出对应书目，快照中不存在的书号跳过。
+         */
+        public List<Book> inCatalogOrder(Collection<String> bookIds) {
+            List<Integer> positions = new ArrayList<>(bookIds.size());
+            for (String id : bookIds) {
+                Integer pos = positionById.get(id);
+                if (pos != null) {
+                    positions.add(pos);
+                }
+            }
+            Collections.sort(positions);
+            List<Book> list = new ArrayList<>(positions.size());
+            for (Integer pos : positions) {
+                list.add(books.get(pos));
+            }
+            return list;
+        }
+
+        /**
+         * 所有丛书（series_flag = 1），按书号排序。
+         */
+        public List<Book> getSeriesBooks() {
+            List<Book> list = new ArrayList<>();
+            for (Book b : books) {
+                if (b.isSeriesFlag()) {
+                    list.add(b);
+                }
+            }
+            list.sort(Comparator.comparing(Book::getBookId));
+            return list;
+        }
+
+        /**
+         * 丛书的子书目，按书号排序。
+         */
+        public List<Book> getChildBooks(String parentBookId) {
+            List<Book> list = new ArrayList<>();
+            for (Book b : books) {
+                if (parentBookId.equals(b.getParentBookId())) {
+                    list.add(b);
+                }
+            }
+            list.sort(Comparator.comparing(Book::getBookId));
+            return list;
+        }
+    }
+
+    /**
+     * 返回当前目录快照。除首次加载外从不阻塞；快照过期时触发后台重建并先返回旧快照。
+     */
+    public static Snapshot snapshot() throws SQLException {
+        Snapshot s = current;
+        if (s == null) {
+            return loadInitial();
+        }
+        if (System.currentTimeMillis() - s.loadedAt > MAX_AGE_MILLIS) {
+            invalidate();
+        }
+        return s;
+    }
+
+    /**
+     * 标记快照需要重建（后台执行，同一时刻最多一个重建任务）。
+     */
+    public static void invalidate() {
+        if (current == null || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                rebuild();
+            } catch (SQLException e) {
+                System.err.println("目录快照重建失败：" + e.getMessage());
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    /**
+     * 新增或修改书目后修补快照。
+     */
+    static void bookSaved(Book book) {
+        if (book == null || book.getBookId() == null) {
+            return;
+        }
+        Book copy = new ReadOnlyBook(book);
+        synchronized (WRITE_LOCK) {
+            if (rebuildPatches != null) {
+                rebuildPatches.put(copy.getBookId(), copy);
+            }
+            Snapshot s = current;
+            if (s == null) {
+                return;
+            }
+            install(patch(s.books, Collections.singletonMap(copy.getBookId(), copy)), s.loadedAt);
+        }
+    }
+
+    /**
+     * 删除书目后修补快照。
+     */
+    public static void booksDeleted(Collection<String> bookIds) {
+        if (bookIds == null || bookIds.isEmpty()) {
+            return;
+        }
+        Set<String> removed = new HashSet<>(bookIds);
+        synchronized (WRITE_LOCK) {
+            if (rebuildPatches != null) {
+                for (String id : removed) {
+                    rebuildPatches.put(id, null);
+                }
+            }
+            Snapshot s = current;
+            if (s == null) {
+                return;
+            }
+            List<Book> books = new ArrayList<>(s.books.size());
+            for (Book b : s.books) {
+                if (!removed.contains(b.getBookId())) {
+                    books.add(b);
+                }
+            }
+            install(books, s.loadedAt);
+        }
+    }
+
+    private static Snapshot loadInitial() throws SQLException {
+        synchronized (WRITE_LOCK) {
+            if (current == null) {
+                install(new BookDao().findAll(), System.currentTimeMillis());
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 在锁外查询数据库；若查询期间有写入修补过快照，则重新查询，避免覆盖较新的修补结果。
+     * 连续 MAX_REBUILD_ATTEMPTS 次都有写入时，把最后一次查询期间记录的修补补到其结果上再发布：
+     * 修补取自提交后的书目，不早于查询读到的版本，重复补一次也不会回退。
+     */
+    private static void rebuild() throws SQLException {
+        BookDao bookDao = new BookDao();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                long startMods;
+                synchronized (WRITE_LOCK) {
+                    startMods = modCount;
+                    rebuildPatches = new LinkedHashMap<>();
+                }
+                List<Book> books = bookDao.findAll();
+                synchronized (WRITE_LOCK) {
+                    if (modCount == startMods) {
+                        install(books, System.currentTimeMillis());
+                        return;
+                    }
+                    if (attempt >= MAX_REBUILD_ATTEMPTS) {
+                        install(patch(books, rebuildPatches), System.currentTimeMillis());
+                        return;
+                    }
+                }
+            }
+        } finally {
+            synchronized (WRITE_LOCK) {
+                rebuildPatches = null;
+            }
+        }
+    }
+
+    /**
+     * 在书目列表上应用一组修补（书号 -> 保存后的书目，删除为 null），返回按目录顺序排列的新列表。
+     */
+    private static List<Book> patch(List<Book> books, Map<String, Book> patches) {
+        List<Book> result = new ArrayList<>(books.size() + patches.size());
+        for (Book b : books) {
+            if (!patches.containsKey(b.getBookId())) {
+                result.add(b);
+            }
+        }
+        for (Book b : patches.values()) {
+            if (b != null) {
+                result.add(b);
+            }
+        }
+        result.sort(CATALOG_ORDER);
+        return result;
+    }
+
+    /**
+     * 发布新快照。修补时沿用原快照的加载时间，使其他进程的写入仍能按时通过重建生效。
+     * 调用方须持有 WRITE_LOCK。
+     */
+    private static void install(List<Book> books, long loadedAt) {
+        Snapshot s = current;
+        long version = s == null ? 1 : s.version + 1;
+        modCount++;
+        current = new Snapshot(version, loadedAt, books);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("目录快照中的书目为只读，请先复制");
+    }
+
+    /**
+     * 快照中的书目：构造时复制源书目，之后所有 setter 抛出 UnsupportedOperationException，
+     * 使各请求共用的快照对象不会被调用方改动。
+     */
+    private static final class ReadOnlyBook extends Book {
+
+        ReadOnlyBook(Book src) {
+            super.setBookId(src.getBookId());
+            super.setIsbn(src.getIsbn());
+            super.setTitle(src.getTitle());
+            super.setPublisher(src.getPublisher());
+            super.setPublishDate(src.getPublishDate());
+            super.setEdition(src.getEdition());
+            super.setPrice(src.getPrice());
+            super.setStatus(src.getStatus());
+            super.setCoverImageUrl(src.getCoverImageUrl());
+            super.setCatalog(src.getCatalog());
+            super.setSeriesFlag(src.isSeriesFlag());
+            super.setParentBookId(src.getParentBookId());
+        }
+
+        @Override
+        public void setBookId(String bookId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIsbn(String isbn) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPublisher(String publisher) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPublishDate(LocalDate publishDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setEdition(String edition) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPrice(BigDecimal price) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setStatus(String status) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCoverImageUrl(String coverImageUrl) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCatalog(String catalog) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setSeriesFlag(boolean seriesFlag) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setParentBookId(String parentBookId) {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * 快照中的列表投影，与 {@link ReadOnlyBook} 一样构造后不可修改。
+     */
+    private static final class ReadOnlySummary extends BookSummary {
+
+        ReadOnlySummary(Book src) {
+            super.setBookId(src.getBookId());
+            super.setIsbn(src.getIsbn());
+            super.setTitle(src.getTitle());
+            super.setPublisher(src.getPublisher());
+            super.setPublishDate(src.getPublishDate());
+            super.setEdition(src.getEdition());
+            super.setPrice(src.getPrice());
+            super.setStatus(src.getStatus());
+            super.setCoverImageUrl(src.getCoverImageUrl());
+            super.setSeriesFlag(src.isSeriesFlag());
+            super.setParentBookId(src.getParentBookId());
+        }
+
+        @Override
+        public void setBookId(String bookId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIsbn(String isbn) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setTitle(String title) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPublisher(String publisher) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPublishDate(LocalDate publishDate) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setEdition(String edition) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setPrice(BigDecimal price) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setStatus(String status) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setCoverImageUrl(String coverImageUrl) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setSeriesFlag(boolean seriesFlag) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setParentBookId(String parentBookId) {
+            throw readOnly();
+        }
+    }
+}
@@ -7,9 +7,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * CreditLevel 数据访问类，当前阶段仅支持按主键查询。
+ * CreditLevel 数据访问类，支持按主键查询与整表读取。
+ * 业务代码请通过 {@link CreditLevelRegistry} 读取信用等级，不要每次请求都访问数据库。
  */
 public class CreditLevelDao {
 
@@ -21,19 +24,40 @@ public class CreditLevelDao {
             ps.setInt(1, levelId);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    CreditLevel level = new CreditLevel();
-                    level.setLevelId(rs.getInt("level_id"));
-                    level.setLevelName(rs.getString("level_name"));
-                    level.setDiscountRate(rs.getBigDecimal("discount_rate"));
-                    level.setAllowOverdraft(rs.getBoolean("allow_overdraft"));
-                    level.setOverdraftLimit(rs.getBigDecimal("overdraft_limit"));
-                    level.setUpgradeCondition(rs.getString("upgrade_condition"));
-                    return level;
+                    return mapRow(rs);
                 }
                 return null;
             }
         }
     }
+
+    /**
+     * 查询全部信用等级（按等级编号排序）。
+     */
+    public List<CreditLevel> findAll() throws SQLException {
+        String sql = "SELECT level_id, level_name, discount_rate, allow_overdraft, overdraft_limit, upgrade_condition " +
+                "FROM credit_level ORDER BY level_id";
+        List<CreditLevel> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                list.add(mapRow(rs));
+            }
+        }
+        return list;
+    }
+
+    private CreditLevel mapRow(ResultSet rs) throws SQLException {
+        CreditLevel level = new CreditLevel();
+        level.setLevelId(rs.getInt("level_id"));
+        level.setLevelName(rs.getString("level_name"));
+        level.setDiscountRate(rs.getBigDecimal("discount_rate"));
+        level.setAllowOverdraft(rs.getBoolean("allow_overdraft"));
+        level.setOverdraftLimit(rs.getBigDecimal("overdraft_limit"));
+        level.setUpgradeCondition(rs.getString("upgrade_condition"));
+        return level;
+    }
 }
 
 
@@ -0,0 +1,120 @@
+package com.bookstore.dao;
+
+import com.bookstore.model.CreditLevel;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 进程内信用等级注册表：credit_level 只有几行且极少修改，整表读入内存后供下单、付款、发货、个人信息等路径共用。
+ *
+ * - 快照不可变，整体替换，读取方只读一个 volatile 引用，从不加锁；
+ * - 快照超过 MAX_AGE_MILLIS 后，由第一个发现过期的线程重新加载，其余线程继续使用旧快照；
+ * - 直接修改 credit_level 表后可调用 refresh() 立即生效；
+ * - 返回的 CreditLevel 对象为共享实例，调用方只读，不要修改。
+ *
+ * 按累计消费自动升级的门槛（原 OrderService.checkAndUpgradeCreditLevel 中的硬编码规则）也由这里统一提供。
+ */
+public final class CreditLevelRegistry {
+
+    /** 快照最长存活时间，超时后重新加载。 */
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
+    /**
+     * 累计消费升级门槛：等级编号 -> 累计消费下限，按等级从高到低排列，达到某一门槛即升到该等级。
+     * 一级为默认等级，无门槛。
+     */
+    private static final Map<Integer, BigDecimal> UPGRADE_THRESHOLDS;
+
+    static {
+        Map<Integer, BigDecimal> m = new LinkedHashMap<>();
+        m.put(5, BigDecimal.valueOf(10000)); // 五级：累计消费满10000元
+        m.put(4, BigDecimal.valueOf(5000));  // 四级：累计消费满5000元
+        m.put(3, BigDecimal.valueOf(2000));  // 三级：累计消费满2000元
+        m.put(2, BigDecimal.valueOf(500));   // 二级：累计消费满500元
+        UPGRADE_THRESHOLDS = Collections.unmodifiableMap(m);
+    }
+
+    private static final Object LOAD_LOCK = new Object();
+    private static final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private static volatile Snapshot current;
+
+    private CreditLevelRegistry() {
+    }
+
+    private static final class Snapshot {
+        final long loadedAt;
+        final Map<Integer, CreditLevel> byId;
+        final List<CreditLevel> all;
+
+        Snapshot(long loadedAt, List<CreditLevel> levels) {
+            this.loadedAt = loadedAt;
+            Map<Integer, CreditLevel> map = new LinkedHashMap<>();
+            for (CreditLevel l : levels) {
+                map.put(l.getLevelId(), l);
+            }
+            this.byId = Collections.unmodifiableMap(map);
+            this.all = Collections.unmodifiableList(new ArrayList<>(levels));
+        }
+    }
+
+    /**
+     * 按等级编号取信用等级，不存在时返回 null。除首次加载与过期重载外不访问数据库。
+     */
+    public static CreditLevel get(int levelId) throws SQLException {
+        return snapshot().byId.get(levelId);
+    }
+
+    /**
+     * 全部信用等级，按等级编号排序。
+     */
+    public static List<CreditLevel> all() throws SQLException {
+        return snapshot().all;
+    }
+
+    /**
+     * 累计消费升级门槛（等级编号 -> 累计消费下限，按等级从高到低），不可修改。
+     */
+    public static Map<Integer, BigDecimal> upgradeThresholds() {
+        return UPGRADE_THRESHOLDS;
+    }
+
+    /**
+     * 立即从数据库重新加载全部信用等级。
+     */
+    public static void refresh() throws SQLException {
+        List<CreditLevel> levels = new CreditLevelDao().findAll();
+        current = new Snapshot(System.currentTimeMillis(), levels);
+    }
+
+    private static Snapshot snapshot() throws SQLException {
+        Snapshot s = current;
+        if (s == null) {
+            synchronized (LOAD_LOCK) {
+                if (current == null) {
+                    refresh();
+                }
+                return current;
+            }
+        }
+        if (System.currentTimeMillis() - s.loadedAt > MAX_AGE_MILLIS && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh();
+                return current;
+            } catch (SQLException e) {
+                // 重载失败时继续使用旧快照，下次访问再试
+                System.err.println("信用等级重新加载失败：" + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return s;
+    }
+}
@@ -5,6 +5,7 @@ import com.bookstore.util.DBUtil;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,7 +26,7 @@ public class CustomerDao {
                 "account_balance, total_consumption, registration_time, account_status, credit_level_id " +
                 "FROM customer ORDER BY customer_id";
         List<Customer> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -104,6 +105,26 @@ public class CustomerDao {
         }
     }
 
+    /**
+     * 以加锁读（FOR UPDATE）查询客户，读到的是最新已提交的余额与信用等级，而不是事务快照。
+     * 须在事务中调用，行锁持有到事务结束。
+     */
+    public Customer findByIdForUpdate(long customerId) throws SQLException {
+        String sql = "SELECT customer_id, username, password_hash, real_name, mobile_phone, email, " +
+                "account_balance, total_consumption, registration_time, account_status, credit_level_id " +
+                "FROM customer WHERE customer_id = ? FOR UPDATE";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return mapRow(rs);
+                }
+                return null;
+            }
+        }
+    }
+
     /**
      * 更新客户账户余额（不改变其他字段）。
      */
@@ -117,6 +138,73 @@ public class CustomerDao {
         }
     }
 
+    /**
+     * 条件扣款：一条 UPDATE 内完成“校验支付能力 + 扣减余额”，并发付款不会丢失更新。
+     * 仅当客户当前信用等级仍为 creditLevelId（保证按同一等级规则校验），
+     * 且 余额 + creditLimit >= amount 时才扣款；creditLimit 为 null 表示不限额。
+     *
+     * @param creditLimit 可用透支额度：不允许透支时为 0
+     * @return 受影响行数，0 表示支付能力不足或等级已变化
+     */
+    public int debitBalance(long customerId, int creditLevelId, BigDecimal amount, BigDecimal creditLimit)
+            throws SQLException {
+        String sql = "UPDATE customer SET account_balance = account_balance - ? " +
+                "WHERE customer_id = ? AND credit_level_id = ?" +
+                (creditLimit != null ? " AND account_balance + ? >= ?" : "");
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amount);
+            ps.setLong(2, customerId);
+            ps.setInt(3, creditLevelId);
+            if (creditLimit != null) {
+                ps.setBigDecimal(4, creditLimit);
+                ps.setBigDecimal(5, amount);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 账户充值：在原余额上累加，避免“读出余额再写回”丢失并发更新。
+     */
+    public int addAccountBalance(long customerId, BigDecimal amount) throws SQLException {
+        String sql = "UPDATE customer SET account_balance = account_balance + ? WHERE customer_id = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBigDecimal(1, amount);
+            ps.setLong(2, customerId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 按累计消费自动升级信用等级，一条 UPDATE 完成，不需要先读出客户：
+     * 用 CASE 按门槛从高到低求出应达到的等级，GREATEST 保证只升不降。
+     *
+     * @param thresholds 等级编号 -> 累计消费下限，须按等级从高到低排列
+     */
+    public int upgradeCreditLevelByConsumption(long customerId, Map<Integer, BigDecimal> thresholds)
+            throws SQLException {
+        if (thresholds.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE customer SET credit_level_id = GREATEST(credit_level_id, CASE");
+        for (int i = 0; i < thresholds.size(); i++) {
+            sql.append(" WHEN total_consumption >= ? THEN ?");
+        }
+        sql.append(" ELSE credit_level_id END) WHERE customer_id = ?");
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int idx = 1;
+            for (Map.Entry<Integer, BigDecimal> e : thresholds.entrySet()) {
+                ps.setBigDecimal(idx++, e.getValue());
+                ps.setInt(idx++, e.getKey());
+            }
+            ps.setLong(idx, customerId);
+            return ps.executeUpdate();
+        }
+    }
+
     /**
      * 更新客户信用等级。
      */
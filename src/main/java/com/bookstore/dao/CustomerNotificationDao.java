@@ -6,10 +6,14 @@ import com.bookstore.util.DBUtil;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 客户通知 DAO，对应表：customer_notification。
+ *
+ * 索引：idx_cn_customer(customer_id) 在 InnoDB 中隐含主键，等价于 (customer_id, notification_id)，
+ * 支撑按顾客的游标分页与断线补发；idx_cn_customer_read(customer_id, read_flag, created_time) 覆盖未读数统计。
  */
 public class CustomerNotificationDao {
 
@@ -19,18 +23,7 @@ public class CustomerNotificationDao {
                 "VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (Connection conn = DBUtil.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setLong(1, n.getCustomerId());
-            if (n.getOrderId() != null) {
-                ps.setLong(2, n.getOrderId());
-            } else {
-                ps.setNull(2, Types.BIGINT);
-            }
-            ps.setString(3, n.getType());
-            ps.setString(4, n.getTitle());
-            ps.setString(5, n.getContent());
-            ps.setTimestamp(6, Timestamp.valueOf(
-                    n.getCreatedTime() != null ? n.getCreatedTime() : LocalDateTime.now()));
-            ps.setBoolean(7, n.isReadFlag());
+            bindRow(ps, 1, n);
             ps.executeUpdate();
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
@@ -41,6 +34,52 @@ public class CustomerNotificationDao {
         return -1;
     }
 
+    /**
+     * 批量写入通知，多行 VALUES 一条语句完成，返回写入行数，并按顺序回填 notificationId。
+     * 由 {@link com.bookstore.service.NotificationOutbox} 的后台写线程调用。
+     */
+    public int insertBatch(List<CustomerNotification> list) throws SQLException {
+        if (list.isEmpty()) {
+            return 0;
+        }
+        String sql = "INSERT INTO customer_notification " +
+                "(customer_id, order_id, type, title, content, created_time, read_flag) VALUES " +
+                String.join(", ", Collections.nCopies(list.size(), "(?, ?, ?, ?, ?, ?, ?)"));
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            int idx = 1;
+            for (CustomerNotification n : list) {
+                idx = bindRow(ps, idx, n);
+            }
+            int rows = ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                for (CustomerNotification n : list) {
+                    if (!rs.next()) {
+                        break;
+                    }
+                    n.setNotificationId(rs.getLong(1));
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static int bindRow(PreparedStatement ps, int idx, CustomerNotification n) throws SQLException {
+        ps.setLong(idx++, n.getCustomerId());
+        if (n.getOrderId() != null) {
+            ps.setLong(idx++, n.getOrderId());
+        } else {
+            ps.setNull(idx++, Types.BIGINT);
+        }
+        ps.setString(idx++, n.getType());
+        ps.setString(idx++, n.getTitle());
+        ps.setString(idx++, n.getContent());
+        ps.setTimestamp(idx++, Timestamp.valueOf(
+                n.getCreatedTime() != null ? n.getCreatedTime() : LocalDateTime.now()));
+        ps.setBoolean(idx++, n.isReadFlag());
+        return idx;
+    }
+
     public List<CustomerNotification> findByCustomerId(long customerId) throws SQLException {
         String sql = "SELECT notification_id, customer_id, order_id, type, title, content, created_time, read_flag " +
                 "FROM customer_notification WHERE customer_id = ? ORDER BY created_time DESC, notification_id DESC";
@@ -57,6 +96,89 @@ public class CustomerNotificationDao {
         return list;
     }
 
+    /**
+     * 按 notification_id 倒序分页查询某顾客的通知。
+     *
+     * @param beforeId 游标：只返回 notification_id 小于该值的通知，为空表示从最新一条开始
+     * @param limit    最多返回条数
+     */
+    public List<CustomerNotification> findPageByCustomer(long customerId, Long beforeId, int limit) throws SQLException {
+        String sql = "SELECT notification_id, customer_id, order_id, type, title, content, created_time, read_flag " +
+                "FROM customer_notification WHERE customer_id = ?" +
+                (beforeId != null ? " AND notification_id < ?" : "") +
+                " ORDER BY notification_id DESC LIMIT ?";
+        List<CustomerNotification> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            ps.setLong(idx++, customerId);
+            if (beforeId != null) {
+                ps.setLong(idx++, beforeId);
+            }
+            ps.setInt(idx, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 查询某顾客 notification_id 大于 afterId 的通知（按 ID 升序，最多 limit 条），用于推送断线重连后的补发。
+     */
+    public List<CustomerNotification> findByCustomerAfter(long customerId, long afterId, int limit) throws SQLException {
+        String sql = "SELECT notification_id, customer_id, order_id, type, title, content, created_time, read_flag " +
+                "FROM customer_notification WHERE customer_id = ? AND notification_id > ? " +
+                "ORDER BY notification_id ASC LIMIT ?";
+        List<CustomerNotification> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            ps.setLong(2, afterId);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 某顾客最新一条通知的 ID，没有通知时返回 null。由 idx_cn_customer 直接取到，不回表。
+     */
+    public Long findLatestId(long customerId) throws SQLException {
+        String sql = "SELECT MAX(notification_id) FROM customer_notification WHERE customer_id = ?";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long id = rs.getLong(1);
+                    return rs.wasNull() ? null : id;
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 某顾客的未读通知数，只扫描 idx_cn_customer_read 中该顾客的未读区间，不回表。
+     */
+    public int countUnread(long customerId) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM customer_notification WHERE customer_id = ? AND read_flag = 0";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
     private CustomerNotification mapRow(ResultSet rs) throws SQLException {
         CustomerNotification n = new CustomerNotification();
         n.setNotificationId(rs.getLong("notification_id"));
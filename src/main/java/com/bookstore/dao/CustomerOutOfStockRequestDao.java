@@ -6,43 +6,29 @@ import com.bookstore.util.DBUtil;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 顾客缺书登记 DAO，对应表 customer_out_of_stock_request。
  */
 public class CustomerOutOfStockRequestDao {
 
+    private static final String INSERT_SQL = "INSERT INTO customer_out_of_stock_request " +
+            "(order_id, customer_id, book_id, requested_qty, customer_note, is_paid, processed_status, related_record_id, customer_notified, created_at, processed_at) "
+            +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     /**
      * 插入一条顾客缺书登记记录。
      */
     public long insert(CustomerOutOfStockRequest req) throws SQLException {
-        String sql = "INSERT INTO customer_out_of_stock_request " +
-                "(order_id, customer_id, book_id, requested_qty, customer_note, is_paid, processed_status, related_record_id, customer_notified, created_at, processed_at) "
-                +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = INSERT_SQL;
         try (Connection conn = DBUtil.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setLong(1, req.getOrderId());
-            ps.setLong(2, req.getCustomerId());
-            ps.setString(3, req.getBookId());
-            ps.setInt(4, req.getRequestedQty());
-            ps.setString(5, req.getCustomerNote());
-            ps.setBoolean(6, req.isPaid());
-            ps.setString(7, req.getProcessedStatus());
-            if (req.getRelatedRecordId() != null) {
-                ps.setLong(8, req.getRelatedRecordId());
-            } else {
-                ps.setNull(8, Types.BIGINT);
-            }
-            ps.setBoolean(9, req.isCustomerNotified());
-            LocalDateTime created = req.getCreatedAt() != null ? req.getCreatedAt() : LocalDateTime.now();
-            ps.setTimestamp(10, Timestamp.valueOf(created));
-            if (req.getProcessedAt() != null) {
-                ps.setTimestamp(11, Timestamp.valueOf(req.getProcessedAt()));
-            } else {
-                ps.setNull(11, Types.TIMESTAMP);
-            }
+            bind(ps, req);
             ps.executeUpdate();
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
@@ -53,6 +39,46 @@ public class CustomerOutOfStockRequestDao {
         return -1;
     }
 
+    /**
+     * 批量插入顾客缺书登记记录，一条批量语句完成（不回填 requestId）。
+     */
+    public void insertAll(List<CustomerOutOfStockRequest> reqs) throws SQLException {
+        if (reqs.isEmpty()) {
+            return;
+        }
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            for (CustomerOutOfStockRequest req : reqs) {
+                bind(ps, req);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void bind(PreparedStatement ps, CustomerOutOfStockRequest req) throws SQLException {
+        ps.setLong(1, req.getOrderId());
+        ps.setLong(2, req.getCustomerId());
+        ps.setString(3, req.getBookId());
+        ps.setInt(4, req.getRequestedQty());
+        ps.setString(5, req.getCustomerNote());
+        ps.setBoolean(6, req.isPaid());
+        ps.setString(7, req.getProcessedStatus());
+        if (req.getRelatedRecordId() != null) {
+            ps.setLong(8, req.getRelatedRecordId());
+        } else {
+            ps.setNull(8, Types.BIGINT);
+        }
+        ps.setBoolean(9, req.isCustomerNotified());
+        LocalDateTime created = req.getCreatedAt() != null ? req.getCreatedAt() : LocalDateTime.now();
+        ps.setTimestamp(10, Timestamp.valueOf(created));
+        if (req.getProcessedAt() != null) {
+            ps.setTimestamp(11, Timestamp.valueOf(req.getProcessedAt()));
+        } else {
+            ps.setNull(11, Types.TIMESTAMP);
+        }
+    }
+
     /**
      * 查询所有待处理且未付款的顾客缺书登记。
      */
@@ -109,6 +135,33 @@ public class CustomerOutOfStockRequestDao {
         }
     }
 
+    /**
+     * 批量更新登记的处理状态（登记ID -> 关联的缺书记录ID），一条批量语句完成。
+     */
+    public void updateProcessedStatusAll(Map<Long, Long> relatedRecordByRequest, String newStatus) throws SQLException {
+        if (relatedRecordByRequest.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE customer_out_of_stock_request " +
+                "SET processed_status = ?, related_record_id = ?, processed_at = ? WHERE request_id = ?";
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<Long, Long> e : relatedRecordByRequest.entrySet()) {
+                ps.setString(1, newStatus);
+                if (e.getValue() != null) {
+                    ps.setLong(2, e.getValue());
+                } else {
+                    ps.setNull(2, Types.BIGINT);
+                }
+                ps.setTimestamp(3, now);
+                ps.setLong(4, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
     /**
      * 查询某个客户所有“已处理但尚未通知顾客”的登记。
      */
@@ -169,6 +222,32 @@ public class CustomerOutOfStockRequestDao {
         return list;
     }
 
+    /**
+     * 查询等待多种书的已付款、已接受登记（按登记时间排序），一条 IN 查询完成。
+     */
+    public List<CustomerOutOfStockRequest> findAcceptedPaidByBookIds(Collection<String> bookIds) throws SQLException {
+        List<CustomerOutOfStockRequest> list = new ArrayList<>();
+        if (bookIds == null || bookIds.isEmpty()) {
+            return list;
+        }
+        List<String> ids = new ArrayList<>(bookIds);
+        String sql = "SELECT * FROM customer_out_of_stock_request " +
+                "WHERE book_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ") " +
+                "AND processed_status = 'ACCEPTED' AND is_paid = 1 ORDER BY created_at ASC";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
     /**
      * 将指定登记标记为“已通知顾客”。
      */
@@ -0,0 +1,88 @@
+package com.bookstore.dao;
+
+import com.bookstore.model.IdempotencyRecord;
+import com.bookstore.util.DBUtil;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * 幂等请求记录表 idempotency_record 数据访问对象。
+ *
+ * 记录在业务事务中先占位（{@link #claim}），业务完成后写入响应（{@link #complete}），与业务数据一起提交；
+ * 并发的重复请求在占位的 INSERT 上等待主键行锁，首个请求提交后即可读到已保存的响应，回滚则由后来者接手执行。
+ */
+public class IdempotencyRecordDao {
+
+    /**
+     * 占位：插入一条尚无响应的记录，同时保存请求体摘要。已存在（包括其他事务刚提交的）时返回 false。
+     */
+    public boolean claim(String scope, String idempotencyKey, String requestHash) throws SQLException {
+        String sql = "INSERT IGNORE INTO idempotency_record (scope, idempotency_key, request_hash) VALUES (?, ?, ?)";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, scope);
+            ps.setString(2, idempotencyKey);
+            ps.setString(3, requestHash);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * 写入首次执行的响应。
+     */
+    public void complete(String scope, String idempotencyKey, int responseStatus, String responseBody)
+            throws SQLException {
+        String sql = "UPDATE idempotency_record SET response_status = ?, response_body = ? " +
+                "WHERE scope = ? AND idempotency_key = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, responseStatus);
+            ps.setString(2, responseBody);
+            ps.setString(3, scope);
+            ps.setString(4, idempotencyKey);
+            ps.executeUpdate();
+        }
+    }
+
+    public IdempotencyRecord find(String scope, String idempotencyKey) throws SQLException {
+        String sql = "SELECT scope, idempotency_key, request_hash, response_status, response_body, created_at " +
+                "FROM idempotency_record WHERE scope = ? AND idempotency_key = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, scope);
+            ps.setString(2, idempotencyKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                IdempotencyRecord r = new IdempotencyRecord();
+                r.setScope(rs.getString("scope"));
+                r.setIdempotencyKey(rs.getString("idempotency_key"));
+                r.setRequestHash(rs.getString("request_hash"));
+                int status = rs.getInt("response_status");
+                if (!rs.wasNull()) {
+                    r.setResponseStatus(status);
+                }
+                r.setResponseBody(rs.getString("response_body"));
+                Timestamp ts = rs.getTimestamp("created_at");
+                if (ts != null) {
+                    r.setCreatedAt(ts.toLocalDateTime());
+                }
+                return r;
+            }
+        }
+    }
+
+    /**
+     * 清理早于指定时间的记录，返回删除行数。
+     */
+    public int deleteOlderThan(LocalDateTime before) throws SQLException {
+        String sql = "DELETE FROM idempotency_record WHERE created_at < ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setTimestamp(1, Timestamp.valueOf(before));
+            return ps.executeUpdate();
+        }
+    }
+}
@@ -5,10 +5,19 @@ import com.bookstore.util.DBUtil;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 库存数据访问对象
+ * reserved 为已被订单预留、尚未发货的数量，由 {@link com.bookstore.service.StockReservationEngine} 通过条件 UPDATE 维护，
+ * 可承诺量 = quantity - reserved。
  */
 public class InventoryDao {
 
@@ -25,6 +34,25 @@ public class InventoryDao {
         }
     }
 
+    /**
+     * 批量增加库存（书号 -> 增加数量），一条批量语句完成，用于采购到货。
+     */
+    public void increaseQuantities(Map<String, Integer> deltaByBook) throws SQLException {
+        if (deltaByBook.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE inventory SET quantity = quantity + ? WHERE book_id = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> e : deltaByBook.entrySet()) {
+                ps.setInt(1, e.getValue());
+                ps.setString(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
     /**
      * 减少库存（发货）
      */
@@ -39,6 +67,182 @@ public class InventoryDao {
         }
     }
 
+    /**
+     * 多种书各自的可承诺量 quantity - reserved（书号 -> 数量，按传入顺序），一条 IN 查询完成；
+     * inventory 中没有记录的书按 0 处理。可能为负（管理员把库存减到已预留数量以下后）。
+     */
+    public Map<String, Integer> getAvailable(Collection<String> bookIds) throws SQLException {
+        Map<String, Integer> found = new HashMap<>();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        if (bookIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        String sql = "SELECT book_id, quantity - reserved AS available FROM inventory WHERE book_id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    found.put(rs.getString("book_id"), rs.getInt("available"));
+                }
+            }
+        }
+        for (String id : ids) {
+            result.put(id, found.getOrDefault(id, 0));
+        }
+        return result;
+    }
+
+    /**
+     * 预留库存（书号 -> 数量）：每种书一条条件 UPDATE，只有可承诺量足够时才累加 reserved。
+     * 按传入顺序执行（调用方应按书号排序，使并发事务以相同顺序锁行），行锁持有到事务结束。
+     *
+     * @return 预留成功的书号集合
+     */
+    public Set<String> reserve(Map<String, Integer> quantities) throws SQLException {
+        String sql = "UPDATE inventory SET reserved = reserved + ? WHERE book_id = ? AND quantity - reserved >= ?";
+        Set<String> granted = new LinkedHashSet<>();
+        if (quantities.isEmpty()) {
+            return granted;
+        }
+        List<String> ids = new ArrayList<>(quantities.keySet());
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (String bookId : ids) {
+                int qty = quantities.get(bookId);
+                ps.setInt(1, qty);
+                ps.setString(2, bookId);
+                ps.setInt(3, qty);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    granted.add(ids.get(i));
+                }
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * 归还预留（书号 -> 数量），取消订单或拒绝缺书登记时调用。
+     */
+    public void unreserve(Map<String, Integer> quantities) throws SQLException {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE inventory SET reserved = GREATEST(reserved - ?, 0) WHERE book_id = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+                ps.setInt(1, e.getValue());
+                ps.setString(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 发货扣减（书号 -> 发货数量）：同时扣减 quantity 与本订单消耗的预留 fromReserved（书号 -> 数量）。
+     * 每种书一条条件 UPDATE，超出预留的部分必须在可承诺量之内，不会占用其他订单的预留。
+     *
+     * @return 扣减失败（可承诺量不足）的书号集合，调用方应据此回滚事务
+     */
+    public Set<String> ship(Map<String, Integer> shipByBook, Map<String, Integer> fromReserved) throws SQLException {
+        String sql = "UPDATE inventory SET quantity = quantity - ?, reserved = reserved - ? " +
+                "WHERE book_id = ? AND reserved >= ? AND quantity - reserved >= ?";
+        Set<String> failed = new LinkedHashSet<>();
+        if (shipByBook.isEmpty()) {
+            return failed;
+        }
+        List<String> ids = new ArrayList<>(shipByBook.keySet());
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (String bookId : ids) {
+                int qty = shipByBook.get(bookId);
+                int covered = fromReserved.getOrDefault(bookId, 0);
+                ps.setInt(1, qty);
+                ps.setInt(2, covered);
+                ps.setString(3, bookId);
+                ps.setInt(4, covered);
+                ps.setInt(5, qty - covered);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    failed.add(ids.get(i));
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 批量查询库存数量与安全库存（书号 -> 库存记录），一条 IN 查询完成，没有库存记录的书不出现在结果中。
+     */
+    public Map<String, Inventory> findByBookIds(Collection<String> bookIds) throws SQLException {
+        Map<String, Inventory> result = new LinkedHashMap<>();
+        if (bookIds.isEmpty()) {
+            return result;
+        }
+        String sql = "SELECT book_id, quantity, safety_stock, location_code FROM inventory WHERE book_id IN (" +
+                String.join(",", Collections.nCopies(bookIds.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (String bookId : bookIds) {
+                ps.setString(idx++, bookId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Inventory inv = mapRow(rs);
+                    result.put(inv.getBookId(), inv);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量查询多种书的库存数量与安全库存，一条 IN 查询完成。
+     * 返回 书号 -> {quantity, safety_stock}（按传入顺序）；inventory 中没有记录的书不在结果中，调用方按 0 处理。
+     */
+    public Map<String, int[]> getQuantities(Collection<String> bookIds) throws SQLException {
+        Map<String, int[]> found = new HashMap<>();
+        Map<String, int[]> result = new LinkedHashMap<>();
+        if (bookIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        String sql = "SELECT book_id, quantity, safety_stock FROM inventory WHERE book_id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    found.put(rs.getString("book_id"), new int[]{rs.getInt("quantity"), rs.getInt("safety_stock")});
+                }
+            }
+        }
+        for (String id : ids) {
+            int[] row = found.get(id);
+            if (row != null) {
+                result.put(id, row);
+            }
+        }
+        return result;
+    }
+
     /**
      * 查询当前库存数量
      */
@@ -92,16 +296,11 @@ public class InventoryDao {
     public List<Inventory> findAll() throws SQLException {
         String sql = "SELECT book_id, quantity, safety_stock, location_code FROM inventory ORDER BY book_id";
         List<Inventory> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                Inventory inv = new Inventory();
-                inv.setBookId(rs.getString("book_id"));
-                inv.setQuantity(rs.getInt("quantity"));
-                inv.setSafetyStock(rs.getInt("safety_stock"));
-                inv.setLocationCode(rs.getString("location_code"));
-                list.add(inv);
+                list.add(mapRow(rs));
             }
         }
         return list;
@@ -121,5 +320,13 @@ public class InventoryDao {
             return ps.executeUpdate();
         }
     }
-}
 
+    private static Inventory mapRow(ResultSet rs) throws SQLException {
+        Inventory inv = new Inventory();
+        inv.setBookId(rs.getString("book_id"));
+        inv.setQuantity(rs.getInt("quantity"));
+        inv.setSafetyStock(rs.getInt("safety_stock"));
+        inv.setLocationCode(rs.getString("location_code"));
+        return inv;
+    }
+}
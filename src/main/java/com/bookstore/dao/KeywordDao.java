@@ -129,4 +129,42 @@ public class KeywordDao {
         }
         return result;
     }
+
+    /**
+     * 查询关联了某个关键字的全部书目编号（关键字文本变更后用于刷新搜索索引）。
+     */
+    public Set<String> findBookIdsByKeywordId(long keywordId) throws SQLException {
+        String sql = "SELECT book_id FROM book_keyword WHERE keyword_id = ?";
+        Set<String> result = new HashSet<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, keywordId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(rs.getString("book_id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 一次查询出所有书目关联的关键字，按书号分组（用于构建搜索索引）。
+     */
+    public Map<String, List<Keyword>> findKeywordsGroupedByBook() throws SQLException {
+        String sql = "SELECT bk.book_id, k.keyword_id, k.keyword_text " +
+                "FROM book_keyword bk JOIN keyword k ON k.keyword_id = bk.keyword_id";
+        Map<String, List<Keyword>> result = new HashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Keyword k = new Keyword();
+                k.setKeywordId(rs.getLong("keyword_id"));
+                k.setKeywordText(rs.getString("keyword_text"));
+                result.computeIfAbsent(rs.getString("book_id"), id -> new ArrayList<>()).add(k);
+            }
+        }
+        return result;
+    }
 }
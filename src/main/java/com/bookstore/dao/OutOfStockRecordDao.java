@@ -2,10 +2,17 @@ package com.bookstore.dao;
 
 import com.bookstore.model.OutOfStockRecord;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 缺书记录数据访问对象
@@ -25,33 +32,10 @@ public class OutOfStockRecordDao {
         //
         // 通过 ON DUPLICATE KEY UPDATE + LAST_INSERT_ID(record_id) 保证无论是新插入还是追加数量，
         // getGeneratedKeys() 拿到的都是该书对应那条记录的 record_id。
-        String sql = "INSERT INTO out_of_stock_record " +
-                "(book_id, required_quantity, record_date, source, related_customer_id, status, priority) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE " +
-                "required_quantity = required_quantity + VALUES(required_quantity), " +
-                "record_date = VALUES(record_date), " +
-                "source = VALUES(source), " +
-                "related_customer_id = IFNULL(VALUES(related_customer_id), related_customer_id), " +
-                "priority = COALESCE(VALUES(priority), priority), " +
-                "record_id = LAST_INSERT_ID(record_id)";
+        String sql = UPSERT_PREFIX + "(?, ?, ?, ?, ?, ?, ?) " + UPSERT_SUFFIX;
         try (Connection conn = DBUtil.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, record.getBookId());
-            ps.setInt(2, record.getRequiredQuantity());
-            ps.setDate(3, Date.valueOf(record.getRecordDate()));
-            ps.setString(4, record.getSource());
-            if (record.getRelatedCustomerId() != null) {
-                ps.setLong(5, record.getRelatedCustomerId());
-            } else {
-                ps.setNull(5, Types.BIGINT);
-            }
-            ps.setString(6, record.getStatus());
-            if (record.getPriority() != null) {
-                ps.setInt(7, record.getPriority());
-            } else {
-                ps.setNull(7, Types.INTEGER);
-            }
+            bindRecord(ps, 1, record);
             ps.executeUpdate();
             try (ResultSet rs = ps.getGeneratedKeys()) {
                 if (rs.next()) {
@@ -62,6 +46,57 @@ public class OutOfStockRecordDao {
         return -1;
     }
 
+    /**
+     * 批量插入或累加缺书记录，规则与 {@link #insert(OutOfStockRecord)} 相同，多行 VALUES 一条语句完成。
+     * 用于发货后一次性登记所有跌破安全库存的书。
+     */
+    public int insertAll(List<OutOfStockRecord> records) throws SQLException {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        String sql = UPSERT_PREFIX +
+                String.join(", ", Collections.nCopies(records.size(), "(?, ?, ?, ?, ?, ?, ?)")) +
+                " " + UPSERT_SUFFIX;
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (OutOfStockRecord record : records) {
+                idx = bindRecord(ps, idx, record);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    private static final String UPSERT_PREFIX = "INSERT INTO out_of_stock_record " +
+            "(book_id, required_quantity, record_date, source, related_customer_id, status, priority) VALUES ";
+
+    private static final String UPSERT_SUFFIX = "ON DUPLICATE KEY UPDATE " +
+            "required_quantity = required_quantity + VALUES(required_quantity), " +
+            "record_date = VALUES(record_date), " +
+            "source = VALUES(source), " +
+            "related_customer_id = IFNULL(VALUES(related_customer_id), related_customer_id), " +
+            "priority = COALESCE(VALUES(priority), priority), " +
+            "record_id = LAST_INSERT_ID(record_id)";
+
+    private static int bindRecord(PreparedStatement ps, int idx, OutOfStockRecord record) throws SQLException {
+        ps.setString(idx++, record.getBookId());
+        ps.setInt(idx++, record.getRequiredQuantity());
+        ps.setDate(idx++, Date.valueOf(record.getRecordDate()));
+        ps.setString(idx++, record.getSource());
+        if (record.getRelatedCustomerId() != null) {
+            ps.setLong(idx++, record.getRelatedCustomerId());
+        } else {
+            ps.setNull(idx++, Types.BIGINT);
+        }
+        ps.setString(idx++, record.getStatus());
+        if (record.getPriority() != null) {
+            ps.setInt(idx++, record.getPriority());
+        } else {
+            ps.setNull(idx++, Types.INTEGER);
+        }
+        return idx;
+    }
+
     /**
      * 查询所有待处理的缺书记录
      */
@@ -113,6 +148,52 @@ public class OutOfStockRecordDao {
         return null;
     }
 
+    /**
+     * 按一组 recordId 一次查询，返回 recordId -> 记录，不存在的 ID 不在结果中。
+     */
+    public Map<Long, OutOfStockRecord> findByIds(Collection<Long> recordIds) throws SQLException {
+        Map<Long, OutOfStockRecord> map = new HashMap<>();
+        if (recordIds == null || recordIds.isEmpty()) {
+            return map;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(recordIds));
+        String sql = "SELECT * FROM out_of_stock_record WHERE record_id IN (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    OutOfStockRecord r = mapRow(rs);
+                    map.put(r.getRecordId(), r);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 把一组缺书记录更新为同一状态，一条语句完成，返回更新的行数。
+     */
+    public int updateStatusAll(Collection<Long> recordIds, String newStatus) throws SQLException {
+        if (recordIds == null || recordIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(recordIds));
+        String sql = "UPDATE out_of_stock_record SET status = ? WHERE record_id IN (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, newStatus);
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setLong(i + 2, ids.get(i));
+            }
+            return ps.executeUpdate();
+        }
+    }
+
     /**
      * 更新缺书记录状态
      */
@@ -171,6 +252,122 @@ public class OutOfStockRecordDao {
         updateStatus(recordId, "COMPLETED");
     }
 
+    /**
+     * 各书当前 PENDING 缺书记录的 record_id（书号 -> record_id），一条 IN 查询完成；
+     * 在 {@link #insertAll(List)} 之后调用，取得各书插入或累加后对应的记录。
+     */
+    public Map<String, Long> findPendingIdsByBookIds(Collection<String> bookIds) throws SQLException {
+        Map<String, Long> result = new HashMap<>();
+        if (bookIds == null || bookIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        String sql = "SELECT book_id, record_id FROM out_of_stock_record WHERE status = 'PENDING' AND book_id IN (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString("book_id"), rs.getLong("record_id"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量版 {@link #completeRecordSafely(long)}，按传入顺序处理、规则相同，语句数与记录数无关：
+     * 同一本书只保留一条 COMPLETED 记录，其余记录的采购明细外键重定向到该记录后删除。
+     */
+    public void completeRecordsSafely(Collection<Long> recordIds) throws SQLException {
+        if (recordIds == null || recordIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(recordIds));
+        // 查询、外键重定向、状态更新与删除在同一事务连接上完成；调用方已开启事务时加入该事务
+        TransactionContext.run(conn -> {
+            Map<Long, String> bookByRecord = new HashMap<>();
+            String findSql = "SELECT record_id, book_id FROM out_of_stock_record WHERE record_id IN (" +
+                    String.join(", ", Collections.nCopies(ids.size(), "?")) + ") FOR UPDATE";
+            try (PreparedStatement ps = conn.prepareStatement(findSql)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    ps.setLong(i + 1, ids.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        bookByRecord.put(rs.getLong("record_id"), rs.getString("book_id"));
+                    }
+                }
+            }
+            if (bookByRecord.isEmpty()) {
+                return;
+            }
+
+            List<String> bookIds = new ArrayList<>(new LinkedHashSet<>(bookByRecord.values()));
+            Map<String, Long> completedByBook = new HashMap<>();
+            String completedSql = "SELECT book_id, record_id FROM out_of_stock_record " +
+                    "WHERE status = 'COMPLETED' AND book_id IN (" +
+                    String.join(", ", Collections.nCopies(bookIds.size(), "?")) + ")";
+            try (PreparedStatement ps = conn.prepareStatement(completedSql)) {
+                for (int i = 0; i < bookIds.size(); i++) {
+                    ps.setString(i + 1, bookIds.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        completedByBook.putIfAbsent(rs.getString("book_id"), rs.getLong("record_id"));
+                    }
+                }
+            }
+
+            List<Long> toComplete = new ArrayList<>();
+            Map<Long, Long> mergeInto = new LinkedHashMap<>();
+            for (Long recordId : ids) {
+                String bookId = bookByRecord.get(recordId);
+                if (bookId == null) {
+                    continue;
+                }
+                Long existingId = completedByBook.get(bookId);
+                if (existingId == null) {
+                    // 该书还没有 COMPLETED 记录：本条成为该书的 COMPLETED 记录
+                    toComplete.add(recordId);
+                    completedByBook.put(bookId, recordId);
+                } else if (!existingId.equals(recordId)) {
+                    mergeInto.put(recordId, existingId);
+                }
+            }
+
+            if (!mergeInto.isEmpty()) {
+                // 1. 将所有指向被合并记录的采购明细外键重定向到该书的 COMPLETED 记录
+                try (PreparedStatement up = conn.prepareStatement(
+                        "UPDATE purchase_order_item SET related_out_of_stock_id = ? WHERE related_out_of_stock_id = ?")) {
+                    for (Map.Entry<Long, Long> e : mergeInto.entrySet()) {
+                        up.setLong(1, e.getValue());
+                        up.setLong(2, e.getKey());
+                        up.addBatch();
+                    }
+                    up.executeBatch();
+                }
+            }
+            // 2. 没有其它 COMPLETED 记录的，正常更新状态（先于删除，被合并记录的外键已指向这些记录）
+            updateStatusAll(toComplete, "COMPLETED");
+            if (!mergeInto.isEmpty()) {
+                // 3. 删除被合并的记录，避免违反 (book_id, status) 唯一约束
+                String deleteSql = "DELETE FROM out_of_stock_record WHERE record_id IN (" +
+                        String.join(", ", Collections.nCopies(mergeInto.size(), "?")) + ")";
+                try (PreparedStatement del = conn.prepareStatement(deleteSql)) {
+                    int idx = 1;
+                    for (Long recordId : mergeInto.keySet()) {
+                        del.setLong(idx++, recordId);
+                    }
+                    del.executeUpdate();
+                }
+            }
+        });
+    }
+
     private OutOfStockRecord mapRow(ResultSet rs) throws SQLException {
         OutOfStockRecord r = new OutOfStockRecord();
         r.setRecordId(rs.getLong("record_id"));
@@ -88,7 +88,7 @@ public class PurchaseOrderDao {
     public List<PurchaseOrder> findAll() throws SQLException {
         String sql = "SELECT * FROM purchase_order ORDER BY purchase_order_id DESC";
         List<PurchaseOrder> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
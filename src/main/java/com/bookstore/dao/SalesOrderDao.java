@@ -3,21 +3,28 @@ package com.bookstore.dao;
 import com.bookstore.model.SalesOrder;
 import com.bookstore.model.SalesOrderItem;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * SalesOrder / SalesOrderItem 数据访问类。
  * 本阶段实现：在一个事务中创建订单主表和明细表记录，并支持简单查询回显。
+ * 订单列表查询（管理端列表、顾客订单历史）通过 DBUtil.getReadConnection 读取，配置了只读副本时走副本；
+ * 顾客刚下单 / 付款后其订单历史仍读主库，见 {@link DBUtil#markCustomerWrite(long)}。
  */
 public class SalesOrderDao {
 
     /**
      * 在一个事务中创建订单及其明细。
      * 调用前应保证 order 中的金额字段、优惠快照等已经计算好。
+     * 若调用方已开启 {@link TransactionContext}，则直接加入调用方事务。
      */
     public void createOrder(SalesOrder order, List<SalesOrderItem> items) throws SQLException {
         String insertOrderSql = "INSERT INTO sales_order " +
@@ -29,55 +36,44 @@ public class SalesOrderDao {
                 "(order_id, book_id, quantity, shipped_quantity, received_quantity, unit_price, sub_amount, item_status) " +
                 "VALUES (?, ?, ?, 0, 0, ?, ?, ?)";
 
-        try (Connection conn = DBUtil.getConnection()) {
-            try {
-                conn.setAutoCommit(false);
+        TransactionContext.run(conn -> {
+            // 插入订单主表
+            try (PreparedStatement psOrder = conn.prepareStatement(insertOrderSql, Statement.RETURN_GENERATED_KEYS)) {
+                psOrder.setLong(1, order.getCustomerId());
+                psOrder.setTimestamp(2, Timestamp.valueOf(
+                        order.getOrderTime() != null ? order.getOrderTime() : LocalDateTime.now()));
+                psOrder.setString(3, order.getOrderStatus());
+                psOrder.setBigDecimal(4, order.getGoodsAmount());
+                psOrder.setBigDecimal(5, order.getDiscountRateSnapshot());
+                psOrder.setBigDecimal(6, order.getPayableAmount());
+                psOrder.setString(7, order.getShippingAddressSnapshot());
+                psOrder.setString(8, order.getCustomerNote());
 
-                // 插入订单主表
-                try (PreparedStatement psOrder = conn.prepareStatement(insertOrderSql, Statement.RETURN_GENERATED_KEYS)) {
-                    psOrder.setLong(1, order.getCustomerId());
-                    psOrder.setTimestamp(2, Timestamp.valueOf(
-                            order.getOrderTime() != null ? order.getOrderTime() : LocalDateTime.now()));
-                    psOrder.setString(3, order.getOrderStatus());
-                    psOrder.setBigDecimal(4, order.getGoodsAmount());
-                    psOrder.setBigDecimal(5, order.getDiscountRateSnapshot());
-                    psOrder.setBigDecimal(6, order.getPayableAmount());
-                    psOrder.setString(7, order.getShippingAddressSnapshot());
-                    psOrder.setString(8, order.getCustomerNote());
-
-                    psOrder.executeUpdate();
-                    try (ResultSet keys = psOrder.getGeneratedKeys()) {
-                        if (keys.next()) {
-                            long orderId = keys.getLong(1);
-                            order.setOrderId(orderId);
-                            // 插入明细
-                            try (PreparedStatement psItem = conn.prepareStatement(insertItemSql)) {
-                                for (SalesOrderItem item : items) {
-                                    item.setOrderId(orderId);
-                                    psItem.setLong(1, item.getOrderId());
-                                    psItem.setString(2, item.getBookId());
-                                    psItem.setInt(3, item.getQuantity());
-                                    psItem.setBigDecimal(4, item.getUnitPrice());
-                                    psItem.setBigDecimal(5, item.getSubAmount());
-                                    psItem.setString(6, item.getItemStatus());
-                                    psItem.addBatch();
-                                }
-                                psItem.executeBatch();
+                psOrder.executeUpdate();
+                try (ResultSet keys = psOrder.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        long orderId = keys.getLong(1);
+                        order.setOrderId(orderId);
+                        // 插入明细
+                        try (PreparedStatement psItem = conn.prepareStatement(insertItemSql)) {
+                            for (SalesOrderItem item : items) {
+                                item.setOrderId(orderId);
+                                psItem.setLong(1, item.getOrderId());
+                                psItem.setString(2, item.getBookId());
+                                psItem.setInt(3, item.getQuantity());
+                                psItem.setBigDecimal(4, item.getUnitPrice());
+                                psItem.setBigDecimal(5, item.getSubAmount());
+                                psItem.setString(6, item.getItemStatus());
+                                psItem.addBatch();
                             }
-                        } else {
-                            throw new SQLException("创建订单失败，未获取到生成的主键。");
+                            psItem.executeBatch();
                         }
+                    } else {
+                        throw new SQLException("创建订单失败，未获取到生成的主键。");
                     }
                 }
-
-                conn.commit();
-            } catch (SQLException ex) {
-                conn.rollback();
-                throw ex;
-            } finally {
-                conn.setAutoCommit(true);
             }
-        }
+        });
     }
 
     /**
@@ -188,6 +184,59 @@ public class SalesOrderDao {
         }
     }
 
+    /**
+     * 批量累加订单明细的收货数量（订单明细ID -> 本次收货数量），一条 UPDATE 完成，
+     * 并按累加后的收货数量把明细状态置为 RECEIVED（全部收到）或 PART_SHIPPED。
+     */
+    public int addReceivedQuantities(Map<Long, Integer> receivedByItem) throws SQLException {
+        if (receivedByItem.isEmpty()) {
+            return 0;
+        }
+        String sql = "UPDATE sales_order_item SET received_quantity = received_quantity + CASE order_item_id" +
+                String.join("", Collections.nCopies(receivedByItem.size(), " WHEN ? THEN ?")) + " END, " +
+                "item_status = CASE WHEN received_quantity >= quantity THEN 'RECEIVED' ELSE 'PART_SHIPPED' END " +
+                "WHERE order_item_id IN (" + String.join(",", Collections.nCopies(receivedByItem.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (Map.Entry<Long, Integer> e : receivedByItem.entrySet()) {
+                ps.setLong(idx++, e.getKey());
+                ps.setInt(idx++, e.getValue());
+            }
+            for (Long orderItemId : receivedByItem.keySet()) {
+                ps.setLong(idx++, orderItemId);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 批量累加订单明细的发货数量（订单明细ID -> 本次发货数量），一条 UPDATE 完成，
+     * 并按累加后的发货数量把明细状态置为 SHIPPED（全部发出）或 PART_SHIPPED。
+     * MySQL 按书写顺序求值 SET 子句，item_status 判断使用的是更新后的 shipped_quantity。
+     */
+    public int addShippedQuantities(Map<Long, Integer> shippedByItem) throws SQLException {
+        if (shippedByItem.isEmpty()) {
+            return 0;
+        }
+        String sql = "UPDATE sales_order_item SET shipped_quantity = shipped_quantity + CASE order_item_id" +
+                String.join("", Collections.nCopies(shippedByItem.size(), " WHEN ? THEN ?")) + " END, " +
+                "item_status = CASE WHEN shipped_quantity >= quantity THEN 'SHIPPED' ELSE 'PART_SHIPPED' END " +
+                "WHERE order_item_id IN (" + String.join(",", Collections.nCopies(shippedByItem.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (Map.Entry<Long, Integer> e : shippedByItem.entrySet()) {
+                ps.setLong(idx++, e.getKey());
+                ps.setInt(idx++, e.getValue());
+            }
+            for (Long orderItemId : shippedByItem.keySet()) {
+                ps.setLong(idx++, orderItemId);
+            }
+            return ps.executeUpdate();
+        }
+    }
+
     /**
      * 查询所有订单。
      */
@@ -196,7 +245,7 @@ public class SalesOrderDao {
                 "discount_rate_snapshot, payable_amount, shipping_address_snapshot, payment_time " +
                 "FROM sales_order ORDER BY order_id DESC";
         List<SalesOrder> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
@@ -214,7 +263,7 @@ public class SalesOrderDao {
                 "discount_rate_snapshot, payable_amount, shipping_address_snapshot, payment_time " +
                 "FROM sales_order WHERE order_status = ? ORDER BY order_id DESC";
         List<SalesOrder> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, status);
             try (ResultSet rs = ps.executeQuery()) {
@@ -226,6 +275,46 @@ public class SalesOrderDao {
         return list;
     }
 
+    /**
+     * 按订单号倒序的游标分页查询：返回 order_id 小于 afterOrderId 的前 limit 条订单。
+     * status 为空时不过滤状态（走主键）；否则走 (order_status, order_id) 联合索引，
+     * 无论翻到第几页都只扫描 limit 行。
+     *
+     * @param status       订单状态，可为空
+     * @param afterOrderId 上一页最后一条的订单号，为空表示第一页
+     * @param limit        最多返回的条数
+     */
+    public List<SalesOrder> findPage(String status, Long afterOrderId, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT order_id, customer_id, order_time, order_status, goods_amount, " +
+                "discount_rate_snapshot, payable_amount, shipping_address_snapshot, payment_time " +
+                "FROM sales_order WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        if (status != null) {
+            sql.append(" AND order_status = ?");
+            params.add(status);
+        }
+        if (afterOrderId != null) {
+            sql.append(" AND order_id < ?");
+            params.add(afterOrderId);
+        }
+        sql.append(" ORDER BY order_id DESC LIMIT ?");
+        params.add(limit);
+
+        List<SalesOrder> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(mapOrderRow(rs));
+                }
+            }
+        }
+        return list;
+    }
+
     /**
      * 按客户查询其所有订单，按时间倒序。
      */
@@ -234,7 +323,7 @@ public class SalesOrderDao {
                 "discount_rate_snapshot, payable_amount, shipping_address_snapshot, payment_time " +
                 "FROM sales_order WHERE customer_id = ? ORDER BY order_id DESC";
         List<SalesOrder> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection(customerId);
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setLong(1, customerId);
             try (ResultSet rs = ps.executeQuery()) {
@@ -246,6 +335,52 @@ public class SalesOrderDao {
         return list;
     }
 
+    /**
+     * 查询某客户的订单及其是否已有发货记录，一条 SQL 完成（EXISTS 走 shipment.order_id 索引）。
+     * 按订单号倒序，支持与 findPage 相同的游标分页。
+     *
+     * @param status       订单状态，可为空
+     * @param afterOrderId 上一页最后一条的订单号，为空表示第一页
+     * @param limit        最多返回的条数，<= 0 表示不限
+     * @return 订单到“是否有发货记录”的映射，保持查询顺序
+     */
+    public Map<SalesOrder, Boolean> findByCustomerWithShipmentFlag(long customerId, String status,
+                                                                   Long afterOrderId, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT o.order_id, o.customer_id, o.order_time, o.order_status, o.goods_amount, " +
+                "o.discount_rate_snapshot, o.payable_amount, o.shipping_address_snapshot, o.payment_time, " +
+                "EXISTS (SELECT 1 FROM shipment s WHERE s.order_id = o.order_id) AS has_shipments " +
+                "FROM sales_order o WHERE o.customer_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(customerId);
+        if (status != null) {
+            sql.append(" AND o.order_status = ?");
+            params.add(status);
+        }
+        if (afterOrderId != null) {
+            sql.append(" AND o.order_id < ?");
+            params.add(afterOrderId);
+        }
+        sql.append(" ORDER BY o.order_id DESC");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+
+        Map<SalesOrder, Boolean> result = new LinkedHashMap<>();
+        try (Connection conn = DBUtil.getReadConnection(customerId);
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(mapOrderRow(rs), rs.getBoolean("has_shipments"));
+                }
+            }
+        }
+        return result;
+    }
+
     private SalesOrder mapOrderRow(ResultSet rs) throws SQLException {
         SalesOrder o = new SalesOrder();
         o.setOrderId(rs.getLong("order_id"));
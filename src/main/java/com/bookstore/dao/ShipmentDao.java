@@ -3,11 +3,14 @@ package com.bookstore.dao;
 import com.bookstore.model.Shipment;
 import com.bookstore.model.ShipmentItem;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 发货单及发货明细 DAO。
@@ -20,51 +23,38 @@ public class ShipmentDao {
         String insertItemSql = "INSERT INTO shipment_item (shipment_id, order_item_id, ship_quantity, receive_status, received_quantity) " +
                 "VALUES (?, ?, ?, 'PENDING', 0)";
 
-        long shipmentId = -1;
-        try (Connection conn = DBUtil.getConnection()) {
-            try {
-                conn.setAutoCommit(false);
-
-                try (PreparedStatement psShip = conn.prepareStatement(insertShipmentSql, Statement.RETURN_GENERATED_KEYS)) {
-                    psShip.setLong(1, shipment.getOrderId());
-                    psShip.setTimestamp(2, Timestamp.valueOf(
-                            shipment.getShipTime() != null ? shipment.getShipTime() : LocalDateTime.now()));
-                    psShip.setString(3, shipment.getCarrier());
-                    psShip.setString(4, shipment.getTrackingNumber());
-                    psShip.setString(5, shipment.getShipmentStatus());
-                    psShip.setString(6, shipment.getOperator());
-                    psShip.executeUpdate();
-
-                    try (ResultSet keys = psShip.getGeneratedKeys()) {
-                        if (keys.next()) {
-                            shipmentId = keys.getLong(1);
-                            shipment.setShipmentId(shipmentId);
-
-                            try (PreparedStatement psItem = conn.prepareStatement(insertItemSql)) {
-                                for (ShipmentItem item : items) {
-                                    item.setShipmentId(shipmentId);
-                                    psItem.setLong(1, item.getShipmentId());
-                                    psItem.setLong(2, item.getOrderItemId());
-                                    psItem.setInt(3, item.getShipQuantity());
-                                    psItem.addBatch();
-                                }
-                                psItem.executeBatch();
+        return TransactionContext.execute(conn -> {
+            try (PreparedStatement psShip = conn.prepareStatement(insertShipmentSql, Statement.RETURN_GENERATED_KEYS)) {
+                psShip.setLong(1, shipment.getOrderId());
+                psShip.setTimestamp(2, Timestamp.valueOf(
+                        shipment.getShipTime() != null ? shipment.getShipTime() : LocalDateTime.now()));
+                psShip.setString(3, shipment.getCarrier());
+                psShip.setString(4, shipment.getTrackingNumber());
+                psShip.setString(5, shipment.getShipmentStatus());
+                psShip.setString(6, shipment.getOperator());
+                psShip.executeUpdate();
+
+                try (ResultSet keys = psShip.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        long shipmentId = keys.getLong(1);
+                        shipment.setShipmentId(shipmentId);
+
+                        try (PreparedStatement psItem = conn.prepareStatement(insertItemSql)) {
+                            for (ShipmentItem item : items) {
+                                item.setShipmentId(shipmentId);
+                                psItem.setLong(1, item.getShipmentId());
+                                psItem.setLong(2, item.getOrderItemId());
+                                psItem.setInt(3, item.getShipQuantity());
+                                psItem.addBatch();
                             }
-                        } else {
-                            throw new SQLException("创建发货单失败，未获取到主键。");
+                            psItem.executeBatch();
                         }
+                        return shipmentId;
                     }
+                    throw new SQLException("创建发货单失败，未获取到主键。");
                 }
-
-                conn.commit();
-            } catch (SQLException ex) {
-                conn.rollback();
-                throw ex;
-            } finally {
-                conn.setAutoCommit(true);
             }
-        }
-        return shipmentId;
+        });
     }
 
     public List<Shipment> findByOrderId(long orderId) throws SQLException {
@@ -121,6 +111,38 @@ public class ShipmentDao {
         return list;
     }
 
+    /**
+     * 一次查询出某订单全部发货单的发货明细（按发货单、明细号排序），替代逐张调用 findItemsByShipmentId。
+     */
+    public List<ShipmentItem> findItemsByOrderId(long orderId) throws SQLException {
+        String sql = "SELECT si.shipment_item_id, si.shipment_id, si.order_item_id, si.ship_quantity, si.receive_status, " +
+                "si.received_quantity, si.received_time " +
+                "FROM shipment_item si JOIN shipment s ON s.shipment_id = si.shipment_id " +
+                "WHERE s.order_id = ? ORDER BY si.shipment_id, si.shipment_item_id";
+        List<ShipmentItem> list = new ArrayList<>();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, orderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ShipmentItem item = new ShipmentItem();
+                    item.setShipmentItemId(rs.getLong("shipment_item_id"));
+                    item.setShipmentId(rs.getLong("shipment_id"));
+                    item.setOrderItemId(rs.getLong("order_item_id"));
+                    item.setShipQuantity(rs.getInt("ship_quantity"));
+                    item.setReceiveStatus(rs.getString("receive_status"));
+                    item.setReceivedQuantity(rs.getInt("received_quantity"));
+                    Timestamp rt = rs.getTimestamp("received_time");
+                    if (rt != null) {
+                        item.setReceivedTime(rt.toLocalDateTime());
+                    }
+                    list.add(item);
+                }
+            }
+        }
+        return list;
+    }
+
     /**
      * 查询某订单明细下尚未全部收货的发货明细（按创建顺序）。
      */
@@ -167,6 +189,31 @@ public class ShipmentDao {
         }
     }
 
+    /**
+     * 批量更新发货明细的收货进度（发货明细ID -> 本次收货数量），一条批量语句完成；
+     * finished 中的明细置为 RECEIVED 并记录收货时间，其余保持 PENDING。
+     */
+    public void updateReceiveProgress(Map<Long, Integer> addReceivedByItem, Set<Long> finished) throws SQLException {
+        if (addReceivedByItem.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE shipment_item SET received_quantity = received_quantity + ?, " +
+                "receive_status = ?, received_time = ? WHERE shipment_item_id = ?";
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<Long, Integer> e : addReceivedByItem.entrySet()) {
+                boolean done = finished.contains(e.getKey());
+                ps.setInt(1, e.getValue());
+                ps.setString(2, done ? "RECEIVED" : "PENDING");
+                ps.setTimestamp(3, done ? now : null);
+                ps.setLong(4, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
     /**
      * 汇总某订单明细的累计发货数量（用于兜底校验/显示）。
      */
@@ -5,7 +5,11 @@ import com.bookstore.util.DBUtil;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 购物车 DAO，负责对 shopping_cart 表进行增删改查。
@@ -73,9 +77,17 @@ public class ShoppingCartDao {
      * 获取用户购物车列表（带图书信息）
      */
     public List<CartItem> findByCustomerId(long customerId) throws SQLException {
+        return findByCustomerId(customerId, false);
+    }
+
+    /**
+     * 获取用户购物车列表（带图书信息）。
+     * forUpdate 为 true 时在事务中锁定该用户的购物车行（不锁 book 行），用于结算，防止同一购物车被并发重复下单。
+     */
+    public List<CartItem> findByCustomerId(long customerId, boolean forUpdate) throws SQLException {
         String sql = "SELECT c.cart_item_id, c.customer_id, c.book_id, c.quantity, b.title, b.price " +
                 "FROM shopping_cart c JOIN book b ON c.book_id = b.book_id " +
-                "WHERE c.customer_id = ? ORDER BY c.created_at DESC";
+                "WHERE c.customer_id = ? ORDER BY c.created_at DESC" + (forUpdate ? " FOR UPDATE OF c" : "");
         List<CartItem> list = new ArrayList<>();
         try (Connection conn = DBUtil.getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -97,29 +109,92 @@ public class ShoppingCartDao {
     }
 
     /**
-     * 添加或更新购物车商品（如果已存在则累加数量）
+     * 添加或更新购物车商品（如果已存在则累加数量），一条语句完成，依赖 uk_customer_book 唯一索引。
      */
     public void upsert(long customerId, String bookId, int quantity) throws SQLException {
-        try (Connection conn = DBUtil.getConnection()) {
-            // 先尝试更新已存在的记录
-            String updateSql = "UPDATE shopping_cart SET quantity = quantity + ? WHERE customer_id = ? AND book_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(updateSql)) {
-                ps.setInt(1, quantity);
-                ps.setLong(2, customerId);
-                ps.setString(3, bookId);
-                int updated = ps.executeUpdate();
-
-                // 如果没有更新任何记录，说明不存在，需要插入
-                if (updated == 0) {
-                    String insertSql = "INSERT INTO shopping_cart (customer_id, book_id, quantity) VALUES (?, ?, ?)";
-                    try (PreparedStatement insertPs = conn.prepareStatement(insertSql)) {
-                        insertPs.setLong(1, customerId);
-                        insertPs.setString(2, bookId);
-                        insertPs.setInt(3, quantity);
-                        insertPs.executeUpdate();
-                    }
+        String sql = "INSERT INTO shopping_cart (customer_id, book_id, quantity) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            ps.setString(2, bookId);
+            ps.setInt(3, quantity);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * 读取用户购物车的书号与数量（不连接 book 表），按加入时间从早到晚排列。
+     */
+    public Map<String, Integer> findQuantities(long customerId) throws SQLException {
+        String sql = "SELECT book_id, quantity FROM shopping_cart WHERE customer_id = ? " +
+                "ORDER BY created_at, cart_item_id";
+        Map<String, Integer> map = new LinkedHashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, customerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    map.put(rs.getString("book_id"), rs.getInt("quantity"));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 批量写入多个用户的购物车行（客户 ID -> 书号 -> 数量），已存在的行把数量设置为给定值。
+     * 一条多行 INSERT ... ON DUPLICATE KEY UPDATE 完成，返回写入的行数。
+     */
+    public int upsertQuantities(Map<Long, Map<String, Integer>> linesByCustomer) throws SQLException {
+        int rows = 0;
+        for (Map<String, Integer> lines : linesByCustomer.values()) {
+            rows += lines.size();
+        }
+        if (rows == 0) {
+            return 0;
+        }
+        String sql = "INSERT INTO shopping_cart (customer_id, book_id, quantity) VALUES " +
+                String.join(", ", Collections.nCopies(rows, "(?, ?, ?)")) +
+                " ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (Map.Entry<Long, Map<String, Integer>> c : linesByCustomer.entrySet()) {
+                for (Map.Entry<String, Integer> line : c.getValue().entrySet()) {
+                    ps.setLong(idx++, c.getKey());
+                    ps.setString(idx++, line.getKey());
+                    ps.setInt(idx++, line.getValue());
+                }
+            }
+            ps.executeUpdate();
+        }
+        return rows;
+    }
+
+    /**
+     * 批量删除多个用户的购物车行（客户 ID -> 书号集合），一条 DELETE 完成，返回删除的行数。
+     */
+    public int deleteLines(Map<Long, ? extends Collection<String>> booksByCustomer) throws SQLException {
+        int pairs = 0;
+        for (Collection<String> books : booksByCustomer.values()) {
+            pairs += books.size();
+        }
+        if (pairs == 0) {
+            return 0;
+        }
+        String sql = "DELETE FROM shopping_cart WHERE (customer_id, book_id) IN (" +
+                String.join(", ", Collections.nCopies(pairs, "(?, ?)")) + ")";
+        try (Connection conn = DBUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            for (Map.Entry<Long, ? extends Collection<String>> c : booksByCustomer.entrySet()) {
+                for (String bookId : c.getValue()) {
+                    ps.setLong(idx++, c.getKey());
+                    ps.setString(idx++, bookId);
                 }
             }
+            return ps.executeUpdate();
         }
     }
 
@@ -0,0 +1,103 @@
+package com.bookstore.dao;
+
+import com.bookstore.util.DBUtil;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 库存预留表 stock_reservation 数据访问对象。
+ *
+ * 每个订单每种书一行：quantity 为下单时预留的数量，committed_quantity 为已随发货扣减的数量，
+ * 状态 RESERVED 的行中 quantity - committed_quantity 即仍占用的可承诺量。
+ * 各书预留合计同时记在 inventory.reserved 上，两者由 {@link com.bookstore.service.StockReservationEngine} 在同一事务中维护。
+ */
+public class StockReservationDao {
+
+    /**
+     * 批量写入某订单的预留记录（书号 -> 数量）。
+     */
+    public void insertReserved(long orderId, Map<String, Integer> quantities) throws SQLException {
+        String sql = "INSERT INTO stock_reservation (order_id, book_id, quantity, committed_quantity, status) " +
+                "VALUES (?, ?, ?, 0, 'RESERVED')";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+                ps.setLong(1, orderId);
+                ps.setString(2, e.getKey());
+                ps.setInt(3, e.getValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 某书当前被所有订单占用的预留数量之和。
+     */
+    public int sumOutstandingByBook(String bookId) throws SQLException {
+        String sql = "SELECT COALESCE(SUM(quantity - committed_quantity), 0) FROM stock_reservation " +
+                "WHERE book_id = ? AND status = 'RESERVED'";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, bookId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 某订单仍占用的预留数量（书号 -> 数量）。
+     * 在事务中调用时对这些行加锁，防止同一订单被并发释放或发货时重复扣减。
+     */
+    public Map<String, Integer> findOutstandingByOrder(long orderId, boolean forUpdate) throws SQLException {
+        String sql = "SELECT book_id, quantity - committed_quantity AS outstanding FROM stock_reservation " +
+                "WHERE order_id = ? AND status = 'RESERVED' ORDER BY book_id" + (forUpdate ? " FOR UPDATE" : "");
+        Map<String, Integer> result = new LinkedHashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, orderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.put(rs.getString("book_id"), rs.getInt("outstanding"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 发货时消耗预留：累加 committed_quantity（不超过 quantity），全部消耗后状态置为 COMMITTED。
+     * MySQL 按书写顺序求值 SET 子句，status 判断使用的是更新后的 committed_quantity。
+     */
+    public void commitQuantities(long orderId, Map<String, Integer> quantities) throws SQLException {
+        String sql = "UPDATE stock_reservation " +
+                "SET committed_quantity = LEAST(quantity, committed_quantity + ?), " +
+                "status = CASE WHEN committed_quantity >= quantity THEN 'COMMITTED' ELSE status END " +
+                "WHERE order_id = ? AND book_id = ? AND status = 'RESERVED'";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+                ps.setInt(1, e.getValue());
+                ps.setLong(2, orderId);
+                ps.setString(3, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 释放某订单全部未消耗的预留。
+     */
+    public int releaseByOrder(long orderId) throws SQLException {
+        String sql = "UPDATE stock_reservation SET status = 'RELEASED' WHERE order_id = ? AND status = 'RESERVED'";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, orderId);
+            return ps.executeUpdate();
+        }
+    }
+}
@@ -17,7 +17,7 @@ public class SupplierDao {
         String sql = "SELECT supplier_id, supplier_name, contact_person, phone, email, address, payment_terms, cooperation_status " +
                 "FROM supplier ORDER BY supplier_id";
         List<Supplier> list = new ArrayList<>();
-        try (Connection conn = DBUtil.getConnection();
+        try (Connection conn = DBUtil.getReadConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
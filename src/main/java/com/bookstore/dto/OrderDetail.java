@@ -0,0 +1,101 @@
+package com.bookstore.dto;
+
+import com.bookstore.model.SalesOrder;
+import com.bookstore.model.SalesOrderItem;
+import com.bookstore.model.Shipment;
+
+import java.util.List;
+
+/**
+ * 订单详情：订单、明细、发货单及每张发货单的明细（附书号），
+ * 由 OrderDetailAssembler 组装，顾客端与管理员端的订单详情接口共用。
+ */
+public class OrderDetail {
+    private SalesOrder order;
+    private List<SalesOrderItem> items;
+    private List<Shipment> shipments; // 保留向后兼容
+    private List<ShipmentWithItems> shipmentsWithItems;
+
+    public SalesOrder getOrder() {
+        return order;
+    }
+
+    public void setOrder(SalesOrder order) {
+        this.order = order;
+    }
+
+    public List<SalesOrderItem> getItems() {
+        return items;
+    }
+
+    public void setItems(List<SalesOrderItem> items) {
+        this.items = items;
+    }
+
+    public List<Shipment> getShipments() {
+        return shipments;
+    }
+
+    public void setShipments(List<Shipment> shipments) {
+        this.shipments = shipments;
+    }
+
+    public List<ShipmentWithItems> getShipmentsWithItems() {
+        return shipmentsWithItems;
+    }
+
+    public void setShipmentsWithItems(List<ShipmentWithItems> shipmentsWithItems) {
+        this.shipmentsWithItems = shipmentsWithItems;
+    }
+
+    public static class ShipmentWithItems {
+        private Shipment shipment;
+        private List<ShipmentItemDto> items;
+
+        public Shipment getShipment() {
+            return shipment;
+        }
+
+        public void setShipment(Shipment shipment) {
+            this.shipment = shipment;
+        }
+
+        public List<ShipmentItemDto> getItems() {
+            return items;
+        }
+
+        public void setItems(List<ShipmentItemDto> items) {
+            this.items = items;
+        }
+    }
+
+    public static class ShipmentItemDto {
+        private Long orderItemId;
+        private String bookId;
+        private Integer shipQuantity;
+
+        public Long getOrderItemId() {
+            return orderItemId;
+        }
+
+        public void setOrderItemId(Long orderItemId) {
+            this.orderItemId = orderItemId;
+        }
+
+        public String getBookId() {
+            return bookId;
+        }
+
+        public void setBookId(String bookId) {
+            this.bookId = bookId;
+        }
+
+        public Integer getShipQuantity() {
+            return shipQuantity;
+        }
+
+        public void setShipQuantity(Integer shipQuantity) {
+            this.shipQuantity = shipQuantity;
+        }
+    }
+}
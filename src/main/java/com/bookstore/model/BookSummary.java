@@ -0,0 +1,142 @@
+package com.bookstore.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 书目列表投影：book 表中除 catalog（目录全文）以外的字段。
+ * 列表页只展示书名、价格、封面等信息，目录仅在书目详情中使用。
+ */
+public class BookSummary {
+
+    private String bookId;
+    private String isbn;
+    private String title;
+    private String publisher;
+    private LocalDate publishDate;
+    private String edition;
+    private BigDecimal price;
+    private String status;
+    private String coverImageUrl;
+    // 丛书支持字段
+    private boolean seriesFlag;
+    private String parentBookId;
+
+    /**
+     * 由完整书目生成列表投影。
+     */
+    public static BookSummary of(Book b) {
+        BookSummary s = new BookSummary();
+        s.setBookId(b.getBookId());
+        s.setIsbn(b.getIsbn());
+        s.setTitle(b.getTitle());
+        s.setPublisher(b.getPublisher());
+        s.setPublishDate(b.getPublishDate());
+        s.setEdition(b.getEdition());
+        s.setPrice(b.getPrice());
+        s.setStatus(b.getStatus());
+        s.setCoverImageUrl(b.getCoverImageUrl());
+        s.setSeriesFlag(b.isSeriesFlag());
+        s.setParentBookId(b.getParentBookId());
+        return s;
+    }
+
+    public String getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public void setIsbn(String isbn) {
+        this.isbn = isbn;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    public void setPublisher(String publisher) {
+        this.publisher = publisher;
+    }
+
+    public LocalDate getPublishDate() {
+        return publishDate;
+    }
+
+    public void setPublishDate(LocalDate publishDate) {
+        this.publishDate = publishDate;
+    }
+
+    public String getEdition() {
+        return edition;
+    }
+
+    public void setEdition(String edition) {
+        this.edition = edition;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getCoverImageUrl() {
+        return coverImageUrl;
+    }
+
+    public void setCoverImageUrl(String coverImageUrl) {
+        this.coverImageUrl = coverImageUrl;
+    }
+
+    public boolean isSeriesFlag() {
+        return seriesFlag;
+    }
+
+    public void setSeriesFlag(boolean seriesFlag) {
+        this.seriesFlag = seriesFlag;
+    }
+
+    public String getParentBookId() {
+        return parentBookId;
+    }
+
+    public void setParentBookId(String parentBookId) {
+        this.parentBookId = parentBookId;
+    }
+
+    @Override
+    public String toString() {
+        return "BookSummary{" +
+                "bookId='" + bookId + '\'' +
+                ", title='" + title + '\'' +
+                ", price=" + price +
+                ", seriesFlag=" + seriesFlag +
+                ", parentBookId='" + parentBookId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,65 @@
+package com.bookstore.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * 幂等请求记录实体，对应表：idempotency_record。
+ * 同一 scope（接口 + 资源）下同一 Idempotency-Key 只执行一次，重复请求直接返回这里保存的响应。
+ */
+public class IdempotencyRecord {
+
+    private String scope;             // 如 create-order:2、pay-order:15
+    private String idempotencyKey;
+    private String requestHash;       // 请求体 SHA-256（十六进制），同一 key 的请求体须一致
+    private Integer responseStatus;   // 首次执行的 HTTP 状态码
+    private String responseBody;      // 首次执行的响应 JSON
+    private LocalDateTime createdAt;
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public Integer getResponseStatus() {
+        return responseStatus;
+    }
+
+    public void setResponseStatus(Integer responseStatus) {
+        this.responseStatus = responseStatus;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
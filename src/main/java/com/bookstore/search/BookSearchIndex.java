@@ -0,0 +1,315 @@
+package com.bookstore.search;
+
+import com.bookstore.dao.AuthorDao;
+import com.bookstore.dao.CatalogCache;
+import com.bookstore.dao.KeywordDao;
+import com.bookstore.model.Author;
+import com.bookstore.model.Book;
+import com.bookstore.model.Keyword;
+import com.bookstore.util.Workload;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 顾客端书目搜索的内存倒排索引，替代“整表 findAll + contains”与作者 / 关键字的 LIKE '%kw%' 查询。
+ *
+ * 索引三个字段：书号 / 书名 / 出版社 / ISBN、作者姓名、关键字文本，均不区分大小写。
+ * 结果与原 CustomerBookController.search 一致：先列出基础字段命中的书目，再补充作者命中、关键字命中，
+ * 按书号去重，各组内按目录顺序排列。
+ *
+ * 同时维护 {@link KeywordBitmapIndex}，供多关键字最低匹配数搜索（matchKeywords）使用。
+ *
+ * 管理端修改书目、作者或关键字后调用 bookChanged / booksRemoved / authorChanged / keywordChanged
+ * 做增量更新；与 CatalogCache 一样，索引超过 MAX_AGE_MILLIS 后在后台整体重建，读取方从不阻塞。
+ */
+public final class BookSearchIndex {
+
+    static final int FIELD_BASIC = 0;
+    static final int FIELD_AUTHOR = 1;
+    static final int FIELD_KEYWORD = 2;
+    private static final int FIELD_COUNT = 3;
+
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000L;
+
+    private static final Object WRITE_LOCK = new Object();
+    private static final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(Workload.BACKGROUND.wrap(r), "book-search-index-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 两个索引一起发布，保证读取方看到的是同一时刻的状态。
+     */
+    private static final class Indexes {
+        final InvertedIndex text;
+        final KeywordBitmapIndex keywords;
+
+        Indexes(InvertedIndex text, KeywordBitmapIndex keywords) {
+            this.text = text;
+            this.keywords = keywords;
+        }
+    }
+
+    private static volatile Indexes current;
+    private static volatile long loadedAt;
+    private static long modCount;
+
+    private BookSearchIndex() {
+    }
+
+    /**
+     * 单关键字搜索（关键字非空，调用方已 trim）。
+     */
+    public static List<Book> search(String keyword, CatalogCache.Snapshot catalog) throws SQLException {
+        InvertedIndex index = index().text;
+        String q = keyword.toLowerCase();
+
+        Map<String, Book> map = new LinkedHashMap<>();
+        for (int field = FIELD_BASIC; field < FIELD_COUNT; field++) {
+            for (Book b : catalog.inCatalogOrder(index.match(field, q))) {
+                map.putIfAbsent(b.getBookId(), b);
+            }
+        }
+        return new ArrayList<>(map.values());
+    }
+
+    /**
+     * 多关键字最低匹配数搜索：统计每本书关联了多少个“文本包含任一输入词”的不同关键字。
+     *
+     * @param keywords 输入关键字（调用方已 trim 并去掉空串）
+     * @param minMatch 最低匹配数
+     * @param limit    只取匹配数最高的前 limit 本，<= 0 表示全部返回
+     * @return 书号到匹配数的映射，按匹配数降序，同匹配数按目录顺序
+     */
+    public static Map<String, Integer> matchKeywords(List<String> keywords, int minMatch, int limit)
+            throws SQLException {
+        return index().keywords.match(keywords, minMatch, limit);
+    }
+
+    /**
+     * 书目新增 / 修改，或其作者、关键字关联发生变化后，重新索引这些书目。
+     */
+    public static void bookChanged(String... bookIds) {
+        bookChanged(Arrays.asList(bookIds));
+    }
+
+    /**
+     * 书目新增 / 修改，或其作者、关键字关联发生变化后，重新索引这些书目。
+     * 增量更新失败时退化为后台整体重建，不影响调用方的主流程。
+     */
+    public static void bookChanged(Collection<String> bookIds) {
+        if (current == null || bookIds.isEmpty()) {
+            return;
+        }
+        try {
+            CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+            AuthorDao authorDao = new AuthorDao();
+            KeywordDao keywordDao = new KeywordDao();
+            List<InvertedIndex.Doc> docs = new ArrayList<>();
+            Map<String, List<Keyword>> keywordsByBook = new LinkedHashMap<>();
+            List<String> missing = new ArrayList<>();
+            for (String bookId : bookIds) {
+                Book book = catalog.get(bookId);
+                if (book == null) {
+                    missing.add(bookId);
+                    continue;
+                }
+                List<String> authors = new ArrayList<>();
+                for (Author a : authorDao.findByBookId(bookId)) {
+                    authors.add(a.getAuthorName());
+                }
+                List<Keyword> keywords = keywordDao.findByBookId(bookId);
+                keywordsByBook.put(bookId, keywords);
+                docs.add(toDoc(book, authors, keywords));
+            }
+            synchronized (WRITE_LOCK) {
+                Indexes indexes = current;
+                if (indexes == null) {
+                    return;
+                }
+                InvertedIndex text = indexes.text;
+                KeywordBitmapIndex kwIndex = indexes.keywords;
+                for (InvertedIndex.Doc doc : docs) {
+                    text = text.with(doc);
+                }
+                for (Map.Entry<String, List<Keyword>> e : keywordsByBook.entrySet()) {
+                    kwIndex = kwIndex.withBook(e.getKey(), e.getValue());
+                }
+                for (String bookId : missing) {
+                    text = text.without(bookId);
+                    kwIndex = kwIndex.withoutBook(bookId);
+                }
+                install(new Indexes(text, kwIndex));
+            }
+        } catch (SQLException e) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 书目删除后从索引中移除。
+     */
+    public static void booksRemoved(Collection<String> bookIds) {
+        synchronized (WRITE_LOCK) {
+            Indexes indexes = current;
+            if (indexes == null) {
+                return;
+            }
+            InvertedIndex text = indexes.text;
+            KeywordBitmapIndex kwIndex = indexes.keywords;
+            for (String bookId : bookIds) {
+                text = text.without(bookId);
+                kwIndex = kwIndex.withoutBook(bookId);
+            }
+            install(new Indexes(text, kwIndex));
+        }
+    }
+
+    /**
+     * 作者信息（姓名等）修改后，重新索引该作者参与的全部书目。
+     */
+    public static void authorChanged(long authorId) {
+        if (current == null) {
+            return;
+        }
+        try {
+            bookChanged(new AuthorDao().findBookIdsByAuthorId(authorId));
+        } catch (SQLException e) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 关键字文本修改后，重新索引关联该关键字的全部书目。
+     */
+    public static void keywordChanged(long keywordId) {
+        if (current == null) {
+            return;
+        }
+        try {
+            bookChanged(new KeywordDao().findBookIdsByKeywordId(keywordId));
+        } catch (SQLException e) {
+            invalidate();
+        }
+    }
+
+    /**
+     * 在后台整体重建索引（同一时刻最多一个重建任务）。
+     */
+    public static void invalidate() {
+        if (current == null || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        refresher.execute(() -> {
+            try {
+                rebuild();
+            } catch (SQLException e) {
+                System.err.println("搜索索引重建失败：" + e.getMessage());
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private static Indexes index() throws SQLException {
+        Indexes index = current;
+        if (index == null) {
+            synchronized (WRITE_LOCK) {
+                if (current == null) {
+                    install(load());
+                }
+                return current;
+            }
+        }
+        if (System.currentTimeMillis() - loadedAt > MAX_AGE_MILLIS) {
+            invalidate();
+        }
+        return index;
+    }
+
+    private static void rebuild() throws SQLException {
+        while (true) {
+            long startMods;
+            synchronized (WRITE_LOCK) {
+                startMods = modCount;
+            }
+            Indexes index = load();
+            synchronized (WRITE_LOCK) {
+                if (modCount == startMods) {
+                    install(index);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 从目录快照与两条分组查询构建完整索引：书目一条（由 CatalogCache 提供）、作者一条、关键字一条。
+     * 关键字位图索引的书目序号按目录顺序分配。
+     */
+    private static Indexes load() throws SQLException {
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+        Map<String, List<String>> authors = new AuthorDao().findAuthorNamesGroupedByBook();
+        Map<String, List<Keyword>> keywords = new KeywordDao().findKeywordsGroupedByBook();
+        List<InvertedIndex.Doc> docs = new ArrayList<>(catalog.size());
+        List<String> bookIds = new ArrayList<>(catalog.size());
+        for (Book b : catalog.getBooks()) {
+            docs.add(toDoc(b,
+                    authors.getOrDefault(b.getBookId(), Collections.emptyList()),
+                    keywords.getOrDefault(b.getBookId(), Collections.emptyList())));
+            bookIds.add(b.getBookId());
+        }
+        loadedAt = System.currentTimeMillis();
+        return new Indexes(InvertedIndex.build(FIELD_COUNT, docs), KeywordBitmapIndex.build(bookIds, keywords));
+    }
+
+    /** 调用方须持有 WRITE_LOCK。 */
+    private static void install(Indexes index) {
+        modCount++;
+        current = index;
+    }
+
+    private static InvertedIndex.Doc toDoc(Book b, List<String> authors, List<Keyword> keywords) {
+        String[] fields = new String[FIELD_COUNT];
+        fields[FIELD_BASIC] = join(List.of(
+                nullToEmpty(b.getBookId()), nullToEmpty(b.getTitle()),
+                nullToEmpty(b.getPublisher()), nullToEmpty(b.getIsbn())));
+        fields[FIELD_AUTHOR] = join(authors);
+        List<String> keywordTexts = new ArrayList<>(keywords.size());
+        for (Keyword k : keywords) {
+            keywordTexts.add(k.getKeywordText());
+        }
+        fields[FIELD_KEYWORD] = join(keywordTexts);
+        return new InvertedIndex.Doc(b.getBookId(), fields);
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String v : values) {
+            if (v == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(InvertedIndex.SEPARATOR);
+            }
+            sb.append(v.toLowerCase());
+        }
+        return sb.toString();
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,267 @@
+package com.bookstore.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 不可变的 n-gram 倒排索引（单字 + 相邻二字），适合没有空格分词的中文书名。
+ *
+ * 每个文档有若干字段，每个字段单独建立“gram -> 有序文档序号数组”的倒排表。
+ * 子串查询先对查询串的全部 gram 求交集得到候选，再用 contains 校验，结果与 LIKE '%kw%' 一致。
+ * with / without 返回新索引，只复制受影响的倒排数组，其余数组与旧索引共享。
+ */
+final class InvertedIndex {
+
+    /** 同一字段内多个取值之间的分隔符，跨越分隔符的 gram 不入索引。 */
+    static final char SEPARATOR = '\u0001';
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * 一个被索引的文档：书号及各字段的小写文本（多值字段以 SEPARATOR 拼接）。
+     */
+    static final class Doc {
+        final String bookId;
+        final String[] fields;
+
+        Doc(String bookId, String[] fields) {
+            this.bookId = bookId;
+            this.fields = fields;
+        }
+    }
+
+    private final int fieldCount;
+    /** 按序号存放文档，已删除的位置为 null。 */
+    private final Doc[] docs;
+    private final int docCount;
+    private final Map<String, Integer> ordinalById;
+    private final List<Map<Integer, int[]>> postings;
+
+    private InvertedIndex(int fieldCount, Doc[] docs, int docCount,
+                          Map<String, Integer> ordinalById, List<Map<Integer, int[]>> postings) {
+        this.fieldCount = fieldCount;
+        this.docs = docs;
+        this.docCount = docCount;
+        this.ordinalById = ordinalById;
+        this.postings = postings;
+    }
+
+    /**
+     * 一次性构建索引。
+     */
+    static InvertedIndex build(int fieldCount, Collection<Doc> source) {
+        Doc[] docs = new Doc[Math.max(16, source.size())];
+        Map<String, Integer> ordinalById = new HashMap<>(source.size() * 2);
+        List<Map<Integer, List<Integer>>> building = new ArrayList<>();
+        for (int f = 0; f < fieldCount; f++) {
+            building.add(new HashMap<>());
+        }
+        int ord = 0;
+        for (Doc doc : source) {
+            docs[ord] = doc;
+            ordinalById.put(doc.bookId, ord);
+            for (int f = 0; f < fieldCount; f++) {
+                for (int gram : grams(doc.fields[f])) {
+                    building.get(f).computeIfAbsent(gram, k -> new ArrayList<>()).add(ord);
+                }
+            }
+            ord++;
+        }
+        List<Map<Integer, int[]>> postings = new ArrayList<>(fieldCount);
+        for (Map<Integer, List<Integer>> field : building) {
+            Map<Integer, int[]> map = new HashMap<>(field.size() * 2);
+            for (Map.Entry<Integer, List<Integer>> e : field.entrySet()) {
+                List<Integer> list = e.getValue();
+                int[] arr = new int[list.size()];
+                for (int i = 0; i < arr.length; i++) {
+                    arr[i] = list.get(i);
+                }
+                map.put(e.getKey(), arr);
+            }
+            postings.add(map);
+        }
+        return new InvertedIndex(fieldCount, docs, ord, ordinalById, postings);
+    }
+
+    int size() {
+        return ordinalById.size();
+    }
+
+    /**
+     * 新增或替换一个文档，返回新索引。
+     */
+    InvertedIndex with(Doc doc) {
+        Integer existing = ordinalById.get(doc.bookId);
+        int ord = existing != null ? existing : docCount;
+        Doc old = existing != null ? docs[ord] : null;
+
+        Doc[] newDocs = ord < docs.length ? docs.clone() : Arrays.copyOf(docs, docs.length * 2);
+        newDocs[ord] = doc;
+        Map<String, Integer> newOrdinals = ordinalById;
+        if (existing == null) {
+            newOrdinals = new HashMap<>(ordinalById);
+            newOrdinals.put(doc.bookId, ord);
+        }
+        List<Map<Integer, int[]>> newPostings = new ArrayList<>(fieldCount);
+        for (int f = 0; f < fieldCount; f++) {
+            Set<Integer> before = old != null ? grams(old.fields[f]) : Collections.emptySet();
+            Set<Integer> after = grams(doc.fields[f]);
+            newPostings.add(patch(postings.get(f), ord, before, after));
+        }
+        return new InvertedIndex(fieldCount, newDocs, Math.max(docCount, ord + 1), newOrdinals, newPostings);
+    }
+
+    /**
+     * 删除一个文档，返回新索引；文档不存在时返回自身。
+     */
+    InvertedIndex without(String bookId) {
+        Integer ord = ordinalById.get(bookId);
+        if (ord == null) {
+            return this;
+        }
+        Doc old = docs[ord];
+        Doc[] newDocs = docs.clone();
+        newDocs[ord] = null;
+        Map<String, Integer> newOrdinals = new HashMap<>(ordinalById);
+        newOrdinals.remove(bookId);
+        List<Map<Integer, int[]>> newPostings = new ArrayList<>(fieldCount);
+        for (int f = 0; f < fieldCount; f++) {
+            newPostings.add(patch(postings.get(f), ord, grams(old.fields[f]), Collections.emptySet()));
+        }
+        return new InvertedIndex(fieldCount, newDocs, docCount, newOrdinals, newPostings);
+    }
+
+    /**
+     * 返回指定字段包含子串 query（已小写）的书号集合。
+     */
+    Set<String> match(int field, String query) {
+        Set<String> result = new HashSet<>();
+        if (query.isEmpty()) {
+            return result;
+        }
+        Map<Integer, int[]> map = postings.get(field);
+        List<int[]> lists = new ArrayList<>();
+        if (query.length() == 1) {
+            lists.add(map.getOrDefault(unigram(query.charAt(0)), EMPTY));
+        } else {
+            for (int i = 0; i + 1 < query.length(); i++) {
+                lists.add(map.getOrDefault(bigram(query.charAt(i), query.charAt(i + 1)), EMPTY));
+            }
+        }
+        // 从最短的倒排表开始求交集
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists.get(i));
+        }
+        for (int ord : candidates) {
+            Doc doc = docs[ord];
+            if (doc != null && doc.fields[field].contains(query)) {
+                result.add(doc.bookId);
+            }
+        }
+        return result;
+    }
+
+    private static Map<Integer, int[]> patch(Map<Integer, int[]> source, int ord,
+                                             Set<Integer> before, Set<Integer> after) {
+        if (before.equals(after)) {
+            return source;
+        }
+        Map<Integer, int[]> map = new HashMap<>(source);
+        for (int gram : before) {
+            if (!after.contains(gram)) {
+                int[] arr = remove(map.get(gram), ord);
+                if (arr.length == 0) {
+                    map.remove(gram);
+                } else {
+                    map.put(gram, arr);
+                }
+            }
+        }
+        for (int gram : after) {
+            if (!before.contains(gram)) {
+                map.put(gram, insert(map.getOrDefault(gram, EMPTY), ord));
+            }
+        }
+        return map;
+    }
+
+    private static int[] insert(int[] arr, int ord) {
+        int pos = Arrays.binarySearch(arr, ord);
+        if (pos >= 0) {
+            return arr;
+        }
+        pos = -pos - 1;
+        int[] out = new int[arr.length + 1];
+        System.arraycopy(arr, 0, out, 0, pos);
+        out[pos] = ord;
+        System.arraycopy(arr, pos, out, pos + 1, arr.length - pos);
+        return out;
+    }
+
+    private static int[] remove(int[] arr, int ord) {
+        if (arr == null) {
+            return EMPTY;
+        }
+        int pos = Arrays.binarySearch(arr, ord);
+        if (pos < 0) {
+            return arr;
+        }
+        int[] out = new int[arr.length - 1];
+        System.arraycopy(arr, 0, out, 0, pos);
+        System.arraycopy(arr, pos + 1, out, pos, arr.length - pos - 1);
+        return out;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * 文本中出现的全部单字与相邻二字 gram（不跨越 SEPARATOR）。
+     */
+    private static Set<Integer> grams(String text) {
+        Set<Integer> set = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == SEPARATOR) {
+                continue;
+            }
+            set.add(unigram(c));
+            if (i + 1 < text.length() && text.charAt(i + 1) != SEPARATOR) {
+                set.add(bigram(c, text.charAt(i + 1)));
+            }
+        }
+        return set;
+    }
+
+    private static int unigram(char c) {
+        return c;
+    }
+
+    private static int bigram(char a, char b) {
+        // 单字 gram 的高 16 位为 0；即使偶有冲突也只会多出候选，最终由 contains 校验
+        return (a << 16) | b;
+    }
+}
@@ -0,0 +1,249 @@
+package com.bookstore.search;
+
+import com.bookstore.model.Keyword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 不可变的“关键字 -> 书目位图”索引，用于多关键字最低匹配数搜索，
+ * 替代 KeywordDao.findBookIdsByKeywordsWithMinMatch 的 N 个 LIKE + GROUP BY / HAVING。
+ *
+ * 书目映射为连续序号，每个关键字对应一个 {@link PostingBitmap}。查询时：
+ *  1. 在关键字文本的 n-gram 索引上找出包含任一输入词的关键字（等价于 keyword_text LIKE '%kw%'）；
+ *  2. 用按位进位加法把这些位图逐字累加到若干“计数位平面”上（第 j 个平面存计数的第 j 位）；
+ *  3. 从位平面还原每本书的匹配数，按最低匹配数过滤，再按匹配数降序分桶输出。
+ * 匹配数统计的是命中的不同关键字个数，与原 SQL 的 COUNT(DISTINCT k.keyword_id) 一致。
+ */
+final class KeywordBitmapIndex {
+
+    private final Map<String, Integer> ordinalByBook;
+    private final String[] bookByOrdinal;
+    private final int ordinalCount;
+    private final Map<String, Set<Long>> keywordIdsByBook;
+    private final Map<Long, PostingBitmap> booksByKeyword;
+    private final Map<Long, String> textById;
+    /** 关键字文本的 n-gram 索引，文档 ID 为 keyword_id 的字符串形式。 */
+    private final InvertedIndex keywordTexts;
+
+    private KeywordBitmapIndex(Map<String, Integer> ordinalByBook, String[] bookByOrdinal, int ordinalCount,
+                               Map<String, Set<Long>> keywordIdsByBook, Map<Long, PostingBitmap> booksByKeyword,
+                               Map<Long, String> textById, InvertedIndex keywordTexts) {
+        this.ordinalByBook = ordinalByBook;
+        this.bookByOrdinal = bookByOrdinal;
+        this.ordinalCount = ordinalCount;
+        this.keywordIdsByBook = keywordIdsByBook;
+        this.booksByKeyword = booksByKeyword;
+        this.textById = textById;
+        this.keywordTexts = keywordTexts;
+    }
+
+    /**
+     * 构建索引。bookIds 决定序号顺序（即同匹配数时的输出顺序），一般传目录顺序。
+     */
+    static KeywordBitmapIndex build(List<String> bookIds, Map<String, List<Keyword>> keywordsByBook) {
+        Map<String, Integer> ordinalByBook = new HashMap<>(bookIds.size() * 2);
+        String[] bookByOrdinal = new String[Math.max(16, bookIds.size())];
+        Map<String, Set<Long>> keywordIdsByBook = new HashMap<>();
+        Map<Long, List<Integer>> building = new HashMap<>();
+        Map<Long, String> textById = new HashMap<>();
+        int ord = 0;
+        for (String bookId : bookIds) {
+            ordinalByBook.put(bookId, ord);
+            bookByOrdinal[ord] = bookId;
+            Set<Long> ids = new HashSet<>();
+            for (Keyword k : keywordsByBook.getOrDefault(bookId, Collections.emptyList())) {
+                if (ids.add(k.getKeywordId())) {
+                    building.computeIfAbsent(k.getKeywordId(), x -> new ArrayList<>()).add(ord);
+                }
+                textById.put(k.getKeywordId(), normalize(k.getKeywordText()));
+            }
+            keywordIdsByBook.put(bookId, ids);
+            ord++;
+        }
+        Map<Long, PostingBitmap> booksByKeyword = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, List<Integer>> e : building.entrySet()) {
+            int[] arr = new int[e.getValue().size()];
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = e.getValue().get(i);
+            }
+            booksByKeyword.put(e.getKey(), PostingBitmap.of(arr));
+        }
+        List<InvertedIndex.Doc> docs = new ArrayList<>(textById.size());
+        for (Map.Entry<Long, String> e : textById.entrySet()) {
+            docs.add(new InvertedIndex.Doc(String.valueOf(e.getKey()), new String[]{e.getValue()}));
+        }
+        return new KeywordBitmapIndex(ordinalByBook, bookByOrdinal, ord, keywordIdsByBook, booksByKeyword,
+                textById, InvertedIndex.build(1, docs));
+    }
+
+    /**
+     * 用某本书最新的关键字列表替换其原有关联，返回新索引。
+     */
+    KeywordBitmapIndex withBook(String bookId, List<Keyword> keywords) {
+        Integer existing = ordinalByBook.get(bookId);
+        int ord = existing != null ? existing : ordinalCount;
+
+        Map<String, Integer> newOrdinals = ordinalByBook;
+        String[] newBooks = bookByOrdinal;
+        if (existing == null) {
+            newOrdinals = new HashMap<>(ordinalByBook);
+            newOrdinals.put(bookId, ord);
+            newBooks = ord < bookByOrdinal.length ? bookByOrdinal.clone()
+                    : Arrays.copyOf(bookByOrdinal, bookByOrdinal.length * 2);
+            newBooks[ord] = bookId;
+        }
+
+        Set<Long> before = keywordIdsByBook.getOrDefault(bookId, Collections.emptySet());
+        Set<Long> after = new HashSet<>();
+        Map<Long, String> newTexts = textById;
+        InvertedIndex newKeywordTexts = keywordTexts;
+        for (Keyword k : keywords) {
+            after.add(k.getKeywordId());
+            String text = normalize(k.getKeywordText());
+            if (!text.equals(newTexts.get(k.getKeywordId()))) {
+                if (newTexts == textById) {
+                    newTexts = new HashMap<>(textById);
+                }
+                newTexts.put(k.getKeywordId(), text);
+                newKeywordTexts = newKeywordTexts.with(
+                        new InvertedIndex.Doc(String.valueOf(k.getKeywordId()), new String[]{text}));
+            }
+        }
+
+        Map<Long, PostingBitmap> newBitmaps = patchBitmaps(ord, before, after);
+        Map<String, Set<Long>> newKeywordIds = new HashMap<>(keywordIdsByBook);
+        newKeywordIds.put(bookId, after);
+        return new KeywordBitmapIndex(newOrdinals, newBooks, Math.max(ordinalCount, ord + 1),
+                newKeywordIds, newBitmaps, newTexts, newKeywordTexts);
+    }
+
+    /**
+     * 删除一本书，返回新索引；不存在时返回自身。
+     */
+    KeywordBitmapIndex withoutBook(String bookId) {
+        Integer ord = ordinalByBook.get(bookId);
+        if (ord == null) {
+            return this;
+        }
+        Map<String, Integer> newOrdinals = new HashMap<>(ordinalByBook);
+        newOrdinals.remove(bookId);
+        String[] newBooks = bookByOrdinal.clone();
+        newBooks[ord] = null;
+        Map<Long, PostingBitmap> newBitmaps = patchBitmaps(ord,
+                keywordIdsByBook.getOrDefault(bookId, Collections.emptySet()), Collections.emptySet());
+        Map<String, Set<Long>> newKeywordIds = new HashMap<>(keywordIdsByBook);
+        newKeywordIds.remove(bookId);
+        return new KeywordBitmapIndex(newOrdinals, newBooks, ordinalCount, newKeywordIds, newBitmaps,
+                textById, keywordTexts);
+    }
+
+    /**
+     * 多关键字最低匹配数查询。
+     *
+     * @param keywords 输入关键字（已去空白、非空）
+     * @param minMatch 最低匹配数
+     * @param limit    最多返回多少本（按匹配数取前 K），<= 0 表示不限
+     * @return 书号到匹配数的映射，按匹配数降序
+     */
+    Map<String, Integer> match(Collection<String> keywords, int minMatch, int limit) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        Set<String> matchedIds = new HashSet<>();
+        for (String kw : keywords) {
+            matchedIds.addAll(keywordTexts.match(0, normalize(kw)));
+        }
+        List<PostingBitmap> bitmaps = new ArrayList<>(matchedIds.size());
+        for (String id : matchedIds) {
+            PostingBitmap bm = booksByKeyword.get(Long.valueOf(id));
+            if (bm != null && bm.cardinality() > 0) {
+                bitmaps.add(bm);
+            }
+        }
+        int maxCount = bitmaps.size();
+        int threshold = Math.max(minMatch, 1);
+        if (maxCount == 0 || threshold > maxCount) {
+            return result;
+        }
+
+        // 按位进位加法：planes[j][w] 是第 w 个字内各书目计数的第 j 位
+        int planeCount = 32 - Integer.numberOfLeadingZeros(maxCount);
+        long[][] planes = new long[planeCount][(ordinalCount >>> 6) + 1];
+        for (PostingBitmap bm : bitmaps) {
+            bm.forEachWord((wordIndex, bits) -> {
+                long carry = bits;
+                for (int j = 0; j < planeCount && carry != 0; j++) {
+                    long overflow = planes[j][wordIndex] & carry;
+                    planes[j][wordIndex] ^= carry;
+                    carry = overflow;
+                }
+            });
+        }
+
+        // 还原计数并按匹配数分桶（计数上限为 maxCount，分桶即可完成降序排序）
+        List<List<Integer>> buckets = new ArrayList<>(maxCount + 1);
+        for (int c = 0; c <= maxCount; c++) {
+            buckets.add(new ArrayList<>());
+        }
+        int wordCount = planes[0].length;
+        for (int w = 0; w < wordCount; w++) {
+            long any = 0;
+            for (int j = 0; j < planeCount; j++) {
+                any |= planes[j][w];
+            }
+            while (any != 0) {
+                int bit = Long.numberOfTrailingZeros(any);
+                any &= any - 1;
+                int count = 0;
+                for (int j = 0; j < planeCount; j++) {
+                    count |= (int) ((planes[j][w] >>> bit) & 1L) << j;
+                }
+                if (count >= threshold) {
+                    buckets.get(count).add((w << 6) + bit);
+                }
+            }
+        }
+        for (int c = maxCount; c >= threshold; c--) {
+            for (int ord : buckets.get(c)) {
+                String bookId = bookByOrdinal[ord];
+                if (bookId == null) {
+                    continue;
+                }
+                result.put(bookId, c);
+                if (limit > 0 && result.size() >= limit) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, PostingBitmap> patchBitmaps(int ord, Set<Long> before, Set<Long> after) {
+        if (before.equals(after)) {
+            return booksByKeyword;
+        }
+        Map<Long, PostingBitmap> map = new HashMap<>(booksByKeyword);
+        for (Long id : before) {
+            if (!after.contains(id)) {
+                map.put(id, map.getOrDefault(id, PostingBitmap.EMPTY).without(ord));
+            }
+        }
+        for (Long id : after) {
+            if (!before.contains(id)) {
+                map.put(id, map.getOrDefault(id, PostingBitmap.EMPTY).with(ord));
+            }
+        }
+        return map;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,120 @@
+package com.bookstore.search;
+
+import java.util.Arrays;
+
+/**
+ * 不可变的书目序号集合，按密度在两种表示之间自动选择（思路同 Roaring Bitmap 的 array / bitmap 容器）：
+ *  - 稀疏时存有序 int 数组，每个元素 4 字节；
+ *  - 稠密时存 long 位图，每 64 个序号 8 字节。
+ * 两种表示都可以按 64 位字遍历，供位运算计数使用。
+ */
+final class PostingBitmap {
+
+    /**
+     * 按字遍历的回调：wordIndex 为字下标，bits 为该字内的成员位。
+     */
+    @FunctionalInterface
+    interface WordConsumer {
+        void accept(int wordIndex, long bits);
+    }
+
+    static final PostingBitmap EMPTY = new PostingBitmap(new int[0], null, 0);
+
+    private final int[] array;
+    private final long[] words;
+    private final int cardinality;
+
+    private PostingBitmap(int[] array, long[] words, int cardinality) {
+        this.array = array;
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * 由有序、无重复的序号数组构造，自动选择更省空间的表示。
+     */
+    static PostingBitmap of(int[] sorted) {
+        if (sorted.length == 0) {
+            return EMPTY;
+        }
+        int wordCount = sorted[sorted.length - 1] / 64 + 1;
+        if ((long) sorted.length * 4 <= (long) wordCount * 8) {
+            return new PostingBitmap(sorted, null, sorted.length);
+        }
+        long[] w = new long[wordCount];
+        for (int ord : sorted) {
+            w[ord >>> 6] |= 1L << ord;
+        }
+        return new PostingBitmap(null, w, sorted.length);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    PostingBitmap with(int ord) {
+        int[] sorted = toArray();
+        int pos = Arrays.binarySearch(sorted, ord);
+        if (pos >= 0) {
+            return this;
+        }
+        pos = -pos - 1;
+        int[] out = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, out, 0, pos);
+        out[pos] = ord;
+        System.arraycopy(sorted, pos, out, pos + 1, sorted.length - pos);
+        return of(out);
+    }
+
+    PostingBitmap without(int ord) {
+        int[] sorted = toArray();
+        int pos = Arrays.binarySearch(sorted, ord);
+        if (pos < 0) {
+            return this;
+        }
+        int[] out = new int[sorted.length - 1];
+        System.arraycopy(sorted, 0, out, 0, pos);
+        System.arraycopy(sorted, pos + 1, out, pos, sorted.length - pos - 1);
+        return of(out);
+    }
+
+    /**
+     * 按字下标升序遍历所有非零字。
+     */
+    void forEachWord(WordConsumer consumer) {
+        if (words != null) {
+            for (int i = 0; i < words.length; i++) {
+                if (words[i] != 0) {
+                    consumer.accept(i, words[i]);
+                }
+            }
+            return;
+        }
+        int i = 0;
+        while (i < array.length) {
+            int wordIndex = array[i] >>> 6;
+            long bits = 0;
+            while (i < array.length && (array[i] >>> 6) == wordIndex) {
+                bits |= 1L << array[i];
+                i++;
+            }
+            consumer.accept(wordIndex, bits);
+        }
+    }
+
+    private int[] toArray() {
+        if (array != null) {
+            return array;
+        }
+        int[] out = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            long w = words[i];
+            while (w != 0) {
+                out[n++] = (i << 6) + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+            }
+        }
+        return out;
+    }
+}
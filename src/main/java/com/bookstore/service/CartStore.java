@@ -0,0 +1,473 @@
+package com.bookstore.service;
+
+import com.bookstore.dao.CatalogCache;
+import com.bookstore.dao.ShoppingCartDao;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.util.Workload;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 顾客购物车的进程内存储（write-behind）：购物车接口只读写内存，由后台线程定期把改动写回 shopping_cart。
+ *
+ * - 每个顾客一个购物车对象，首次访问时从数据库加载，之后的查看 / 修改都不访问数据库；
+ * - 每次修改只记下改动的书号，后台线程每 FLUSH_INTERVAL_MILLIS 把所有购物车的改动合并成
+ *   一条多行 INSERT ... ON DUPLICATE KEY UPDATE 与一条 DELETE，在一个事务中写入；
+ * - 写入失败的改动重新标记为待写入，下一轮重试，不会丢失；连续失败 MAX_FLUSH_FAILURES 次的购物车
+ *   放弃内存中的改动并在下次访问时重新加载（如书目已被删除导致外键失败）；
+ * - 结算（{@link #checkout}）前先在结算事务中写入该购物车的改动，结算事务结束前购物车保持锁定；
+ * - 购物车数量超过 CAPACITY 时按最近访问顺序淘汰已写回的购物车，有未写入改动的购物车不会被淘汰；
+ * - 进程退出时（JVM shutdown hook）写入剩余改动。进程被强制终止时最多丢失最近一个写回周期的改动。
+ *
+ * 只适用于单实例部署：其他进程（如 JavaFX 客户端）直接修改 shopping_cart 的结果，
+ * 在该购物车被淘汰或结算之前不会反映到内存中。
+ */
+public final class CartStore {
+
+    /** 内存中最多保留的购物车数。 */
+    private static final int CAPACITY = 10000;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    private static final int MAX_FLUSH_FAILURES = 5;
+    /** 进程退出时等待单个购物车锁的最长时间。 */
+    private static final long SHUTDOWN_LOCK_WAIT_MILLIS = 1000;
+
+    private static final ShoppingCartDao cartDao = new ShoppingCartDao();
+
+    /** 按访问顺序排列，用于淘汰最久未访问的购物车。 */
+    private static final LinkedHashMap<Long, Cart> CARTS = new LinkedHashMap<>(256, 0.75f, true);
+    /** 有未写入改动的购物车。 */
+    private static final Set<Cart> DIRTY = ConcurrentHashMap.newKeySet();
+    /** 写回互斥：后台写回与结算前的写回不能交错，否则旧数据可能覆盖新数据。 */
+    private static final ReentrantLock FLUSH_LOCK = new ReentrantLock();
+
+    private static final AtomicLong loads = new AtomicLong();
+    private static final AtomicLong flushes = new AtomicLong();
+    private static final AtomicLong flushedLines = new AtomicLong();
+    private static final AtomicLong flushFailures = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(Workload.BACKGROUND.wrap(r), "cart-store-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        FLUSHER.scheduleWithFixedDelay(CartStore::flushAndEvict,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Workload.BACKGROUND.wrap(CartStore::shutdown), "cart-store-drain"));
+    }
+
+    private CartStore() {
+    }
+
+    /**
+     * 单个顾客的购物车。lines 按加入顺序排列（书号 -> 数量），dirty 为尚未写回的书号，
+     * 写回时以 lines 中的当前数量为准，不在 lines 中的书号删除。
+     * detached 为 true 表示已从 CARTS 移除，拿到锁的线程需要重新查找。
+     */
+    private static final class Cart {
+        final long customerId;
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Integer> lines = new LinkedHashMap<>();
+        final Set<String> dirty = ConcurrentHashMap.newKeySet();
+        boolean loaded;
+        boolean detached;
+        int failures;
+
+        Cart(long customerId) {
+            this.customerId = customerId;
+        }
+
+        void changed(String bookId) {
+            dirty.add(bookId);
+            DIRTY.add(this);
+        }
+
+        /** 取出待写回的改动（书号 -> 数量，0 表示删除），调用方持有锁。 */
+        Map<String, Integer> takeDirty() {
+            Map<String, Integer> changes = new LinkedHashMap<>();
+            for (String bookId : dirty) {
+                changes.put(bookId, lines.getOrDefault(bookId, 0));
+            }
+            dirty.removeAll(changes.keySet());
+            return changes;
+        }
+
+        /** 写回失败：重新标记为待写入，无需持有锁。 */
+        void restore(Map<String, Integer> changes) {
+            dirty.addAll(changes.keySet());
+            DIRTY.add(this);
+        }
+    }
+
+    /**
+     * 购物车内容，按加入时间从晚到早排列（书号 -> 数量）。
+     */
+    public static Map<String, Integer> lines(long customerId) throws SQLException {
+        Cart cart = lockCart(customerId, true);
+        try {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(cart.lines.entrySet());
+            Map<String, Integer> result = new LinkedHashMap<>(entries.size() * 2);
+            for (ListIterator<Map.Entry<String, Integer>> it = entries.listIterator(entries.size()); it.hasPrevious(); ) {
+                Map.Entry<String, Integer> e = it.previous();
+                result.put(e.getKey(), e.getValue());
+            }
+            return result;
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /**
+     * 加入购物车，已存在时累加数量。
+     *
+     * @throws IllegalArgumentException 数量不为正或图书不存在
+     */
+    public static void add(long customerId, String bookId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("数量必须大于 0");
+        }
+        if (CatalogCache.snapshot().get(bookId) == null) {
+            throw new IllegalArgumentException("图书不存在：" + bookId);
+        }
+        Cart cart = lockCart(customerId, true);
+        try {
+            cart.lines.merge(bookId, quantity, Integer::sum);
+            cart.changed(bookId);
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /**
+     * 把购物车中某本书的数量设置为 quantity，不大于 0 时移除；购物车中没有该书时不做任何事。
+     */
+    public static void setQuantity(long customerId, String bookId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            remove(customerId, bookId);
+            return;
+        }
+        Cart cart = lockCart(customerId, true);
+        try {
+            if (cart.lines.containsKey(bookId)) {
+                cart.lines.put(bookId, quantity);
+                cart.changed(bookId);
+            }
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /**
+     * 从购物车移除某本书。
+     */
+    public static void remove(long customerId, String bookId) throws SQLException {
+        Cart cart = lockCart(customerId, true);
+        try {
+            if (cart.lines.remove(bookId) != null) {
+                cart.changed(bookId);
+            }
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /**
+     * 清空购物车。
+     */
+    public static void clear(long customerId) throws SQLException {
+        Cart cart = lockCart(customerId, true);
+        try {
+            for (String bookId : cart.lines.keySet()) {
+                cart.changed(bookId);
+            }
+            cart.lines.clear();
+        } finally {
+            cart.lock.unlock();
+        }
+    }
+
+    /**
+     * 以 shopping_cart 为准结算：在事务中先写入该购物车尚未写回的改动，再执行 work（与 work 同一事务）。
+     *
+     * 购物车在事务结束前保持锁定（当前线程已处于事务中时，直到外层事务结束），期间的查看 / 修改等待结算完成。
+     * 事务提交后丢弃内存中的购物车，下次访问时按结算后的数据库内容重新加载；回滚时改动恢复为待写入。
+     */
+    public static <T> T checkout(long customerId, TransactionContext.SqlWork<T> work) throws SQLException {
+        Cart cart = lockCart(customerId, false);
+        boolean[] handedOff = {false};
+        try {
+            return TransactionContext.execute(conn -> {
+                Map<String, Integer> changes;
+                FLUSH_LOCK.lock();
+                try {
+                    changes = cart.takeDirty();
+                    TransactionContext.afterCommit(() -> {
+                        if (cart.dirty.isEmpty()) {
+                            DIRTY.remove(cart);
+                        }
+                        detach(cart);
+                        cart.lock.unlock();
+                    });
+                    TransactionContext.afterRollback(() -> {
+                        cart.restore(changes);
+                        cart.lock.unlock();
+                    });
+                    handedOff[0] = true;
+                    write(Collections.singletonMap(customerId, changes));
+                } finally {
+                    FLUSH_LOCK.unlock();
+                }
+                return work.execute(conn);
+            });
+        } finally {
+            if (!handedOff[0]) {
+                cart.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 立即写回所有购物车的改动（进程退出或测试时使用），返回写入的行数。
+     */
+    public static int flushAll() {
+        return flushDirty(SHUTDOWN_LOCK_WAIT_MILLIS);
+    }
+
+    /**
+     * 运行指标：内存中的购物车数、待写回的购物车数、从数据库加载次数、写回批次 / 行数 / 失败次数、淘汰数。
+     */
+    public static Map<String, Long> stats() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        synchronized (CARTS) {
+            m.put("carts", (long) CARTS.size());
+        }
+        m.put("dirtyCarts", (long) DIRTY.size());
+        m.put("loads", loads.get());
+        m.put("flushes", flushes.get());
+        m.put("flushedLines", flushedLines.get());
+        m.put("flushFailures", flushFailures.get());
+        m.put("evictions", evictions.get());
+        return m;
+    }
+
+    /**
+     * 取得并锁定顾客的购物车。load 为 true 时确保已从数据库加载；结算时不需要内存中的内容，不加载。
+     */
+    private static Cart lockCart(long customerId, boolean load) throws SQLException {
+        while (true) {
+            Cart cart;
+            synchronized (CARTS) {
+                cart = CARTS.computeIfAbsent(customerId, Cart::new);
+            }
+            cart.lock.lock();
+            if (cart.detached) {
+                cart.lock.unlock();
+                continue;
+            }
+            if (load && !cart.loaded) {
+                try {
+                    cart.lines.putAll(cartDao.findQuantities(customerId));
+                    cart.loaded = true;
+                    loads.incrementAndGet();
+                } catch (SQLException | RuntimeException e) {
+                    cart.lock.unlock();
+                    throw e;
+                }
+            }
+            return cart;
+        }
+    }
+
+    /** 从 CARTS 移除购物车，调用方持有该购物车的锁。 */
+    private static void detach(Cart cart) {
+        cart.detached = true;
+        synchronized (CARTS) {
+            CARTS.remove(cart.customerId, cart);
+        }
+    }
+
+    private static void flushAndEvict() {
+        try {
+            flushDirty(0);
+            evict();
+        } catch (RuntimeException e) {
+            System.err.println("购物车写回线程异常：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 写回所有有改动的购物车。lockWaitMillis 为等待单个购物车锁的时间，0 表示不等待：
+     * 被占用的购物车（正在修改或结算）留到下一轮。持有 FLUSH_LOCK 时从不无限期等待购物车锁，
+     * 因为结算是先锁购物车再取 FLUSH_LOCK。
+     */
+    private static int flushDirty(long lockWaitMillis) {
+        FLUSH_LOCK.lock();
+        try {
+            Map<Cart, Map<String, Integer>> batch = new LinkedHashMap<>();
+            for (Cart cart : DIRTY) {
+                if (!tryLock(cart, lockWaitMillis)) {
+                    continue;
+                }
+                try {
+                    DIRTY.remove(cart);
+                    if (!cart.detached) {
+                        Map<String, Integer> changes = cart.takeDirty();
+                        if (!changes.isEmpty()) {
+                            batch.put(cart, changes);
+                        }
+                    }
+                } finally {
+                    cart.lock.unlock();
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                int rows = writeInTransaction(batch);
+                for (Cart cart : batch.keySet()) {
+                    cart.failures = 0;
+                }
+                return rows;
+            } catch (SQLException | RuntimeException e) {
+                // 整批失败时逐个购物车重试，避免一个坏购物车拖累其余购物车
+                int rows = 0;
+                for (Map.Entry<Cart, Map<String, Integer>> entry : batch.entrySet()) {
+                    try {
+                        rows += writeInTransaction(Collections.singletonMap(entry.getKey(), entry.getValue()));
+                        entry.getKey().failures = 0;
+                    } catch (SQLException | RuntimeException ex) {
+                        failed(entry.getKey(), entry.getValue(), ex);
+                    }
+                }
+                return rows;
+            }
+        } finally {
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    private static int writeInTransaction(Map<Cart, Map<String, Integer>> batch) throws SQLException {
+        Map<Long, Map<String, Integer>> byCustomer = new LinkedHashMap<>();
+        for (Map.Entry<Cart, Map<String, Integer>> e : batch.entrySet()) {
+            byCustomer.put(e.getKey().customerId, e.getValue());
+        }
+        int rows = TransactionContext.execute(conn -> write(byCustomer));
+        flushes.incrementAndGet();
+        flushedLines.addAndGet(rows);
+        return rows;
+    }
+
+    /** 写入一批改动（客户 ID -> 书号 -> 数量，0 表示删除）。 */
+    private static int write(Map<Long, Map<String, Integer>> changesByCustomer) throws SQLException {
+        Map<Long, Map<String, Integer>> upserts = new HashMap<>();
+        Map<Long, List<String>> deletes = new HashMap<>();
+        for (Map.Entry<Long, Map<String, Integer>> c : changesByCustomer.entrySet()) {
+            for (Map.Entry<String, Integer> line : c.getValue().entrySet()) {
+                if (line.getValue() > 0) {
+                    upserts.computeIfAbsent(c.getKey(), k -> new LinkedHashMap<>()).put(line.getKey(), line.getValue());
+                } else {
+                    deletes.computeIfAbsent(c.getKey(), k -> new ArrayList<>()).add(line.getKey());
+                }
+            }
+        }
+        return cartDao.upsertQuantities(upserts) + cartDao.deleteLines(deletes);
+    }
+
+    /**
+     * 单个购物车写回失败：恢复为待写入；连续失败过多时放弃内存中的改动，下次访问时重新加载。
+     */
+    private static void failed(Cart cart, Map<String, Integer> changes, Exception e) {
+        flushFailures.incrementAndGet();
+        cart.failures++;
+        if (cart.failures < MAX_FLUSH_FAILURES || !cart.lock.tryLock()) {
+            cart.restore(changes);
+            System.err.println("购物车写回失败（customerId=" + cart.customerId + "），稍后重试：" + e.getMessage());
+            return;
+        }
+        try {
+            cart.dirty.clear();
+            detach(cart);
+        } finally {
+            cart.lock.unlock();
+        }
+        System.err.println("购物车写回连续失败 " + cart.failures + " 次（customerId=" + cart.customerId
+                + "），放弃改动 " + changes + "：" + e.getMessage());
+    }
+
+    /**
+     * 超出容量时按最近访问顺序淘汰没有未写入改动、且未被占用的购物车。
+     */
+    private static void evict() {
+        List<Cart> candidates;
+        synchronized (CARTS) {
+            int excess = CARTS.size() - CAPACITY;
+            if (excess <= 0) {
+                return;
+            }
+            candidates = new ArrayList<>(excess);
+            for (Cart cart : CARTS.values()) {
+                if (candidates.size() >= excess) {
+                    break;
+                }
+                if (cart.dirty.isEmpty()) {
+                    candidates.add(cart);
+                }
+            }
+        }
+        for (Cart cart : candidates) {
+            if (!cart.lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!cart.detached && cart.dirty.isEmpty()) {
+                    detach(cart);
+                    evictions.incrementAndGet();
+                }
+            } finally {
+                cart.lock.unlock();
+            }
+        }
+    }
+
+    private static boolean tryLock(Cart cart, long waitMillis) {
+        if (waitMillis <= 0) {
+            return cart.lock.tryLock();
+        }
+        try {
+            return cart.lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void shutdown() {
+        FLUSHER.shutdown();
+        try {
+            FLUSHER.awaitTermination(SHUTDOWN_LOCK_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        if (!DIRTY.isEmpty()) {
+            System.err.println("进程退出时仍有 " + DIRTY.size() + " 个购物车的改动未写回");
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.bookstore.service;
+
+import com.bookstore.dao.CreditLevelRegistry;
+import com.bookstore.dao.CustomerDao;
+import com.bookstore.dao.ShoppingCartDao;
+import com.bookstore.model.CreditLevel;
+import com.bookstore.model.Customer;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.model.SalesOrderItem;
+import com.bookstore.util.Workload;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车结算服务：以服务端购物车为准，一次事务、一个连接完成下单。
+ *
+ * 流程：锁定并读取购物车行（连同 book.price）→ 按信用等级折扣定价 → 批量检查可承诺量
+ * → 写入订单与明细并预留库存 → 清空购物车。
+ * 价格只取自 book 表，不再使用客户端提交的单价；折扣取自 {@link CreditLevelRegistry}。
+ * 购物车的内存改动由 {@link CartStore#checkout} 在同一事务中先行写入。
+ * 使用 CHECKOUT 连接池隔舱（见 {@link Workload}）。
+ */
+public class CheckoutService {
+
+    private final CustomerDao customerDao = new CustomerDao();
+    private final ShoppingCartDao cartDao = new ShoppingCartDao();
+    private final OrderService orderService = new OrderService();
+
+    /**
+     * 结算指定顾客的购物车。
+     *
+     * @param shippingAddressSnapshot 收货地址快照，为空时使用顾客姓名
+     * @param allowShortage           有书可承诺量不足时是否仍然下单（缺书登记流程）；
+     *                                为 false 时不下单、不清空购物车，只在结果中返回缺货情况
+     * @throws IllegalStateException 顾客不存在、购物车为空或图书未定价时抛出
+     */
+    public Result checkout(long customerId, String shippingAddressSnapshot, String customerNote,
+                           boolean allowShortage) throws SQLException {
+        return Workload.CHECKOUT.call(
+                () -> doCheckout(customerId, shippingAddressSnapshot, customerNote, allowShortage));
+    }
+
+    private Result doCheckout(long customerId, String shippingAddressSnapshot, String customerNote,
+                              boolean allowShortage) throws SQLException {
+        return CartStore.checkout(customerId, conn -> {
+            Customer customer = customerDao.findById(customerId);
+            if (customer == null) {
+                throw new IllegalStateException("顾客不存在，customerId=" + customerId);
+            }
+            CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
+            if (level == null || level.getDiscountRate() == null) {
+                throw new IllegalStateException("未找到顾客信用等级配置");
+            }
+            List<ShoppingCartDao.CartItem> cart = cartDao.findByCustomerId(customerId, true);
+            if (cart.isEmpty()) {
+                throw new IllegalStateException("购物车为空");
+            }
+
+            BigDecimal discount = level.getDiscountRate();
+            List<SalesOrderItem> items = new ArrayList<>(cart.size());
+            Map<String, Integer> needByBook = new LinkedHashMap<>();
+            BigDecimal goodsAmount = BigDecimal.ZERO;
+            for (ShoppingCartDao.CartItem line : cart) {
+                if (line.getQuantity() <= 0) {
+                    continue;
+                }
+                if (line.getUnitPrice() == null) {
+                    throw new IllegalStateException("图书未定价：" + line.getBookId());
+                }
+                BigDecimal unitPrice = line.getUnitPrice().multiply(discount).setScale(2, RoundingMode.HALF_UP);
+                BigDecimal sub = unitPrice.multiply(BigDecimal.valueOf(line.getQuantity()));
+
+                SalesOrderItem item = new SalesOrderItem();
+                item.setBookId(line.getBookId());
+                item.setQuantity(line.getQuantity());
+                item.setUnitPrice(unitPrice);
+                item.setSubAmount(sub);
+                item.setItemStatus("ORDERED");
+                items.add(item);
+                needByBook.merge(line.getBookId(), line.getQuantity(), Integer::sum);
+                goodsAmount = goodsAmount.add(sub);
+            }
+            if (items.isEmpty()) {
+                throw new IllegalStateException("有效的商品项为空");
+            }
+
+            // 可承诺量检查：所有书合并成一条查询
+            Map<String, Integer> available = StockReservationEngine.availableAll(needByBook.keySet());
+            Map<String, Integer> shortages = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e : needByBook.entrySet()) {
+                int avail = available.get(e.getKey());
+                if (avail < e.getValue()) {
+                    shortages.put(e.getKey(), Math.max(avail, 0));
+                }
+            }
+            if (!shortages.isEmpty() && !allowShortage) {
+                return new Result(null, items, needByBook, shortages);
+            }
+
+            String snapshot = shippingAddressSnapshot;
+            if (snapshot == null || snapshot.trim().isEmpty()) {
+                snapshot = customer.getRealName() != null ? customer.getRealName() : customer.getUsername();
+            }
+            SalesOrder order = new SalesOrder();
+            order.setCustomerId(customerId);
+            order.setOrderTime(LocalDateTime.now());
+            order.setOrderStatus("PENDING_PAYMENT");
+            order.setGoodsAmount(goodsAmount);
+            order.setDiscountRateSnapshot(discount);
+            order.setPayableAmount(goodsAmount);
+            order.setShippingAddressSnapshot(snapshot);
+            order.setCustomerNote(customerNote);
+
+            Map<String, Integer> unreserved = orderService.placeOrder(order, items);
+            if (!unreserved.isEmpty() && !allowShortage) {
+                // 检查之后被其他订单抢先预留，整单回滚
+                throw new IllegalStateException("库存已被其他订单占用，请重新结算");
+            }
+            cartDao.clearCart(customerId);
+            return new Result(order, items, needByBook, unreserved);
+        });
+    }
+
+    /**
+     * 结算结果。order 为空表示因缺货未下单。
+     */
+    public static final class Result {
+        private final SalesOrder order;
+        private final List<SalesOrderItem> items;
+        private final Map<String, Integer> quantities;
+        private final Map<String, Integer> shortages;
+
+        Result(SalesOrder order, List<SalesOrderItem> items, Map<String, Integer> quantities,
+               Map<String, Integer> shortages) {
+            this.order = order;
+            this.items = Collections.unmodifiableList(items);
+            this.quantities = Collections.unmodifiableMap(quantities);
+            this.shortages = Collections.unmodifiableMap(shortages);
+        }
+
+        public SalesOrder getOrder() {
+            return order;
+        }
+
+        public List<SalesOrderItem> getItems() {
+            return items;
+        }
+
+        /** 各书的购买数量（书号 -> 数量）。 */
+        public Map<String, Integer> getQuantities() {
+            return quantities;
+        }
+
+        /** 可承诺量不足的书（书号 -> 当时的可承诺量）。 */
+        public Map<String, Integer> getShortages() {
+            return shortages;
+        }
+    }
+}
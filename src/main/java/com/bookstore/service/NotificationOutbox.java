@@ -0,0 +1,281 @@
+package com.bookstore.service;
+
+import com.bookstore.dao.CustomerNotificationDao;
+import com.bookstore.model.CustomerNotification;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.util.Workload;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 顾客通知发件箱：业务线程只把通知放入进程内有界队列，由后台写线程合并成批量 INSERT 写入 customer_notification。
+ *
+ * - 在事务中发布的通知在事务提交后才入队，事务回滚则丢弃；
+ * - 写线程取到第一条后最多再等 LINGER_MILLIS 凑批，每批不超过 MAX_BATCH_SIZE 条；
+ * - 队列满时发布方最多等待 OFFER_TIMEOUT_MILLIS，仍放不进则在调用线程中同步写入（背压，不丢通知）；
+ * - 进程退出时（JVM shutdown hook）写完队列中剩余的通知再停止；
+ * - 批量写入失败时逐条重试，仍失败的计入 failed 并打印到 System.err。
+ *
+ * 写入成功的通知（已回填 notificationId）会交给 {@link #onWritten(Consumer)} 登记的监听器，用于实时推送。
+ * 运行指标见 {@link #stats()}。
+ */
+public final class NotificationOutbox {
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long LINGER_MILLIS = 20;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private static final BlockingQueue<CustomerNotification> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final CustomerNotificationDao notificationDao = new CustomerNotificationDao();
+    private static final List<Consumer<List<CustomerNotification>>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong callerRuns = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong flushNanosTotal = new AtomicLong();
+    private static volatile int lastBatchSize;
+    private static volatile long lastFlushNanos;
+    private static volatile long maxFlushNanos;
+
+    private static volatile boolean stopping;
+    private static final Thread WRITER = new Thread(Workload.BACKGROUND.wrap(NotificationOutbox::writeLoop),
+            "notification-outbox");
+
+    static {
+        WRITER.setDaemon(true);
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                Workload.BACKGROUND.wrap(NotificationOutbox::shutdown), "notification-outbox-drain"));
+    }
+
+    private NotificationOutbox() {
+    }
+
+    /**
+     * 发布一条通知。当前线程处于事务中时，事务提交后才入队。
+     */
+    public static void publish(CustomerNotification n) {
+        if (n.getCreatedTime() == null) {
+            n.setCreatedTime(LocalDateTime.now());
+        }
+        TransactionContext.afterCommit(() -> enqueue(n));
+    }
+
+    /**
+     * 登记写入监听器：每批通知写入数据库后，以写入成功的通知调用一次（在写线程或背压时的调用线程中执行）。
+     */
+    public static void onWritten(Consumer<List<CustomerNotification>> listener) {
+        LISTENERS.add(listener);
+    }
+
+    private static void enqueue(CustomerNotification n) {
+        if (!stopping) {
+            try {
+                if (QUEUE.offer(n, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    enqueued.incrementAndGet();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 队列已满或正在停止：由调用线程直接写入
+        callerRuns.incrementAndGet();
+        flush(Collections.singletonList(n));
+    }
+
+    private static void writeLoop() {
+        List<CustomerNotification> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (!stopping || !QUEUE.isEmpty()) {
+            try {
+                CustomerNotification first = QUEUE.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    QUEUE.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0 || stopping) {
+                        break;
+                    }
+                    CustomerNotification next = QUEUE.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // 不应被中断（停止时只置 stopping）；中断标志已被清除，写出已取到的通知后继续循环
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("通知发件箱写线程异常：" + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static void flush(List<CustomerNotification> batch) {
+        long t0 = System.nanoTime();
+        List<CustomerNotification> ok = batch;
+        try {
+            written.addAndGet(notificationDao.insertBatch(batch));
+        } catch (SQLException e) {
+            // 批量失败时逐条重试，避免一条坏数据拖累整批
+            ok = new ArrayList<>(batch.size());
+            for (CustomerNotification n : batch) {
+                try {
+                    n.setNotificationId(notificationDao.insert(n));
+                    written.incrementAndGet();
+                    ok.add(n);
+                } catch (SQLException ex) {
+                    failed.incrementAndGet();
+                    System.err.println("通知写入失败（顾客 " + n.getCustomerId() + "）：" + ex.getMessage());
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - t0;
+        batches.incrementAndGet();
+        flushNanosTotal.addAndGet(elapsed);
+        lastBatchSize = batch.size();
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+        if (!ok.isEmpty()) {
+            List<CustomerNotification> view = Collections.unmodifiableList(new ArrayList<>(ok));
+            for (Consumer<List<CustomerNotification>> listener : LISTENERS) {
+                try {
+                    listener.accept(view);
+                } catch (RuntimeException e) {
+                    System.err.println("通知写入监听器异常：" + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止接收新通知，等待写线程写完队列中剩余的通知（最多 SHUTDOWN_TIMEOUT_MILLIS）。
+     * 不中断写线程：中断会使其正在进行的取连接 / 批量写入失败，写线程最迟在下一次 200ms 轮询时看到 stopping。
+     */
+    public static void shutdown() {
+        stopping = true;
+        try {
+            WRITER.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 当前运行指标快照。
+     */
+    public static Stats stats() {
+        long b = batches.get();
+        return new Stats(QUEUE.size(), QUEUE_CAPACITY, enqueued.get(), written.get(), failed.get(),
+                callerRuns.get(), b, lastBatchSize, b == 0 ? 0 : (double) written.get() / b,
+                lastFlushNanos / 1e6, b == 0 ? 0 : flushNanosTotal.get() / 1e6 / b, maxFlushNanos / 1e6);
+    }
+
+    /**
+     * 发件箱运行指标，时间单位为毫秒。
+     */
+    public static final class Stats {
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final long enqueued;
+        private final long written;
+        private final long failed;
+        private final long callerRuns;
+        private final long batches;
+        private final int lastBatchSize;
+        private final double avgBatchSize;
+        private final double lastFlushMillis;
+        private final double avgFlushMillis;
+        private final double maxFlushMillis;
+
+        Stats(int queueDepth, int queueCapacity, long enqueued, long written, long failed, long callerRuns,
+              long batches, int lastBatchSize, double avgBatchSize,
+              double lastFlushMillis, double avgFlushMillis, double maxFlushMillis) {
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.enqueued = enqueued;
+            this.written = written;
+            this.failed = failed;
+            this.callerRuns = callerRuns;
+            this.batches = batches;
+            this.lastBatchSize = lastBatchSize;
+            this.avgBatchSize = avgBatchSize;
+            this.lastFlushMillis = lastFlushMillis;
+            this.avgFlushMillis = avgFlushMillis;
+            this.maxFlushMillis = maxFlushMillis;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getCallerRuns() {
+            return callerRuns;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public int getLastBatchSize() {
+            return lastBatchSize;
+        }
+
+        public double getAvgBatchSize() {
+            return avgBatchSize;
+        }
+
+        public double getLastFlushMillis() {
+            return lastFlushMillis;
+        }
+
+        public double getAvgFlushMillis() {
+            return avgFlushMillis;
+        }
+
+        public double getMaxFlushMillis() {
+            return maxFlushMillis;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.bookstore.service;
+
+import com.bookstore.dao.SalesOrderDao;
+import com.bookstore.dao.ShipmentDao;
+import com.bookstore.dto.OrderDetail;
+import com.bookstore.model.SalesOrder;
+import com.bookstore.model.SalesOrderItem;
+import com.bookstore.model.Shipment;
+import com.bookstore.model.ShipmentItem;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单详情组装：无论有多少张发货单，固定 4 条查询（订单、订单明细、发货单、该订单全部发货明细），
+ * 再用哈希表把发货明细挂到发货单上、按订单明细号补上书号。
+ */
+public class OrderDetailAssembler {
+
+    private final SalesOrderDao salesOrderDao = new SalesOrderDao();
+    private final ShipmentDao shipmentDao = new ShipmentDao();
+
+    /**
+     * 组装订单详情，订单不存在时返回 null。
+     */
+    public OrderDetail assemble(long orderId) throws SQLException {
+        SalesOrder order = salesOrderDao.findOrderById(orderId);
+        if (order == null) {
+            return null;
+        }
+        List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
+        List<Shipment> shipments = shipmentDao.findByOrderId(orderId);
+        List<ShipmentItem> shipmentItems = shipments.isEmpty()
+                ? Collections.emptyList()
+                : shipmentDao.findItemsByOrderId(orderId);
+
+        Map<Long, String> bookIdByOrderItem = new HashMap<>();
+        for (SalesOrderItem oi : items) {
+            bookIdByOrderItem.put(oi.getOrderItemId(), oi.getBookId());
+        }
+        Map<Long, List<OrderDetail.ShipmentItemDto>> itemsByShipment = new HashMap<>();
+        for (ShipmentItem si : shipmentItems) {
+            OrderDetail.ShipmentItemDto dto = new OrderDetail.ShipmentItemDto();
+            dto.setOrderItemId(si.getOrderItemId());
+            dto.setShipQuantity(si.getShipQuantity());
+            dto.setBookId(bookIdByOrderItem.get(si.getOrderItemId()));
+            itemsByShipment.computeIfAbsent(si.getShipmentId(), k -> new ArrayList<>()).add(dto);
+        }
+
+        List<OrderDetail.ShipmentWithItems> shipmentsWithItems = new ArrayList<>(shipments.size());
+        for (Shipment shipment : shipments) {
+            OrderDetail.ShipmentWithItems swi = new OrderDetail.ShipmentWithItems();
+            swi.setShipment(shipment);
+            swi.setItems(itemsByShipment.getOrDefault(shipment.getShipmentId(), new ArrayList<>()));
+            shipmentsWithItems.add(swi);
+        }
+
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setItems(items != null ? items : new ArrayList<>());
+        detail.setShipments(shipments);
+        detail.setShipmentsWithItems(shipmentsWithItems);
+        return detail;
+    }
+}
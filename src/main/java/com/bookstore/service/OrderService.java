@@ -3,15 +3,19 @@ package com.bookstore.service;
 import com.bookstore.dao.*;
 import com.bookstore.model.*;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.util.Workload;
 
 import java.math.BigDecimal;
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 订单相关业务服务。
+ * 订单相关业务服务。下单、取消与付款使用 CHECKOUT 连接池隔舱（见 {@link Workload}），不受管理端查询影响。
  * 本阶段实现：根据信用等级规则完成“付款与信用校验”，并更新账户余额与订单状态。
  *
  * 业务规则（简化自设计文档）：
@@ -22,9 +26,34 @@ import java.util.List;
 public class OrderService {
 
     private final CustomerDao customerDao = new CustomerDao();
-    private final CreditLevelDao creditLevelDao = new CreditLevelDao();
     private final SalesOrderDao salesOrderDao = new SalesOrderDao();
 
+    /**
+     * 创建订单并预留库存：订单主表、明细与库存预留在同一事务中写入。
+     * 可承诺量不足的书不预留，返回这些书（书号 -> 下单时的可承诺量），订单照常创建，由缺书登记流程处理。
+     */
+    public Map<String, Integer> placeOrder(SalesOrder order, List<SalesOrderItem> items) throws SQLException {
+        Map<String, Integer> needByBook = new LinkedHashMap<>();
+        for (SalesOrderItem item : items) {
+            needByBook.merge(item.getBookId(), item.getQuantity(), Integer::sum);
+        }
+        return Workload.CHECKOUT.call(() -> TransactionContext.execute(conn -> {
+            salesOrderDao.createOrder(order, items);
+            DBUtil.markCustomerWrite(order.getCustomerId());
+            return StockReservationEngine.reserve(order.getOrderId(), needByBook);
+        }));
+    }
+
+    /**
+     * 取消订单并释放其库存预留。订单状态校验由调用方负责。
+     */
+    public void cancelOrder(long orderId) throws SQLException {
+        Workload.CHECKOUT.run(() -> TransactionContext.run(conn -> {
+            salesOrderDao.updateStatusAndPaymentTime(orderId, "CANCELLED", null);
+            StockReservationEngine.release(orderId);
+        }));
+    }
+
     /**
      * 对指定订单执行“付款 + 信用校验”：
      *  - 根据订单找到客户与其信用等级；
@@ -35,105 +64,92 @@ public class OrderService {
      * @throws IllegalStateException 支付能力不足时抛出
      */
     public void payOrder(long orderId) throws SQLException {
-        // 为确保账户扣款与订单状态更新在同一事务中，这里手动管理连接与事务。
-        try (Connection conn = DBUtil.getConnection()) {
-            try {
-                conn.setAutoCommit(false);
-
-                // 1. 读取订单
-                SalesOrder order = salesOrderDao.findOrderById(orderId);
-                if (order == null) {
-                    throw new IllegalStateException("订单不存在，orderId=" + orderId);
-                }
+        Workload.CHECKOUT.run(() -> doPayOrder(orderId));
+    }
 
-                String originalStatus = order.getOrderStatus();
+    private void doPayOrder(long orderId) throws SQLException {
+        // 账户扣款、订单状态更新、缺书记录与信用升级在同一事务中完成，
+        // 事务期间各 DAO 通过 DBUtil.getConnection() 复用同一个连接。
+        TransactionContext.run(conn -> {
+            // 1. 读取订单
+            SalesOrder order = salesOrderDao.findOrderById(orderId);
+            if (order == null) {
+                throw new IllegalStateException("订单不存在，orderId=" + orderId);
+            }
 
-                // 2. 读取客户与信用等级
-                Customer customer = customerDao.findById(order.getCustomerId());
-                if (customer == null) {
-                    throw new IllegalStateException("关联客户不存在，customerId=" + order.getCustomerId());
-                }
-                CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
-                if (level == null) {
-                    throw new IllegalStateException("客户信用等级不存在，creditLevelId=" + customer.getCreditLevelId());
-                }
+            String originalStatus = order.getOrderStatus();
 
-                BigDecimal payable = order.getPayableAmount();
-                BigDecimal balance = customer.getAccountBalance();
-                BigDecimal overdraftLimit = level.getOverdraftLimit();
-
-                // 3. 根据信用等级校验支付能力
-                boolean allowOverdraft = level.isAllowOverdraft();
-                boolean canPay;
-                if (!allowOverdraft) {
-                    // 一、二级：不允许透支，余额必须 >= 应付金额
-                    canPay = balance.compareTo(payable) >= 0;
-                } else {
-                    if (overdraftLimit != null && overdraftLimit.compareTo(BigDecimal.valueOf(-1)) == 0) {
-                        // 五级：透支额度为 -1 视为无限透支
-                        canPay = true;
-                    } else {
-                        // 三、四级：允许透支，余额 + 透支额度 >= 应付金额
-                        BigDecimal available = balance.add(overdraftLimit != null ? overdraftLimit : BigDecimal.ZERO);
-                        canPay = available.compareTo(payable) >= 0;
-                    }
-                }
+            // 2. 读取客户与信用等级
+            Customer customer = customerDao.findById(order.getCustomerId());
+            if (customer == null) {
+                throw new IllegalStateException("关联客户不存在，customerId=" + order.getCustomerId());
+            }
+            CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
+            if (level == null) {
+                throw new IllegalStateException("客户信用等级不存在，creditLevelId=" + customer.getCreditLevelId());
+            }
 
-                if (!canPay) {
-                    String msg = "支付失败：账户余额与透支额度不足以支付本订单。";
-                    msg += "\n应付金额：¥" + payable;
-                    msg += "\n当前余额：¥" + balance;
-                    if (allowOverdraft) {
-                        if (overdraftLimit != null && overdraftLimit.compareTo(BigDecimal.valueOf(-1)) == 0) {
-                            msg += "\n透支额度：无限";
-                        } else {
-                            msg += "\n透支额度：¥" + (overdraftLimit != null ? overdraftLimit : "0");
-                        }
-                    } else {
-                        msg += "\n您的信用等级不允许透支";
-                    }
-                    throw new IllegalStateException(msg);
+            BigDecimal payable = order.getPayableAmount();
+
+            // 3 + 4. 按信用等级规则条件扣款：校验与扣减在同一条 UPDATE 中完成，
+            // 同一客户的并发付款不会都通过校验后互相覆盖余额。
+            // 扣款失败时加锁读取最新的客户行（普通读只能看到事务快照），
+            // 若期间信用等级发生变化（如被其他付款升级）则按新等级再试，否则判定支付能力不足。
+            while (customerDao.debitBalance(customer.getCustomerId(), level.getLevelId(), payable,
+                    availableCredit(level)) == 0) {
+                Customer latest = customerDao.findByIdForUpdate(customer.getCustomerId());
+                if (latest == null) {
+                    throw new IllegalStateException("关联客户不存在，customerId=" + customer.getCustomerId());
                 }
-
-                // 4. 扣减余额
-                BigDecimal newBalance = balance.subtract(payable);
-                // 使用独立 SQL 更新余额和订单状态，为简化实践，这里仍通过 DAO 逐步调用
-                customerDao.updateAccountBalance(customer.getCustomerId(), newBalance);
-
-                // 5. 更新累积消费
-                customerDao.addTotalConsumption(customer.getCustomerId(), payable);
-
-                // 6. 检查订单是否已全部收货完成
-                List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
-                boolean allReceived = true;
-                for (SalesOrderItem item : items) {
-                    int received = item.getReceivedQuantity() == null ? 0 : item.getReceivedQuantity();
-                    if (received < item.getQuantity()) {
-                        allReceived = false;
-                        break;
-                    }
+                if (latest.getCreditLevelId().equals(level.getLevelId())) {
+                    throw new IllegalStateException(insufficientMessage(payable, latest.getAccountBalance(), level));
                 }
-                
-                // 7. 更新订单状态与支付时间
-                // 如果已收货完成，付款后订单状态为COMPLETED；否则根据原状态决定
-                String newStatus;
-                if (allReceived) {
-                    // 已收货完成，付款后订单完成
-                    newStatus = "COMPLETED";
-                } else if ("DELIVERING".equals(originalStatus)) {
-                    // 未收货完成但已在配送中，保持配送中状态
-                    newStatus = "DELIVERING";
-                } else {
-                    // 其他情况（如PENDING_PAYMENT），付款后等待发货
-                    newStatus = "PENDING_SHIPMENT";
+                customer = latest;
+                level = CreditLevelRegistry.get(customer.getCreditLevelId());
+                if (level == null) {
+                    throw new IllegalStateException("客户信用等级不存在，creditLevelId=" + customer.getCreditLevelId());
                 }
-                salesOrderDao.updateStatusAndPaymentTime(orderId, newStatus, LocalDateTime.now());
+            }
 
-                // 8. 若原状态为缺货待确认，则在付款成功后自动生成缺书记录
-                if ("OUT_OF_STOCK_PENDING".equals(originalStatus)) {
-                    CustomerOutOfStockRequestDao reqDao = new CustomerOutOfStockRequestDao();
-                    OutOfStockRecordDao oosDao = new OutOfStockRecordDao();
-                    List<CustomerOutOfStockRequest> pendingReqs = reqDao.findPendingByOrderId(orderId);
+            // 5. 更新累积消费
+            customerDao.addTotalConsumption(customer.getCustomerId(), payable);
+            DBUtil.markCustomerWrite(customer.getCustomerId());
+
+            // 6. 检查订单是否已全部收货完成
+            List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
+            boolean allReceived = true;
+            for (SalesOrderItem item : items) {
+                int received = item.getReceivedQuantity() == null ? 0 : item.getReceivedQuantity();
+                if (received < item.getQuantity()) {
+                    allReceived = false;
+                    break;
+                }
+            }
+            
+            // 7. 更新订单状态与支付时间
+            // 如果已收货完成，付款后订单状态为COMPLETED；否则根据原状态决定
+            String newStatus;
+            if (allReceived) {
+                // 已收货完成，付款后订单完成
+                newStatus = "COMPLETED";
+            } else if ("DELIVERING".equals(originalStatus)) {
+                // 未收货完成但已在配送中，保持配送中状态
+                newStatus = "DELIVERING";
+            } else {
+                // 其他情况（如PENDING_PAYMENT），付款后等待发货
+                newStatus = "PENDING_SHIPMENT";
+            }
+            salesOrderDao.updateStatusAndPaymentTime(orderId, newStatus, LocalDateTime.now());
+
+            // 8. 若原状态为缺货待确认，则在付款成功后自动生成缺书记录
+            if ("OUT_OF_STOCK_PENDING".equals(originalStatus)) {
+                CustomerOutOfStockRequestDao reqDao = new CustomerOutOfStockRequestDao();
+                OutOfStockRecordDao oosDao = new OutOfStockRecordDao();
+                List<CustomerOutOfStockRequest> pendingReqs = reqDao.findPendingByOrderId(orderId);
+                if (!pendingReqs.isEmpty()) {
+                    // 缺书记录与登记状态各用一条语句批量写入，语句数与缺书种数无关
+                    List<OutOfStockRecord> records = new ArrayList<>();
+                    List<String> bookIds = new ArrayList<>();
                     for (CustomerOutOfStockRequest req : pendingReqs) {
                         OutOfStockRecord record = new OutOfStockRecord();
                         record.setBookId(req.getBookId());
@@ -143,69 +159,64 @@ public class OrderService {
                         record.setRelatedCustomerId(order.getCustomerId());
                         record.setStatus("PENDING");
                         record.setPriority(1);
-                        long rid = oosDao.insert(record);
-                        reqDao.updateProcessedStatus(req.getRequestId(), "ACCEPTED", rid);
+                        records.add(record);
+                        bookIds.add(req.getBookId());
                     }
+                    oosDao.insertAll(records);
+                    Map<String, Long> recordIdByBook = oosDao.findPendingIdsByBookIds(bookIds);
+                    Map<Long, Long> accepted = new LinkedHashMap<>();
+                    for (CustomerOutOfStockRequest req : pendingReqs) {
+                        accepted.put(req.getRequestId(), recordIdByBook.get(req.getBookId()));
+                    }
+                    reqDao.updateProcessedStatusAll(accepted, "ACCEPTED");
                 }
-
-                // 9. 检查并自动升级信用等级
-                checkAndUpgradeCreditLevel(customer.getCustomerId());
-
-                conn.commit();
-            } catch (Exception ex) {
-                conn.rollback();
-                if (ex instanceof SQLException) {
-                    throw (SQLException) ex;
-                } else if (ex instanceof IllegalStateException) {
-                    throw (IllegalStateException) ex;
-                } else {
-                    throw new RuntimeException(ex);
-                }
-            } finally {
-                conn.setAutoCommit(true);
             }
-        }
+
+            // 9. 检查并自动升级信用等级
+            checkAndUpgradeCreditLevel(customer.getCustomerId());
+        });
     }
 
     /**
-     * 根据累积消费自动检查并升级客户信用等级。
-     * 升级规则：
-     * - 二级：累计消费满500元
-     * - 三级：累计消费满2000元
-     * - 四级：累计消费满5000元
-     * - 五级：累计消费满10000元
+     * 信用等级允许的透支额度：
+     *  - 一、二级：不允许透支，额度为 0（余额必须 >= 应付金额）；
+     *  - 三、四级：余额 + 透支额度 >= 应付金额；
+     *  - 五级：透支额度为 -1 视为无限透支，返回 null。
      */
-    private void checkAndUpgradeCreditLevel(long customerId) throws SQLException {
-        Customer customer = customerDao.findById(customerId);
-        if (customer == null) {
-            return;
+    private static BigDecimal availableCredit(CreditLevel level) {
+        if (!level.isAllowOverdraft()) {
+            return BigDecimal.ZERO;
         }
-
-        BigDecimal totalConsumption = customer.getTotalConsumption();
-        if (totalConsumption == null) {
-            totalConsumption = BigDecimal.ZERO;
+        BigDecimal overdraftLimit = level.getOverdraftLimit();
+        if (overdraftLimit != null && overdraftLimit.compareTo(BigDecimal.valueOf(-1)) == 0) {
+            return null;
         }
+        return overdraftLimit != null ? overdraftLimit : BigDecimal.ZERO;
+    }
 
-        int currentLevel = customer.getCreditLevelId();
-        int newLevel = currentLevel;
-
-        // 根据累积消费确定应该达到的等级
-        if (totalConsumption.compareTo(BigDecimal.valueOf(10000)) >= 0) {
-            newLevel = 5; // 五级：累计消费满10000元
-        } else if (totalConsumption.compareTo(BigDecimal.valueOf(5000)) >= 0) {
-            newLevel = 4; // 四级：累计消费满5000元
-        } else if (totalConsumption.compareTo(BigDecimal.valueOf(2000)) >= 0) {
-            newLevel = 3; // 三级：累计消费满2000元
-        } else if (totalConsumption.compareTo(BigDecimal.valueOf(500)) >= 0) {
-            newLevel = 2; // 二级：累计消费满500元
+    private static String insufficientMessage(BigDecimal payable, BigDecimal balance, CreditLevel level) {
+        BigDecimal overdraftLimit = level.getOverdraftLimit();
+        String msg = "支付失败：账户余额与透支额度不足以支付本订单。";
+        msg += "\n应付金额：¥" + payable;
+        msg += "\n当前余额：¥" + balance;
+        if (level.isAllowOverdraft()) {
+            if (overdraftLimit != null && overdraftLimit.compareTo(BigDecimal.valueOf(-1)) == 0) {
+                msg += "\n透支额度：无限";
+            } else {
+                msg += "\n透支额度：¥" + (overdraftLimit != null ? overdraftLimit : "0");
+            }
         } else {
-            newLevel = 1; // 一级：默认等级
+            msg += "\n您的信用等级不允许透支";
         }
+        return msg;
+    }
 
-        // 如果等级需要提升，则更新
-        if (newLevel > currentLevel) {
-            customerDao.updateCreditLevel(customerId, newLevel);
-        }
+    /**
+     * 根据累积消费自动检查并升级客户信用等级（只升不降）。
+     * 升级门槛由 {@link CreditLevelRegistry#upgradeThresholds()} 提供，判断在 UPDATE 中完成，不读取客户。
+     */
+    private void checkAndUpgradeCreditLevel(long customerId) throws SQLException {
+        customerDao.upgradeCreditLevelByConsumption(customerId, CreditLevelRegistry.upgradeThresholds());
     }
 }
 
@@ -1,6 +1,5 @@
 package com.bookstore.service;
 
-import com.bookstore.dao.CustomerNotificationDao;
 import com.bookstore.dao.CustomerOutOfStockRequestDao;
 import com.bookstore.dao.InventoryDao;
 import com.bookstore.dao.OutOfStockRecordDao;
@@ -12,13 +11,16 @@ import com.bookstore.model.OutOfStockRecord;
 import com.bookstore.model.PurchaseOrder;
 import com.bookstore.model.PurchaseOrderItem;
 import com.bookstore.model.Supply;
+import com.bookstore.util.TransactionContext;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -31,7 +33,6 @@ public class PurchaseService {
     private final OutOfStockRecordDao outOfStockRecordDao = new OutOfStockRecordDao();
     private final SupplyDao supplyDao = new SupplyDao();
     private final CustomerOutOfStockRequestDao customerReqDao = new CustomerOutOfStockRequestDao();
-    private final CustomerNotificationDao notificationDao = new CustomerNotificationDao();
 
     /**
      * 处理采购单到货：
@@ -39,6 +40,7 @@ public class PurchaseService {
      * 2. 更新关联的缺书记录状态为 COMPLETED
      * 3. 更新采购单状态为 COMPLETED
      * 4. 通知等待该书的顾客（缺书登记）
+     * 1～3 在同一事务中完成，通知在提交之后发出。
      */
     public void receiveGoods(long purchaseOrderId) throws SQLException {
         PurchaseOrder order = purchaseOrderDao.findById(purchaseOrderId);
@@ -51,27 +53,28 @@ public class PurchaseService {
         }
 
         List<PurchaseOrderItem> items = purchaseOrderDao.findItemsByOrderId(purchaseOrderId);
-        Set<String> arrivedBookIds = new HashSet<>();
+        Map<String, Integer> arrived = new LinkedHashMap<>();
+        List<Long> relatedRecordIds = new ArrayList<>();
 
         for (PurchaseOrderItem item : items) {
-            // 增加库存
-            inventoryDao.increaseQuantity(item.getBookId(), item.getPurchaseQuantity());
-            System.out.printf("  书号 %s 库存增加 %d%n", item.getBookId(), item.getPurchaseQuantity());
-            arrivedBookIds.add(item.getBookId());
-
-            // 如果关联了缺书记录，安全地将其标记为 COMPLETED（避免唯一约束冲突）
+            arrived.merge(item.getBookId(), item.getPurchaseQuantity(), Integer::sum);
             if (item.getRelatedOutOfStockId() != null) {
-                outOfStockRecordDao.completeRecordSafely(item.getRelatedOutOfStockId());
-                System.out.printf("  缺书记录 %d 状态更新为 COMPLETED（或已合并）%n", item.getRelatedOutOfStockId());
+                relatedRecordIds.add(item.getRelatedOutOfStockId());
             }
         }
 
-        // 更新采购单状态
-        purchaseOrderDao.updateStatus(purchaseOrderId, "COMPLETED");
+        // 增加库存、完成缺书记录与更新采购单状态在同一事务中，中途失败时整体回滚
+        TransactionContext.run(conn -> {
+            // 增加库存（各书一条批量语句）
+            StockReservationEngine.addOnHand(arrived);
+            // 关联的缺书记录安全地标记为 COMPLETED（避免唯一约束冲突），语句数与记录数无关
+            outOfStockRecordDao.completeRecordsSafely(relatedRecordIds);
+            purchaseOrderDao.updateStatus(purchaseOrderId, "COMPLETED");
+        });
         System.out.println("采购单 " + purchaseOrderId + " 已完成到货处理");
 
         // 通知等待这些书的顾客
-        notifyCustomersForArrivedBooks(arrivedBookIds);
+        notifyCustomersForArrivedBooks(arrived.keySet());
     }
 
     /**
@@ -79,20 +82,18 @@ public class PurchaseService {
      * 查找已付款且状态为 ACCEPTED 的缺书登记，发送到货通知。
      */
     private void notifyCustomersForArrivedBooks(Set<String> bookIds) throws SQLException {
-        for (String bookId : bookIds) {
-            // 查找等待该书的顾客缺书登记（已付款，已被管理员接受）
-            List<CustomerOutOfStockRequest> waitingCustomers = customerReqDao.findAcceptedPaidByBookId(bookId);
-            for (CustomerOutOfStockRequest req : waitingCustomers) {
-                // 发送到货通知
-                CustomerNotification n = new CustomerNotification();
-                n.setCustomerId(req.getCustomerId());
-                n.setTitle("📦 您预订的书籍已到货");
-                n.setContent("您预订的书籍【" + bookId + "】已到货入库，请留意订单发货状态。");
-                n.setType("STOCK_ARRIVAL");
-                n.setReadFlag(false);
-                notificationDao.insert(n);
-                System.out.printf("  已通知顾客 %d：书号 %s 已到货%n", req.getCustomerId(), bookId);
-            }
+        // 查找等待这些书的顾客缺书登记（已付款，已被管理员接受），一条查询完成
+        for (CustomerOutOfStockRequest req : customerReqDao.findAcceptedPaidByBookIds(bookIds)) {
+            String bookId = req.getBookId();
+            // 发送到货通知
+            CustomerNotification n = new CustomerNotification();
+            n.setCustomerId(req.getCustomerId());
+            n.setTitle("📦 您预订的书籍已到货");
+            n.setContent("您预订的书籍【" + bookId + "】已到货入库，请留意订单发货状态。");
+            n.setType("STOCK_ARRIVAL");
+            n.setReadFlag(false);
+            NotificationOutbox.publish(n);
+            System.out.printf("  已通知顾客 %d：书号 %s 已到货%n", req.getCustomerId(), bookId);
         }
     }
 
@@ -117,10 +118,11 @@ public class PurchaseService {
             throw new IllegalArgumentException("缺书记录列表不能为空");
         }
 
-        // 查询所有选中的缺书记录
+        // 查询所有选中的缺书记录（一条 IN 查询）
+        Map<Long, OutOfStockRecord> found = outOfStockRecordDao.findByIds(recordIds);
         List<OutOfStockRecord> records = new ArrayList<>();
         for (Long id : recordIds) {
-            OutOfStockRecord r = outOfStockRecordDao.findById(id);
+            OutOfStockRecord r = found.get(id);
             if (r == null) {
                 throw new IllegalArgumentException("缺书记录不存在: " + id);
             }
@@ -130,21 +132,16 @@ public class PurchaseService {
             records.add(r);
         }
 
-        // 为每本书找到该供应商的供货价
+        // 该供应商的全部供货价，按书号索引（supply 主键为 supplier_id + book_id）
+        Map<String, Supply> supplyByBook = new HashMap<>();
+        for (Supply s : supplyDao.findBySupplierId(supplierId)) {
+            supplyByBook.put(s.getBookId(), s);
+        }
         List<PurchaseOrderItem> items = new ArrayList<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
         for (OutOfStockRecord r : records) {
             String bookId = r.getBookId();
-            List<Supply> suppliesForBook = supplyDao.findByBookId(bookId);
-            Supply matched = null;
-            for (Supply s : suppliesForBook) {
-                if (s.getSupplierId() != null && s.getSupplierId() == supplierId) {
-                    matched = s;
-                    if (s.isPrimary()) {
-                        break;
-                    }
-                }
-            }
+            Supply matched = supplyByBook.get(bookId);
             if (matched == null) {
                 throw new IllegalStateException("供应商 " + supplierId + " 对书号 " + bookId + " 未配置供货价");
             }
@@ -174,9 +171,11 @@ public class PurchaseService {
         long poId = purchaseOrderDao.createPurchaseOrder(order, items);
 
         // 将相关缺书记录状态改为 PURCHASING
+        List<Long> recordIdsToUpdate = new ArrayList<>(records.size());
         for (OutOfStockRecord r : records) {
-            outOfStockRecordDao.updateStatus(r.getRecordId(), "PURCHASING");
+            recordIdsToUpdate.add(r.getRecordId());
         }
+        outOfStockRecordDao.updateStatusAll(recordIdsToUpdate, "PURCHASING");
 
         return poId;
     }
@@ -3,16 +3,21 @@ package com.bookstore.service;
 import com.bookstore.dao.*;
 import com.bookstore.model.*;
 import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 发货业务服务
@@ -21,15 +26,13 @@ import java.util.List;
 public class ShipmentService {
 
     private final SalesOrderDao salesOrderDao = new SalesOrderDao();
-    private final InventoryDao inventoryDao = new InventoryDao();
     private final ShipmentDao shipmentDao = new ShipmentDao();
     private final OutOfStockRecordDao outOfStockRecordDao = new OutOfStockRecordDao();
-    private final CustomerNotificationDao customerNotificationDao = new CustomerNotificationDao();
 
     /**
      * 执行发货：
      * 1. 校验订单状态必须为 PENDING_SHIPMENT
-     * 2. 校验库存是否充足
+     * 2. 校验可承诺库存是否充足（本订单预留 + 未被预留的库存）
      * 3. 创建发货单与发货明细
      * 4. 扣减库存
      * 5. 更新订单状态为 SHIPPED
@@ -49,12 +52,11 @@ public class ShipmentService {
         
         // 2. 根据信用等级判断是否允许先发货后付款
         CustomerDao customerDao = new CustomerDao();
-        CreditLevelDao creditLevelDao = new CreditLevelDao();
         Customer customer = customerDao.findById(order.getCustomerId());
         if (customer == null) {
             throw new IllegalStateException("关联客户不存在");
         }
-        CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+        CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
         if (level == null) {
             throw new IllegalStateException("客户信用等级不存在");
         }
@@ -81,16 +83,12 @@ public class ShipmentService {
             throw new IllegalStateException("订单明细为空，无法发货");
         }
 
-        // 3. 校验库存是否充足（整单发货场景）
+        // 3. 校验可承诺库存是否充足（整单发货场景）
+        Map<String, Integer> needByBook = new LinkedHashMap<>();
         for (SalesOrderItem item : items) {
-            int currentQty = inventoryDao.getQuantity(item.getBookId());
-            if (currentQty < item.getQuantity()) {
-                throw new IllegalStateException(
-                    String.format("库存不足：书号 %s 当前库存 %d，需要 %d",
-                        item.getBookId(), currentQty, item.getQuantity())
-                );
-            }
+            needByBook.merge(item.getBookId(), item.getQuantity(), Integer::sum);
         }
+        checkPromisable(orderId, needByBook);
 
         // 4. 创建发货单（整单发货）
         Shipment shipment = new Shipment();
@@ -115,6 +113,24 @@ public class ShipmentService {
         return shipmentId;
     }
 
+    /**
+     * 发货前校验可承诺库存：每种书本次发货数量不得超过本订单仍占用的预留加上当前可承诺量，
+     * 与 {@link StockReservationEngine#commitShipment} 的扣减条件一致，不占用其他订单的预留。
+     */
+    private void checkPromisable(long orderId, Map<String, Integer> needByBook) throws SQLException {
+        Map<String, Integer> held = StockReservationEngine.reservedFor(orderId);
+        Map<String, Integer> available = StockReservationEngine.availableAll(needByBook.keySet());
+        for (Map.Entry<String, Integer> entry : needByBook.entrySet()) {
+            int reserved = held.getOrDefault(entry.getKey(), 0);
+            int free = Math.max(available.getOrDefault(entry.getKey(), 0), 0);
+            if (reserved + free < entry.getValue()) {
+                throw new IllegalStateException(String.format(
+                        "可承诺库存不足：书号 %s 本订单预留 %d，其余可用 %d，本次发货需要 %d",
+                        entry.getKey(), reserved, free, entry.getValue()));
+            }
+        }
+    }
+
     /**
      * 分次发货：管理员为每个订单明细指定本次要发出的数量。
      * 仅处理 shipQuantity > 0 的条目。
@@ -136,12 +152,11 @@ public class ShipmentService {
 
         // 信用等级校验与整单发货一致
         CustomerDao customerDao = new CustomerDao();
-        CreditLevelDao creditLevelDao = new CreditLevelDao();
         Customer customer = customerDao.findById(order.getCustomerId());
         if (customer == null) {
             throw new IllegalStateException("关联客户不存在");
         }
-        CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+        CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
         if (level == null) {
             throw new IllegalStateException("客户信用等级不存在");
         }
@@ -179,16 +194,8 @@ public class ShipmentService {
             throw new IllegalStateException("没有需要发货的图书数量");
         }
 
-        // 校验库存（按书号汇总）
-        for (Map.Entry<String, Integer> entry : needByBook.entrySet()) {
-            int currentQty = inventoryDao.getQuantity(entry.getKey());
-            if (currentQty < entry.getValue()) {
-                throw new IllegalStateException(
-                        String.format("库存不足：书号 %s 当前库存 %d，本次发货需要 %d",
-                                entry.getKey(), currentQty, entry.getValue())
-                );
-            }
-        }
+        // 校验可承诺库存（按书号汇总）
+        checkPromisable(orderId, needByBook);
 
         Shipment shipment = new Shipment();
         shipment.setOrderId(orderId);
@@ -232,7 +239,7 @@ public class ShipmentService {
             }
             n.setContent(content.toString());
             n.setReadFlag(false);
-            customerNotificationDao.insert(n);
+            NotificationOutbox.publish(n);
         } catch (Exception ignore) {
             // 通知失败不影响主流程
         }
@@ -246,12 +253,9 @@ public class ShipmentService {
      */
     private long createShipmentWithInventoryUpdate(Shipment shipment, List<ShipmentItem> shipmentItems,
                                                     List<SalesOrderItem> orderItems) throws SQLException {
-        Connection conn = null;
-        try {
-            conn = DBUtil.getConnection();
-            conn.setAutoCommit(false);
-
-            // 创建发货单（使用独立连接的方法，这里简化处理）
+        // 发货单、库存扣减、缺书记录与订单进度在同一事务、同一连接中完成
+        return TransactionContext.execute(conn -> {
+            // 创建发货单（DAO 通过 DBUtil.getConnection() 复用当前事务连接）
             long shipmentId = shipmentDao.createShipment(shipment, shipmentItems);
 
             // 扣减库存
@@ -265,57 +269,49 @@ public class ShipmentService {
                 if (oi == null) continue;
                 deductByBook.merge(oi.getBookId(), si.getShipQuantity(), Integer::sum);
             }
-            for (Map.Entry<String, Integer> entry : deductByBook.entrySet()) {
-                String bookId = entry.getKey();
-                int need = entry.getValue();
-                int affected = inventoryDao.decreaseQuantity(bookId, need);
-                if (affected == 0) {
-                    throw new SQLException("库存扣减失败，可能库存不足: " + bookId);
-                }
-                System.out.printf("  书号 %s 库存扣减 %d%n", bookId, need);
+            // 扣减库存并消耗本订单的库存预留（一条 UPDATE），不足部分不得占用其他订单的预留，
+            // 返回扣减后的库存与安全库存（一条 IN 查询）
+            Map<String, Inventory> levels = StockReservationEngine.commitShipment(shipment.getOrderId(), deductByBook);
 
-                // 发货后如库存跌破安全库存，则自动生成/累加缺书记录（LOW_STOCK）
-                int qty = inventoryDao.getQuantity(bookId);
-                int safety = inventoryDao.getSafetyStock(bookId);
-                if (safety > 0 && qty < safety) {
+            // 发货后跌破安全库存的书，统一生成/累加缺书记录（LOW_STOCK），一条语句写入
+            List<OutOfStockRecord> lowStock = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : deductByBook.entrySet()) {
+                System.out.printf("  书号 %s 库存扣减 %d%n", entry.getKey(), entry.getValue());
+                Inventory inv = levels.get(entry.getKey());
+                if (inv != null && inv.getSafetyStock() > 0 && inv.getQuantity() < inv.getSafetyStock()) {
                     OutOfStockRecord record = new OutOfStockRecord();
-                    record.setBookId(bookId);
-                    record.setRequiredQuantity(safety - qty);
+                    record.setBookId(inv.getBookId());
+                    record.setRequiredQuantity(inv.getSafetyStock() - inv.getQuantity());
                     record.setRecordDate(java.time.LocalDate.now());
                     record.setSource("LOW_STOCK");
                     record.setStatus("PENDING");
                     record.setPriority(1);
-                    outOfStockRecordDao.insert(record);
+                    lowStock.add(record);
                 }
             }
+            outOfStockRecordDao.insertAll(lowStock);
 
-            // 更新订单明细的发货进度
+            // 更新订单明细的发货进度（一条 UPDATE，状态按累加后的发货数量判断）
+            Map<Long, Integer> shippedByItem = new LinkedHashMap<>();
             for (ShipmentItem si : shipmentItems) {
-                SalesOrderItem oi = itemMap.get(si.getOrderItemId());
-                if (oi == null) continue;
+                if (itemMap.containsKey(si.getOrderItemId())) {
+                    shippedByItem.merge(si.getOrderItemId(), si.getShipQuantity(), Integer::sum);
+                }
+            }
+            salesOrderDao.addShippedQuantities(shippedByItem);
+            for (Map.Entry<Long, Integer> entry : shippedByItem.entrySet()) {
+                // 更新itemMap中的值，以便后续生成发货通知
+                SalesOrderItem oi = itemMap.get(entry.getKey());
                 int shippedSoFar = oi.getShippedQuantity() == null ? 0 : oi.getShippedQuantity();
-                int newTotal = shippedSoFar + si.getShipQuantity();
-                String newStatus = newTotal >= oi.getQuantity() ? "SHIPPED" : "PART_SHIPPED";
-                salesOrderDao.updateItemProgress(oi.getOrderItemId(), si.getShipQuantity(), 0, newStatus);
-                // 更新itemMap中的值，以便后续检查
-                oi.setShippedQuantity(newTotal);
+                oi.setShippedQuantity(shippedSoFar + entry.getValue());
             }
 
             // 分次发货逻辑：只要分次发货一次，订单状态就变为DELIVERING（运输中）
             // 这样顾客就能看到收货按钮，可以收货已发货的部分
             salesOrderDao.updateStatusAndDeliveryTime(shipment.getOrderId(), "DELIVERING", LocalDateTime.now());
 
-            conn.commit();
             return shipmentId;
-        } catch (SQLException e) {
-            if (conn != null) conn.rollback();
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
-            }
-        }
+        });
     }
 
     /**
@@ -396,47 +392,48 @@ public class ShipmentService {
                 }
             }
 
-            // 收货整个shipment：将所有shipment_item标记为已收货
+            // 收货整个shipment：将所有shipment_item标记为已收货（使用同一个连接，一条语句批量执行）
             Map<Long, Integer> orderItemReceiveMap = new HashMap<>(); // 用于更新订单明细
-            for (ShipmentItem si : shipmentItems) {
-                int shipped = si.getShipQuantity();
-                int received = si.getReceivedQuantity() == null ? 0 : si.getReceivedQuantity();
-                int remain = shipped - received;
-                if (remain > 0) {
-                    // 标记该shipment_item为已收货（使用同一个连接）
-                    String updateItemSql = "UPDATE shipment_item SET received_quantity = received_quantity + ?, " +
-                            "receive_status = ?, received_time = ? WHERE shipment_item_id = ?";
-                    try (PreparedStatement ps = conn.prepareStatement(updateItemSql)) {
+            String updateItemSql = "UPDATE shipment_item SET received_quantity = received_quantity + ?, " +
+                    "receive_status = ?, received_time = ? WHERE shipment_item_id = ?";
+            try (PreparedStatement ps = conn.prepareStatement(updateItemSql)) {
+                Timestamp now = Timestamp.valueOf(java.time.LocalDateTime.now());
+                for (ShipmentItem si : shipmentItems) {
+                    int shipped = si.getShipQuantity();
+                    int received = si.getReceivedQuantity() == null ? 0 : si.getReceivedQuantity();
+                    int remain = shipped - received;
+                    if (remain > 0) {
                         ps.setInt(1, remain);
                         ps.setString(2, "RECEIVED");
-                        ps.setTimestamp(3, Timestamp.valueOf(java.time.LocalDateTime.now()));
+                        ps.setTimestamp(3, now);
                         ps.setLong(4, si.getShipmentItemId());
-                        ps.executeUpdate();
+                        ps.addBatch();
+                        // 累计每个orderItem的收货数量
+                        orderItemReceiveMap.merge(si.getOrderItemId(), remain, Integer::sum);
                     }
-                    // 累计每个orderItem的收货数量
-                    orderItemReceiveMap.merge(si.getOrderItemId(), remain, Integer::sum);
                 }
+                ps.executeBatch();
             }
 
-            // 更新订单明细的收货进度（使用同一个连接）
-            for (Map.Entry<Long, Integer> entry : orderItemReceiveMap.entrySet()) {
-                SalesOrderItem oi = itemMap.get(entry.getKey());
-                if (oi == null) continue;
-                int oldReceived = oi.getReceivedQuantity() == null ? 0 : oi.getReceivedQuantity();
-                int newReceived = oldReceived + entry.getValue();
-                String status = newReceived >= oi.getQuantity() ? "RECEIVED" : "PART_SHIPPED";
-                
-                // 使用同一个连接更新
-                String updateProgressSql = "UPDATE sales_order_item SET received_quantity = received_quantity + ?, " +
-                        "item_status = ? WHERE order_item_id = ?";
-                try (PreparedStatement ps = conn.prepareStatement(updateProgressSql)) {
+            // 更新订单明细的收货进度（使用同一个连接，一条语句批量执行）
+            String updateProgressSql = "UPDATE sales_order_item SET received_quantity = received_quantity + ?, " +
+                    "item_status = ? WHERE order_item_id = ?";
+            try (PreparedStatement ps = conn.prepareStatement(updateProgressSql)) {
+                for (Map.Entry<Long, Integer> entry : orderItemReceiveMap.entrySet()) {
+                    SalesOrderItem oi = itemMap.get(entry.getKey());
+                    if (oi == null) continue;
+                    int oldReceived = oi.getReceivedQuantity() == null ? 0 : oi.getReceivedQuantity();
+                    int newReceived = oldReceived + entry.getValue();
+                    String status = newReceived >= oi.getQuantity() ? "RECEIVED" : "PART_SHIPPED";
+
                     ps.setInt(1, entry.getValue());
                     ps.setString(2, status);
                     ps.setLong(3, entry.getKey());
-                    ps.executeUpdate();
+                    ps.addBatch();
+                    // 更新itemMap中的值，以便后续判断
+                    oi.setReceivedQuantity(newReceived);
                 }
-                // 更新itemMap中的值，以便后续判断
-                oi.setReceivedQuantity(newReceived);
+                ps.executeBatch();
             }
 
             // 更新shipment状态为DELIVERED（使用同一个连接）
@@ -493,6 +490,7 @@ public class ShipmentService {
             }
 
             conn.commit();
+            DBUtil.markCustomerWrite(order.getCustomerId());
         } catch (SQLException e) {
             if (conn != null) conn.rollback();
             throw e;
@@ -534,13 +532,23 @@ public class ShipmentService {
         Map<Long, SalesOrderItem> itemMap = new HashMap<>();
         for (SalesOrderItem it : items) itemMap.put(it.getOrderItemId(), it);
 
+        // 一次查出本订单全部发货明细：兜底的累计发货数量与各明细待收货的发货明细都从中得出
+        Map<Long, Integer> shippedByItem = new HashMap<>();
+        Map<Long, List<ShipmentItem>> pendingByItem = new HashMap<>();
+        for (ShipmentItem si : shipmentDao.findItemsByOrderId(orderId)) {
+            shippedByItem.merge(si.getOrderItemId(), si.getShipQuantity(), Integer::sum);
+            if ("PENDING".equals(si.getReceiveStatus())) {
+                pendingByItem.computeIfAbsent(si.getOrderItemId(), k -> new ArrayList<>()).add(si);
+            }
+        }
+
         // 前置校验
         for (Map.Entry<Long, Integer> entry : receiveMap.entrySet()) {
             SalesOrderItem oi = itemMap.get(entry.getKey());
             if (oi == null) throw new IllegalArgumentException("无效的订单明细ID: " + entry.getKey());
             int shipped = oi.getShippedQuantity() == null ? 0 : oi.getShippedQuantity();
             if (shipped == 0) {
-                shipped = shipmentDao.sumShippedQuantityByOrderItem(oi.getOrderItemId());
+                shipped = shippedByItem.getOrDefault(oi.getOrderItemId(), 0);
             }
             int received = oi.getReceivedQuantity() == null ? 0 : oi.getReceivedQuantity();
             int remain = shipped - received;
@@ -552,29 +560,31 @@ public class ShipmentService {
             }
         }
 
-        // 按发货顺序将收货数量分摊到 shipment_item
+        // 按发货顺序将收货数量分摊到 shipment_item，汇总后各用一条批量语句写回
+        Map<Long, Integer> takeByShipmentItem = new LinkedHashMap<>();
+        Set<Long> finishedShipmentItems = new HashSet<>();
         for (Map.Entry<Long, Integer> entry : receiveMap.entrySet()) {
             long orderItemId = entry.getKey();
             int needReceive = entry.getValue();
-            List<ShipmentItem> pendingList = shipmentDao.findPendingByOrderItem(orderItemId);
-            for (ShipmentItem si : pendingList) {
+            for (ShipmentItem si : pendingByItem.getOrDefault(orderItemId, Collections.emptyList())) {
                 int shipped = si.getShipQuantity();
                 int received = si.getReceivedQuantity() == null ? 0 : si.getReceivedQuantity();
                 int remain = shipped - received;
                 if (remain <= 0) continue;
                 int take = Math.min(remain, needReceive);
-                boolean finishedThisLine = (remain == take);
-                shipmentDao.updateReceiveProgress(si.getShipmentItemId(), take, finishedThisLine);
+                takeByShipmentItem.put(si.getShipmentItemId(), take);
+                if (remain == take) {
+                    finishedShipmentItems.add(si.getShipmentItemId());
+                }
                 needReceive -= take;
                 if (needReceive == 0) break;
             }
-            // 更新订单明细的收货进度
+            // 更新订单明细的收货进度（内存中，用于后续判断）
             SalesOrderItem oi = itemMap.get(orderItemId);
-            int newReceived = (oi.getReceivedQuantity() == null ? 0 : oi.getReceivedQuantity()) + entry.getValue();
-            String status = newReceived >= oi.getQuantity() ? "RECEIVED" : "PART_SHIPPED";
-            salesOrderDao.updateItemProgress(orderItemId, 0, entry.getValue(), status);
-            oi.setReceivedQuantity(newReceived);
+            oi.setReceivedQuantity((oi.getReceivedQuantity() == null ? 0 : oi.getReceivedQuantity()) + entry.getValue());
         }
+        shipmentDao.updateReceiveProgress(takeByShipmentItem, finishedShipmentItems);
+        salesOrderDao.addReceivedQuantities(receiveMap);
 
         // 判断整单是否收货完成
         boolean allReceived = true;
@@ -599,6 +609,7 @@ public class ShipmentService {
         } else {
             salesOrderDao.updateStatusAndDeliveryTime(orderId, "DELIVERING", order.getDeliveryTime());
         }
+        DBUtil.markCustomerWrite(order.getCustomerId());
     }
 }
 
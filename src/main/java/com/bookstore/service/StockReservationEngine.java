@@ -0,0 +1,160 @@
+package com.bookstore.service;
+
+import com.bookstore.dao.InventoryDao;
+import com.bookstore.dao.StockReservationDao;
+import com.bookstore.model.Inventory;
+import com.bookstore.util.TransactionContext;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 可承诺库存（available-to-promise）预留引擎。
+ *
+ * 以数据库为准：inventory.reserved 记录每种书已预留未发货的数量，可承诺量 = quantity - reserved，
+ * stock_reservation 记录每个订单各书占用了多少。所有增减都是带条件的 UPDATE，由 InnoDB 行锁保证
+ * 并发正确，Web 进程与 JavaFX 客户端等多个进程同时下单、发货、调整库存也不会超卖。
+ *
+ * - 下单（reserve）：在订单事务中按书号顺序逐书执行
+ *   UPDATE inventory SET reserved = reserved + ? WHERE book_id = ? AND quantity - reserved >= ?，
+ *   成功的书写入 stock_reservation，不足的书由缺书登记流程处理；
+ * - 取消 / 拒绝（release）：预留行置为 RELEASED，并归还 inventory.reserved；
+ * - 发货（commitShipment）：先用本订单的预留抵扣，不足部分须有可承诺量，同一条 UPDATE 扣减库存与预留；
+ * - 采购到货走 {@link #addOnHand(Map)}，管理员调整库存走 {@link #adjustOnHand(String, int)}。
+ *
+ * 不在 JVM 内持有任何锁，行锁持有到所在事务结束；多书操作按书号升序加锁，避免事务间互相等待。
+ */
+public final class StockReservationEngine {
+
+    private static final InventoryDao inventoryDao = new InventoryDao();
+    private static final StockReservationDao reservationDao = new StockReservationDao();
+
+    private StockReservationEngine() {
+    }
+
+    /**
+     * 某书当前可承诺量（在库数量减去已被订单预留的数量），可能为负（管理员减少库存后）。
+     */
+    public static int available(String bookId) throws SQLException {
+        return inventoryDao.getAvailable(Collections.singleton(bookId)).get(bookId);
+    }
+
+    /**
+     * 多种书各自的可承诺量（书号 -> 数量，按传入顺序），一条 IN 查询完成。
+     */
+    public static Map<String, Integer> availableAll(Collection<String> bookIds) throws SQLException {
+        return inventoryDao.getAvailable(bookIds);
+    }
+
+    /**
+     * 为订单预留库存（书号 -> 数量）。每种书整笔预留或不预留：可承诺量足够的书全部预留，
+     * 不足的书不预留并放入返回值（书号 -> 当时的可承诺量），由缺书登记流程处理。
+     * 在订单创建的事务中调用，订单回滚时预留一并撤销。
+     */
+    public static Map<String, Integer> reserve(long orderId, Map<String, Integer> needByBook) throws SQLException {
+        return TransactionContext.execute(conn -> {
+            Map<String, Integer> sorted = new TreeMap<>(needByBook);
+            Set<String> reserved = inventoryDao.reserve(sorted);
+
+            Map<String, Integer> granted = new LinkedHashMap<>();
+            Map<String, Integer> shortages = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e : needByBook.entrySet()) {
+                if (reserved.contains(e.getKey())) {
+                    granted.put(e.getKey(), e.getValue());
+                } else {
+                    shortages.put(e.getKey(), 0);
+                }
+            }
+            if (!granted.isEmpty()) {
+                reservationDao.insertReserved(orderId, granted);
+            }
+            if (!shortages.isEmpty()) {
+                for (Map.Entry<String, Integer> e : inventoryDao.getAvailable(shortages.keySet()).entrySet()) {
+                    shortages.put(e.getKey(), Math.max(e.getValue(), 0));
+                }
+            }
+            return shortages;
+        });
+    }
+
+    /**
+     * 某订单仍占用的预留数量（书号 -> 数量）。
+     */
+    public static Map<String, Integer> reservedFor(long orderId) throws SQLException {
+        return reservationDao.findOutstandingByOrder(orderId, false);
+    }
+
+    /**
+     * 释放某订单全部未发货的预留（取消订单、缺书登记被拒绝时调用）。
+     */
+    public static void release(long orderId) throws SQLException {
+        TransactionContext.run(conn -> {
+            Map<String, Integer> held = reservationDao.findOutstandingByOrder(orderId, true);
+            if (held.isEmpty()) {
+                return;
+            }
+            reservationDao.releaseByOrder(orderId);
+            inventoryDao.unreserve(new TreeMap<>(held));
+        });
+    }
+
+    /**
+     * 发货时扣减库存并消耗预留（书号 -> 本次发货数量）。
+     * 本订单的预留优先抵扣，超出部分必须在可承诺量之内，不能占用其他订单的预留。
+     *
+     * @return 扣减后各书的库存记录（含安全库存），供调用方判断是否跌破安全库存
+     * @throws IllegalStateException 有书可承诺量不足时抛出，事务回滚
+     */
+    public static Map<String, Inventory> commitShipment(long orderId, Map<String, Integer> shipByBook)
+            throws SQLException {
+        return TransactionContext.execute(conn -> {
+            Map<String, Integer> held = reservationDao.findOutstandingByOrder(orderId, true);
+            Map<String, Integer> sorted = new TreeMap<>(shipByBook);
+            Map<String, Integer> covered = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e : sorted.entrySet()) {
+                int fromReservation = Math.min(held.getOrDefault(e.getKey(), 0), e.getValue());
+                if (fromReservation > 0) {
+                    covered.put(e.getKey(), fromReservation);
+                }
+            }
+
+            Set<String> failed = inventoryDao.ship(sorted, covered);
+            if (!failed.isEmpty()) {
+                String bookId = failed.iterator().next();
+                int available = inventoryDao.getAvailable(Collections.singleton(bookId)).get(bookId);
+                throw new IllegalStateException(String.format(
+                        "可承诺库存不足：书号 %s 本订单预留 %d，其余可用 %d，本次发货需要 %d",
+                        bookId, covered.getOrDefault(bookId, 0), Math.max(available, 0), shipByBook.get(bookId)));
+            }
+            if (!covered.isEmpty()) {
+                reservationDao.commitQuantities(orderId, covered);
+            }
+            return inventoryDao.findByBookIds(shipByBook.keySet());
+        });
+    }
+
+    /**
+     * 调整在库数量：delta > 0 增加（采购到货、盘盈），delta < 0 减少（盘亏）。
+     * 减少后可承诺量可能为负，此时新订单不再预留该书，直到补货。
+     *
+     * @return 减少时库存不足返回 false，其余情况返回 true
+     */
+    public static boolean adjustOnHand(String bookId, int delta) throws SQLException {
+        int updated = delta >= 0
+                ? inventoryDao.increaseQuantity(bookId, delta)
+                : inventoryDao.decreaseQuantity(bookId, -delta);
+        return updated > 0 || delta >= 0;
+    }
+
+    /**
+     * 批量增加在库数量（书号 -> 增加数量），用于采购到货，一条批量语句完成。
+     */
+    public static void addOnHand(Map<String, Integer> deltaByBook) throws SQLException {
+        inventoryDao.increaseQuantities(new TreeMap<>(deltaByBook));
+    }
+}
@@ -2,8 +2,10 @@ package com.bookstore.ui;
 
 import com.bookstore.dao.*;
 import com.bookstore.model.*;
+import com.bookstore.service.OrderService;
 import com.bookstore.service.PurchaseService;
 import com.bookstore.service.ShipmentService;
+import com.bookstore.service.StockReservationEngine;
 import com.bookstore.model.ShipmentItem;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
@@ -21,6 +23,7 @@ import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import javafx.util.converter.IntegerStringConverter;
@@ -269,10 +272,9 @@ public class AdminView {
                     if (!canShip && "PENDING_PAYMENT".equals(order.getOrderStatus())) {
                         try {
                             CustomerDao customerDao = new CustomerDao();
-                            CreditLevelDao creditLevelDao = new CreditLevelDao();
                             Customer customer = customerDao.findById(order.getCustomerId());
                             if (customer != null) {
-                                CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+                                CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
                                 if (level != null && level.isAllowOverdraft()) {
                                     canShip = true; // 三级及以上可先发货
                                 }
@@ -300,12 +302,11 @@ public class AdminView {
             
             // 筛选出三级及以上信用等级的待付款订单
             CustomerDao customerDao = new CustomerDao();
-            CreditLevelDao creditLevelDao = new CreditLevelDao();
             for (SalesOrder order : unpaidOrders) {
                 try {
                     Customer customer = customerDao.findById(order.getCustomerId());
                     if (customer != null) {
-                        CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+                        CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
                         if (level != null && level.isAllowOverdraft()) {
                             allOrders.add(order);
                         }
@@ -465,10 +466,9 @@ public class AdminView {
         if (!isPaid && "PENDING_PAYMENT".equals(order.getOrderStatus())) {
             try {
                 CustomerDao customerDao = new CustomerDao();
-                CreditLevelDao creditLevelDao = new CreditLevelDao();
                 Customer customer = customerDao.findById(order.getCustomerId());
                 if (customer != null) {
-                    CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+                    CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
                     if (level != null && level.isAllowOverdraft()) {
                         canShipWithoutPayment = true;
                     }
@@ -740,12 +740,7 @@ public class AdminView {
 
     private void adjustInventory(String bookId, int delta, TableView<Inventory> table) {
         try {
-            InventoryDao dao = new InventoryDao();
-            if (delta > 0) {
-                dao.increaseQuantity(bookId, delta);
-            } else {
-                dao.decreaseQuantity(bookId, -delta);
-            }
+            StockReservationEngine.adjustOnHand(bookId, delta);
             // 调整库存后检查是否触发低库存缺书记录
             checkAndCreateLowStockRecord(bookId);
             loadInventory(table);
@@ -761,8 +756,9 @@ public class AdminView {
     private void checkAndCreateLowStockRecord(String bookId) {
         try {
             InventoryDao invDao = new InventoryDao();
-            int qty = invDao.getQuantity(bookId);
-            int safety = invDao.getSafetyStock(bookId);
+            int[] row = invDao.getQuantities(Collections.singleton(bookId)).get(bookId);
+            int qty = row != null ? row[0] : 0;
+            int safety = row != null ? row[1] : 0;
             if (safety > 0 && qty < safety) {
                 OutOfStockRecord record = new OutOfStockRecord();
                 record.setBookId(bookId);
@@ -920,8 +916,7 @@ public class AdminView {
                         dao.updateProcessedStatus(req.getRequestId(), "REJECTED", null);
 
                          // 管理员拒绝生成缺书记录：订单状态从缺货待确认改为已取消
-                        SalesOrderDao soDao = new SalesOrderDao();
-                        soDao.updateStatusAndPaymentTime(req.getOrderId(), "CANCELLED", null);
+                        new OrderService().cancelOrder(req.getOrderId());
 
                         showAlert(Alert.AlertType.INFORMATION, "处理完成", "已标记为不生成缺书记录");
                         showPurchaseManagement();
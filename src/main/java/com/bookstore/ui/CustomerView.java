@@ -54,8 +54,7 @@ public class CustomerView {
         try {
             CustomerDao customerDao = new CustomerDao();
             currentCustomer = customerDao.findById(customerId);
-            CreditLevelDao creditLevelDao = new CreditLevelDao();
-            creditLevel = creditLevelDao.findById(currentCustomer.getCreditLevelId());
+            creditLevel = CreditLevelRegistry.get(currentCustomer.getCreditLevelId());
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -682,15 +681,11 @@ public class CustomerView {
             order.setPayableAmount(goodsAmount);
             order.setShippingAddressSnapshot(addressSnapshot);
 
-            SalesOrderDao salesOrderDao = new SalesOrderDao();
-            salesOrderDao.createOrder(order, items);
-
-            // 检查本次订单中哪些书“库存不足”
-            InventoryDao invDao = new InventoryDao();
+            // 创建订单并预留库存，未能预留的书即本次订单中“库存不足”的书
+            Map<String, Integer> unreserved = new OrderService().placeOrder(order, items);
             List<SalesOrderItem> shortageItems = new ArrayList<>();
             for (SalesOrderItem item : items) {
-                int currentQty = invDao.getQuantity(item.getBookId());
-                if (currentQty < item.getQuantity()) {
+                if (unreserved.containsKey(item.getBookId())) {
                     shortageItems.add(item);
                 }
             }
@@ -0,0 +1,163 @@
+package com.bookstore.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 主库连接池隔舱：每个 {@link Workload} 一个独立的 Hikari 连接池，由 {@link DBUtil} 按当前线程的标签选择。
+ * 一个隔舱的连接被占满时，只有同一标签的请求排队或超时，其他隔舱不受影响。
+ *
+ * 配置（db.properties，name 为 checkout / catalog / admin / background）：
+ *  - db.pool.&lt;name&gt;.maximumPoolSize：连接数上限，默认 checkout 6、catalog 4、admin 4、background 2；
+ *  - db.pool.&lt;name&gt;.connectionTimeoutMs：取连接超时，默认 checkout 2000、catalog 3000、admin 10000、
+ *    background 30000，超时抛出 SQLTransientConnectionException；
+ *  - db.bulkheads=true 时才创建隔舱，关闭时所有标签都使用默认连接池。db.properties 中为 false，
+ *    JavaFX 客户端因此只用默认连接池；Web 服务端由 WebApplication.main 在未指定 -Ddb.bulkheads 时开启
+ *    （每个进程多建立共 16 个连接），启动参数加 -Ddb.bulkheads=false 可在 Web 服务端关闭。
+ * 没有标签的代码使用默认连接池（db.maximumPoolSize）。
+ * 一个线程同一时刻最多持有一个隔舱连接：事务外嵌套取连接时内层连接改用默认连接池（见 {@link DBUtil#getConnection()}），
+ * 所以隔舱大小只需按并发请求数而不必按嵌套层数估算。
+ *
+ * 每个连接池（含默认连接池）记录取连接次数、等待时间分布与超时次数，用于判断是否饱和；
+ * 隔舱另记录嵌套取连接改用默认连接池的次数（nestedFallbacks）。
+ */
+final class Bulkheads {
+
+    /**
+     * 一个连接池及其取连接统计。
+     */
+    static final class Pool {
+        final String name;
+        final HikariDataSource dataSource;
+        final LongAdder checkouts = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder nestedFallbacks = new LongAdder();
+        /** 取连接等待时间（微秒）。 */
+        final LatencyHistogram waitMicros = new LatencyHistogram();
+
+        Pool(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        void acquired(long waitNanos) {
+            checkouts.increment();
+            waitMicros.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+        }
+
+        void timedOut() {
+            timeouts.increment();
+        }
+
+        void nestedFallback() {
+            nestedFallbacks.increment();
+        }
+
+        /** 是否为某个工作负载的隔舱（而非默认连接池）。 */
+        boolean isBulkhead() {
+            return this != defaultPool;
+        }
+    }
+
+    private static Pool defaultPool;
+    private static final Map<Workload, Pool> pools = new EnumMap<>(Workload.class);
+
+    private Bulkheads() {
+    }
+
+    /**
+     * 按 db.properties 创建各隔舱的连接池，由 DBUtil 在初始化时调用一次。
+     */
+    static void configure(Properties props, HikariDataSource defaultDataSource) {
+        defaultPool = new Pool("default", defaultDataSource);
+        if (!Boolean.parseBoolean(props.getProperty("db.bulkheads", "false"))) {
+            return;
+        }
+        for (Workload w : Workload.values()) {
+            String prefix = "db.pool." + w.poolName() + ".";
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(w.poolName());
+            config.setJdbcUrl(props.getProperty("db.url"));
+            config.setUsername(props.getProperty("db.username"));
+            config.setPassword(props.getProperty("db.password"));
+            config.setMaximumPoolSize(Integer.parseInt(
+                    props.getProperty(prefix + "maximumPoolSize", String.valueOf(defaultSize(w)))));
+            config.setConnectionTimeout(Long.parseLong(
+                    props.getProperty(prefix + "connectionTimeoutMs", String.valueOf(defaultTimeoutMillis(w)))));
+            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            pools.put(w, new Pool(w.poolName(), new HikariDataSource(config)));
+        }
+    }
+
+    private static int defaultSize(Workload w) {
+        switch (w) {
+            case CHECKOUT:
+                return 6;
+            case CATALOG:
+            case ADMIN:
+                return 4;
+            default:
+                return 2;
+        }
+    }
+
+    private static long defaultTimeoutMillis(Workload w) {
+        switch (w) {
+            case CHECKOUT:
+                return 2000;
+            case CATALOG:
+                return 3000;
+            case ADMIN:
+                return 10000;
+            default:
+                return 30000;
+        }
+    }
+
+    /**
+     * 标签对应的连接池；没有标签或未启用隔舱时返回默认连接池。
+     */
+    static Pool select(Workload workload) {
+        if (workload == null) {
+            return defaultPool;
+        }
+        Pool pool = pools.get(workload);
+        return pool != null ? pool : defaultPool;
+    }
+
+    /**
+     * 各连接池的状态（active / idle / total / pending / max）、取连接次数、超时次数与等待时间分布（微秒）。
+     */
+    static Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> m = new LinkedHashMap<>();
+        m.put(defaultPool.name, stats(defaultPool));
+        for (Pool pool : pools.values()) {
+            m.put(pool.name, stats(pool));
+        }
+        return m;
+    }
+
+    private static Map<String, Object> stats(Pool pool) {
+        Map<String, Object> m = new LinkedHashMap<>(DBUtil.poolStats(pool.dataSource));
+        m.put("checkouts", pool.checkouts.sum());
+        m.put("timeouts", pool.timeouts.sum());
+        if (pool.isBulkhead()) {
+            m.put("nestedFallbacks", pool.nestedFallbacks.sum());
+        }
+        m.put("waitMicros", pool.waitMicros.snapshot());
+        return m;
+    }
+
+    static void close() {
+        for (Pool pool : pools.values()) {
+            pool.dataSource.close();
+        }
+    }
+}
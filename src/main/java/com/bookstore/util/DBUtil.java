@@ -2,21 +2,56 @@ package com.bookstore.util;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 数据库连接工具类，基于 HikariCP 连接池。
  * 从 classpath 下的 db.properties 读取配置。
+ *
+ * db.statementTiming=true 时为每条语句的执行计时，按 SQL 指纹汇总到 {@link StatementStats}，
+ * 超过 db.slowQueryMillis（默认 200）的语句写入 db.slowQueryLog 指定的慢查询日志（默认 logs/slow-query.log，
+ * 单个文件超过 db.slowQueryLogMaxMb（默认 10）MB 后滚动，保留 db.slowQueryLogFiles（默认 5）个历史文件）。
+ *
+ * 配置 db.replica.urls 时启用读写分离：只读 DAO 方法通过 {@link #getReadConnection()} 从副本取连接，
+ * 多个副本轮询使用；事务中、未配置副本或副本不可用时仍返回主库连接。见 {@link ReplicaRouter}。
+ *
+ * 主库连接按当前线程的 {@link Workload} 标签从对应的隔舱连接池取出（下单、目录、管理端、后台各一个），
+ * 没有标签时使用默认连接池。见 {@link Bulkheads}。
+ * 当前线程已持有一个隔舱连接（事务外在持有连接期间再调用 getConnection）时，内层连接改从默认连接池取，
+ * 避免一个请求同时占用同一隔舱的多个连接：隔舱较小，并发请求各持一个连接再等第二个时会互相等待到超时。
+ *
+ * 同名的 JVM 系统属性（如 -Ddb.url=...、-Ddb.replica.urls=...）覆盖 db.properties 中的配置，
+ * 便于测试时指向本机的两个数据库实例。
  */
 public class DBUtil {
 
     private static HikariDataSource dataSource;
 
+    /** 累计从连接池取出的连接数（不含事务内复用的连接），用于观察每个业务操作的连接开销。 */
+    private static final AtomicLong checkoutCount = new AtomicLong();
+
+    /** 当前线程持有的未关闭隔舱连接数（不含默认连接池与副本连接）。 */
+    private static final ThreadLocal<int[]> heldBulkheadConnections = ThreadLocal.withInitial(() -> new int[1]);
+
+    /** 是否为语句执行计时。 */
+    private static boolean statementTiming;
+
     static {
         try (InputStream in = DBUtil.class.getClassLoader().getResourceAsStream("db.properties")) {
             if (in == null) {
@@ -24,6 +59,11 @@ public class DBUtil {
             }
             Properties props = new Properties();
             props.load(in);
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (key.startsWith("db.")) {
+                    props.setProperty(key, System.getProperty(key));
+                }
+            }
 
             HikariConfig config = new HikariConfig();
             config.setJdbcUrl(props.getProperty("db.url"));
@@ -36,6 +76,16 @@ public class DBUtil {
             config.setDriverClassName("com.mysql.cj.jdbc.Driver");
 
             dataSource = new HikariDataSource(config);
+            Bulkheads.configure(props, dataSource);
+            ReplicaRouter.configure(props);
+
+            statementTiming = Boolean.parseBoolean(props.getProperty("db.statementTiming", "false"));
+            if (statementTiming) {
+                StatementStats.setSlowThresholdMillis(Long.parseLong(props.getProperty("db.slowQueryMillis", "200")));
+                SlowQueryLog.configure(Paths.get(props.getProperty("db.slowQueryLog", "logs/slow-query.log")),
+                        Long.parseLong(props.getProperty("db.slowQueryLogMaxMb", "10")) * 1024 * 1024,
+                        Integer.parseInt(props.getProperty("db.slowQueryLogFiles", "5")));
+            }
         } catch (IOException e) {
             throw new RuntimeException("加载 db.properties 失败", e);
         }
@@ -43,9 +93,246 @@ public class DBUtil {
 
     /**
      * 获取一个数据库连接，使用完后请及时关闭。
+     * 若当前线程处于 {@link TransactionContext} 工作单元中，则返回该事务绑定的连接，不再占用新的池连接。
+     * 否则从当前 {@link Workload} 标签对应的连接池取连接，该池取连接超时时抛出 SQLTransientConnectionException；
+     * 当前线程已持有隔舱连接时（嵌套取连接）改从默认连接池取，计入该隔舱的 nestedFallbacks。
+     * 取连接的等待时间与在连接上创建的语句数计入 {@link DbCallMetrics}。
      */
     public static Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        Connection bound = TransactionContext.currentConnection();
+        if (bound != null) {
+            return bound;
+        }
+        Bulkheads.Pool pool = Bulkheads.select(Workload.current());
+        if (pool.isBulkhead() && heldBulkheadConnections.get()[0] > 0) {
+            pool.nestedFallback();
+            pool = Bulkheads.select(null);
+        }
+        return checkout(pool.dataSource, pool);
+    }
+
+    /**
+     * 获取一个只读连接，用于可以容忍副本复制延迟的查询（目录检索、管理端列表等）。
+     * 事务中返回事务绑定的连接；未配置副本时返回主库连接；副本取连接失败时改用主库。
+     */
+    public static Connection getReadConnection() throws SQLException {
+        if (TransactionContext.currentConnection() != null || !ReplicaRouter.hasReplicas()) {
+            ReplicaRouter.primaryRead(false);
+            return getConnection();
+        }
+        try {
+            Connection conn = checkout(ReplicaRouter.nextReplica(), null);
+            ReplicaRouter.replicaRead();
+            return conn;
+        } catch (SQLException e) {
+            ReplicaRouter.failover();
+            ReplicaRouter.primaryRead(false);
+            return getConnection();
+        }
+    }
+
+    /**
+     * 获取读取某个顾客数据的只读连接：该顾客最近有写入（见 {@link #markCustomerWrite}）时走主库，
+     * 保证顾客能读到自己刚提交的订单、付款等，否则同 {@link #getReadConnection()}。
+     */
+    public static Connection getReadConnection(long customerId) throws SQLException {
+        if (ReplicaRouter.hasReplicas() && ReplicaRouter.isSticky(customerId)) {
+            ReplicaRouter.primaryRead(true);
+            return getConnection();
+        }
+        return getReadConnection();
+    }
+
+    /**
+     * 记录顾客的一次写入（下单、付款、结算、取消、收货）：在当前事务提交后（不在事务中时立即）开始计时，
+     * db.replica.stickyMillis 内该顾客的读请求走主库。未配置副本时不做任何事。
+     */
+    public static void markCustomerWrite(long customerId) {
+        if (ReplicaRouter.hasReplicas()) {
+            TransactionContext.afterCommit(() -> ReplicaRouter.stick(customerId));
+        }
+    }
+
+    /**
+     * 从连接池取连接并包装；pool 为主库隔舱时同时记录到该隔舱的统计（副本连接池传 null）。
+     */
+    private static Connection checkout(HikariDataSource ds, Bulkheads.Pool pool) throws SQLException {
+        checkoutCount.incrementAndGet();
+        long t0 = System.nanoTime();
+        Connection raw;
+        try {
+            raw = ds.getConnection();
+        } catch (SQLTransientConnectionException e) {
+            if (pool != null) {
+                pool.timedOut();
+            }
+            throw e;
+        }
+        long waitNanos = System.nanoTime() - t0;
+        DbCallMetrics.connectionAcquired(waitNanos);
+        if (pool != null) {
+            pool.acquired(waitNanos);
+        }
+        int[] held = null;
+        if (pool != null && pool.isBulkhead()) {
+            held = heldBulkheadConnections.get();
+            held[0]++;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new MeteredConnection(raw, held));
+    }
+
+    /**
+     * 默认连接池状态：活动连接、空闲连接、总连接数、等待取连接的线程数与上限。
+     */
+    public static Map<String, Integer> getPoolStats() {
+        return poolStats(dataSource);
+    }
+
+    /**
+     * 各连接池（默认 + 各隔舱）的状态、取连接次数、超时次数与等待时间分布（微秒），用于观察隔舱是否饱和。
+     */
+    public static Map<String, Map<String, Object>> getBulkheadStats() {
+        return Bulkheads.stats();
+    }
+
+    /**
+     * 读写分离状态：读走副本 / 主库的次数、其中因读己之写粘滞走主库的次数、副本失败改走主库的次数、
+     * 当前粘滞的顾客数与各副本连接池状态。
+     */
+    public static Map<String, Object> getReplicaStats() {
+        return ReplicaRouter.stats();
+    }
+
+    /**
+     * 单个连接池的状态，字段同 {@link #getPoolStats()}。
+     */
+    static Map<String, Integer> poolStats(HikariDataSource ds) {
+        Map<String, Integer> m = new LinkedHashMap<>();
+        HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+        m.put("active", pool != null ? pool.getActiveConnections() : 0);
+        m.put("idle", pool != null ? pool.getIdleConnections() : 0);
+        m.put("total", pool != null ? pool.getTotalConnections() : 0);
+        m.put("pending", pool != null ? pool.getThreadsAwaitingConnection() : 0);
+        m.put("max", ds.getMaximumPoolSize());
+        return m;
+    }
+
+    /**
+     * 返回进程启动以来从连接池取出连接的累计次数。
+     */
+    public static long getCheckoutCount() {
+        return checkoutCount.get();
+    }
+
+    /**
+     * 连接包装：创建 Statement / PreparedStatement / CallableStatement 时计数；
+     * 启用语句计时时把创建的语句包装为 {@link TimedStatement}；隔舱连接首次 close 时减少取出线程的持有计数。
+     * 其余调用原样转发。
+     */
+    private static final class MeteredConnection implements InvocationHandler {
+        private final Connection raw;
+        /** 取出线程的隔舱连接持有计数，非隔舱连接为 null。 */
+        private int[] held;
+
+        MeteredConnection(Connection raw, int[] held) {
+            this.raw = raw;
+            this.held = held;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "prepareStatement":
+                case "createStatement":
+                case "prepareCall":
+                    DbCallMetrics.statementCreated();
+                    break;
+                case "close":
+                    if (held != null) {
+                        held[0]--;
+                        held = null;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (statementTiming && result instanceof Statement) {
+                String sql = !name.equals("createStatement") ? (String) args[0] : null;
+                Class<?> type = method.getReturnType();
+                return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                        new TimedStatement((Statement) result, sql, (Connection) proxy));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 语句包装：为 execute* 调用计时并记录到 {@link StatementStats}，只计执行本身，不含结果集读取。
+     * 普通 Statement 的 SQL 取自 execute 参数或最近一次 addBatch。
+     */
+    private static final class TimedStatement implements InvocationHandler {
+        private final Statement raw;
+        private final String preparedSql;
+        private final Connection connection;
+        private String batchSql;
+
+        TimedStatement(Statement raw, String preparedSql, Connection connection) {
+            this.raw = raw;
+            this.preparedSql = preparedSql;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "addBatch":
+                    if (args != null && args.length == 1) {
+                        batchSql = (String) args[0];
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!name.startsWith("execute")) {
+                try {
+                    return method.invoke(raw, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            String sql = preparedSql != null ? preparedSql
+                    : args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : batchSql;
+            long t0 = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = method.invoke(raw, args);
+                failed = false;
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                StatementStats.record(sql, System.nanoTime() - t0, failed);
+            }
+        }
     }
 
     /**
@@ -55,6 +342,8 @@ public class DBUtil {
         if (dataSource != null) {
             dataSource.close();
         }
+        Bulkheads.close();
+        ReplicaRouter.close();
     }
 }
 
@@ -0,0 +1,129 @@
+package com.bookstore.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据库调用计数：从连接池取连接的次数与等待时间、创建的语句数。
+ *
+ * 由 {@link DBUtil} 在取连接、创建 Statement / PreparedStatement 时调用，累计到进程级计数器；
+ * 当前线程通过 {@link #begin()} 开启了请求范围时，同时累计到该范围，用于统计“每个请求执行了多少条语句”。
+ *
+ * 请求范围可以带语句预算（{@link #begin(int)}）：超出时标记 exceeded；严格模式下（{@link #setStrictBudgets}，
+ * 或启动参数 -Dbookstore.queryBudget.strict=true）超出预算的那条语句抛出 {@link QueryBudgetExceededException}。
+ */
+public final class DbCallMetrics {
+
+    /** 不限制语句数。 */
+    public static final int NO_BUDGET = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private static volatile boolean strictBudgets = Boolean.getBoolean("bookstore.queryBudget.strict");
+
+    private static final LongAdder statements = new LongAdder();
+    private static final LongAdder connections = new LongAdder();
+    /** 从连接池取连接的等待时间（微秒）。 */
+    private static final LatencyHistogram poolWaitMicros = new LatencyHistogram();
+
+    private DbCallMetrics() {
+    }
+
+    /**
+     * 一个请求范围内的数据库调用计数，只由所属线程修改。
+     */
+    public static final class Scope {
+        private final int budget;
+        private int statements;
+        private int connections;
+        private long poolWaitNanos;
+
+        Scope(int budget) {
+            this.budget = budget;
+        }
+
+        public int getBudget() {
+            return budget;
+        }
+
+        /** 语句数是否超出预算。 */
+        public boolean isExceeded() {
+            return statements > budget;
+        }
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public long getPoolWaitNanos() {
+            return poolWaitNanos;
+        }
+    }
+
+    /**
+     * 为当前线程开启一个不限语句数的请求范围（覆盖之前未结束的范围）。
+     */
+    public static Scope begin() {
+        return begin(NO_BUDGET);
+    }
+
+    /**
+     * 为当前线程开启一个请求范围，最多创建 budget 条语句。
+     */
+    public static Scope begin(int budget) {
+        Scope scope = new Scope(budget);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * 严格模式：超出预算的语句直接抛出异常，用于测试。
+     */
+    public static void setStrictBudgets(boolean strict) {
+        strictBudgets = strict;
+    }
+
+    /**
+     * 结束当前线程的请求范围。
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    static void connectionAcquired(long waitNanos) {
+        connections.increment();
+        poolWaitMicros.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.connections++;
+            scope.poolWaitNanos += waitNanos;
+        }
+    }
+
+    static void statementCreated() throws QueryBudgetExceededException {
+        statements.increment();
+        Scope scope = CURRENT.get();
+        if (scope != null && ++scope.statements > scope.budget && strictBudgets) {
+            throw new QueryBudgetExceededException(scope.budget);
+        }
+    }
+
+    /** 进程启动以来创建的语句数。 */
+    public static long getStatements() {
+        return statements.sum();
+    }
+
+    /** 进程启动以来从连接池取出的连接数。 */
+    public static long getConnections() {
+        return connections.sum();
+    }
+
+    /** 取连接等待时间（微秒）的分布。 */
+    public static LatencyHistogram.Snapshot poolWaitMicros() {
+        return poolWaitMicros.snapshot();
+    }
+}
@@ -0,0 +1,15 @@
+package com.bookstore.util;
+
+import java.sql.SQLException;
+
+/**
+ * 严格模式下请求创建的语句数超出其预算时抛出，见 {@link DbCallMetrics}。
+ */
+public class QueryBudgetExceededException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryBudgetExceededException(int budget) {
+        super("本次请求执行的 SQL 语句数超出预算 " + budget + "（可能存在逐行查询）");
+    }
+}
@@ -0,0 +1,159 @@
+package com.bookstore.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读写分离路由：只读副本连接池、轮询选择、读己之写粘滞与路由计数，由 {@link DBUtil} 使用。
+ *
+ * 副本来自 db.properties：
+ *  - db.replica.urls：逗号分隔的副本 JDBC URL，留空则不启用，读写都走主库；
+ *  - db.replica.username / db.replica.password：默认与主库相同；
+ *  - db.replica.maximumPoolSize：每个副本的连接池大小，默认 10；
+ *  - db.replica.connectionTimeoutMs：副本取连接超时，默认 1000，超时后本次读改走主库；
+ *  - db.replica.stickyMillis：顾客写入提交后，其读请求在这段时间内走主库，默认 5000，应大于副本的复制延迟。
+ *
+ * 粘滞表只记录最近有写入的顾客，过期项在查询时删除，表过大时整体清理一次。
+ */
+final class ReplicaRouter {
+
+    private static final int STICKY_SWEEP_SIZE = 10000;
+
+    private static List<HikariDataSource> replicas = Collections.emptyList();
+    private static long stickyNanos;
+    private static final AtomicInteger next = new AtomicInteger();
+
+    /** 顾客 ID -> 读请求走主库的截止时间（nanoTime）。 */
+    private static final ConcurrentHashMap<Long, Long> stickyUntil = new ConcurrentHashMap<>();
+
+    private static final LongAdder replicaReads = new LongAdder();
+    private static final LongAdder primaryReads = new LongAdder();
+    private static final LongAdder stickyReads = new LongAdder();
+    private static final LongAdder failovers = new LongAdder();
+
+    private ReplicaRouter() {
+    }
+
+    /**
+     * 按 db.properties 创建副本连接池，由 DBUtil 在初始化时调用一次。
+     */
+    static void configure(Properties props) {
+        String urls = props.getProperty("db.replica.urls", "").trim();
+        stickyNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(props.getProperty("db.replica.stickyMillis", "5000")));
+        if (urls.isEmpty()) {
+            return;
+        }
+        List<HikariDataSource> list = new ArrayList<>();
+        int index = 0;
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) {
+                continue;
+            }
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("replica-" + index++);
+            config.setJdbcUrl(url.trim());
+            config.setUsername(props.getProperty("db.replica.username", props.getProperty("db.username")));
+            config.setPassword(props.getProperty("db.replica.password", props.getProperty("db.password")));
+            config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.replica.maximumPoolSize", "10")));
+            config.setConnectionTimeout(Long.parseLong(props.getProperty("db.replica.connectionTimeoutMs", "1000")));
+            config.setReadOnly(true);
+            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            list.add(new HikariDataSource(config));
+        }
+        replicas = Collections.unmodifiableList(list);
+    }
+
+    static boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * 轮询选择下一个副本连接池；未配置副本时返回 null。
+     */
+    static HikariDataSource nextReplica() {
+        List<HikariDataSource> list = replicas;
+        if (list.isEmpty()) {
+            return null;
+        }
+        return list.get(Math.floorMod(next.getAndIncrement(), list.size()));
+    }
+
+    /**
+     * 顾客最近是否有写入，其读请求应走主库。
+     */
+    static boolean isSticky(long customerId) {
+        Long until = stickyUntil.get(customerId);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        stickyUntil.remove(customerId, until);
+        return false;
+    }
+
+    /**
+     * 记录顾客的一次写入：从现在起 stickyMillis 内其读请求走主库。
+     */
+    static void stick(long customerId) {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (stickyUntil.size() >= STICKY_SWEEP_SIZE) {
+            stickyUntil.values().removeIf(until -> now - until >= 0);
+        }
+        stickyUntil.put(customerId, now + stickyNanos);
+    }
+
+    static void replicaRead() {
+        replicaReads.increment();
+    }
+
+    static void primaryRead(boolean sticky) {
+        primaryReads.increment();
+        if (sticky) {
+            stickyReads.increment();
+        }
+    }
+
+    static void failover() {
+        failovers.increment();
+    }
+
+    /**
+     * 路由计数与各副本连接池状态。
+     */
+    static Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("replicaReads", replicaReads.sum());
+        m.put("primaryReads", primaryReads.sum());
+        m.put("stickyReads", stickyReads.sum());
+        m.put("failovers", failovers.sum());
+        m.put("stickyCustomers", stickyUntil.size());
+        Map<String, Map<String, Integer>> pools = new LinkedHashMap<>();
+        for (HikariDataSource ds : replicas) {
+            pools.put(ds.getPoolName(), DBUtil.poolStats(ds));
+        }
+        m.put("pools", pools);
+        return m;
+    }
+
+    static void close() {
+        for (HikariDataSource ds : replicas) {
+            ds.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bookstore.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 慢查询日志：执行语句的线程只把日志行放入有界队列，由后台线程写入文件（异步写入，不阻塞业务线程）。
+ *
+ * - 文件超过 maxBytes 后滚动：slow-query.log -> slow-query.log.1 -> ... -> slow-query.log.{maxFiles}，更早的删除；
+ * - 队列满时丢弃新日志行并计入 dropped，不等待；
+ * - 未调用 {@link #configure} 时日志行只计数不写入。
+ */
+public final class SlowQueryLog {
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final int MAX_SQL_LENGTH = 4000;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong logged = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static volatile Thread writer;
+
+    private SlowQueryLog() {
+    }
+
+    /**
+     * 指定日志文件并启动写线程，只在第一次调用时生效。
+     */
+    public static synchronized void configure(Path file, long maxBytes, int maxFiles) {
+        if (writer != null) {
+            return;
+        }
+        Thread t = new Thread(() -> writeLoop(file, maxBytes, maxFiles), "slow-query-log");
+        t.setDaemon(true);
+        t.start();
+        writer = t;
+    }
+
+    static void log(long elapsedNanos, String sql, boolean failed) {
+        logged.incrementAndGet();
+        if (writer == null) {
+            return;
+        }
+        String text = sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+        String line = String.format("%s [%s] %.1f ms%s %s", LocalDateTime.now().format(TIME),
+                Thread.currentThread().getName(), elapsedNanos / 1e6, failed ? " FAILED" : "",
+                text.replaceAll("\\s+", " "));
+        if (!QUEUE.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /** 超过阈值的语句数（含被丢弃的）。 */
+    public static long getLogged() {
+        return logged.get();
+    }
+
+    /** 因队列满而丢弃的日志行数。 */
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    private static void writeLoop(Path file, long maxBytes, int maxFiles) {
+        BufferedWriter out = null;
+        long size = 0;
+        while (true) {
+            try {
+                String line = QUEUE.poll(1, TimeUnit.SECONDS);
+                if (line == null) {
+                    continue;
+                }
+                if (out == null) {
+                    if (file.getParent() != null) {
+                        Files.createDirectories(file.getParent());
+                    }
+                    size = Files.exists(file) ? Files.size(file) : 0;
+                    out = open(file);
+                }
+                while (line != null) {
+                    byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+                    if (size > 0 && size + bytes.length > maxBytes) {
+                        out.close();
+                        rotate(file, maxFiles);
+                        out = open(file);
+                        size = 0;
+                    }
+                    out.write(line);
+                    out.newLine();
+                    size += bytes.length;
+                    line = QUEUE.poll();
+                }
+                out.flush();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("写入慢查询日志失败：" + e.getMessage());
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                    }
+                    out = null;
+                }
+            }
+        }
+    }
+
+    private static BufferedWriter open(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void rotate(Path file, int maxFiles) throws IOException {
+        Files.deleteIfExists(sibling(file, maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path from = sibling(file, i);
+            if (Files.exists(from)) {
+                Files.move(from, sibling(file, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles >= 1) {
+            Files.move(file, sibling(file, 1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Path sibling(Path file, int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
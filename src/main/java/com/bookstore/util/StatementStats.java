@@ -0,0 +1,212 @@
+package com.bookstore.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 按 SQL 指纹统计语句执行耗时：次数、总耗时、最大耗时、失败次数，计数器均为无锁的 LongAdder / CAS。
+ *
+ * 指纹把 SQL 中的字符串 / 数字字面量替换为 ?、合并空白，并把 IN (?, ?, ...) 与多行 VALUES 折叠，
+ * 使参数个数不同的同一条语句归为一类。超过慢查询阈值的执行写入 {@link SlowQueryLog}。
+ * 由 DBUtil 的语句计时包装调用（db.statementTiming=true 时启用）。
+ */
+public final class StatementStats {
+
+    /** 指纹数上限，超出后的新指纹归入 OTHER，避免拼接 SQL 导致计数表无限增长。 */
+    private static final int MAX_FINGERPRINTS = 5000;
+    /** 原始 SQL -> 指纹 的缓存上限。 */
+    private static final int MAX_CACHED_SQL = 10000;
+    private static final String OTHER = "(other)";
+
+    private static final Pattern LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern REPEATED_LIST = Pattern.compile("\\(\\?\\+\\)(?:\\s*,\\s*\\(\\?\\+\\))+");
+
+    private static final ConcurrentHashMap<String, String> FINGERPRINTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private static volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private StatementStats() {
+    }
+
+    /**
+     * 设置慢查询阈值（毫秒），不大于 0 时不记录慢查询。
+     */
+    public static void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = millis > 0 ? TimeUnit.MILLISECONDS.toNanos(millis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * 记录一次语句执行。
+     */
+    public static void record(String sql, long elapsedNanos, boolean failed) {
+        if (sql == null) {
+            sql = "(unknown)";
+        }
+        String fp = fingerprint(sql);
+        Entry e = ENTRIES.get(fp);
+        if (e == null) {
+            e = ENTRIES.size() < MAX_FINGERPRINTS
+                    ? ENTRIES.computeIfAbsent(fp, Entry::new)
+                    : ENTRIES.computeIfAbsent(OTHER, Entry::new);
+        }
+        e.count.increment();
+        e.totalNanos.add(elapsedNanos);
+        long m = e.maxNanos.get();
+        while (elapsedNanos > m && !e.maxNanos.compareAndSet(m, elapsedNanos)) {
+            m = e.maxNanos.get();
+        }
+        if (failed) {
+            e.errors.increment();
+        }
+        if (elapsedNanos >= slowThresholdNanos) {
+            SlowQueryLog.log(elapsedNanos, sql, failed);
+        }
+    }
+
+    /**
+     * SQL 指纹：字面量替换为 ?，空白合并为一个空格，IN / VALUES 列表折叠为 (?+)，多组重复折叠为 (?+)...。
+     */
+    public static String fingerprint(String sql) {
+        String fp = FINGERPRINTS.get(sql);
+        if (fp == null) {
+            fp = normalize(sql);
+            if (FINGERPRINTS.size() < MAX_CACHED_SQL) {
+                FINGERPRINTS.put(sql, fp);
+            }
+        }
+        return fp;
+    }
+
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                sb.append('?');
+            } else if (Character.isDigit(c) && !endsWithIdentifierChar(sb)) {
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        String s = sb.toString().trim();
+        s = LIST.matcher(s).replaceAll("(?+)");
+        s = REPEATED_LIST.matcher(s).replaceAll("(?+)...");
+        return s;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static boolean endsWithIdentifierChar(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '`';
+    }
+
+    /**
+     * 各指纹的统计快照，按总耗时从高到低排列，最多 limit 条。
+     */
+    public static List<Stats> snapshot(int limit) {
+        List<Stats> list = new ArrayList<>(ENTRIES.size());
+        for (Entry e : ENTRIES.values()) {
+            list.add(new Stats(e));
+        }
+        list.sort(Comparator.comparingLong(Stats::getTotalMicros).reversed());
+        return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder errors = new LongAdder();
+
+        Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * 单个指纹的统计：执行次数、总耗时 / 最大耗时（微秒）、失败次数。
+     */
+    public static final class Stats {
+        private final String fingerprint;
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long errors;
+
+        Stats(Entry e) {
+            this.fingerprint = e.fingerprint;
+            this.count = e.count.sum();
+            this.totalMicros = TimeUnit.NANOSECONDS.toMicros(e.totalNanos.sum());
+            this.maxMicros = TimeUnit.NANOSECONDS.toMicros(e.maxNanos.get());
+            this.errors = e.errors.sum();
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public double getMeanMicros() {
+            return count == 0 ? 0 : (double) totalMicros / count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+}
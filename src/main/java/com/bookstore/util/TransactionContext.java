@@ -0,0 +1,196 @@
+package com.bookstore.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 事务上下文：把一个连接池连接绑定到当前线程，作为一次“工作单元”。
+ *
+ * 在 {@link #execute(SqlWork)} 执行期间，{@link DBUtil#getConnection()} 不再从连接池取新连接，
+ * 而是返回绑定连接的“参与者”视图，因此各 DAO 无需改动即可复用调用方的连接与事务：
+ *  - close()：不归还连接，由外层工作单元统一关闭；
+ *  - commit() / setAutoCommit()：忽略，由外层统一提交；
+ *  - rollback()：将事务标记为仅回滚，外层结束时整体回滚。
+ *
+ * 嵌套调用 execute 时直接加入外层事务（类似 REQUIRED 传播行为）。
+ *
+ * 需要与事务结果保持一致的内存状态（如目录快照、购物车）可通过 {@link #afterCommit(Runnable)} /
+ * {@link #afterRollback(Runnable)} 登记回调，在最外层事务结束时执行。
+ */
+public final class TransactionContext {
+
+    /**
+     * 工作单元回调，参数为当前事务连接。
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * 无返回值的工作单元回调。
+     */
+    @FunctionalInterface
+    public interface SqlAction {
+        void run(Connection conn) throws SQLException;
+    }
+
+    private static final ThreadLocal<Holder> CURRENT = new ThreadLocal<>();
+
+    private TransactionContext() {
+    }
+
+    /**
+     * 在事务中执行 work：正常返回则提交，抛出异常则回滚并原样抛出。
+     * 若当前线程已处于事务中，则直接加入该事务。
+     */
+    public static <T> T execute(SqlWork<T> work) throws SQLException {
+        Holder existing = CURRENT.get();
+        if (existing != null) {
+            return work.execute(existing.participant);
+        }
+
+        Connection raw = DBUtil.getConnection();
+        Holder holder = new Holder(raw);
+        CURRENT.set(holder);
+        boolean committed = false;
+        try {
+            raw.setAutoCommit(false);
+            T result = work.execute(holder.participant);
+            if (holder.rollbackOnly) {
+                throw new SQLException("事务已被内部调用标记为回滚，本次操作未提交。");
+            }
+            raw.commit();
+            committed = true;
+            return result;
+        } catch (SQLException | RuntimeException | Error ex) {
+            try {
+                raw.rollback();
+            } catch (SQLException rollbackEx) {
+                ex.addSuppressed(rollbackEx);
+            }
+            throw ex;
+        } finally {
+            CURRENT.remove();
+            holder.complete(committed);
+            try {
+                raw.setAutoCommit(true);
+            } finally {
+                raw.close();
+            }
+        }
+    }
+
+    /**
+     * 无返回值版本的 {@link #execute(SqlWork)}。
+     */
+    public static void run(SqlAction action) throws SQLException {
+        execute(conn -> {
+            action.run(conn);
+            return null;
+        });
+    }
+
+    /**
+     * 当前线程是否处于事务中。
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 登记在当前事务提交后执行的回调；不在事务中时立即执行。
+     */
+    public static void afterCommit(Runnable callback) {
+        Holder holder = CURRENT.get();
+        if (holder == null) {
+            callback.run();
+        } else {
+            holder.afterCommit.add(callback);
+        }
+    }
+
+    /**
+     * 登记在当前事务回滚后执行的回调；不在事务中时忽略。
+     */
+    public static void afterRollback(Runnable callback) {
+        Holder holder = CURRENT.get();
+        if (holder != null) {
+            holder.afterRollback.add(callback);
+        }
+    }
+
+    /**
+     * 当前线程绑定的事务连接（参与者视图），不在事务中时返回 null。
+     */
+    static Connection currentConnection() {
+        Holder holder = CURRENT.get();
+        return holder != null ? holder.participant : null;
+    }
+
+    private static final class Holder implements InvocationHandler {
+        private final Connection raw;
+        private final Connection participant;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private final List<Runnable> afterRollback = new ArrayList<>();
+        private boolean rollbackOnly;
+
+        Holder(Connection raw) {
+            this.raw = raw;
+            this.participant = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        /**
+         * 事务结束后按登记顺序执行回调，单个回调失败不影响其余回调。
+         */
+        void complete(boolean committed) {
+            for (Runnable callback : committed ? afterCommit : afterRollback) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    System.err.println("事务结束回调执行失败：" + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            int argCount = args == null ? 0 : args.length;
+            switch (name) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    return null;
+                case "rollback":
+                    if (argCount == 0) {
+                        rollbackOnly = true;
+                        return null;
+                    }
+                    break;
+                case "isClosed":
+                    return raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "TransactionContext[" + raw + "]";
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
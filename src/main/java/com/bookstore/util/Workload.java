@@ -0,0 +1,123 @@
+package com.bookstore.util;
+
+import java.sql.SQLException;
+
+/**
+ * 工作负载标签：决定 {@link DBUtil#getConnection()} 从哪个连接池（隔舱）取连接，
+ * 使管理端的大列表查询或后台任务占满自己的连接池时，顾客下单 / 付款仍有连接可用。
+ *
+ * 标签绑定在当前线程上：
+ *  - 服务层用 {@link #call(SqlCall)} / {@link #run(SqlRun)} 在一段代码内打标签（结束时恢复外层标签），
+ *    内层标签覆盖外层标签；跨方法的范围（如拦截器）用 {@link #enter(Workload)} 取得 Scope 并自行关闭；
+ *  - Web 层由 WorkloadInterceptor 按路径打标签；
+ *  - 后台线程用 {@link #wrap(Runnable)} 在线程的整个生命周期内打标签。
+ * 没有标签的代码使用默认连接池（db.maximumPoolSize）。各连接池的大小与取连接超时见 {@link Bulkheads}。
+ */
+public enum Workload {
+
+    /** 下单、结算、付款、取消等顾客交易。 */
+    CHECKOUT,
+    /** 顾客浏览与检索图书。 */
+    CATALOG,
+    /** 管理端接口，包括全表列表与报表。 */
+    ADMIN,
+    /** 后台线程：购物车回写、通知发件箱、缓存重建、过期清理。 */
+    BACKGROUND;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 带本标签执行的回调。
+     */
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * 无返回值的带标签回调。
+     */
+    @FunctionalInterface
+    public interface SqlRun {
+        void run() throws SQLException;
+    }
+
+    /** 连接池名称（小写），即 db.pool.&lt;name&gt;.* 配置项中的 name。 */
+    public String poolName() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * 当前线程的工作负载标签，没有标签时返回 null。
+     */
+    public static Workload current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 为当前线程打上标签，返回的 Scope 关闭时恢复原标签。
+     */
+    public static Scope enter(Workload workload) {
+        Workload previous = CURRENT.get();
+        CURRENT.set(workload);
+        return new Scope(previous);
+    }
+
+    /**
+     * 当前线程带本标签执行 work，返回其结果；结束时（含抛出异常）恢复原标签。
+     */
+    public <T> T call(SqlCall<T> work) throws SQLException {
+        Scope scope = enter(this);
+        try {
+            return work.call();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * 无返回值版本的 {@link #call(SqlCall)}。
+     */
+    public void run(SqlRun work) throws SQLException {
+        Scope scope = enter(this);
+        try {
+            work.run();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * 包装任务：执行期间当前线程带本标签，用于后台线程的 ThreadFactory。
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            Scope scope = enter(this);
+            try {
+                task.run();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * 标签作用范围，关闭时恢复进入前的标签。
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Workload previous;
+
+        private Scope(Workload previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
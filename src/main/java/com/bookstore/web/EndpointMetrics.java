@@ -0,0 +1,201 @@
+package com.bookstore.web;
+
+import com.bookstore.util.DbCallMetrics;
+import com.bookstore.util.LatencyHistogram;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接口级运行指标：拦截 com.bookstore.web.controller 下所有控制器的请求，按“方法 + 路径模板”
+ * （如 GET /api/customer/{customerId}/cart）记录耗时分布、每请求语句数分布、取连接次数与等待时间、错误数。
+ *
+ * 每个请求只有两次 nanoTime、一次 ThreadLocal 设置 / 清除、一次 Map 查找和两次直方图记录，不加锁。
+ * 异步请求（如 SSE 推送流）的时长不代表处理耗时，不计入。
+ *
+ * 接口的语句预算取自 {@link MaxQueries}（方法上的优先于类上的），超出预算的请求计入 overBudget，
+ * 每个接口第一次超出时打印告警。
+ * 由 {@link WebApplication} 注册，数据经 AdminMetricsController 输出。
+ */
+public final class EndpointMetrics implements AsyncHandlerInterceptor {
+
+    private static final String CONTROLLER_PACKAGE = "com.bookstore.web.controller";
+    private static final String START_ATTR = EndpointMetrics.class.getName() + ".start";
+    private static final String SCOPE_ATTR = EndpointMetrics.class.getName() + ".scope";
+
+    private static final ConcurrentHashMap<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Method, Integer> BUDGETS = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (isController(handler)) {
+            request.setAttribute(SCOPE_ATTR, DbCallMetrics.begin(budgetOf((HandlerMethod) handler)));
+            request.setAttribute(START_ATTR, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        if (request.getAttribute(SCOPE_ATTR) != null) {
+            request.removeAttribute(SCOPE_ATTR);
+            DbCallMetrics.end();
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object scope = request.getAttribute(SCOPE_ATTR);
+        Object start = request.getAttribute(START_ATTR);
+        if (!(scope instanceof DbCallMetrics.Scope) || !(start instanceof Long)) {
+            return;
+        }
+        request.removeAttribute(SCOPE_ATTR);
+        DbCallMetrics.end();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+        record(endpoint, System.nanoTime() - (Long) start,
+                ex != null || response.getStatus() >= 500, (DbCallMetrics.Scope) scope);
+    }
+
+    /**
+     * 接口的语句预算：方法上的 {@link MaxQueries}，其次是控制器类上的，都没有时不限制。
+     */
+    public static int budgetOf(HandlerMethod handler) {
+        return BUDGETS.computeIfAbsent(handler.getMethod(), m -> {
+            MaxQueries max = m.getAnnotation(MaxQueries.class);
+            if (max == null) {
+                max = handler.getBeanType().getAnnotation(MaxQueries.class);
+            }
+            return max != null ? max.value() : DbCallMetrics.NO_BUDGET;
+        });
+    }
+
+    private static boolean isController(Object handler) {
+        return handler instanceof HandlerMethod
+                && ((HandlerMethod) handler).getBeanType().getPackageName().equals(CONTROLLER_PACKAGE);
+    }
+
+    /**
+     * 记录一次请求。
+     */
+    public static void record(String endpoint, long elapsedNanos, boolean error, DbCallMetrics.Scope scope) {
+        Endpoint e = ENDPOINTS.computeIfAbsent(endpoint, Endpoint::new);
+        if (e.budget != scope.getBudget()) {
+            e.budget = scope.getBudget();
+        }
+        e.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        e.statements.record(scope.getStatements());
+        e.connections.add(scope.getConnections());
+        e.poolWaitNanos.add(scope.getPoolWaitNanos());
+        if (error) {
+            e.errors.increment();
+        }
+        if (scope.isExceeded()) {
+            e.overBudget.increment();
+            if (e.budgetWarned.compareAndSet(false, true)) {
+                System.err.println("接口语句数超出预算：" + endpoint + " 执行 " + scope.getStatements()
+                        + " 条，预算 " + scope.getBudget() + "（之后的超出只计数，见 /api/admin/metrics）");
+            }
+        }
+    }
+
+    /**
+     * 所有接口的指标快照，按请求数从多到少排列。
+     */
+    public static List<Stats> snapshot() {
+        List<Stats> list = new ArrayList<>(ENDPOINTS.size());
+        for (Endpoint e : ENDPOINTS.values()) {
+            list.add(new Stats(e));
+        }
+        list.sort(Comparator.comparingLong((Stats s) -> s.latencyMicros.getCount()).reversed());
+        return list;
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final LatencyHistogram latencyMicros = new LatencyHistogram();
+        final LatencyHistogram statements = new LatencyHistogram();
+        final LongAdder connections = new LongAdder();
+        final LongAdder poolWaitNanos = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder overBudget = new LongAdder();
+        final AtomicBoolean budgetWarned = new AtomicBoolean();
+        volatile int budget = DbCallMetrics.NO_BUDGET;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * 单个接口的指标：耗时（微秒）与每请求语句数的分布、累计取连接次数与等待时间（微秒）、5xx / 异常数，
+     * 语句预算（null 表示不限制）与超出预算的请求数。
+     */
+    public static final class Stats {
+        private final String endpoint;
+        private final LatencyHistogram.Snapshot latencyMicros;
+        private final LatencyHistogram.Snapshot statementsPerRequest;
+        private final long connections;
+        private final long poolWaitMicros;
+        private final long errors;
+        private final Integer budget;
+        private final long overBudget;
+
+        Stats(Endpoint e) {
+            this.endpoint = e.name;
+            this.latencyMicros = e.latencyMicros.snapshot();
+            this.statementsPerRequest = e.statements.snapshot();
+            this.connections = e.connections.sum();
+            this.poolWaitMicros = TimeUnit.NANOSECONDS.toMicros(e.poolWaitNanos.sum());
+            this.errors = e.errors.sum();
+            this.budget = e.budget != DbCallMetrics.NO_BUDGET ? e.budget : null;
+            this.overBudget = e.overBudget.sum();
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public LatencyHistogram.Snapshot getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public LatencyHistogram.Snapshot getStatementsPerRequest() {
+            return statementsPerRequest;
+        }
+
+        public long getConnections() {
+            return connections;
+        }
+
+        public long getPoolWaitMicros() {
+            return poolWaitMicros;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public Integer getBudget() {
+            return budget;
+        }
+
+        public long getOverBudget() {
+            return overBudget;
+        }
+    }
+}
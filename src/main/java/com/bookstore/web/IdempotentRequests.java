@@ -0,0 +1,258 @@
+package com.bookstore.web;
+
+import com.bookstore.dao.IdempotencyRecordDao;
+import com.bookstore.model.IdempotencyRecord;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.util.Workload;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 带 Idempotency-Key 请求头的写接口（下单、付款）的幂等执行。
+ *
+ * 同一 scope（接口 + 资源，如 create-order:2）下同一个 key 只执行一次业务：
+ * - 进程内最近成功的响应保存在 LRU 缓存中，重复请求直接返回，不访问数据库；
+ * - 同一 key 的请求正在执行时，后到的请求等待其结果并返回同一响应，不再重复执行；
+ * - 业务在一个事务中执行，事务开始时在 idempotency_record 中占位，成功响应与业务数据一起提交，
+ *   因此多实例部署或进程重启后重复请求也能拿到已保存的响应；
+ * - 非 2xx 响应随业务一起回滚、不保存，客户端可以用同一个 key 重试；
+ * - key 与请求体绑定：占位时一并保存请求体（序列化为 JSON 后）的 SHA-256，同一 key 带不同请求体的请求
+ *   返回 422，不回放首次的响应，避免客户端误用 key 时把另一笔请求的结果当作本次结果。
+ *
+ * 未带请求头的请求按原方式直接执行。
+ */
+public final class IdempotentRequests {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 64;
+    /** 进程内缓存的成功响应条数。 */
+    private static final int CACHE_CAPACITY = 10000;
+    /** 重复请求等待首个请求完成的最长时间。 */
+    private static final long WAIT_SECONDS = 30;
+    /** idempotency_record 保留时长，超过后由清理线程删除。 */
+    private static final long RETENTION_HOURS = 24;
+
+    private static final Map<String, IdempotencyRecord> RECENT = Collections.synchronizedMap(
+            new LinkedHashMap<String, IdempotencyRecord>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            });
+    private static final Map<String, CompletableFuture<IdempotencyRecord>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final IdempotencyRecordDao recordDao = new IdempotencyRecordDao();
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private static final ScheduledExecutorService PURGE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(Workload.BACKGROUND.wrap(r), "idempotency-purge");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        PURGE.scheduleWithFixedDelay(IdempotentRequests::purge, 1, 1, TimeUnit.HOURS);
+    }
+
+    private IdempotentRequests() {
+    }
+
+    /**
+     * 业务处理，返回要发给客户端的响应。
+     */
+    @FunctionalInterface
+    public interface Handler {
+        ResponseEntity<?> handle();
+    }
+
+    /**
+     * 以幂等方式执行 handler。key 为空时直接执行。
+     *
+     * @param request 请求体（无请求体的接口传 null），与 key 一起确定“同一个请求”
+     */
+    public static ResponseEntity<?> execute(String scope, String key, Object request, Handler handler) {
+        if (key == null || key.isBlank()) {
+            return handler.handle();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, HEADER + " 长度不能超过 " + MAX_KEY_LENGTH);
+        }
+        String hash = requestHash(request);
+        String id = scope + "|" + key;
+        IdempotencyRecord cached = RECENT.get(id);
+        if (cached != null) {
+            return mismatch(cached, hash) ? keyReused() : replay(cached);
+        }
+
+        CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> first = IN_FLIGHT.putIfAbsent(id, mine);
+        if (first != null) {
+            try {
+                IdempotencyRecord done = first.get(WAIT_SECONDS, TimeUnit.SECONDS);
+                return mismatch(done, hash) ? keyReused() : replay(done);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return error(HttpStatus.CONFLICT, "相同请求仍在处理中，请稍后重试");
+            } catch (TimeoutException | ExecutionException e) {
+                return error(HttpStatus.CONFLICT, "相同请求仍在处理中，请稍后重试");
+            }
+        }
+
+        IdempotencyRecord record = null;
+        try {
+            Outcome outcome = runOnce(scope, key, hash, handler);
+            record = outcome.record;
+            if (record.getResponseStatus() != null && HttpStatus.valueOf(record.getResponseStatus()).is2xxSuccessful()) {
+                RECENT.put(id, record);
+            }
+            return outcome.response != null ? outcome.response : replay(record);
+        } finally {
+            IN_FLIGHT.remove(id, mine);
+            mine.complete(record);
+        }
+    }
+
+    /** 一次执行的结果：record 供重复请求回放，response 为首次执行时返回给调用方的原始响应（回放时为 null）。 */
+    private static final class Outcome {
+        final IdempotencyRecord record;
+        final ResponseEntity<?> response;
+
+        Outcome(IdempotencyRecord record, ResponseEntity<?> response) {
+            this.record = record;
+            this.response = response;
+        }
+    }
+
+    /** 非 2xx 响应：抛出以回滚业务事务与占位记录。 */
+    private static final class Rejected extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final transient Outcome outcome;
+
+        Rejected(Outcome outcome) {
+            super(null, null, false, false);
+            this.outcome = outcome;
+        }
+    }
+
+    private static Outcome runOnce(String scope, String key, String hash, Handler handler) {
+        try {
+            return TransactionContext.execute(conn -> {
+                if (!recordDao.claim(scope, key, hash)) {
+                    // 其他实例已完成同一请求
+                    IdempotencyRecord stored = recordDao.find(scope, key);
+                    if (mismatch(stored, hash)) {
+                        ResponseEntity<?> response = keyReused();
+                        return new Outcome(toRecord(scope, key, hash, response), response);
+                    }
+                    if (stored == null || stored.getResponseStatus() == null) {
+                        return new Outcome(toRecord(scope, key, hash,
+                                error(HttpStatus.CONFLICT, "相同请求仍在处理中，请稍后重试")), null);
+                    }
+                    return new Outcome(stored, null);
+                }
+                ResponseEntity<?> response = handler.handle();
+                IdempotencyRecord record = toRecord(scope, key, hash, response);
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    throw new Rejected(new Outcome(record, response));
+                }
+                recordDao.complete(scope, key, record.getResponseStatus(), record.getResponseBody());
+                return new Outcome(record, response);
+            });
+        } catch (Rejected e) {
+            return e.outcome;
+        } catch (SQLException | RuntimeException e) {
+            ResponseEntity<?> response = error(HttpStatus.BAD_REQUEST, "请求处理失败：" + e.getMessage());
+            return new Outcome(toRecord(scope, key, hash, response), response);
+        }
+    }
+
+    /**
+     * 请求体的 SHA-256（十六进制）：请求体按 JSON 序列化后计算，无请求体时为空串的摘要。
+     */
+    private static String requestHash(Object request) {
+        try {
+            byte[] body = request != null ? MAPPER.writeValueAsBytes(request) : new byte[0];
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("请求序列化失败：" + e.getMessage(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 已有记录是否属于另一个请求体。记录没有摘要（升级前写入的记录）时视为同一请求。
+     */
+    private static boolean mismatch(IdempotencyRecord r, String hash) {
+        return r != null && r.getRequestHash() != null && !r.getRequestHash().equals(hash);
+    }
+
+    private static ResponseEntity<?> keyReused() {
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " 已用于内容不同的请求，请为新请求生成新的 key");
+    }
+
+    private static IdempotencyRecord toRecord(String scope, String key, String hash, ResponseEntity<?> response) {
+        IdempotencyRecord r = new IdempotencyRecord();
+        r.setScope(scope);
+        r.setIdempotencyKey(key);
+        r.setRequestHash(hash);
+        r.setResponseStatus(response.getStatusCode().value());
+        if (response.getBody() != null) {
+            try {
+                r.setResponseBody(MAPPER.writeValueAsString(response.getBody()));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("响应序列化失败：" + e.getMessage(), e);
+            }
+        }
+        r.setCreatedAt(LocalDateTime.now());
+        return r;
+    }
+
+    private static ResponseEntity<?> replay(IdempotencyRecord r) {
+        if (r == null) {
+            return error(HttpStatus.CONFLICT, "相同请求处理失败，请重试");
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(r.getResponseStatus())
+                .header("Idempotent-Replayed", "true");
+        if (r.getResponseBody() == null) {
+            return builder.build();
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON).body(r.getResponseBody());
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Collections.singletonMap("message", message));
+    }
+
+    private static void purge() {
+        try {
+            recordDao.deleteOlderThan(LocalDateTime.now().minusHours(RETENTION_HOURS));
+        } catch (SQLException e) {
+            System.err.println("清理幂等请求记录失败：" + e.getMessage());
+        }
+    }
+}
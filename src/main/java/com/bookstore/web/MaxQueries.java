@@ -0,0 +1,23 @@
+package com.bookstore.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口的 SQL 语句预算：一次请求最多创建的语句数（含缓存冷启动时的加载）。
+ *
+ * 标在控制器类上作为该类所有接口的默认预算，标在方法上覆盖类上的预算。
+ * 超出预算的请求由 {@link EndpointMetrics} 计数并告警；严格模式（-Dbookstore.queryBudget.strict=true）下
+ * 超出预算的那条语句直接抛出 {@link com.bookstore.util.QueryBudgetExceededException}，使请求失败，
+ * 用于在测试中尽早发现逐行查询（N+1）。预算应是与数据量无关的常数。
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface MaxQueries {
+
+    int value();
+}
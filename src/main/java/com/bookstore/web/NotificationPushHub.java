@@ -0,0 +1,284 @@
+package com.bookstore.web;
+
+import com.bookstore.dao.CustomerNotificationDao;
+import com.bookstore.model.CustomerNotification;
+import com.bookstore.service.NotificationOutbox;
+import com.bookstore.util.Workload;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 顾客通知的 SSE 推送中心。
+ *
+ * 通知由 {@link NotificationOutbox} 写入数据库后直接推给在线顾客，不再依赖前端轮询：
+ * - 事件 notification：一条新通知，事件 ID 即 notificationId，浏览器断线重连时通过 Last-Event-ID 续传；
+ * - 事件 unread-count：该顾客当前未读数，在连接建立、收到新通知、已读/删除后推送；
+ * - 事件 reload：断线期间的通知超过 {@link #MAX_REPLAY} 条，不再逐条补发，客户端应重新加载通知列表。
+ *
+ * 每个连接上的 notification 事件按 ID 递增、不重复：连接先登记再补发，补发期间新到的通知暂存在该连接上，
+ * 补发完成后只推送 ID 大于已发出的最大 ID 的部分。
+ * 连接建立时按页补发（每页 {@link #REPLAY_LIMIT} 条）并查询未读数，此后只有收到通知或修改已读状态的顾客才会访问数据库；
+ * 空闲连接由 Servlet 异步请求承载，不占用请求线程，只由一个心跳线程定期发送注释行以保持连接。
+ * 推送在独立的分发线程中进行，不占用发件箱写线程：慢连接的网络写与未读数查询不会拖慢通知入库。
+ * 分发队列满时丢弃最早的一批推送（通知已入库，顾客刷新或重连后仍可看到）。
+ * 订阅关系只保存在本进程内。
+ */
+public final class NotificationPushHub {
+
+    /** 断线重连时每次查询补发的通知条数。 */
+    private static final int REPLAY_LIMIT = 100;
+    /** 断线重连时最多逐条补发的通知条数，超过时改为通知客户端重新加载。 */
+    private static final int MAX_REPLAY = 1000;
+    /** 心跳间隔，需小于前端代理与负载均衡的空闲超时。 */
+    private static final long HEARTBEAT_SECONDS = 25;
+    /** 待分发的通知批次上限。 */
+    private static final int DISPATCH_QUEUE_CAPACITY = 1000;
+
+    private static final Map<Long, Set<Subscriber>> SUBSCRIBERS = new ConcurrentHashMap<>();
+    private static final CustomerNotificationDao notificationDao = new CustomerNotificationDao();
+    private static final ScheduledExecutorService HEARTBEAT = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "notification-sse-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService DISPATCHER = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(DISPATCH_QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(Workload.BACKGROUND.wrap(r), "notification-sse-dispatch");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    static {
+        NotificationOutbox.onWritten(written -> DISPATCHER.execute(() -> dispatch(written)));
+        HEARTBEAT.scheduleAtFixedRate(NotificationPushHub::heartbeat,
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private NotificationPushHub() {
+    }
+
+    /**
+     * 一个推送连接及其补发状态。notification 事件只经由本类发送，保证同一连接上 ID 递增、不重复。
+     */
+    private static final class Subscriber {
+        final long customerId;
+        final SseEmitter emitter;
+        /** 补发尚未完成时新到的通知，补发完成后按 ID 顺序推送。 */
+        private final List<CustomerNotification> pending = new ArrayList<>();
+        private boolean replaying;
+        /** 已发出的最大通知 ID。 */
+        private long lastSentId;
+
+        Subscriber(long customerId, SseEmitter emitter, Long lastEventId) {
+            this.customerId = customerId;
+            this.emitter = emitter;
+            this.replaying = lastEventId != null;
+            this.lastSentId = lastEventId != null ? lastEventId : 0L;
+        }
+
+        /** 分发线程推送新通知：补发期间暂存。 */
+        synchronized void offer(CustomerNotification n) {
+            if (replaying) {
+                pending.add(n);
+            } else {
+                sendNotification(n);
+            }
+        }
+
+        /**
+         * 补发一条历史通知，只由建立连接的线程在补发期间调用；网络写在锁外进行，不阻塞分发线程。
+         */
+        void replay(CustomerNotification n) {
+            send(this, () -> notificationEvent(n));
+            synchronized (this) {
+                lastSentId = Math.max(lastSentId, n.getNotificationId());
+            }
+        }
+
+        /** 补发跳过到 latestId：之前的通知由客户端重新加载获得。 */
+        synchronized void skipTo(long latestId) {
+            lastSentId = Math.max(lastSentId, latestId);
+        }
+
+        /** 补发完成：推送暂存的通知中尚未发出的部分，此后新通知直接推送。 */
+        synchronized void finishReplay() {
+            pending.sort(Comparator.comparing(CustomerNotification::getNotificationId));
+            for (CustomerNotification n : pending) {
+                sendNotification(n);
+            }
+            pending.clear();
+            replaying = false;
+        }
+
+        private void sendNotification(CustomerNotification n) {
+            if (n.getNotificationId() <= lastSentId) {
+                return;
+            }
+            send(this, () -> notificationEvent(n));
+            lastSentId = n.getNotificationId();
+        }
+    }
+
+    /**
+     * 为顾客建立推送连接。lastEventId 不为空时先补发其后的通知（超过 {@link #MAX_REPLAY} 条时改发 reload 事件），
+     * 随后推送当前未读数。
+     */
+    public static SseEmitter subscribe(long customerId, Long lastEventId) throws SQLException {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber sub = new Subscriber(customerId, emitter, lastEventId);
+        // 先登记再补发：补发查询之后入库的通知会暂存在 sub 中，不会遗漏
+        SUBSCRIBERS.computeIfAbsent(customerId, k -> ConcurrentHashMap.newKeySet()).add(sub);
+        Runnable remove = () -> unsubscribe(sub);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        if (lastEventId != null) {
+            try {
+                replay(sub, lastEventId);
+            } finally {
+                sub.finishReplay();
+            }
+        }
+        int unread = notificationDao.countUnread(customerId);
+        send(sub, () -> unreadEvent(unread));
+        return emitter;
+    }
+
+    /**
+     * 按页补发 afterId 之后的通知，直到追上或超过 {@link #MAX_REPLAY} 条；超过时发送 reload 事件，
+     * 其事件 ID 为该顾客最新的通知 ID，客户端重新加载列表后从这里继续。
+     */
+    private static void replay(Subscriber sub, long afterId) throws SQLException {
+        long cursor = afterId;
+        int replayed = 0;
+        while (true) {
+            List<CustomerNotification> page = notificationDao.findByCustomerAfter(sub.customerId, cursor, REPLAY_LIMIT);
+            if (replayed + page.size() > MAX_REPLAY) {
+                Long latestId = notificationDao.findLatestId(sub.customerId);
+                long reloadId = latestId != null ? latestId : cursor;
+                sub.skipTo(reloadId);
+                send(sub, () -> SseEmitter.event().id(String.valueOf(reloadId)).name("reload").data(reloadId));
+                return;
+            }
+            for (CustomerNotification n : page) {
+                sub.replay(n);
+                cursor = n.getNotificationId();
+            }
+            replayed += page.size();
+            if (page.size() < REPLAY_LIMIT) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 顾客的已读状态或通知数量发生变化（已读、全部已读、删除）后调用，仅对在线顾客查询并推送未读数。
+     */
+    public static void unreadChanged(long customerId) throws SQLException {
+        if (SUBSCRIBERS.containsKey(customerId)) {
+            int unread = notificationDao.countUnread(customerId);
+            broadcast(customerId, () -> unreadEvent(unread));
+        }
+    }
+
+    /**
+     * 当前在线的推送连接数。
+     */
+    public static int connectionCount() {
+        int n = 0;
+        for (Set<Subscriber> set : SUBSCRIBERS.values()) {
+            n += set.size();
+        }
+        return n;
+    }
+
+    private static void dispatch(List<CustomerNotification> written) {
+        Map<Long, List<CustomerNotification>> byCustomer = new LinkedHashMap<>();
+        for (CustomerNotification n : written) {
+            if (SUBSCRIBERS.containsKey(n.getCustomerId())) {
+                byCustomer.computeIfAbsent(n.getCustomerId(), k -> new ArrayList<>()).add(n);
+            }
+        }
+        for (Map.Entry<Long, List<CustomerNotification>> e : byCustomer.entrySet()) {
+            Set<Subscriber> set = SUBSCRIBERS.get(e.getKey());
+            if (set != null) {
+                for (CustomerNotification n : e.getValue()) {
+                    for (Subscriber sub : set) {
+                        sub.offer(n);
+                    }
+                }
+            }
+            try {
+                unreadChanged(e.getKey());
+            } catch (SQLException ex) {
+                System.err.println("推送未读数失败（顾客 " + e.getKey() + "）：" + ex.getMessage());
+            }
+        }
+    }
+
+    private static void heartbeat() {
+        for (Set<Subscriber> set : SUBSCRIBERS.values()) {
+            for (Subscriber sub : set) {
+                send(sub, () -> SseEmitter.event().comment("ping"));
+            }
+        }
+    }
+
+    /**
+     * SseEventBuilder 在发送时会被修改，不能在多个连接间复用，因此按连接各自构造。
+     */
+    private static void broadcast(long customerId, Supplier<SseEmitter.SseEventBuilder> event) {
+        Set<Subscriber> set = SUBSCRIBERS.get(customerId);
+        if (set != null) {
+            for (Subscriber sub : set) {
+                send(sub, event);
+            }
+        }
+    }
+
+    private static void send(Subscriber sub, Supplier<SseEmitter.SseEventBuilder> event) {
+        try {
+            sub.emitter.send(event.get());
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            unsubscribe(sub);
+            sub.emitter.completeWithError(e);
+        }
+    }
+
+    private static void unsubscribe(Subscriber sub) {
+        SUBSCRIBERS.computeIfPresent(sub.customerId, (k, set) -> {
+            set.remove(sub);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static SseEmitter.SseEventBuilder notificationEvent(CustomerNotification n) {
+        return SseEmitter.event()
+                .id(String.valueOf(n.getNotificationId()))
+                .name("notification")
+                .data(n, MediaType.APPLICATION_JSON);
+    }
+
+    private static SseEmitter.SseEventBuilder unreadEvent(int unread) {
+        return SseEmitter.event().name("unread-count").data(unread);
+    }
+}
@@ -1,7 +1,9 @@
 package com.bookstore.web;
 
+import com.bookstore.util.Workload;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -16,10 +18,28 @@ import java.io.File;
 @SpringBootApplication(scanBasePackages = "com.bookstore")
 public class WebApplication implements WebMvcConfigurer {
 
+    /**
+     * Web 服务端默认启用连接池隔舱（见 {@link Workload}），须在首次使用 DBUtil 之前设置；
+     * db.properties 中的 db.bulkheads=false 只对 JavaFX 客户端生效，启动参数 -Ddb.bulkheads=false 仍可关闭。
+     */
     public static void main(String[] args) {
+        System.setProperty("db.bulkheads", System.getProperty("db.bulkheads", "true"));
         SpringApplication.run(WebApplication.class, args);
     }
 
+    /**
+     * 注册接口级运行指标拦截器（见 {@link EndpointMetrics}）与按路径选择连接池隔舱的拦截器
+     * （见 {@link WorkloadInterceptor}）：管理端、图书浏览、下单 / 结算 / 订单操作各用一个隔舱。
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new EndpointMetrics()).addPathPatterns("/api/**");
+        registry.addInterceptor(new WorkloadInterceptor(Workload.ADMIN)).addPathPatterns("/api/admin/**");
+        registry.addInterceptor(new WorkloadInterceptor(Workload.CATALOG)).addPathPatterns("/api/customer/books/**");
+        registry.addInterceptor(new WorkloadInterceptor(Workload.CHECKOUT)).addPathPatterns(
+                "/api/customer/*/checkout", "/api/customer/*/orders/**", "/api/customer/orders/**");
+    }
+
     /**
      * 配置静态资源映射，支持访问本地图片文件。
      * 图片文件应放在项目根目录的 static/images/ 目录下。
@@ -0,0 +1,48 @@
+package com.bookstore.web;
+
+import com.bookstore.util.Workload;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * 按路径为请求打上 {@link Workload} 标签，使请求中的数据库访问使用对应的连接池隔舱。
+ * 服务层自己打的标签（如 CheckoutService 的 CHECKOUT）覆盖这里的标签。
+ * 由 {@link WebApplication} 按路径注册。
+ */
+public final class WorkloadInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String SCOPE_ATTR = WorkloadInterceptor.class.getName() + ".scope";
+
+    private final Workload workload;
+
+    public WorkloadInterceptor(Workload workload) {
+        this.workload = workload;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(SCOPE_ATTR, Workload.enter(workload));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        exit(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        exit(request);
+    }
+
+    private static void exit(HttpServletRequest request) {
+        Object scope = request.getAttribute(SCOPE_ATTR);
+        if (scope instanceof Workload.Scope) {
+            request.removeAttribute(SCOPE_ATTR);
+            ((Workload.Scope) scope).close();
+        }
+    }
+}
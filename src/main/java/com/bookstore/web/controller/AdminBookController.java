@@ -2,6 +2,9 @@ package com.bookstore.web.controller;
 
 import com.bookstore.dao.*;
 import com.bookstore.model.*;
+import com.bookstore.search.BookSearchIndex;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,7 +20,9 @@ import java.util.List;
  * - 新增书目并初始化库存；
  * - 编辑书目详情（基本字段）；
  * - 维护作者 / 关键字 / 供货关系（添加、删除及部分编辑）。
+ * 书目、作者、关键字变更后同步增量更新顾客端搜索索引 {@link BookSearchIndex}。
  */
+@MaxQueries(6)
 @RestController
 @RequestMapping("/api/admin/books")
 @CrossOrigin
@@ -73,6 +78,7 @@ public class AdminBookController {
             inv.setQuantity(initQty);
             inv.setSafetyStock(safety);
             inventoryDao.insert(inv);
+            BookSearchIndex.bookChanged(book.getBookId());
 
             return ResponseEntity.ok(book);
         } catch (Exception e) {
@@ -126,6 +132,7 @@ public class AdminBookController {
             book.setCoverImageUrl(req.getCoverImageUrl());
             book.setCatalog(req.getCatalog());
             bookDao.update(book);
+            BookSearchIndex.bookChanged(bookId);
             return ResponseEntity.ok(book);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
@@ -159,6 +166,7 @@ public class AdminBookController {
             }
             int order = req.getAuthorOrder() != null ? req.getAuthorOrder() : 1;
             bookAuthorKeywordDao.addBookAuthor(bookId, authorId, order);
+            BookSearchIndex.bookChanged(bookId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
@@ -177,6 +185,7 @@ public class AdminBookController {
                 a.setNationality(req.getNationality());
                 a.setBiography(req.getBiography());
                 authorDao.update(a);
+                BookSearchIndex.authorChanged(authorId);
             }
             if (req.getAuthorOrder() != null) {
                 bookAuthorKeywordDao.updateBookAuthorOrder(bookId, authorId, req.getAuthorOrder());
@@ -191,6 +200,7 @@ public class AdminBookController {
     public ResponseEntity<?> removeAuthorFromBook(@PathVariable String bookId, @PathVariable long authorId) {
         try {
             bookAuthorKeywordDao.removeBookAuthor(bookId, authorId);
+            BookSearchIndex.bookChanged(bookId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
@@ -221,6 +231,7 @@ public class AdminBookController {
                 keywordId = keywordDao.insert(k);
             }
             bookAuthorKeywordDao.addBookKeyword(bookId, keywordId);
+            BookSearchIndex.bookChanged(bookId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
@@ -237,6 +248,7 @@ public class AdminBookController {
                 k.setKeywordId(keywordId);
                 k.setKeywordText(req.getKeywordText());
                 keywordDao.update(k);
+                BookSearchIndex.keywordChanged(keywordId);
             }
             return ResponseEntity.ok().build();
         } catch (Exception e) {
@@ -248,6 +260,7 @@ public class AdminBookController {
     public ResponseEntity<?> removeKeywordFromBook(@PathVariable String bookId, @PathVariable long keywordId) {
         try {
             bookAuthorKeywordDao.removeBookKeyword(bookId, keywordId);
+            BookSearchIndex.bookChanged(bookId);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
@@ -318,10 +331,11 @@ public class AdminBookController {
      * - 删除子书：不允许直接删除，提示需要删除父丛书
      * - 删除丛书：删除丛书及其所有子书，同时删除所有相关的数据
      * - 删除普通书：直接删除，同时删除所有相关的数据
+     * 丛书与全部子书的相关数据按表各用一条 IN 语句删除，语句数与子书数量无关。
      */
+    @MaxQueries(14)
     @DeleteMapping("/{bookId}")
     public ResponseEntity<?> deleteBook(@PathVariable String bookId) {
-        java.sql.Connection conn = null;
         try {
             Book book = bookDao.findById(bookId);
             if (book == null) {
@@ -333,118 +347,76 @@ public class AdminBookController {
                 return ResponseEntity.badRequest().body(new ErrorResp("不能直接删除子书，请删除其父丛书"));
             }
 
-            // 使用事务确保数据一致性
-            conn = com.bookstore.util.DBUtil.getConnection();
-            conn.setAutoCommit(false);
-            
-            try {
+            // 使用事务确保数据一致性；查询子书等 DAO 调用加入同一事务连接，整个删除只占用一个连接
+            List<String> deletedIds = TransactionContext.execute(conn -> {
+                List<String> childIds = new java.util.ArrayList<>();
                 if (book.isSeriesFlag()) {
-                    // 删除丛书：先删除所有子书及其相关数据
-                    List<Book> childBooks = bookDao.findChildBooks(bookId);
-                    for (Book child : childBooks) {
-                        deleteBookRelatedData(conn, child.getBookId());
-                        // 删除子书本身
-                        String deleteBookSql = "DELETE FROM book WHERE book_id = ?";
-                        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteBookSql)) {
-                            ps.setString(1, child.getBookId());
-                            ps.executeUpdate();
-                        }
+                    for (Book child : bookDao.findChildBooks(bookId)) {
+                        childIds.add(child.getBookId());
                     }
                 }
-                
-                // 删除该书籍的所有相关数据
-                deleteBookRelatedData(conn, bookId);
-                
-                // 删除书籍本身
-                String deleteBookSql = "DELETE FROM book WHERE book_id = ?";
-                try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteBookSql)) {
-                    ps.setString(1, bookId);
-                    ps.executeUpdate();
-                }
-                
-                conn.commit();
-                return ResponseEntity.ok().build();
-            } catch (Exception e) {
-                if (conn != null) {
-                    conn.rollback();
-                }
-                throw e;
-            } finally {
-                if (conn != null) {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                }
-            }
+                List<String> ids = new java.util.ArrayList<>(childIds);
+                ids.add(bookId);
+
+                // 删除丛书、子书的所有相关数据
+                deleteBookRelatedData(conn, ids);
+
+                // 先删除子书（parent_book_id 外键引用丛书），再删除书籍本身
+                deleteByBookIds(conn, "book", childIds);
+                deleteByBookIds(conn, "book", java.util.Collections.singletonList(bookId));
+                return ids;
+            });
+
+            // 事务提交后再从目录快照中移除
+            CatalogCache.booksDeleted(deletedIds);
+            BookSearchIndex.booksRemoved(deletedIds);
+            return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
         }
     }
 
     /**
-     * 删除书籍的所有相关数据（在同一个事务连接中）
+     * 删除书籍的所有相关数据（在同一个事务连接中），每张表一条语句
      * 删除顺序需要考虑外键依赖关系
      */
-    private void deleteBookRelatedData(java.sql.Connection conn, String bookId) throws SQLException {
+    private void deleteBookRelatedData(java.sql.Connection conn, List<String> bookIds) throws SQLException {
         // 1. 删除购物车中的记录
-        String deleteCartSql = "DELETE FROM shopping_cart WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteCartSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "shopping_cart", bookIds);
         // 2. 删除销售订单明细（注意：如果订单已存在，可能需要特殊处理，这里先删除）
-        String deleteOrderItemSql = "DELETE FROM sales_order_item WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteOrderItemSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "sales_order_item", bookIds);
+        // 2.1 删除库存预留记录（stock_reservation 外键引用 book）
+        deleteByBookIds(conn, "stock_reservation", bookIds);
         // 3. 删除采购单明细
-        String deletePoItemSql = "DELETE FROM purchase_order_item WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deletePoItemSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "purchase_order_item", bookIds);
         // 4. 删除缺货记录
-        String deleteOosSql = "DELETE FROM out_of_stock_record WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteOosSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "out_of_stock_record", bookIds);
         // 5. 删除客户缺货请求
-        String deleteCoorsSql = "DELETE FROM customer_out_of_stock_request WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteCoorsSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "customer_out_of_stock_request", bookIds);
         // 6. 删除库存记录
-        String deleteInventorySql = "DELETE FROM inventory WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteInventorySql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "inventory", bookIds);
         // 7. 删除书籍关键字关系
-        String deleteKeywordSql = "DELETE FROM book_keyword WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteKeywordSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "book_keyword", bookIds);
         // 8. 删除书籍作者关系
-        String deleteAuthorSql = "DELETE FROM book_author WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteAuthorSql)) {
-            ps.setString(1, bookId);
-            ps.executeUpdate();
-        }
-
+        deleteByBookIds(conn, "book_author", bookIds);
         // 9. 删除供货关系
-        String deleteSupplySql = "DELETE FROM supply WHERE book_id = ?";
-        try (java.sql.PreparedStatement ps = conn.prepareStatement(deleteSupplySql)) {
-            ps.setString(1, bookId);
+        deleteByBookIds(conn, "supply", bookIds);
+    }
+
+    /**
+     * DELETE FROM table WHERE book_id IN (...)，书号为空时不执行。table 只由本类传入常量。
+     */
+    private static void deleteByBookIds(java.sql.Connection conn, String table, List<String> bookIds)
+            throws SQLException {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        String sql = "DELETE FROM " + table + " WHERE book_id IN (" +
+                String.join(",", java.util.Collections.nCopies(bookIds.size(), "?")) + ")";
+        try (java.sql.PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < bookIds.size(); i++) {
+                ps.setString(i + 1, bookIds.get(i));
+            }
             ps.executeUpdate();
         }
     }
@@ -2,6 +2,7 @@ package com.bookstore.web.controller;
 
 import com.bookstore.dao.CustomerDao;
 import com.bookstore.model.Customer;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,6 +16,7 @@ import java.util.List;
  * - 查询全部客户列表；
  * - 调整客户信用等级。
  */
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/admin/customers")
 @CrossOrigin
@@ -4,11 +4,14 @@ import com.bookstore.dao.InventoryDao;
 import com.bookstore.dao.OutOfStockRecordDao;
 import com.bookstore.model.Inventory;
 import com.bookstore.model.OutOfStockRecord;
+import com.bookstore.service.StockReservationEngine;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,6 +23,7 @@ import java.util.List;
  * - 增减库存数量；
  * - 当库存低于安全库存时，自动生成缺书记录（LOW_STOCK）。
  */
+@MaxQueries(5)
 @RestController
 @RequestMapping("/api/admin/inventory")
 @CrossOrigin
@@ -57,6 +61,7 @@ public class AdminInventoryController {
     /**
      * 调整库存数量：delta > 0 表示增加，delta < 0 表示减少。
      */
+    @MaxQueries(8)
     @PostMapping("/{bookId}/adjust")
     public ResponseEntity<?> adjustInventory(@PathVariable("bookId") String bookId,
                                              @RequestBody AdjustReq req) {
@@ -65,13 +70,9 @@ public class AdminInventoryController {
                 return ResponseEntity.badRequest().body(new ErrorResp("调整数量不能为空或 0"));
             }
             int delta = req.getDelta();
-            if (delta > 0) {
-                inventoryDao.increaseQuantity(bookId, delta);
-            } else {
-                int updated = inventoryDao.decreaseQuantity(bookId, -delta);
-                if (updated == 0) {
-                    return ResponseEntity.badRequest().body(new ErrorResp("库存不足，无法减少这么多数量"));
-                }
+            // 经由预留引擎调整，保持可承诺量计数与库存一致
+            if (!StockReservationEngine.adjustOnHand(bookId, delta)) {
+                return ResponseEntity.badRequest().body(new ErrorResp("库存不足，无法减少这么多数量"));
             }
             checkAndCreateLowStockRecord(bookId);
             return ResponseEntity.ok().build();
@@ -85,8 +86,12 @@ public class AdminInventoryController {
      * 逻辑与 AdminView.checkAndCreateLowStockRecord 保持一致。
      */
     private void checkAndCreateLowStockRecord(String bookId) throws SQLException {
-        int qty = inventoryDao.getQuantity(bookId);
-        int safety = inventoryDao.getSafetyStock(bookId);
+        int[] row = inventoryDao.getQuantities(Collections.singleton(bookId)).get(bookId);
+        if (row == null) {
+            return;
+        }
+        int qty = row[0];
+        int safety = row[1];
         if (safety > 0 && qty < safety) {
             OutOfStockRecord record = new OutOfStockRecord();
             record.setBookId(bookId);
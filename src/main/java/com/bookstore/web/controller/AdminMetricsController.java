@@ -0,0 +1,193 @@
+package com.bookstore.web.controller;
+
+import com.bookstore.service.NotificationOutbox;
+import com.bookstore.util.DBUtil;
+import com.bookstore.util.DbCallMetrics;
+import com.bookstore.util.LatencyHistogram;
+import com.bookstore.util.SlowQueryLog;
+import com.bookstore.util.StatementStats;
+import com.bookstore.web.EndpointMetrics;
+import com.bookstore.web.MaxQueries;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 管理员端 - 运行指标接口，供排查性能问题时查看进程内组件的状态。
+ */
+@MaxQueries(0)
+@RestController
+@RequestMapping("/api/admin/metrics")
+@CrossOrigin
+public class AdminMetricsController {
+
+    /**
+     * 接口耗时 / 每请求语句数分布、数据库调用计数与连接池状态（JSON，耗时单位为微秒）。
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> db = new LinkedHashMap<>();
+        db.put("statements", DbCallMetrics.getStatements());
+        db.put("connections", DbCallMetrics.getConnections());
+        db.put("poolWaitMicros", DbCallMetrics.poolWaitMicros());
+        db.put("pool", DBUtil.getPoolStats());
+        db.put("bulkheads", DBUtil.getBulkheadStats());
+        db.put("replicas", DBUtil.getReplicaStats());
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("endpoints", EndpointMetrics.snapshot());
+        body.put("db", db);
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * 同上，Prometheus 文本格式（耗时单位为秒）。
+     */
+    @GetMapping(value = "/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public ResponseEntity<String> prometheus() {
+        StringBuilder sb = new StringBuilder(8192);
+        List<EndpointMetrics.Stats> endpoints = EndpointMetrics.snapshot();
+
+        header(sb, "bookstore_http_request_duration_seconds", "summary", "接口处理耗时");
+        for (EndpointMetrics.Stats s : endpoints) {
+            summary(sb, "bookstore_http_request_duration_seconds", endpointLabel(s), s.getLatencyMicros(), 1e-6);
+        }
+        header(sb, "bookstore_http_request_db_statements", "summary", "每个请求创建的 SQL 语句数");
+        for (EndpointMetrics.Stats s : endpoints) {
+            summary(sb, "bookstore_http_request_db_statements", endpointLabel(s), s.getStatementsPerRequest(), 1);
+        }
+        header(sb, "bookstore_http_request_db_connections_total", "counter", "请求从连接池取连接的次数");
+        for (EndpointMetrics.Stats s : endpoints) {
+            sample(sb, "bookstore_http_request_db_connections_total", endpointLabel(s), s.getConnections());
+        }
+        header(sb, "bookstore_http_request_pool_wait_seconds_total", "counter", "请求等待连接池的累计时间");
+        for (EndpointMetrics.Stats s : endpoints) {
+            sample(sb, "bookstore_http_request_pool_wait_seconds_total", endpointLabel(s), s.getPoolWaitMicros() * 1e-6);
+        }
+        header(sb, "bookstore_http_request_errors_total", "counter", "5xx 响应或未处理异常数");
+        for (EndpointMetrics.Stats s : endpoints) {
+            sample(sb, "bookstore_http_request_errors_total", endpointLabel(s), s.getErrors());
+        }
+
+        header(sb, "bookstore_http_request_over_budget_total", "counter", "语句数超出 @MaxQueries 预算的请求数");
+        for (EndpointMetrics.Stats s : endpoints) {
+            sample(sb, "bookstore_http_request_over_budget_total", endpointLabel(s), s.getOverBudget());
+        }
+
+        header(sb, "bookstore_db_statements_total", "counter", "进程启动以来创建的 SQL 语句数");
+        sample(sb, "bookstore_db_statements_total", "", DbCallMetrics.getStatements());
+        header(sb, "bookstore_db_connections_total", "counter", "进程启动以来从连接池取出的连接数");
+        sample(sb, "bookstore_db_connections_total", "", DbCallMetrics.getConnections());
+        header(sb, "bookstore_db_pool_wait_seconds", "summary", "从连接池取连接的等待时间");
+        summary(sb, "bookstore_db_pool_wait_seconds", "", DbCallMetrics.poolWaitMicros(), 1e-6);
+        header(sb, "bookstore_db_pool_connections", "gauge", "连接池状态（active / idle / total / pending / max）");
+        for (Map.Entry<String, Integer> e : DBUtil.getPoolStats().entrySet()) {
+            sample(sb, "bookstore_db_pool_connections", "state=\"" + e.getKey() + "\"", e.getValue());
+        }
+        Map<String, Map<String, Object>> bulkheads = DBUtil.getBulkheadStats();
+        header(sb, "bookstore_db_bulkhead_connections", "gauge", "各连接池隔舱的状态（active / idle / total / pending / max）");
+        for (Map.Entry<String, Map<String, Object>> pool : bulkheads.entrySet()) {
+            for (String state : new String[]{"active", "idle", "total", "pending", "max"}) {
+                sample(sb, "bookstore_db_bulkhead_connections",
+                        label("pool", pool.getKey()) + ",state=\"" + state + "\"", (Integer) pool.getValue().get(state));
+            }
+        }
+        header(sb, "bookstore_db_bulkhead_timeouts_total", "counter", "各连接池隔舱取连接超时的次数");
+        for (Map.Entry<String, Map<String, Object>> pool : bulkheads.entrySet()) {
+            sample(sb, "bookstore_db_bulkhead_timeouts_total", label("pool", pool.getKey()),
+                    (Long) pool.getValue().get("timeouts"));
+        }
+        header(sb, "bookstore_db_bulkhead_wait_seconds", "summary", "各连接池隔舱的取连接等待时间");
+        for (Map.Entry<String, Map<String, Object>> pool : bulkheads.entrySet()) {
+            summary(sb, "bookstore_db_bulkhead_wait_seconds", label("pool", pool.getKey()),
+                    (LatencyHistogram.Snapshot) pool.getValue().get("waitMicros"), 1e-6);
+        }
+        Map<String, Object> replicas = DBUtil.getReplicaStats();
+        header(sb, "bookstore_db_read_routing_total", "counter", "只读查询的路由：replica 为副本，primary 为主库（其中 sticky 为读己之写粘滞，failover 为副本不可用）");
+        sample(sb, "bookstore_db_read_routing_total", "target=\"replica\"", (Long) replicas.get("replicaReads"));
+        sample(sb, "bookstore_db_read_routing_total", "target=\"primary\"", (Long) replicas.get("primaryReads"));
+        sample(sb, "bookstore_db_read_routing_total", "target=\"sticky\"", (Long) replicas.get("stickyReads"));
+        sample(sb, "bookstore_db_read_routing_total", "target=\"failover\"", (Long) replicas.get("failovers"));
+
+        List<StatementStats.Stats> statements = StatementStats.snapshot(Integer.MAX_VALUE);
+        header(sb, "bookstore_db_statement_seconds_total", "counter", "按 SQL 指纹累计的语句执行时间");
+        for (StatementStats.Stats s : statements) {
+            sample(sb, "bookstore_db_statement_seconds_total", label("fingerprint", s.getFingerprint()),
+                    s.getTotalMicros() * 1e-6);
+        }
+        header(sb, "bookstore_db_statement_executions_total", "counter", "按 SQL 指纹累计的语句执行次数");
+        for (StatementStats.Stats s : statements) {
+            sample(sb, "bookstore_db_statement_executions_total", label("fingerprint", s.getFingerprint()), s.getCount());
+        }
+        header(sb, "bookstore_db_statement_max_seconds", "gauge", "按 SQL 指纹的最大单次执行时间");
+        for (StatementStats.Stats s : statements) {
+            sample(sb, "bookstore_db_statement_max_seconds", label("fingerprint", s.getFingerprint()),
+                    s.getMaxMicros() * 1e-6);
+        }
+        header(sb, "bookstore_db_slow_queries_total", "counter", "超过慢查询阈值的语句数");
+        sample(sb, "bookstore_db_slow_queries_total", "", SlowQueryLog.getLogged());
+        return ResponseEntity.ok(sb.toString());
+    }
+
+    /**
+     * 按 SQL 指纹汇总的语句执行统计（需 db.statementTiming=true），按总耗时从高到低，默认前 50 条。
+     */
+    @GetMapping("/statements")
+    public ResponseEntity<Map<String, Object>> statements(@RequestParam(value = "limit", defaultValue = "50") int limit) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("slowQueries", SlowQueryLog.getLogged());
+        body.put("slowQueriesDropped", SlowQueryLog.getDropped());
+        body.put("statements", StatementStats.snapshot(Math.max(1, Math.min(limit, 1000))));
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * 通知发件箱：队列深度、批量大小、写入耗时等。
+     */
+    @GetMapping("/notification-outbox")
+    public ResponseEntity<NotificationOutbox.Stats> notificationOutbox() {
+        return ResponseEntity.ok(NotificationOutbox.stats());
+    }
+
+    private static String endpointLabel(EndpointMetrics.Stats s) {
+        return label("endpoint", s.getEndpoint());
+    }
+
+    private static String label(String name, String value) {
+        String v = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name + "=\"" + v + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder sb, String name, String labels, LatencyHistogram.Snapshot h,
+                                double scale) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        sample(sb, name, prefix + "quantile=\"0.5\"", h.getP50() * scale);
+        sample(sb, name, prefix + "quantile=\"0.9\"", h.getP90() * scale);
+        sample(sb, name, prefix + "quantile=\"0.99\"", h.getP99() * scale);
+        sample(sb, name, prefix + "quantile=\"0.999\"", h.getP999() * scale);
+        sample(sb, name + "_sum", labels, h.getSum() * scale);
+        sample(sb, name + "_count", labels, h.getCount());
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        sb.append('\n');
+    }
+}
@@ -1,12 +1,13 @@
 package com.bookstore.web.controller;
 
 import com.bookstore.dao.SalesOrderDao;
-import com.bookstore.dao.ShipmentDao;
 import com.bookstore.model.SalesOrder;
-import com.bookstore.model.SalesOrderItem;
-import com.bookstore.model.Shipment;
 import com.bookstore.model.ShipmentItem;
+import com.bookstore.dto.OrderDetail;
+import com.bookstore.service.OrderDetailAssembler;
 import com.bookstore.service.ShipmentService;
+import com.bookstore.web.MaxQueries;
+import com.bookstore.web.dto.CursorPage;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,28 +19,50 @@ import java.util.Map;
 /**
  * 管理员端 - 订单管理相关接口。
  * 对应 AdminView.showOrderManagement / showOrderDetailForAdmin：
- * - 支持按状态筛选所有订单；
+ * - 支持按状态筛选所有订单，传 limit 时按订单号倒序游标分页；
  * - 支持查看任意订单的明细与发货记录。
  */
+@MaxQueries(5)
 @RestController
 @RequestMapping("/api/admin")
 @CrossOrigin
 public class AdminOrderController {
 
     private final SalesOrderDao salesOrderDao = new SalesOrderDao();
-    private final ShipmentDao shipmentDao = new ShipmentDao();
     private final ShipmentService shipmentService = new ShipmentService();
+    private final OrderDetailAssembler orderDetailAssembler = new OrderDetailAssembler();
+
+    /** 分页查询单页条数上限。 */
+    private static final int MAX_PAGE_SIZE = 200;
 
     /**
      * 管理员查看订单列表。
+     * 不传 limit 时返回全部订单（仪表盘统计沿用）；传 limit 时返回 {@link CursorPage}，
+     * nextCursor 即下一页请求的 afterOrderId。
      *
-     * @param status 订单状态；传 "全部" 或为空则不过滤。
+     * @param status       订单状态；传 "全部" 或为空则不过滤。
+     * @param afterOrderId 游标：上一页返回的 nextCursor，为空表示第一页。
+     * @param limit        每页条数（1 ~ MAX_PAGE_SIZE）。
      */
     @GetMapping("/orders")
-    public ResponseEntity<List<SalesOrder>> listOrders(
-            @RequestParam(value = "status", required = false) String status) throws SQLException {
+    public ResponseEntity<?> listOrders(
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "afterOrderId", required = false) Long afterOrderId,
+            @RequestParam(value = "limit", required = false) Integer limit) throws SQLException {
+        boolean allStatus = status == null || status.isEmpty() || "全部".equals(status);
+        if (limit != null) {
+            int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            // 多取一条用于判断是否还有下一页
+            List<SalesOrder> rows = salesOrderDao.findPage(allStatus ? null : status, afterOrderId, size + 1);
+            Long nextCursor = null;
+            if (rows.size() > size) {
+                rows = new ArrayList<>(rows.subList(0, size));
+                nextCursor = rows.get(size - 1).getOrderId();
+            }
+            return ResponseEntity.ok(new CursorPage<>(rows, nextCursor));
+        }
         List<SalesOrder> orders;
-        if (status == null || status.isEmpty() || "全部".equals(status)) {
+        if (allStatus) {
             orders = salesOrderDao.findAll();
         } else {
             orders = salesOrderDao.findByStatus(status);
@@ -49,28 +72,23 @@ public class AdminOrderController {
 
     /**
      * 管理员查看单个订单的明细及发货记录。
-     * 逻辑与 CustomerOrderController.orderDetail 基本一致，只是面向管理员。
+     * 与 CustomerOrderController.orderDetail 共用 {@link OrderDetailAssembler}，只是面向管理员。
      */
+    @MaxQueries(8)
     @GetMapping("/orders/{orderId}")
-    public ResponseEntity<OrderDetailResp> orderDetail(@PathVariable("orderId") long orderId)
+    public ResponseEntity<OrderDetail> orderDetail(@PathVariable("orderId") long orderId)
             throws SQLException {
-        SalesOrder order = salesOrderDao.findOrderById(orderId);
-        if (order == null) {
+        OrderDetail detail = orderDetailAssembler.assemble(orderId);
+        if (detail == null) {
             return ResponseEntity.notFound().build();
         }
-        List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
-        List<Shipment> shipments = shipmentDao.findByOrderId(orderId);
-
-        OrderDetailResp resp = new OrderDetailResp();
-        resp.setOrder(order);
-        resp.setItems(items != null ? items : new ArrayList<>());
-        resp.setShipments(shipments != null ? shipments : new ArrayList<>());
-        return ResponseEntity.ok(resp);
+        return ResponseEntity.ok(detail);
     }
 
     /**
      * 管理员整单发货（对应 AdminView.showShipmentManagement -> showShipDialog）。
      */
+    @MaxQueries(25)
     @PostMapping("/orders/{orderId}/ship")
     public ResponseEntity<?> shipOrder(@PathVariable("orderId") long orderId,
                                        @RequestBody ShipReq req) {
@@ -87,6 +105,7 @@ public class AdminOrderController {
      * 管理员分次发货（对应 AdminView.showShipmentManagement -> showPartialShipDialog）。
      * 仅处理 shipQuantity > 0 的条目。
      */
+    @MaxQueries(25)
     @PostMapping("/orders/{orderId}/ship/partial")
     public ResponseEntity<?> shipOrderPartially(@PathVariable("orderId") long orderId,
                                                 @RequestBody PartialShipReq req) {
@@ -114,36 +133,6 @@ public class AdminOrderController {
         }
     }
 
-    public static class OrderDetailResp {
-        private SalesOrder order;
-        private List<SalesOrderItem> items;
-        private List<Shipment> shipments;
-
-        public SalesOrder getOrder() {
-            return order;
-        }
-
-        public void setOrder(SalesOrder order) {
-            this.order = order;
-        }
-
-        public List<SalesOrderItem> getItems() {
-            return items;
-        }
-
-        public void setItems(List<SalesOrderItem> items) {
-            this.items = items;
-        }
-
-        public List<Shipment> getShipments() {
-            return shipments;
-        }
-
-        public void setShipments(List<Shipment> shipments) {
-            this.shipments = shipments;
-        }
-    }
-
     public static class ShipReq {
         private String carrier;
         private String trackingNumber;
@@ -1,6 +1,5 @@
 package com.bookstore.web.controller;
 
-import com.bookstore.dao.CustomerNotificationDao;
 import com.bookstore.dao.CustomerOutOfStockRequestDao;
 import com.bookstore.dao.OutOfStockRecordDao;
 import com.bookstore.dao.PurchaseOrderDao;
@@ -10,7 +9,10 @@ import com.bookstore.model.CustomerOutOfStockRequest;
 import com.bookstore.model.OutOfStockRecord;
 import com.bookstore.model.PurchaseOrder;
 import com.bookstore.model.PurchaseOrderItem;
+import com.bookstore.service.NotificationOutbox;
+import com.bookstore.service.OrderService;
 import com.bookstore.service.PurchaseService;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -30,6 +32,7 @@ import java.util.List;
  * - 根据选中缺书记录生成采购单；
  * - 查询采购单及其明细、到货处理。
  */
+@MaxQueries(6)
 @RestController
 @RequestMapping("/api/admin/purchase")
 @CrossOrigin
@@ -40,7 +43,7 @@ public class AdminPurchaseController {
     private final SalesOrderDao salesOrderDao = new SalesOrderDao();
     private final PurchaseOrderDao purchaseOrderDao = new PurchaseOrderDao();
     private final PurchaseService purchaseService = new PurchaseService();
-    private final CustomerNotificationDao notificationDao = new CustomerNotificationDao();
+    private final OrderService orderService = new OrderService();
 
     /**
      * 查询所有待处理(PENDING)的缺书记录。
@@ -121,7 +124,7 @@ public class AdminPurchaseController {
                 n.setTitle("缺书登记处理结果");
                 n.setContent("您的订单（" + req.getOrderId() + "）的缺货登记已通过，请抓紧付款。");
                 n.setReadFlag(false);
-                notificationDao.insert(n);
+                NotificationOutbox.publish(n);
             } catch (Exception ignore) {
                 // 单条通知写入失败不影响主流程
             }
@@ -135,6 +138,7 @@ public class AdminPurchaseController {
     /**
      * 管理员拒绝顾客缺书登记：不生成缺书记录，并把订单状态从 OUT_OF_STOCK_PENDING 改为 CANCELLED。
      */
+    @MaxQueries(10)
     @PostMapping("/customer-requests/{requestId}/reject")
     public ResponseEntity<?> rejectCustomerRequest(@PathVariable("requestId") long requestId) {
         try {
@@ -143,7 +147,7 @@ public class AdminPurchaseController {
                 return ResponseEntity.notFound().build();
             }
             customerReqDao.updateProcessedStatus(requestId, "REJECTED", null);
-            salesOrderDao.updateStatusAndPaymentTime(req.getOrderId(), "CANCELLED", null);
+            orderService.cancelOrder(req.getOrderId());
 
             // 写入一条缺书登记处理结果通知，提示订单已取消
             try {
@@ -154,7 +158,7 @@ public class AdminPurchaseController {
                 n.setTitle("缺书登记处理结果");
                 n.setContent("您的订单（" + req.getOrderId() + "）的缺货登记未通过，订单已取消。");
                 n.setReadFlag(false);
-                notificationDao.insert(n);
+                NotificationOutbox.publish(n);
             } catch (Exception ignore) {
                 // 单条通知写入失败不影响主流程
             }
@@ -180,6 +184,7 @@ public class AdminPurchaseController {
     /**
      * 根据多条缺书记录批量生成一张采购单。
      */
+    @MaxQueries(10)
     @PostMapping("/orders/from-out-of-stock")
     public ResponseEntity<?> createPurchaseFromOutOfStock(@RequestBody CreateFromOutOfStockReq req) {
         try {
@@ -228,6 +233,7 @@ public class AdminPurchaseController {
     /**
      * 采购单到货：调用 PurchaseService.receiveGoods。
      */
+    @MaxQueries(12)
     @PostMapping("/orders/{purchaseOrderId}/receive")
     public ResponseEntity<?> receiveGoods(@PathVariable("purchaseOrderId") long purchaseOrderId) {
         try {
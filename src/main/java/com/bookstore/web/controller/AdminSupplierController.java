@@ -6,13 +6,16 @@ import com.bookstore.dao.SupplierDao;
 import com.bookstore.model.Book;
 import com.bookstore.model.Supplier;
 import com.bookstore.model.Supply;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 管理员端 - 供应商管理相关接口。
@@ -23,6 +26,7 @@ import java.util.List;
  * - 查看供应商供货清单（含书目信息）；
  * - 编辑供应商供货关系（供价、提前期、主供货商标记）。
  */
+@MaxQueries(5)
 @RestController
 @RequestMapping("/api/admin/suppliers")
 @CrossOrigin
@@ -117,6 +121,15 @@ public class AdminSupplierController {
     public ResponseEntity<List<SupplyDetailResp>> getSupplierSupplies(@PathVariable("supplierId") long supplierId)
             throws SQLException {
         List<Supply> supplies = supplyDao.findBySupplierId(supplierId);
+        // 书目信息一次批量查询
+        List<String> bookIds = new ArrayList<>(supplies.size());
+        for (Supply supply : supplies) {
+            bookIds.add(supply.getBookId());
+        }
+        Map<String, Book> books = new HashMap<>();
+        for (Book b : bookDao.findByIds(bookIds)) {
+            books.put(b.getBookId(), b);
+        }
         List<SupplyDetailResp> result = new ArrayList<>();
         for (Supply supply : supplies) {
             SupplyDetailResp resp = new SupplyDetailResp();
@@ -125,8 +138,7 @@ public class AdminSupplierController {
             resp.setSupplyPrice(supply.getSupplyPrice());
             resp.setLeadTimeDays(supply.getLeadTimeDays());
             resp.setPrimary(supply.isPrimary());
-            // 查询书目信息
-            Book book = bookDao.findById(supply.getBookId());
+            Book book = books.get(supply.getBookId());
             if (book != null) {
                 resp.setBookTitle(book.getTitle());
                 resp.setBookIsbn(book.getIsbn());
@@ -171,6 +183,7 @@ public class AdminSupplierController {
     /**
      * 更新供应商的供货关系（供价、提前期、主供货商标记）。
      */
+    @MaxQueries(15)
     @PutMapping("/{supplierId}/supplies/{bookId}")
     public ResponseEntity<?> updateSupply(@PathVariable("supplierId") long supplierId,
                                           @PathVariable("bookId") String bookId,
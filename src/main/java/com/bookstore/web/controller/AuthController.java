@@ -3,6 +3,7 @@ package com.bookstore.web.controller;
 import com.bookstore.dao.CustomerDao;
 import com.bookstore.model.Customer;
 import com.bookstore.web.dto.LoginRequest;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.*;
  *
  * 为了保持“后端不受影响”，我们直接重用 CustomerDao / Customer 模型。
  */
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin
@@ -2,6 +2,7 @@ package com.bookstore.web.controller;
 
 import com.bookstore.dao.CustomerAddressDao;
 import com.bookstore.model.CustomerAddress;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,6 +17,7 @@ import java.util.List;
  * - 将某条地址设为默认
  * - 删除地址
  */
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/customer/{customerId}/addresses")
 @CrossOrigin
@@ -2,8 +2,12 @@ package com.bookstore.web.controller;
 
 import com.bookstore.dao.AuthorDao;
 import com.bookstore.dao.BookDao;
+import com.bookstore.dao.CatalogCache;
 import com.bookstore.dao.KeywordDao;
 import com.bookstore.model.Book;
+import com.bookstore.model.BookSummary;
+import com.bookstore.search.BookSearchIndex;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,23 +19,36 @@ import java.util.*;
  * 逻辑严格复刻 CustomerView.loadAllBooks / searchBooks：
  * - /api/customer/books -> 全部在售书目
  * - /api/customer/books/search -> 单字段关键字搜索（书号/书名/出版社/作者/关键字）
+ * 列表、计数与搜索读取 {@link CatalogCache} 中的目录快照，不再每次整表扫描。
+ * 列表类接口支持 view=summary，返回不含目录全文（catalog）的 {@link BookSummary}；
+ * 完整书目仍由 /api/customer/books/{bookId} 提供。
  */
+@MaxQueries(5)
 @RestController
 @RequestMapping("/api/customer/books")
 @CrossOrigin
 public class CustomerBookController {
 
+    /** 列表接口 view 参数取该值时返回 BookSummary。 */
+    private static final String VIEW_SUMMARY = "summary";
+
     private final BookDao bookDao = new BookDao();
     private final AuthorDao authorDao = new AuthorDao();
     private final KeywordDao keywordDao = new KeywordDao();
 
     /**
      * 获取全部书目列表。
+     *
+     * @param view 可选，summary 表示返回不含 catalog 的列表投影
      */
     @GetMapping
-    public ResponseEntity<List<Book>> listAll() throws SQLException {
-        List<Book> books = bookDao.findAll();
-        return ResponseEntity.ok(books);
+    public ResponseEntity<List<?>> listAll(@RequestParam(value = "view", required = false) String view)
+            throws SQLException {
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+        if (VIEW_SUMMARY.equals(view)) {
+            return ResponseEntity.ok(catalog.getSummaries());
+        }
+        return ResponseEntity.ok(catalog.getBooks());
     }
 
     /**
@@ -39,12 +56,13 @@ public class CustomerBookController {
      */
     @GetMapping("/count")
     public ResponseEntity<Integer> getCount() throws SQLException {
-        return ResponseEntity.ok(bookDao.countAll());
+        return ResponseEntity.ok(CatalogCache.snapshot().size());
     }
 
     /**
      * 获取单本书籍详情，包含作者和关键词。
      */
+    @MaxQueries(6)
     @GetMapping("/{bookId}")
     public ResponseEntity<?> getBookDetail(@PathVariable("bookId") String bookId) throws SQLException {
         Book book = bookDao.findById(bookId);
@@ -74,71 +92,37 @@ public class CustomerBookController {
      * 获取所有丛书列表。
      */
     @GetMapping("/series")
-    public ResponseEntity<List<Book>> listSeriesBooks() throws SQLException {
-        List<Book> series = bookDao.findSeriesBooks();
-        return ResponseEntity.ok(series);
+    public ResponseEntity<List<?>> listSeriesBooks(@RequestParam(value = "view", required = false) String view)
+            throws SQLException {
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+        return ResponseEntity.ok(project(catalog, catalog.getSeriesBooks(), view));
     }
 
     /**
      * 获取丛书的子书目列表。
      */
     @GetMapping("/{bookId}/children")
-    public ResponseEntity<List<Book>> listChildBooks(@PathVariable("bookId") String bookId) throws SQLException {
-        List<Book> children = bookDao.findChildBooks(bookId);
-        return ResponseEntity.ok(children);
+    public ResponseEntity<List<?>> listChildBooks(@PathVariable("bookId") String bookId,
+            @RequestParam(value = "view", required = false) String view) throws SQLException {
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+        return ResponseEntity.ok(project(catalog, catalog.getChildBooks(bookId), view));
     }
 
     /**
-     * 关键字搜索：等价于 CustomerView.searchBooks 的三步搜索与去重逻辑。
+     * 关键字搜索：等价于 CustomerView.searchBooks 的三步搜索与去重逻辑，
+     * 由 {@link BookSearchIndex} 在内存倒排索引上完成，不再访问数据库。
      *
      * @param keyword 书号 / 书名 / 出版社 / 作者 / 关键字 任意其一的模糊查询关键字
+     * @param view    可选，summary 表示返回不含 catalog 的列表投影
      */
     @GetMapping("/search")
-    public ResponseEntity<List<Book>> search(@RequestParam("keyword") String keyword) throws SQLException {
+    public ResponseEntity<List<?>> search(@RequestParam("keyword") String keyword,
+            @RequestParam(value = "view", required = false) String view) throws SQLException {
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
         if (keyword == null || keyword.trim().isEmpty()) {
-            return ResponseEntity.ok(bookDao.findAll());
-        }
-        String kw = keyword.trim();
-        String kwLower = kw.toLowerCase();
-
-        // 使用 LinkedHashMap 去重并保留顺序
-        Map<String, Book> map = new LinkedHashMap<>();
-
-        // 1. 在所有书目的 书号 / 书名 / 出版社 / ISBN 上做不区分大小写匹配
-        for (Book b : bookDao.findAll()) {
-            String bookId = b.getBookId() == null ? "" : b.getBookId().toLowerCase();
-            String title = b.getTitle() == null ? "" : b.getTitle().toLowerCase();
-            String publisher = b.getPublisher() == null ? "" : b.getPublisher().toLowerCase();
-            String isbn = b.getIsbn() == null ? "" : b.getIsbn().toLowerCase();
-            if (bookId.contains(kwLower) || title.contains(kwLower)
-                    || publisher.contains(kwLower) || isbn.contains(kwLower)) {
-                map.put(b.getBookId(), b);
-            }
-        }
-
-        // 2. 按作者名模糊匹配
-        Set<String> byAuthor = authorDao.findBookIdsByAuthorNameLike(kw);
-        for (String bookId : byAuthor) {
-            if (!map.containsKey(bookId)) {
-                Book b = bookDao.findById(bookId);
-                if (b != null) {
-                    map.put(bookId, b);
-                }
-            }
-        }
-
-        // 3. 按关键字文本模糊匹配
-        Set<String> byKeyword = keywordDao.findBookIdsByKeywordTextLike(kw);
-        for (String bookId : byKeyword) {
-            if (!map.containsKey(bookId)) {
-                Book b = bookDao.findById(bookId);
-                if (b != null) {
-                    map.put(bookId, b);
-                }
-            }
+            return ResponseEntity.ok(VIEW_SUMMARY.equals(view) ? catalog.getSummaries() : catalog.getBooks());
         }
-
-        return ResponseEntity.ok(new ArrayList<>(map.values()));
+        return ResponseEntity.ok(project(catalog, BookSearchIndex.search(keyword.trim(), catalog), view));
     }
 
     /**
@@ -156,14 +140,7 @@ public class CustomerBookController {
             return ResponseEntity.ok(new ArrayList<>());
         }
         Set<String> bookIds = authorDao.findBookIdsByAuthorNameLikeWithOrder(author, authorOrder);
-        List<Book> result = new ArrayList<>();
-        for (String bookId : bookIds) {
-            Book b = bookDao.findById(bookId);
-            if (b != null) {
-                result.add(b);
-            }
-        }
-        return ResponseEntity.ok(result);
+        return ResponseEntity.ok(bookDao.findByIds(bookIds));
     }
 
     /**
@@ -171,11 +148,14 @@ public class CustomerBookController {
      * 
      * @param keywords 逗号分隔的关键字列表，如 "数据库,SQL,编程"
      * @param minMatch 最低匹配数（默认1，即匹配任意一个关键字即可）
+     * @param limit    可选，只返回匹配数最高的前 limit 本
      */
+    @MaxQueries(10)
     @GetMapping("/search/by-keywords")
     public ResponseEntity<List<Map<String, Object>>> searchByKeywords(
             @RequestParam("keywords") String keywords,
-            @RequestParam(value = "minMatch", required = false, defaultValue = "1") Integer minMatch)
+            @RequestParam(value = "minMatch", required = false, defaultValue = "1") Integer minMatch,
+            @RequestParam(value = "limit", required = false) Integer limit)
             throws SQLException {
         if (keywords == null || keywords.trim().isEmpty()) {
             return ResponseEntity.ok(new ArrayList<>());
@@ -191,18 +171,32 @@ public class CustomerBookController {
             return ResponseEntity.ok(new ArrayList<>());
         }
 
-        Map<String, Integer> matchMap = keywordDao.findBookIdsByKeywordsWithMinMatch(kwList, minMatch);
+        // 关键字位图索引按匹配数降序返回，limit 为空时不截断
+        Map<String, Integer> matchMap = BookSearchIndex.matchKeywords(kwList, minMatch,
+                limit != null ? limit : 0);
+        CatalogCache.Snapshot catalog = CatalogCache.snapshot();
         List<Map<String, Object>> result = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : matchMap.entrySet()) {
-            Book b = bookDao.findById(entry.getKey());
-            if (b != null) {
-                Map<String, Object> item = new LinkedHashMap<>();
-                item.put("book", b);
-                item.put("matchCount", entry.getValue());
-                item.put("totalKeywords", kwList.size());
-                result.add(item);
+        for (Map.Entry<String, Integer> e : matchMap.entrySet()) {
+            Book b = catalog.get(e.getKey());
+            if (b == null) {
+                continue;
             }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("book", b);
+            item.put("matchCount", e.getValue());
+            item.put("totalKeywords", kwList.size());
+            result.add(item);
         }
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * 按 view 参数决定返回完整书目还是列表投影。
+     */
+    private static List<?> project(CatalogCache.Snapshot catalog, List<Book> books, String view) {
+        if (VIEW_SUMMARY.equals(view)) {
+            return catalog.summariesOf(books);
+        }
+        return books;
+    }
 }
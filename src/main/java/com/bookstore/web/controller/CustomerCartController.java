@@ -1,38 +1,48 @@
 package com.bookstore.web.controller;
 
-import com.bookstore.dao.ShoppingCartDao;
+import com.bookstore.dao.CatalogCache;
+import com.bookstore.model.Book;
+import com.bookstore.service.CartStore;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
- * 客户购物车 REST 控制器
+ * 客户购物车 REST 控制器。购物车读写都在 {@link CartStore} 的内存购物车上进行，由其后台写回数据库。
  */
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/customer")
 @CrossOrigin
 public class CustomerCartController {
 
-    private final ShoppingCartDao cartDao = new ShoppingCartDao();
-
     /**
-     * 获取购物车列表
+     * 获取购物车列表（内存购物车 + 书目快照，不访问数据库）
      */
     @GetMapping("/{customerId}/cart")
     public ResponseEntity<?> getCart(@PathVariable("customerId") long customerId) {
         try {
-            List<ShoppingCartDao.CartItem> items = cartDao.findByCustomerId(customerId);
-            List<CartItemResp> resp = items.stream().map(i -> {
+            Map<String, Integer> lines = CartStore.lines(customerId);
+            CatalogCache.Snapshot catalog = CatalogCache.snapshot();
+            List<CartItemResp> resp = new ArrayList<>(lines.size());
+            for (Map.Entry<String, Integer> line : lines.entrySet()) {
+                Book book = catalog.get(line.getKey());
+                if (book == null) {
+                    continue;
+                }
                 CartItemResp r = new CartItemResp();
-                r.bookId = i.getBookId();
-                r.title = i.getBookTitle();
-                r.quantity = i.getQuantity();
-                r.unitPrice = i.getUnitPrice();
-                return r;
-            }).toList();
+                r.bookId = line.getKey();
+                r.title = book.getTitle();
+                r.quantity = line.getValue();
+                r.unitPrice = book.getPrice();
+                resp.add(r);
+            }
             return ResponseEntity.ok(resp);
         } catch (SQLException e) {
             e.printStackTrace();
@@ -50,8 +60,10 @@ public class CustomerCartController {
             if (req.getBookId() == null || req.getQuantity() <= 0) {
                 return ResponseEntity.badRequest().body(new ErrorResp("参数错误"));
             }
-            cartDao.upsert(customerId, req.getBookId(), req.getQuantity());
+            CartStore.add(customerId, req.getBookId(), req.getQuantity());
             return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResp(e.getMessage()));
         } catch (SQLException e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(new ErrorResp("数据库错误: " + e.getMessage()));
@@ -65,11 +77,7 @@ public class CustomerCartController {
     public ResponseEntity<?> updateCartItem(@PathVariable("customerId") long customerId,
             @PathVariable("bookId") String bookId,
             @RequestBody UpdateCartReq req) throws SQLException {
-        if (req.getQuantity() <= 0) {
-            cartDao.delete(customerId, bookId);
-        } else {
-            cartDao.updateQuantity(customerId, bookId, req.getQuantity());
-        }
+        CartStore.setQuantity(customerId, bookId, req.getQuantity());
         return ResponseEntity.ok().build();
     }
 
@@ -79,7 +87,7 @@ public class CustomerCartController {
     @DeleteMapping("/{customerId}/cart/{bookId}")
     public ResponseEntity<?> removeFromCart(@PathVariable("customerId") long customerId,
             @PathVariable("bookId") String bookId) throws SQLException {
-        cartDao.delete(customerId, bookId);
+        CartStore.remove(customerId, bookId);
         return ResponseEntity.ok().build();
     }
 
@@ -88,7 +96,7 @@ public class CustomerCartController {
      */
     @DeleteMapping("/{customerId}/cart")
     public ResponseEntity<?> clearCart(@PathVariable("customerId") long customerId) throws SQLException {
-        cartDao.clearCart(customerId);
+        CartStore.clear(customerId);
         return ResponseEntity.ok().build();
     }
 
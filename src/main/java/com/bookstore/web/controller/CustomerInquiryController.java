@@ -3,6 +3,7 @@ package com.bookstore.web.controller;
 import com.bookstore.dao.BookInquiryDao;
 import com.bookstore.dto.BookInquiryRequestDto;
 import com.bookstore.model.BookInquiryRequest;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/customer/{customerId}/inquiries")
 @CrossOrigin(origins = "*")
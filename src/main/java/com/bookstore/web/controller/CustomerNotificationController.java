@@ -2,17 +2,25 @@ package com.bookstore.web.controller;
 
 import com.bookstore.dao.CustomerNotificationDao;
 import com.bookstore.model.CustomerNotification;
+import com.bookstore.web.MaxQueries;
+import com.bookstore.web.NotificationPushHub;
+import com.bookstore.web.dto.CursorPage;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * 顾客端 - 消息通知相关接口。
  * 逻辑对应 CustomerView.showOutOfStockNotificationList():
- * - 按顾客 ID 查询所有历史通知，按时间倒序展示。
+ * - 按顾客 ID 查询所有历史通知，按时间倒序展示；
+ * - 通过 SSE 实时推送新通知与未读数（见 {@link NotificationPushHub}）。
  */
+@MaxQueries(3)
 @RestController
 @RequestMapping("/api/customer")
 @CrossOrigin
@@ -20,14 +28,53 @@ public class CustomerNotificationController {
 
     private final CustomerNotificationDao notificationDao = new CustomerNotificationDao();
 
+    /** 分页查询单页条数上限。 */
+    private static final int MAX_PAGE_SIZE = 200;
+
     /**
-     * 获取指定顾客的全部通知（按时间倒序）。
+     * 获取指定顾客的通知（按时间倒序）。
+     * 传 limit 时按 notification_id 倒序返回 {@link CursorPage}，nextCursor 即下一页请求的 beforeNotificationId。
+     *
+     * @param beforeNotificationId 游标：只返回 ID 小于它的通知，即上一页返回的 nextCursor，为空表示第一页
+     * @param limit                每页条数（1 ~ MAX_PAGE_SIZE），为空则返回全部通知
      */
     @GetMapping("/{customerId}/notifications")
-    public ResponseEntity<List<CustomerNotification>> listNotifications(
-            @PathVariable("customerId") long customerId) throws SQLException {
-        List<CustomerNotification> list = notificationDao.findByCustomerId(customerId);
-        return ResponseEntity.ok(list);
+    public ResponseEntity<?> listNotifications(@PathVariable("customerId") long customerId,
+            @RequestParam(value = "beforeNotificationId", required = false) Long beforeNotificationId,
+            @RequestParam(value = "limit", required = false) Integer limit) throws SQLException {
+        if (limit == null) {
+            List<CustomerNotification> list = notificationDao.findByCustomerId(customerId);
+            return ResponseEntity.ok(list);
+        }
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // 多取一条用于判断是否还有下一页
+        List<CustomerNotification> rows = notificationDao.findPageByCustomer(customerId, beforeNotificationId, size + 1);
+        if (rows.size() <= size) {
+            return ResponseEntity.ok(new CursorPage<>(rows, null));
+        }
+        List<CustomerNotification> page = rows.subList(0, size);
+        return ResponseEntity.ok(new CursorPage<>(page, page.get(size - 1).getNotificationId()));
+    }
+
+    /**
+     * 指定顾客的未读通知数，由覆盖索引直接统计，不加载通知内容。
+     */
+    @GetMapping("/{customerId}/notifications/unread-count")
+    public ResponseEntity<?> unreadCount(@PathVariable("customerId") long customerId) throws SQLException {
+        return ResponseEntity.ok(Collections.singletonMap("unreadCount", notificationDao.countUnread(customerId)));
+    }
+
+    /**
+     * 新通知推送流（text/event-stream）。
+     * 浏览器 EventSource 断线重连时会自动带上 Last-Event-ID 请求头；首次连接也可用 lastEventId 参数指定从哪条之后补发。
+     * 预算：补发最多 MAX_REPLAY / REPLAY_LIMIT + 1 次分页查询，加最新 ID 与未读数各一次。
+     */
+    @MaxQueries(13)
+    @GetMapping(value = "/{customerId}/notifications/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@PathVariable("customerId") long customerId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) Long lastEventId) throws SQLException {
+        return NotificationPushHub.subscribe(customerId, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
     }
 
     /**
@@ -38,6 +85,7 @@ public class CustomerNotificationController {
             @PathVariable("customerId") long customerId,
             @PathVariable("notificationId") long notificationId) throws SQLException {
         notificationDao.markAsRead(notificationId);
+        NotificationPushHub.unreadChanged(customerId);
         return ResponseEntity.ok().build();
     }
 
@@ -47,6 +95,7 @@ public class CustomerNotificationController {
     @PostMapping("/{customerId}/notifications/read-all")
     public ResponseEntity<Void> markAllAsRead(@PathVariable("customerId") long customerId) throws SQLException {
         notificationDao.markAllAsRead(customerId);
+        NotificationPushHub.unreadChanged(customerId);
         return ResponseEntity.ok().build();
     }
 
@@ -58,6 +107,7 @@ public class CustomerNotificationController {
             @PathVariable("customerId") long customerId,
             @PathVariable("notificationId") long notificationId) throws SQLException {
         notificationDao.delete(notificationId);
+        NotificationPushHub.unreadChanged(customerId);
         return ResponseEntity.ok().build();
     }
 
@@ -68,6 +118,7 @@ public class CustomerNotificationController {
     public ResponseEntity<Void> deleteAllNotifications(@PathVariable("customerId") long customerId)
             throws SQLException {
         notificationDao.deleteAllByCustomer(customerId);
+        NotificationPushHub.unreadChanged(customerId);
         return ResponseEntity.ok().build();
     }
 }
@@ -1,22 +1,30 @@
 package com.bookstore.web.controller;
 
-import com.bookstore.dao.CreditLevelDao;
+import com.bookstore.dao.BookDao;
+import com.bookstore.dao.CreditLevelRegistry;
 import com.bookstore.dao.CustomerDao;
 import com.bookstore.dao.SalesOrderDao;
-import com.bookstore.dao.ShipmentDao;
 import com.bookstore.dao.CustomerOutOfStockRequestDao;
 import com.bookstore.dao.OutOfStockRecordDao;
-import com.bookstore.dao.InventoryDao;
+import com.bookstore.model.Book;
 import com.bookstore.model.CreditLevel;
 import com.bookstore.model.Customer;
 import com.bookstore.model.SalesOrder;
 import com.bookstore.model.SalesOrderItem;
-import com.bookstore.model.Shipment;
-import com.bookstore.model.ShipmentItem;
 import com.bookstore.model.CustomerOutOfStockRequest;
 import com.bookstore.model.OutOfStockRecord;
+import com.bookstore.dto.OrderDetail;
+import com.bookstore.service.CheckoutService;
+import com.bookstore.service.OrderDetailAssembler;
 import com.bookstore.service.OrderService;
 import com.bookstore.service.ShipmentService;
+import com.bookstore.service.StockReservationEngine;
+import com.bookstore.util.DBUtil;
+import com.bookstore.util.TransactionContext;
+import com.bookstore.web.IdempotentRequests;
+import com.bookstore.web.MaxQueries;
+import com.bookstore.web.dto.CursorPage;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -25,6 +33,7 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,123 +43,77 @@ import java.util.Map;
  * - 按顾客 ID + 状态筛选订单
  * - 查询订单明细及发货记录
  */
+@MaxQueries(10)
 @RestController
 @RequestMapping("/api/customer")
 @CrossOrigin
 public class CustomerOrderController {
 
     private final SalesOrderDao salesOrderDao = new SalesOrderDao();
-    private final ShipmentDao shipmentDao = new ShipmentDao();
     private final OrderService orderService = new OrderService();
+    private final OrderDetailAssembler orderDetailAssembler = new OrderDetailAssembler();
     private final CustomerDao customerDao = new CustomerDao();
-    private final CreditLevelDao creditLevelDao = new CreditLevelDao();
+    private final BookDao bookDao = new BookDao();
+    private final CheckoutService checkoutService = new CheckoutService();
     private final ShipmentService shipmentService = new ShipmentService();
     private final CustomerOutOfStockRequestDao customerOutOfStockRequestDao = new CustomerOutOfStockRequestDao();
     private final OutOfStockRecordDao outOfStockRecordDao = new OutOfStockRecordDao();
-    private final InventoryDao inventoryDao = new InventoryDao();
+
+    /** 分页查询单页条数上限。 */
+    private static final int MAX_PAGE_SIZE = 200;
 
     /**
      * 获取顾客的订单列表，支持按状态筛选。
+     * 状态过滤与“是否有发货记录”均在一条 SQL 中完成；传 limit 时返回 {@link CursorPage}，
+     * nextCursor 即下一页请求的 afterOrderId。
      *
-     * @param customerId 顾客 ID
-     * @param status     订单状态；传 "全部" 或为空则不过滤
+     * @param customerId   顾客 ID
+     * @param status       订单状态；传 "全部" 或为空则不过滤
+     * @param afterOrderId 游标：上一页返回的 nextCursor，为空表示第一页
+     * @param limit        每页条数（1 ~ MAX_PAGE_SIZE），为空则返回全部订单
      */
+    @MaxQueries(3)
     @GetMapping("/{customerId}/orders")
-    public ResponseEntity<List<OrderWithShipmentFlag>> listOrders(@PathVariable("customerId") long customerId,
-            @RequestParam(value = "status", required = false) String status)
+    public ResponseEntity<?> listOrders(@PathVariable("customerId") long customerId,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "afterOrderId", required = false) Long afterOrderId,
+            @RequestParam(value = "limit", required = false) Integer limit)
             throws SQLException {
-        List<SalesOrder> orders = salesOrderDao.findByCustomerId(customerId);
-        if (status != null && !status.isEmpty() && !"全部".equals(status)) {
-            List<SalesOrder> filtered = new ArrayList<>();
-            for (SalesOrder o : orders) {
-                if (status.equals(o.getOrderStatus())) {
-                    filtered.add(o);
-                }
-            }
-            orders = filtered;
-        }
-        
-        // 为每个订单添加是否有发货记录的标识
+        String statusFilter = status == null || status.isEmpty() || "全部".equals(status) ? null : status;
+        int size = limit != null ? Math.max(1, Math.min(limit, MAX_PAGE_SIZE)) : 0;
+        // 分页时多取一条用于判断是否还有下一页
+        Map<SalesOrder, Boolean> rows = salesOrderDao.findByCustomerWithShipmentFlag(customerId, statusFilter,
+                afterOrderId, size > 0 ? size + 1 : 0);
+
         List<OrderWithShipmentFlag> result = new ArrayList<>();
-        for (SalesOrder order : orders) {
+        for (Map.Entry<SalesOrder, Boolean> e : rows.entrySet()) {
+            if (size > 0 && result.size() == size) {
+                break;
+            }
             OrderWithShipmentFlag dto = new OrderWithShipmentFlag();
-            dto.setOrder(order);
-            // 检查是否有发货记录
-            List<Shipment> shipments = shipmentDao.findByOrderId(order.getOrderId());
-            dto.setHasShipments(shipments != null && !shipments.isEmpty());
+            dto.setOrder(e.getKey());
+            dto.setHasShipments(e.getValue());
             result.add(dto);
         }
-        return ResponseEntity.ok(result);
+        if (size == 0) {
+            return ResponseEntity.ok(result);
+        }
+        Long nextCursor = rows.size() > size ? result.get(size - 1).getOrder().getOrderId() : null;
+        return ResponseEntity.ok(new CursorPage<>(result, nextCursor));
     }
 
     /**
      * 单个订单的明细及发货记录。
-     * 对应 CustomerView.showOrderDetail 的数据来源。
+     * 对应 CustomerView.showOrderDetail 的数据来源，由 {@link OrderDetailAssembler} 以固定次数的查询组装。
      */
+    @MaxQueries(8)
     @GetMapping("/orders/{orderId}")
-    public ResponseEntity<OrderDetailResp> orderDetail(@PathVariable("orderId") long orderId) throws SQLException {
-        SalesOrder order = salesOrderDao.findOrderById(orderId);
-        if (order == null) {
+    public ResponseEntity<OrderDetail> orderDetail(@PathVariable("orderId") long orderId) throws SQLException {
+        OrderDetail detail = orderDetailAssembler.assemble(orderId);
+        if (detail == null) {
             return ResponseEntity.notFound().build();
         }
-        List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
-        List<Shipment> shipments = shipmentDao.findByOrderId(orderId);
-        
-        // 为每个shipment加载items信息
-        List<ShipmentWithItems> shipmentsWithItems = new ArrayList<>();
-        for (Shipment shipment : shipments) {
-            ShipmentWithItems swi = new ShipmentWithItems();
-            swi.setShipment(shipment);
-            List<ShipmentItem> shipmentItems = shipmentDao.findItemsByShipmentId(shipment.getShipmentId());
-            // 转换为包含bookId的DTO
-            List<ShipmentItemDto> itemDtos = new ArrayList<>();
-            for (ShipmentItem si : shipmentItems) {
-                ShipmentItemDto dto = new ShipmentItemDto();
-                dto.setOrderItemId(si.getOrderItemId());
-                dto.setShipQuantity(si.getShipQuantity());
-                // 从orderItems中查找bookId
-                boolean found = false;
-                for (SalesOrderItem oi : items) {
-                    if (oi.getOrderItemId() != null && oi.getOrderItemId().equals(si.getOrderItemId())) {
-                        dto.setBookId(oi.getBookId());
-                        found = true;
-                        System.out.println("Found bookId " + oi.getBookId() + " for orderItemId " + si.getOrderItemId());
-                        break;
-                    }
-                }
-                if (!found) {
-                    StringBuilder orderItemIdsStr = new StringBuilder();
-                    for (SalesOrderItem oi : items) {
-                        if (orderItemIdsStr.length() > 0) orderItemIdsStr.append(",");
-                        orderItemIdsStr.append(oi.getOrderItemId() != null ? oi.getOrderItemId().toString() : "null");
-                    }
-                    System.out.println("WARNING: Shipment " + shipment.getShipmentId() + " item with orderItemId " + si.getOrderItemId() + 
-                        " not found in order items. Order items: " + orderItemIdsStr);
-                }
-                itemDtos.add(dto);
-            }
-            swi.setItems(itemDtos);
-            shipmentsWithItems.add(swi);
-            // 调试日志：确保items被正确设置
-            StringBuilder bookIdsStr = new StringBuilder();
-            for (ShipmentItemDto d : itemDtos) {
-                if (bookIdsStr.length() > 0) bookIdsStr.append(",");
-                bookIdsStr.append(d.getBookId() != null ? d.getBookId() : "null");
-            }
-            System.out.println("Shipment " + shipment.getShipmentId() + " has " + itemDtos.size() + " items, bookIds: " + bookIdsStr);
-        }
-
-        OrderDetailResp resp = new OrderDetailResp();
-        resp.setOrder(order);
-        resp.setItems(items != null ? items : new ArrayList<>());
-        resp.setShipmentsWithItems(shipmentsWithItems);
-        // 为了向后兼容，也设置shipments字段
-        List<Shipment> shipmentList = new ArrayList<>();
-        for (ShipmentWithItems swi : shipmentsWithItems) {
-            shipmentList.add(swi.getShipment());
-        }
-        resp.setShipments(shipmentList);
-        return ResponseEntity.ok(resp);
+        return ResponseEntity.ok(detail);
     }
 
     /**
@@ -164,11 +127,17 @@ public class CustomerOrderController {
             if (req.getItems() == null || req.getItems().isEmpty()) {
                 return ResponseEntity.ok(new ArrayList<>());
             }
+            List<String> bookIds = new ArrayList<>();
+            for (CreateOrderItem ci : req.getItems()) {
+                bookIds.add(ci.getBookId());
+            }
+            // 可承诺量：在库数量扣除其他订单已预留的部分；未缓存的书合并为一次 IN 查询
+            Map<String, Integer> available = StockReservationEngine.availableAll(bookIds);
             List<ShortageResp> shortages = new ArrayList<>();
             for (CreateOrderItem ci : req.getItems()) {
                 if (ci.getQuantity() == null || ci.getQuantity() <= 0)
                     continue;
-                int currentStock = inventoryDao.getQuantity(ci.getBookId());
+                int currentStock = Math.max(available.get(ci.getBookId()), 0);
                 if (currentStock < ci.getQuantity()) {
                     ShortageResp sr = new ShortageResp();
                     sr.setBookId(ci.getBookId());
@@ -184,15 +153,26 @@ public class CustomerOrderController {
     }
 
     /**
-     * 顾客创建订单（基础版，下单 + 金额计算，暂未引入缺书登记交互）。
+     * 顾客创建订单（基础版，下单 + 金额计算）。
      * 逻辑基于 CustomerView.submitOrder 的“计算商品金额 + 创建订单”部分：
      * - 根据顾客当前信用等级折扣计算折后价与总金额
-     * - 创建订单主表及明细
+     * - 创建订单主表及明细并预留库存
      * - 订单初始状态为 PENDING_PAYMENT
+     * 响应与一步结算相同（{@link CheckoutResp}）：有书可承诺量不足且未传 allowShortage=true 时不下单，
+     * 返回 409 与缺货明细；传 allowShortage=true 时照常下单，响应中带上未能预留的书，
+     * 客户端随后调用 shortages/decision 完成缺书登记。
+     * 带 Idempotency-Key 请求头时，重复提交返回首次创建的订单；同一 key 换了请求内容时返回 422，见 {@link IdempotentRequests}。
      */
+    @MaxQueries(20)
     @PostMapping("/{customerId}/orders")
     public ResponseEntity<?> createOrder(@PathVariable("customerId") long customerId,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
             @RequestBody CreateOrderRequest req) {
+        return IdempotentRequests.execute("create-order:" + customerId, idempotencyKey, req,
+                () -> doCreateOrder(customerId, req));
+    }
+
+    private ResponseEntity<?> doCreateOrder(long customerId, CreateOrderRequest req) {
         try {
             if (req.getItems() == null || req.getItems().isEmpty()) {
                 return ResponseEntity.badRequest().body(new ErrorResp("购物车为空"));
@@ -202,20 +182,32 @@ public class CustomerOrderController {
             if (customer == null) {
                 return ResponseEntity.badRequest().body(new ErrorResp("顾客不存在"));
             }
-            CreditLevel level = creditLevelDao.findById(customer.getCreditLevelId());
+            CreditLevel level = CreditLevelRegistry.get(customer.getCreditLevelId());
             if (level == null || level.getDiscountRate() == null) {
                 return ResponseEntity.badRequest().body(new ErrorResp("未找到顾客信用等级配置"));
             }
 
             BigDecimal discount = level.getDiscountRate();
 
-            // 计算总金额（这里假定前端传来的 unitPrice 为原定价，折扣以当前等级为准）
+            // 计算总金额：原定价以 book 表为准（忽略前端传来的 unitPrice），折扣以当前等级为准
+            List<String> bookIds = new ArrayList<>();
+            for (CreateOrderItem ci : req.getItems()) {
+                bookIds.add(ci.getBookId());
+            }
+            Map<String, BigDecimal> listPrices = new HashMap<>();
+            for (Book b : bookDao.findByIds(bookIds)) {
+                listPrices.put(b.getBookId(), b.getPrice());
+            }
             List<SalesOrderItem> items = new ArrayList<>();
+            Map<String, Integer> needByBook = new LinkedHashMap<>();
             BigDecimal goodsAmount = BigDecimal.ZERO;
             for (CreateOrderItem ci : req.getItems()) {
                 if (ci.getQuantity() == null || ci.getQuantity() <= 0)
                     continue;
-                BigDecimal originPrice = ci.getUnitPrice() != null ? ci.getUnitPrice() : BigDecimal.ZERO;
+                BigDecimal originPrice = listPrices.get(ci.getBookId());
+                if (originPrice == null) {
+                    return ResponseEntity.badRequest().body(new ErrorResp("图书不存在或未定价：" + ci.getBookId()));
+                }
                 BigDecimal unitPrice = originPrice.multiply(discount).setScale(2, BigDecimal.ROUND_HALF_UP);
                 BigDecimal sub = unitPrice.multiply(BigDecimal.valueOf(ci.getQuantity()));
 
@@ -226,6 +218,7 @@ public class CustomerOrderController {
                 item.setSubAmount(sub);
                 item.setItemStatus("ORDERED");
                 items.add(item);
+                needByBook.merge(ci.getBookId(), ci.getQuantity(), Integer::sum);
 
                 goodsAmount = goodsAmount.add(sub);
             }
@@ -233,6 +226,19 @@ public class CustomerOrderController {
                 return ResponseEntity.badRequest().body(new ErrorResp("有效的商品项为空"));
             }
 
+            // 可承诺量检查：所有书合并成一条查询，缺货且未确认缺书登记时不下单
+            Map<String, Integer> available = StockReservationEngine.availableAll(needByBook.keySet());
+            Map<String, Integer> shortages = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> e : needByBook.entrySet()) {
+                int avail = available.get(e.getKey());
+                if (avail < e.getValue()) {
+                    shortages.put(e.getKey(), Math.max(avail, 0));
+                }
+            }
+            if (!shortages.isEmpty() && !req.isAllowShortage()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(checkoutResp(null, needByBook, shortages));
+            }
+
             String snapshot = req.getShippingAddressSnapshot();
             if (snapshot == null || snapshot.trim().isEmpty()) {
                 snapshot = customer.getRealName() != null ? customer.getRealName() : customer.getUsername();
@@ -248,20 +254,80 @@ public class CustomerOrderController {
             order.setShippingAddressSnapshot(snapshot);
             order.setCustomerNote(req.getCustomerNote());
 
-            salesOrderDao.createOrder(order, items);
+            // 创建订单并预留库存；预留不足的书由后续缺书登记流程处理
+            Map<String, Integer> unreserved = TransactionContext.execute(conn -> {
+                Map<String, Integer> result = orderService.placeOrder(order, items);
+                if (!result.isEmpty() && !req.isAllowShortage()) {
+                    // 检查之后被其他订单抢先预留，整单回滚
+                    throw new IllegalStateException("库存已被其他订单占用，请重新下单");
+                }
+                return result;
+            });
 
-            return ResponseEntity.ok(order);
+            return ResponseEntity.ok(checkoutResp(order, needByBook, unreserved));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp("下单失败：" + e.getMessage()));
         }
     }
 
+    /**
+     * 购物车一步结算：以服务端购物车与 book 表定价，在一个事务中完成库存检查、下单、预留与清空购物车，
+     * 取代“check-stock + 创建订单 + 清空购物车”三次请求。
+     * 有书可承诺量不足且未传 allowShortage=true 时不下单，返回 409 与缺货明细，前端据此弹出缺书登记；
+     * 顾客选择登记后带 allowShortage=true 再次提交。
+     * 支持 Idempotency-Key 请求头。
+     */
+    @MaxQueries(20)
+    @PostMapping("/{customerId}/checkout")
+    public ResponseEntity<?> checkout(@PathVariable("customerId") long customerId,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            @RequestBody(required = false) CheckoutRequest req) {
+        CheckoutRequest r = req != null ? req : new CheckoutRequest();
+        return IdempotentRequests.execute("checkout:" + customerId, idempotencyKey, r, () -> {
+            try {
+                CheckoutService.Result result = checkoutService.checkout(customerId,
+                        r.getShippingAddressSnapshot(), r.getCustomerNote(), r.isAllowShortage());
+                CheckoutResp resp = checkoutResp(result.getOrder(), result.getQuantities(), result.getShortages());
+                return result.getOrder() != null ? ResponseEntity.ok(resp)
+                        : ResponseEntity.status(HttpStatus.CONFLICT).body(resp);
+            } catch (Exception e) {
+                return ResponseEntity.badRequest().body(new ErrorResp("下单失败：" + e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * 下单 / 结算响应：订单（未下单时为空）与缺货明细（书号 -> 下单时的可承诺量）。
+     */
+    private static CheckoutResp checkoutResp(SalesOrder order, Map<String, Integer> quantities,
+                                             Map<String, Integer> shortages) {
+        CheckoutResp resp = new CheckoutResp();
+        resp.setOrder(order);
+        List<ShortageResp> list = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : shortages.entrySet()) {
+            ShortageResp sr = new ShortageResp();
+            sr.setBookId(e.getKey());
+            sr.setQuantity(quantities.get(e.getKey()));
+            sr.setCurrentStock(e.getValue());
+            list.add(sr);
+        }
+        resp.setShortages(list);
+        return resp;
+    }
+
     /**
      * 顾客对订单进行付款。
      * 逻辑与 CustomerView.showMyOrders() 中点击“付款”按钮时调用 OrderService.payOrder 完全一致。
+     * 带 Idempotency-Key 请求头时，重复提交返回首次付款的结果，不会再次扣款。
      */
+    @MaxQueries(20)
     @PostMapping("/orders/{orderId}/pay")
-    public ResponseEntity<?> pay(@PathVariable("orderId") long orderId) {
+    public ResponseEntity<?> pay(@PathVariable("orderId") long orderId,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey) {
+        return IdempotentRequests.execute("pay-order:" + orderId, idempotencyKey, null, () -> doPay(orderId));
+    }
+
+    private ResponseEntity<?> doPay(long orderId) {
         try {
             orderService.payOrder(orderId);
             SalesOrder updated = salesOrderDao.findOrderById(orderId);
@@ -276,6 +342,7 @@ public class CustomerOrderController {
      * 新逻辑：对于分次发货的订单，顾客按shipment（子发货）收货。
      * 前端提交：{ "shipmentId": 123 }
      */
+    @MaxQueries(12)
     @PostMapping("/orders/{orderId}/receive")
     public ResponseEntity<?> confirmReceive(@PathVariable("orderId") long orderId,
             @RequestBody ReceiveReq req) {
@@ -304,6 +371,7 @@ public class CustomerOrderController {
      * 顾客取消订单。
      * 仅允许取消待付款状态的订单。
      */
+    @MaxQueries(12)
     @PostMapping("/orders/{orderId}/cancel")
     public ResponseEntity<?> cancelOrder(@PathVariable("orderId") long orderId) {
         try {
@@ -316,7 +384,8 @@ public class CustomerOrderController {
             if (!"PENDING_PAYMENT".equals(status) && !"OUT_OF_STOCK_PENDING".equals(status)) {
                 return ResponseEntity.badRequest().body(new ErrorResp("只能取消待付款的订单"));
             }
-            salesOrderDao.updateStatusAndPaymentTime(orderId, "CANCELLED", null);
+            orderService.cancelOrder(orderId);
+            DBUtil.markCustomerWrite(order.getCustomerId());
             SalesOrder updated = salesOrderDao.findOrderById(orderId);
             return ResponseEntity.ok(updated);
         } catch (Exception e) {
@@ -336,9 +405,10 @@ public class CustomerOrderController {
             return ResponseEntity.notFound().build();
         }
         List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
+        Map<String, Integer> promisable = promisableStock(orderId, items);
         List<ShortageItemResp> shortageList = new ArrayList<>();
         for (SalesOrderItem item : items) {
-            int currentQty = inventoryDao.getQuantity(item.getBookId());
+            int currentQty = promisable.get(item.getBookId());
             if (currentQty < item.getQuantity()) {
                 ShortageItemResp s = new ShortageItemResp();
                 s.setOrderItemId(item.getOrderItemId());
@@ -360,6 +430,7 @@ public class CustomerOrderController {
      * - PAY_AND_CREATE：已付款并自动生成缺书记录（会立即调用 OrderService.payOrder）。
      * - REQUEST_ONLY：仅登记，暂不付款，订单状态改为 OUT_OF_STOCK_PENDING。
      */
+    @MaxQueries(30)
     @PostMapping("/orders/{orderId}/shortages/decision")
     public ResponseEntity<?> handleShortageDecision(@PathVariable("orderId") long orderId,
             @RequestBody ShortageDecisionReq req) {
@@ -369,10 +440,11 @@ public class CustomerOrderController {
                 return ResponseEntity.notFound().build();
             }
             List<SalesOrderItem> items = salesOrderDao.findItemsByOrderId(orderId);
-            // 重新计算当前缺书明细，保证与最新库存一致
+            // 重新计算当前缺书明细，保证与最新库存及预留一致
+            Map<String, Integer> promisable = promisableStock(orderId, items);
             List<SalesOrderItem> shortageItems = new ArrayList<>();
             for (SalesOrderItem item : items) {
-                int currentQty = inventoryDao.getQuantity(item.getBookId());
+                int currentQty = promisable.get(item.getBookId());
                 if (currentQty < item.getQuantity()) {
                     shortageItems.add(item);
                 }
@@ -389,7 +461,7 @@ public class CustomerOrderController {
 
             if (cancelOrder) {
                 // 顾客选择取消订单，但缺书需求已记录，等待管理员决定是否生成正式缺书记录
-                salesOrderDao.updateStatusAndPaymentTime(orderId, "CANCELLED", null);
+                orderService.cancelOrder(orderId);
             } else if (!payAndCreate) {
                 // 方案二(REQUEST_ONLY)：暂不付款，仅提交顾客缺书登记，等待管理员决策
                 salesOrderDao.updateStatusAndPaymentTime(orderId, "OUT_OF_STOCK_PENDING", null);
@@ -397,6 +469,7 @@ public class CustomerOrderController {
                 // 方案一：付款并自动生成缺书记录
                 orderService.payOrder(orderId);
             }
+            DBUtil.markCustomerWrite(order.getCustomerId());
 
             SalesOrder updated = salesOrderDao.findOrderById(orderId);
             return ResponseEntity.ok(updated);
@@ -405,6 +478,22 @@ public class CustomerOrderController {
         }
     }
 
+    /**
+     * 本订单各书可用的库存（书号 -> 数量）：已为本订单预留的数量加上当前可承诺量。
+     */
+    private Map<String, Integer> promisableStock(long orderId, List<SalesOrderItem> items) throws SQLException {
+        Map<String, Integer> held = StockReservationEngine.reservedFor(orderId);
+        List<String> bookIds = new ArrayList<>();
+        for (SalesOrderItem item : items) {
+            bookIds.add(item.getBookId());
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (Map.Entry<String, Integer> e : StockReservationEngine.availableAll(bookIds).entrySet()) {
+            result.put(e.getKey(), held.getOrDefault(e.getKey(), 0) + Math.max(e.getValue(), 0));
+        }
+        return result;
+    }
+
     /**
      * 根据顾客缺书登记创建正式缺书记录和/或顾客缺书登记记录。
      * 代码基本等价于 CustomerView.createCustomerRequestsAndOutOfStockRecords()，仅从 UI 迁移到
@@ -414,41 +503,46 @@ public class CustomerOrderController {
             List<SalesOrderItem> shortageItems,
             String note,
             boolean paidAndAuto) throws SQLException {
-        for (SalesOrderItem item : shortageItems) {
-            String bookId = item.getBookId();
-            int requestedQty = item.getQuantity();
-
-            Long relatedRecordId = null;
-            if (paidAndAuto) {
-                // 已付款：直接生成/累加正式缺书记录
+        // 已付款：直接生成/累加正式缺书记录，一条语句写入后再一次查出各书对应的记录
+        Map<String, Long> recordIdByBook = new HashMap<>();
+        if (paidAndAuto) {
+            List<OutOfStockRecord> records = new ArrayList<>();
+            List<String> bookIds = new ArrayList<>();
+            for (SalesOrderItem item : shortageItems) {
                 OutOfStockRecord record = new OutOfStockRecord();
-                record.setBookId(bookId);
-                record.setRequiredQuantity(requestedQty);
+                record.setBookId(item.getBookId());
+                record.setRequiredQuantity(item.getQuantity());
                 record.setRecordDate(java.time.LocalDate.now());
                 record.setSource("CUSTOMER_REQUEST");
                 record.setRelatedCustomerId(order.getCustomerId());
                 record.setStatus("PENDING");
                 record.setPriority(1);
-                long rid = outOfStockRecordDao.insert(record);
-                relatedRecordId = rid;
+                records.add(record);
+                bookIds.add(item.getBookId());
             }
+            outOfStockRecordDao.insertAll(records);
+            recordIdByBook = outOfStockRecordDao.findPendingIdsByBookIds(bookIds);
+        }
 
-            // 无论是否已经生成正式缺书记录，都记录一条顾客缺书登记
+        // 无论是否已经生成正式缺书记录，都记录一条顾客缺书登记（批量写入）
+        List<CustomerOutOfStockRequest> requests = new ArrayList<>();
+        for (SalesOrderItem item : shortageItems) {
             CustomerOutOfStockRequest r = new CustomerOutOfStockRequest();
             r.setOrderId(order.getOrderId());
             r.setCustomerId(order.getCustomerId());
-            r.setBookId(bookId);
-            r.setRequestedQty(requestedQty);
+            r.setBookId(item.getBookId());
+            r.setRequestedQty(item.getQuantity());
             r.setCustomerNote(note);
             r.setPaid(paidAndAuto);
             r.setProcessedStatus(paidAndAuto ? "ACCEPTED" : "PENDING");
-            r.setRelatedRecordId(relatedRecordId);
+            r.setRelatedRecordId(recordIdByBook.get(item.getBookId()));
             if (paidAndAuto) {
                 r.setCustomerNotified(true);
                 r.setProcessedAt(LocalDateTime.now());
             }
-            customerOutOfStockRequestDao.insert(r);
+            requests.add(r);
         }
+        customerOutOfStockRequestDao.insertAll(requests);
     }
 
     public static class OrderWithShipmentFlag {
@@ -527,104 +621,6 @@ public class CustomerOrderController {
         }
     }
 
-    public static class OrderDetailResp {
-        private SalesOrder order;
-        private List<SalesOrderItem> items;
-        private List<Shipment> shipments; // 保留向后兼容
-        private List<ShipmentWithItems> shipmentsWithItems;
-
-        public SalesOrder getOrder() {
-            return order;
-        }
-
-        public void setOrder(SalesOrder order) {
-            this.order = order;
-        }
-
-        public List<SalesOrderItem> getItems() {
-            return items;
-        }
-
-        public void setItems(List<SalesOrderItem> items) {
-            this.items = items;
-        }
-
-        public List<Shipment> getShipments() {
-            // 向后兼容：如果shipmentsWithItems存在，则从中提取shipments
-            if (shipmentsWithItems != null && !shipmentsWithItems.isEmpty()) {
-                List<Shipment> result = new ArrayList<>();
-                for (ShipmentWithItems swi : shipmentsWithItems) {
-                    result.add(swi.getShipment());
-                }
-                return result;
-            }
-            return shipments;
-        }
-
-        public void setShipments(List<Shipment> shipments) {
-            this.shipments = shipments;
-        }
-
-        public List<ShipmentWithItems> getShipmentsWithItems() {
-            return shipmentsWithItems;
-        }
-
-        public void setShipmentsWithItems(List<ShipmentWithItems> shipmentsWithItems) {
-            this.shipmentsWithItems = shipmentsWithItems;
-        }
-    }
-    
-    public static class ShipmentWithItems {
-        private Shipment shipment;
-        private List<ShipmentItemDto> items;
-
-        public Shipment getShipment() {
-            return shipment;
-        }
-
-        public void setShipment(Shipment shipment) {
-            this.shipment = shipment;
-        }
-
-        public List<ShipmentItemDto> getItems() {
-            return items;
-        }
-
-        public void setItems(List<ShipmentItemDto> items) {
-            this.items = items;
-        }
-    }
-    
-    public static class ShipmentItemDto {
-        private Long orderItemId;
-        private String bookId;
-        private Integer shipQuantity;
-
-        public Long getOrderItemId() {
-            return orderItemId;
-        }
-
-        public void setOrderItemId(Long orderItemId) {
-            this.orderItemId = orderItemId;
-        }
-
-        public String getBookId() {
-            return bookId;
-        }
-
-        public void setBookId(String bookId) {
-            this.bookId = bookId;
-        }
-
-        public Integer getShipQuantity() {
-            return shipQuantity;
-        }
-
-        public void setShipQuantity(Integer shipQuantity) {
-            this.shipQuantity = shipQuantity;
-        }
-    }
-
     public static class ShortageDecisionReq {
         /**
          * 决策类型：PAY_AND_CREATE / REQUEST_ONLY
@@ -687,6 +683,7 @@ public class CustomerOrderController {
         private List<CreateOrderItem> items;
         private String shippingAddressSnapshot;
         private String customerNote;
+        private boolean allowShortage;
 
         public List<CreateOrderItem> getItems() {
             return items;
@@ -711,6 +708,14 @@ public class CustomerOrderController {
         public void setCustomerNote(String customerNote) {
             this.customerNote = customerNote;
         }
+
+        public boolean isAllowShortage() {
+            return allowShortage;
+        }
+
+        public void setAllowShortage(boolean allowShortage) {
+            this.allowShortage = allowShortage;
+        }
     }
 
     public static class ReceiveReq {
@@ -755,6 +760,57 @@ public class CustomerOrderController {
         }
     }
 
+    public static class CheckoutRequest {
+        private String shippingAddressSnapshot;
+        private String customerNote;
+        private boolean allowShortage;
+
+        public String getShippingAddressSnapshot() {
+            return shippingAddressSnapshot;
+        }
+
+        public void setShippingAddressSnapshot(String shippingAddressSnapshot) {
+            this.shippingAddressSnapshot = shippingAddressSnapshot;
+        }
+
+        public String getCustomerNote() {
+            return customerNote;
+        }
+
+        public void setCustomerNote(String customerNote) {
+            this.customerNote = customerNote;
+        }
+
+        public boolean isAllowShortage() {
+            return allowShortage;
+        }
+
+        public void setAllowShortage(boolean allowShortage) {
+            this.allowShortage = allowShortage;
+        }
+    }
+
+    public static class CheckoutResp {
+        private SalesOrder order;
+        private List<ShortageResp> shortages;
+
+        public SalesOrder getOrder() {
+            return order;
+        }
+
+        public void setOrder(SalesOrder order) {
+            this.order = order;
+        }
+
+        public List<ShortageResp> getShortages() {
+            return shortages;
+        }
+
+        public void setShortages(List<ShortageResp> shortages) {
+            this.shortages = shortages;
+        }
+    }
+
     public static class ShortageResp {
         private String bookId;
         private int quantity;
@@ -1,9 +1,10 @@
 package com.bookstore.web.controller;
 
-import com.bookstore.dao.CreditLevelDao;
+import com.bookstore.dao.CreditLevelRegistry;
 import com.bookstore.dao.CustomerDao;
 import com.bookstore.model.CreditLevel;
 import com.bookstore.model.Customer;
+import com.bookstore.web.MaxQueries;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,13 +15,13 @@ import java.sql.SQLException;
  * 顾客端-个人信息/信用等级接口。
  * 逻辑对应 CustomerView.loadCustomerInfo 和 getCreditPrivilegeText。
  */
+@MaxQueries(5)
 @RestController
 @RequestMapping("/api/customer")
 @CrossOrigin
 public class CustomerProfileController {
 
     private final CustomerDao customerDao = new CustomerDao();
-    private final CreditLevelDao creditLevelDao = new CreditLevelDao();
 
     @GetMapping("/{customerId}/summary")
     public ResponseEntity<?> summary(@PathVariable("customerId") long customerId) throws SQLException {
@@ -28,7 +29,7 @@ public class CustomerProfileController {
         if (c == null) {
             return ResponseEntity.notFound().build();
         }
-        CreditLevel level = creditLevelDao.findById(c.getCreditLevelId());
+        CreditLevel level = CreditLevelRegistry.get(c.getCreditLevelId());
         ProfileResp resp = toProfileResp(c, level);
         return ResponseEntity.ok(resp);
     }
@@ -79,14 +80,12 @@ public class CustomerProfileController {
             if (req.getAmount() == null || req.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
                 return ResponseEntity.badRequest().body(new ErrorResp("充值金额必须大于0"));
             }
-            Customer c = customerDao.findById(customerId);
-            if (c == null) {
+            // 在原余额上累加，与并发付款的条件扣款互不覆盖
+            if (customerDao.addAccountBalance(customerId, req.getAmount()) == 0) {
                 return ResponseEntity.notFound().build();
             }
-            BigDecimal newBalance = c.getAccountBalance().add(req.getAmount());
-            customerDao.updateAccountBalance(customerId, newBalance);
-            c.setAccountBalance(newBalance);
-            CreditLevel level = creditLevelDao.findById(c.getCreditLevelId());
+            Customer c = customerDao.findById(customerId);
+            CreditLevel level = CreditLevelRegistry.get(c.getCreditLevelId());
             return ResponseEntity.ok(toProfileResp(c, level));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp("充值失败：" + e.getMessage()));
@@ -118,7 +117,7 @@ public class CustomerProfileController {
                 return ResponseEntity.badRequest().body(new ErrorResp("更新失败"));
             }
             Customer c = customerDao.findById(customerId);
-            CreditLevel level = creditLevelDao.findById(c.getCreditLevelId());
+            CreditLevel level = CreditLevelRegistry.get(c.getCreditLevelId());
             return ResponseEntity.ok(toProfileResp(c, level));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(new ErrorResp("更新失败：" + e.getMessage()));
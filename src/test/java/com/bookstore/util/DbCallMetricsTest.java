@@ -0,0 +1,56 @@
+package com.bookstore.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link DbCallMetrics} 请求范围的语句计数与预算，不需要数据库。
+ */
+class DbCallMetricsTest {
+
+    @AfterEach
+    void reset() {
+        DbCallMetrics.end();
+        DbCallMetrics.setStrictBudgets(false);
+    }
+
+    @Test
+    void withinBudget() throws Exception {
+        DbCallMetrics.Scope scope = DbCallMetrics.begin(3);
+        DbCallMetrics.statementCreated();
+        DbCallMetrics.statementCreated();
+        DbCallMetrics.statementCreated();
+        assertEquals(3, scope.getStatements());
+        assertFalse(scope.isExceeded());
+    }
+
+    @Test
+    void overBudgetIsMarked() throws Exception {
+        DbCallMetrics.Scope scope = DbCallMetrics.begin(1);
+        DbCallMetrics.statementCreated();
+        DbCallMetrics.statementCreated();
+        assertTrue(scope.isExceeded());
+    }
+
+    @Test
+    void strictModeThrowsOnFirstStatementOverBudget() throws Exception {
+        DbCallMetrics.setStrictBudgets(true);
+        DbCallMetrics.Scope scope = DbCallMetrics.begin(1);
+        DbCallMetrics.statementCreated();
+        assertThrows(QueryBudgetExceededException.class, DbCallMetrics::statementCreated);
+        assertEquals(2, scope.getStatements());
+    }
+
+    @Test
+    void statementsOutsideScopeAreNotBudgeted() throws Exception {
+        DbCallMetrics.setStrictBudgets(true);
+        long before = DbCallMetrics.getStatements();
+        DbCallMetrics.statementCreated();
+        assertEquals(before + 1, DbCallMetrics.getStatements());
+    }
+}
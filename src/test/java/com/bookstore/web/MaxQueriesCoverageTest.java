@@ -0,0 +1,58 @@
+package com.bookstore.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每个接口（含 POST / PUT / DELETE）都有 {@link MaxQueries} 语句预算，且预算是不超过 {@link #MAX_BUDGET} 的常数。
+ * 只扫描 com.bookstore.web.controller 下的控制器类，不需要数据库。
+ */
+class MaxQueriesCoverageTest {
+
+    /** 单个接口允许的最大预算；超过说明接口里仍有按行数增长的查询，应先改成批量语句。 */
+    private static final int MAX_BUDGET = 30;
+
+    @Test
+    void everyEndpointHasConstantBudget() throws Exception {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(RestController.class));
+
+        List<String> missing = new ArrayList<>();
+        List<String> tooLarge = new ArrayList<>();
+        int endpoints = 0;
+        for (BeanDefinition bd : scanner.findCandidateComponents("com.bookstore.web.controller")) {
+            Class<?> type = Class.forName(bd.getBeanClassName());
+            for (Method m : type.getDeclaredMethods()) {
+                if (!AnnotatedElementUtils.hasAnnotation(m, RequestMapping.class)) {
+                    continue;
+                }
+                endpoints++;
+                MaxQueries max = m.getAnnotation(MaxQueries.class);
+                if (max == null) {
+                    max = type.getAnnotation(MaxQueries.class);
+                }
+                String name = type.getSimpleName() + "." + m.getName();
+                if (max == null) {
+                    missing.add(name);
+                } else if (max.value() > MAX_BUDGET) {
+                    tooLarge.add(name + "=" + max.value());
+                }
+            }
+        }
+        assertFalse(endpoints == 0, "未扫描到任何接口");
+        assertTrue(missing.isEmpty(), "缺少 @MaxQueries：" + missing);
+        assertTrue(tooLarge.isEmpty(), "预算超过 " + MAX_BUDGET + "：" + tooLarge);
+    }
+}
@@ -0,0 +1,160 @@
+package com.bookstore.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 写接口（POST / DELETE）的语句预算测试：逐个走通管理端建书与删丛书、调整库存、下单 / 付款 / 发货 / 收货 / 取消、
+ * 缺书登记、缺书生成采购单与到货，每个请求都须在其 {@link MaxQueries} 预算内完成（见 {@link QueryBudgetExtension}）。
+ *
+ * 需要 db.properties 配置的数据库及样例数据（顾客 2、供应商 1），测试书目按时间戳新建，结束时尝试删除
+ * （被发货单引用的书可能删不掉，不影响结果）；
+ * 连不上数据库时整个类跳过。丛书带多本子书、订单带多种书，用于确认预算与子书数、明细行数无关。
+ */
+@ExtendWith(QueryBudgetExtension.class)
+class PostEndpointBudgetTest {
+
+    private static final long CUSTOMER_ID = 2;
+    private static final long SUPPLIER_ID = 1;
+    private static final int CHILD_BOOKS = 5;
+
+    private final String prefix = "T" + Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+
+    @Test
+    void deleteSeriesWithChildren(QueryBudgetExtension.Api api) throws Exception {
+        String series = prefix + "S";
+        addBook(api, series, true, null, 0);
+        for (int i = 0; i < CHILD_BOOKS; i++) {
+            addBook(api, series + i, false, series, 3);
+        }
+        ok(api.post("/api/admin/inventory/" + series + "0/adjust", Collections.singletonMap("delta", 2)));
+        ok(api.post("/api/admin/inventory/" + series + "1/adjust", Collections.singletonMap("delta", -1)));
+
+        ok(api.delete("/api/admin/books/" + series));
+        assertEquals(404, api.get("/api/admin/books/" + series + "0").getStatus());
+    }
+
+    @Test
+    void orderLifecycle(QueryBudgetExtension.Api api) throws Exception {
+        List<String> books = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            books.add(prefix + "O" + i);
+            addBook(api, books.get(i), false, null, 10);
+        }
+        try {
+            ok(api.post("/api/customer/" + CUSTOMER_ID + "/cart", item(books.get(0), 1)));
+
+            long orderId = createOrder(api, books, 2, false);
+            ok(api.post("/api/customer/orders/" + orderId + "/pay", null));
+            Map<String, Object> ship = new LinkedHashMap<>();
+            ship.put("carrier", "测试快递");
+            ship.put("trackingNumber", prefix);
+            ship.put("operator", "test");
+            ok(api.post("/api/admin/orders/" + orderId + "/ship", ship));
+            JsonNode shipments = ok(api.get("/api/customer/orders/" + orderId)).get("shipments");
+            assertFalse(shipments.isEmpty(), "发货后应有发货单");
+            ok(api.post("/api/customer/orders/" + orderId + "/receive",
+                    Collections.singletonMap("shipmentId", shipments.get(0).get("shipmentId").asLong())));
+
+            long toCancel = createOrder(api, books, 1, false);
+            ok(api.post("/api/customer/orders/" + toCancel + "/cancel", null));
+        } finally {
+            for (String bookId : books) {
+                api.delete("/api/admin/books/" + bookId);
+            }
+        }
+    }
+
+    @Test
+    void shortageToPurchaseReceipt(QueryBudgetExtension.Api api) throws Exception {
+        List<String> books = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            books.add(prefix + "P" + i);
+            addBook(api, books.get(i), false, null, 0);
+        }
+        try {
+            assertEquals(409, api.post("/api/customer/" + CUSTOMER_ID + "/orders",
+                    orderRequest(books, 2, false)).getStatus(), "缺货且未确认缺书登记时不应下单");
+            long orderId = createOrder(api, books, 2, true);
+            Map<String, Object> decision = new LinkedHashMap<>();
+            decision.put("decision", "PAY_AND_CREATE");
+            decision.put("customerNote", "预算测试");
+            ok(api.post("/api/customer/orders/" + orderId + "/shortages/decision", decision));
+
+            List<Long> recordIds = new ArrayList<>();
+            for (JsonNode record : ok(api.get("/api/admin/purchase/out-of-stock"))) {
+                if (books.contains(record.get("bookId").asText()) && "PENDING".equals(record.get("status").asText())) {
+                    recordIds.add(record.get("recordId").asLong());
+                }
+            }
+            assertEquals(books.size(), recordIds.size(), "每种缺货书应有一条待处理缺书记录");
+
+            Map<String, Object> create = new LinkedHashMap<>();
+            create.put("recordIds", recordIds);
+            create.put("supplierId", SUPPLIER_ID);
+            create.put("buyer", "test");
+            long poId = ok(api.post("/api/admin/purchase/orders/from-out-of-stock", create))
+                    .get("purchaseOrderId").asLong();
+            ok(api.post("/api/admin/purchase/orders/" + poId + "/receive", null));
+        } finally {
+            for (String bookId : books) {
+                api.delete("/api/admin/books/" + bookId);
+            }
+        }
+    }
+
+    private static void addBook(QueryBudgetExtension.Api api, String bookId, boolean series, String parentBookId,
+                                int quantity) throws Exception {
+        Map<String, Object> book = new LinkedHashMap<>();
+        book.put("bookId", bookId);
+        book.put("title", "预算测试 " + bookId);
+        book.put("price", 1);
+        book.put("initQuantity", quantity);
+        book.put("safetyStock", 0);
+        book.put("seriesFlag", series);
+        book.put("parentBookId", parentBookId);
+        ok(api.post("/api/admin/books", book));
+    }
+
+    private static long createOrder(QueryBudgetExtension.Api api, List<String> books, int quantity,
+                                    boolean allowShortage) throws Exception {
+        JsonNode order = ok(api.post("/api/customer/" + CUSTOMER_ID + "/orders",
+                orderRequest(books, quantity, allowShortage))).get("order");
+        assertNotNull(order, "下单应返回订单");
+        return order.get("orderId").asLong();
+    }
+
+    private static Map<String, Object> orderRequest(List<String> books, int quantity, boolean allowShortage) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (String bookId : books) {
+            items.add(item(bookId, quantity));
+        }
+        Map<String, Object> req = new LinkedHashMap<>();
+        req.put("items", items);
+        req.put("allowShortage", allowShortage);
+        return req;
+    }
+
+    private static Map<String, Object> item(String bookId, int quantity) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("bookId", bookId);
+        item.put("quantity", quantity);
+        return item;
+    }
+
+    private static JsonNode ok(QueryBudgetExtension.Response resp) throws Exception {
+        assertEquals(200, resp.getStatus(), resp.getBody());
+        return resp.json();
+    }
+}
@@ -0,0 +1,196 @@
+package com.bookstore.web;
+
+import com.bookstore.util.DBUtil;
+import com.bookstore.util.DbCallMetrics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 接口语句预算（N+1）检查的 JUnit 5 扩展，用法：在测试类上标注 {@code @ExtendWith(QueryBudgetExtension.class)}，
+ * 测试方法声明 {@link Api} 参数即可调用本进程内启动的 Web 服务。
+ *
+ * - 连不上 db.properties 配置的数据库时跳过整个测试类；
+ * - 测试类执行期间打开严格模式，超出 {@link MaxQueries} 预算的语句直接抛出异常，请求以 4xx/5xx 失败；
+ * - 每个测试方法结束后对比 {@link EndpointMetrics} 的超预算计数，有接口超出预算时测试失败并列出接口。
+ *
+ * Web 服务（随机端口）在首次需要时启动，同一次测试运行内的所有测试类共用，运行结束时关闭。
+ */
+public class QueryBudgetExtension implements ExecutionCondition, BeforeAllCallback, AfterAllCallback,
+        BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+    private static final ExtensionContext.Namespace NAMESPACE =
+            ExtensionContext.Namespace.create(QueryBudgetExtension.class);
+
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        String unavailable = context.getRoot().getStore(NAMESPACE)
+                .getOrComputeIfAbsent("database", k -> probeDatabase(), String.class);
+        return unavailable.isEmpty()
+                ? ConditionEvaluationResult.enabled("数据库可用")
+                : ConditionEvaluationResult.disabled("数据库不可用，跳过接口预算测试：" + unavailable);
+    }
+
+    /**
+     * 试取一个连接，成功返回空串，失败返回原因。DBUtil 初始化失败时抛出的是 Error，一并捕获。
+     */
+    private static String probeDatabase() {
+        try {
+            DBUtil.getConnection().close();
+            return "";
+        } catch (Throwable e) {
+            return String.valueOf(e.getMessage());
+        }
+    }
+
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        DbCallMetrics.setStrictBudgets(true);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        DbCallMetrics.setStrictBudgets(false);
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        context.getStore(NAMESPACE).put("overBudget", overBudgetByEndpoint());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void afterEach(ExtensionContext context) {
+        Map<String, Long> before = context.getStore(NAMESPACE).remove("overBudget", Map.class);
+        List<String> exceeded = new ArrayList<>();
+        for (EndpointMetrics.Stats s : EndpointMetrics.snapshot()) {
+            long added = s.getOverBudget() - before.getOrDefault(s.getEndpoint(), 0L);
+            if (added > 0) {
+                exceeded.add(s.getEndpoint() + "（预算 " + s.getBudget() + "，本次最多 "
+                        + s.getStatementsPerRequest().getMax() + " 条，超出 " + added + " 次）");
+            }
+        }
+        if (!exceeded.isEmpty()) {
+            fail("接口超出语句预算：" + exceeded);
+        }
+    }
+
+    private static Map<String, Long> overBudgetByEndpoint() {
+        Map<String, Long> m = new HashMap<>();
+        for (EndpointMetrics.Stats s : EndpointMetrics.snapshot()) {
+            m.put(s.getEndpoint(), s.getOverBudget());
+        }
+        return m;
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == Api.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return extensionContext.getRoot().getStore(NAMESPACE)
+                .getOrComputeIfAbsent("server", k -> new Server(), Server.class).api;
+    }
+
+    /**
+     * 本进程内启动的 Web 服务，由 JUnit 在测试运行结束时关闭。
+     */
+    private static final class Server implements ExtensionContext.Store.CloseableResource {
+        final ConfigurableApplicationContext ctx;
+        final Api api;
+
+        Server() {
+            ctx = SpringApplication.run(WebApplication.class, "--server.port=0");
+            api = new Api(Integer.parseInt(ctx.getEnvironment().getProperty("local.server.port")));
+        }
+
+        @Override
+        public void close() {
+            SpringApplication.exit(ctx);
+        }
+    }
+
+    /**
+     * 调用接口的 HTTP 客户端，请求与响应体均为 JSON。
+     */
+    public static final class Api {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
+        private final HttpClient client = HttpClient.newHttpClient();
+        private final String base;
+
+        Api(int port) {
+            this.base = "http://localhost:" + port;
+        }
+
+        public Response get(String path) throws IOException, InterruptedException {
+            return send(HttpRequest.newBuilder(URI.create(base + path)).GET());
+        }
+
+        public Response post(String path, Object body) throws IOException, InterruptedException {
+            return send(HttpRequest.newBuilder(URI.create(base + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body != null ? MAPPER.writeValueAsString(body) : "")));
+        }
+
+        public Response delete(String path) throws IOException, InterruptedException {
+            return send(HttpRequest.newBuilder(URI.create(base + path)).DELETE());
+        }
+
+        private Response send(HttpRequest.Builder request) throws IOException, InterruptedException {
+            HttpResponse<String> resp = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            return new Response(resp.statusCode(), resp.body());
+        }
+    }
+
+    /**
+     * 接口响应：状态码与响应体。
+     */
+    public static final class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /** 响应体解析为 JSON，空响应体返回空对象。 */
+        public JsonNode json() throws IOException {
+            return body == null || body.isEmpty() ? Api.MAPPER.createObjectNode() : Api.MAPPER.readTree(body);
+        }
+    }
+}
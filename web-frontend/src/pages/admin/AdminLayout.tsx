@@ -185,6 +185,9 @@ interface BookInquiryRequestDto {
   replyTime?: string;
 }
 
+// 订单管理页每次请求的订单条数
+const ORDER_PAGE_SIZE = 100;
+
 type MenuKey = 'dashboard' | 'orders' | 'shipments' | 'inventory' | 'purchase' | 'customer' | 'supplier' | 'book' | 'inquiry';
 
 const AdminLayout: React.FC = () => {
@@ -214,6 +217,7 @@ const AdminLayout: React.FC = () => {
   const [selectedKey, setSelectedKey] = useState<MenuKey>(getInitialMenuKey);
   const [orders, setOrders] = useState<SalesOrderDto[]>([]);
   const [loadingOrders, setLoadingOrders] = useState(false);
+  const [orderNextCursor, setOrderNextCursor] = useState<number | null>(null);
   const [orderStatusFilter, setOrderStatusFilter] = useState<string>('全部');
   const [activeOrderDetail, setActiveOrderDetail] = useState<OrderDetailResp | null>(null);
   const [orderDetailVisible, setOrderDetailVisible] = useState(false);
@@ -374,7 +378,7 @@ const AdminLayout: React.FC = () => {
       loadBooks();
     }
     if (selectedKey === 'orders') {
-      loadOrders(orderStatusFilter);
+      loadOrderPage(orderStatusFilter);
     }
     if (selectedKey === 'shipments') {
       loadShipmentOrders(shipmentStatusFilter);
@@ -415,6 +419,22 @@ const AdminLayout: React.FC = () => {
     }
   };
 
+  // 订单管理页按订单号倒序游标分页，afterOrderId 为空时从第一页开始
+  const loadOrderPage = async (status: string, afterOrderId?: number) => {
+    try {
+      setLoadingOrders(true);
+      const resp = await http.get<{ items: SalesOrderDto[]; nextCursor: number | null; hasMore: boolean }>('/admin/orders', {
+        params: { status, afterOrderId, limit: ORDER_PAGE_SIZE }
+      });
+      setOrders((prev) => (afterOrderId ? [...prev, ...resp.data.items] : resp.data.items));
+      setOrderNextCursor(resp.data.hasMore ? resp.data.nextCursor : null);
+    } catch (e: any) {
+      message.error(e?.response?.data?.message || '加载订单列表失败');
+    } finally {
+      setLoadingOrders(false);
+    }
+  };
+
   const loadShipmentOrders = async (status: string) => {
     try {
       setLoadingShipOrders(true);
@@ -1271,6 +1291,13 @@ const AdminLayout: React.FC = () => {
         pagination={{ pageSize: 12 }}
         className="glass-table"
       />
+      {orderNextCursor !== null && (
+        <div style={{ textAlign: 'center' }}>
+          <Button loading={loadingOrders} onClick={() => loadOrderPage(orderStatusFilter, orderNextCursor)}>
+            加载更多订单
+          </Button>
+        </div>
+      )}
     </Space>
   );
 
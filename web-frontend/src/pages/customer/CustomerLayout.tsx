@@ -1,4 +1,4 @@
-import React, { useEffect, useMemo, useState } from 'react';
+import React, { useEffect, useMemo, useRef, useState } from 'react';
 import {
   Layout,
   Typography,
@@ -192,6 +192,15 @@ interface ShortageItemDto {
   currentStock: number;
 }
 
+// 通知抽屉每次加载的条数
+const NOTIFICATION_PAGE_SIZE = 20;
+
+// 下单请求的 Idempotency-Key：非 https 页面没有 crypto.randomUUID，退回时间戳 + 随机数
+const newIdempotencyKey = () =>
+  typeof crypto !== 'undefined' && typeof crypto.randomUUID === 'function'
+    ? crypto.randomUUID()
+    : `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}`;
+
 const CustomerLayout: React.FC = () => {
   const { token } = useToken();
   const location = useLocation();
@@ -231,6 +240,10 @@ const CustomerLayout: React.FC = () => {
   const [notificationTab, setNotificationTab] = useState<'messages' | 'inquiries'>('messages');
   const [notifications, setNotifications] = useState<CustomerNotificationDto[]>([]);
   const [loadingNotifications, setLoadingNotifications] = useState(false);
+  const [unreadCount, setUnreadCount] = useState(0);
+  const [notificationNextCursor, setNotificationNextCursor] = useState<number | null>(null);
+  // 本次下单的幂等 key：重复点击或重试沿用同一个 key，下单成功后清空
+  const orderIdempotencyKey = useRef<string | null>(null);
   // Shortage
   const [shortageModalVisible, setShortageModalVisible] = useState(false);
   const [shortages, setShortages] = useState<ShortageItemDto[]>([]);
@@ -393,9 +406,28 @@ const CustomerLayout: React.FC = () => {
     loadAllBooks();
     loadAddresses();
     loadNotifications();
+    loadUnreadCount();
     loadCart();
   }, [customerId]);
 
+  // 通知推送：新通知与未读数由服务端 SSE 推送，断线后 EventSource 自动重连并带上 Last-Event-ID 续传
+  useEffect(() => {
+    if (!customerId) return;
+    const source = new EventSource(`/api/customer/${customerId}/notifications/stream`);
+    source.addEventListener('notification', (e) => {
+      const n = JSON.parse((e as MessageEvent).data) as CustomerNotificationDto;
+      setNotifications(prev => prev.some(x => x.notificationId === n.notificationId) ? prev : [n, ...prev]);
+    });
+    source.addEventListener('unread-count', (e) => {
+      setUnreadCount(Number((e as MessageEvent).data) || 0);
+    });
+    // 断线期间通知过多时服务端不再逐条补发，改为重新加载列表
+    source.addEventListener('reload', () => {
+      loadNotifications();
+    });
+    return () => source.close();
+  }, [customerId]);
+
   // Auto-search with debounce
   useEffect(() => {
     if (!customerId) return;
@@ -525,7 +557,7 @@ const CustomerLayout: React.FC = () => {
   const loadAllBooks = async () => {
     try {
       setLoadingBooks(true);
-      const resp = await http.get<BookDto[]>('/customer/books');
+      const resp = await http.get<BookDto[]>('/customer/books', { params: { view: 'summary' } });
       setBooks(resp.data);
     } catch (e: any) { } finally {
       setLoadingBooks(false);
@@ -549,7 +581,7 @@ const CustomerLayout: React.FC = () => {
     if (!kw) { loadAllBooks(); return; }
     try {
       setLoadingBooks(true);
-      const resp = await http.get<BookDto[]>('/customer/books/search', { params: { keyword: kw } });
+      const resp = await http.get<BookDto[]>('/customer/books/search', { params: { keyword: kw, view: 'summary' } });
       setBooks(resp.data);
     } catch (e: any) { } finally {
       setLoadingBooks(false);
@@ -586,9 +618,31 @@ const CustomerLayout: React.FC = () => {
     return cart.reduce((sum, item) => sum + item.quantity * item.unitPrice * discount, 0);
   }, [cart, summary]);
 
+  // 购物车结算：缺货且 allowShortage 为 false 时服务端返回 409 与缺货明细，不下单
+  const checkoutApi = async (payload: any, allowShortage: boolean) => {
+    if (!orderIdempotencyKey.current) {
+      orderIdempotencyKey.current = newIdempotencyKey();
+    }
+    try {
+      const resp = await http.post<{ order: SalesOrderDto | null; shortages: ShortageItemDto[] }>(
+        `/customer/${customerId}/checkout`,
+        { ...payload, allowShortage },
+        { headers: { 'Idempotency-Key': orderIdempotencyKey.current } }
+      );
+      orderIdempotencyKey.current = null;
+      return resp.data;
+    } catch (e: any) {
+      if (e?.response?.status === 409 && e.response.data?.shortages) {
+        return e.response.data as { order: SalesOrderDto | null; shortages: ShortageItemDto[] };
+      }
+      throw e;
+    }
+  };
+
   const payOrder = async (orderId: number) => {
     try {
-      await http.post(`/customer/orders/${orderId}/pay`);
+      // 同一订单只会付款一次，key 取订单号即可拦住重复点击
+      await http.post(`/customer/orders/${orderId}/pay`, null, { headers: { 'Idempotency-Key': `pay-${orderId}` } });
       message.success('付款成功');
       await Promise.all([loadSummary(), loadOrders(orderStatusFilter)]);
       if (activeOrderDetail?.order.orderId === orderId) {
@@ -661,26 +715,20 @@ const CustomerLayout: React.FC = () => {
         snapshot = summary.realName || summary.username;
       }
 
-      const orderPayload = {
-        items: cart.map((c) => ({ bookId: c.bookId, quantity: c.quantity, unitPrice: c.unitPrice })),
-        shippingAddressSnapshot: snapshot
-      };
-
-      // 先检查库存
-      const checkResp = await http.post<ShortageItemDto[]>(`/customer/${customerId}/orders/check-stock`, orderPayload);
+      // 服务端按购物车结算：定价、库存检查、下单与清空购物车在一次请求中完成
+      const orderPayload = { shippingAddressSnapshot: snapshot };
+      const result = await checkoutApi(orderPayload, false);
 
-      if (checkResp.data && checkResp.data.length > 0) {
+      if (!result.order) {
         // 有缺货商品，弹出缺书登记窗口，此时不创建订单
-        setShortages(checkResp.data);
+        setShortages(result.shortages);
         setShortageOrder(null); // 订单尚未创建
         setShortageModalVisible(true);
         // 保存订单请求参数供后续使用
         (window as any).__pendingOrderPayload = orderPayload;
       } else {
-        // 没有缺货，直接创建订单
-        const resp = await http.post<SalesOrderDto>(`/customer/${customerId}/orders`, orderPayload);
-        message.success(`下单成功 (${resp.data.orderId})`);
-        await clearCartApi();
+        message.success(`下单成功 (${result.order.orderId})`);
+        setCart([]);
         setCartVisible(false);
         await Promise.all([loadSummary(), loadOrders(orderStatusFilter)]);
       }
@@ -793,29 +841,42 @@ const CustomerLayout: React.FC = () => {
     localStorage.setItem(`read_notifications_${customerId}`, JSON.stringify(newIds));
   };
 
-  const loadNotifications = async () => {
+  // 通知按 notificationId 倒序游标分页，beforeNotificationId 为空时从最新一页开始
+  const loadNotifications = async (beforeNotificationId?: number) => {
     try {
       setLoadingNotifications(true);
-      const resp = await http.get<CustomerNotificationDto[]>(`/customer/${customerId}/notifications`);
-      setNotifications(resp.data);
+      const resp = await http.get<{ items: CustomerNotificationDto[]; nextCursor: number | null; hasMore: boolean }>(
+        `/customer/${customerId}/notifications`,
+        { params: { beforeNotificationId, limit: NOTIFICATION_PAGE_SIZE } }
+      );
+      setNotifications(prev => (beforeNotificationId ? [...prev, ...resp.data.items] : resp.data.items));
+      setNotificationNextCursor(resp.data.hasMore ? resp.data.nextCursor : null);
     } finally { setLoadingNotifications(false); }
   };
 
+  const loadUnreadCount = async () => {
+    try {
+      const resp = await http.get<{ unreadCount: number }>(`/customer/${customerId}/notifications/unread-count`);
+      setUnreadCount(resp.data.unreadCount);
+    } catch (e: any) { }
+  };
+
   const markRead = async (id: number) => {
     try {
       await http.post(`/customer/${customerId}/notifications/${id}/read`);
       setNotifications(prev => prev.map(n => n.notificationId === id ? { ...n, readFlag: true } : n));
+      loadUnreadCount();
     } catch (e: any) {
       message.error('标记已读失败');
     }
   };
 
   const markAllRead = async () => {
-    const unread = notifications.filter(n => !n.readFlag);
-    if (unread.length === 0) return;
+    if (unreadCount === 0) return;
     try {
       await http.post(`/customer/${customerId}/notifications/read-all`);
       setNotifications(prev => prev.map(n => ({ ...n, readFlag: true })));
+      setUnreadCount(0);
       message.success('全部已读');
     } catch (e: any) {
       message.error('标记全部已读失败');
@@ -826,6 +887,7 @@ const CustomerLayout: React.FC = () => {
     try {
       await http.delete(`/customer/${customerId}/notifications/${id}`);
       setNotifications(prev => prev.filter(n => n.notificationId !== id));
+      loadUnreadCount();
       message.success('已删除');
     } catch (e: any) {
       message.error('删除失败');
@@ -836,6 +898,8 @@ const CustomerLayout: React.FC = () => {
     try {
       await http.delete(`/customer/${customerId}/notifications`);
       setNotifications([]);
+      setNotificationNextCursor(null);
+      setUnreadCount(0);
       message.success('已清除所有通知');
     } catch (e: any) {
       message.error('清除失败');
@@ -882,8 +946,8 @@ const CustomerLayout: React.FC = () => {
 
           <Button type="text" onClick={() => { setOrdersVisible(true); loadOrders('全部'); }}>我的订单</Button>
 
-          <Badge dot={notifications.some(n => !n.readFlag)}>
-            <Button type="text" icon={<BellOutlined style={{ fontSize: 18 }} />} onClick={() => { setNotificationsVisible(true); loadNotifications(); loadMyInquiries(); }} />
+          <Badge dot={unreadCount > 0}>
+            <Button type="text" icon={<BellOutlined style={{ fontSize: 18 }} />} onClick={() => { setNotificationsVisible(true); loadNotifications(); loadUnreadCount(); loadMyInquiries(); }} />
           </Badge>
 
           <Button type="text" onClick={() => setProfileModalVisible(true)}>{summary?.realName || customerName}</Button>
@@ -1532,16 +1596,16 @@ const CustomerLayout: React.FC = () => {
             const payload = (window as any).__pendingOrderPayload;
             if (!payload) { message.error('订单数据丢失'); return; }
             try {
-              // 创建订单
-              const resp = await http.post<SalesOrderDto>(`/customer/${customerId}/orders`, payload);
-              const order = resp.data;
+              // 结算购物车（缺货照常下单）
+              const { order } = await checkoutApi(payload, true);
+              if (!order) { message.error('下单失败'); return; }
               // 提交缺书登记
               await http.post(`/customer/orders/${order.orderId}/shortages/decision`, {
                 decision: 'REQUEST_ONLY',
                 customerNote: shortageNote
               });
               message.success('缺书登记已提交（暂未付款），等待管理员审核');
-              await clearCartApi();
+              setCart([]);
               setShortageModalVisible(false);
               setShortageNote('');
               setCartVisible(false);
@@ -1556,16 +1620,16 @@ const CustomerLayout: React.FC = () => {
             const payload = (window as any).__pendingOrderPayload;
             if (!payload) { message.error('订单数据丢失'); return; }
             try {
-              // 创建订单
-              const resp = await http.post<SalesOrderDto>(`/customer/${customerId}/orders`, payload);
-              const order = resp.data;
+              // 结算购物车（缺货照常下单）
+              const { order } = await checkoutApi(payload, true);
+              if (!order) { message.error('下单失败'); return; }
               // 提交缺书登记并付款
               await http.post(`/customer/orders/${order.orderId}/shortages/decision`, {
                 decision: 'PAY_AND_CREATE',
                 customerNote: shortageNote
               });
               message.success('缺书登记已提交并已付款，等待到货后发货');
-              await clearCartApi();
+              setCart([]);
               setShortageModalVisible(false);
               setShortageNote('');
               setCartVisible(false);
@@ -1655,9 +1719,9 @@ const CustomerLayout: React.FC = () => {
         {notificationTab === 'messages' ? (
           <>
             <div style={{ marginBottom: 16, display: 'flex', justifyContent: 'space-between', alignItems: 'center' }}>
-              <span>共 {notifications.length} 条消息</span>
+              <span>{unreadCount} 条未读</span>
               <Space>
-                {notifications.some(n => !n.readFlag) && <Button size="small" onClick={markAllRead}>全部标为已读</Button>}
+                {unreadCount > 0 && <Button size="small" onClick={markAllRead}>全部标为已读</Button>}
                 {notifications.length > 0 && (
                   <Popconfirm title="确定清除所有通知？" onConfirm={clearAllNotifications}>
                     <Button size="small" danger>清除全部</Button>
@@ -1684,6 +1748,13 @@ const CustomerLayout: React.FC = () => {
               </List.Item>
             )} />
             {notifications.length === 0 && <Empty description="暂无通知" />}
+            {notificationNextCursor !== null && (
+              <div style={{ textAlign: 'center' }}>
+                <Button loading={loadingNotifications} onClick={() => loadNotifications(notificationNextCursor)}>
+                  加载更多通知
+                </Button>
+              </div>
+            )}
           </>
         ) : (
           <>